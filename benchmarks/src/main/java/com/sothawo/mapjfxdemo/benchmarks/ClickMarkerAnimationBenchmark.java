@@ -0,0 +1,147 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.benchmarks;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.Marker;
+import com.sothawo.mapjfxdemo.animation.MarkerAnimator;
+import javafx.animation.Interpolator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The frames of a one second click marker animation at 60 frames per second. {@code transition} is the interpolation
+ * of the former {@code animateClickMarker}, which reads the boxed start values and sets a new Coordinate on every
+ * frame. {@code linear} and {@code greatCircle} do the computations of the {@link MarkerAnimator} on primitive values
+ * and only set a position that changed by at least 1e-7 degrees. The MarkerAnimator needs JavaFX pulses to run, so
+ * its frame step is replicated here. Run with {@code -prof gc} to see the allocations per animation.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClickMarkerAnimationBenchmark {
+
+    private static final int FRAMES = 60;
+    private static final double MIN_POSITION_CHANGE = 1e-7;
+
+    /** the distance of the move in degrees; small moves show the effect of skipping unchanged positions. */
+    @Param({"0.00001", "0.01", "1"})
+    private double distance;
+
+    private final Marker marker = Marker.createProvided(Marker.Provided.RED);
+    private Coordinate oldPosition;
+    private Coordinate newPosition;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        oldPosition = new Coordinate(49.0069, 8.4037);
+        newPosition = new Coordinate(49.0069 + distance, 8.4037 + distance);
+    }
+
+    @Benchmark
+    public Coordinate transition() {
+        final Double oldPositionLatitude = oldPosition.getLatitude();
+        final Double oldPositionLongitude = oldPosition.getLongitude();
+        final double deltaLatitude = newPosition.getLatitude() - oldPositionLatitude;
+        final double deltaLongitude = newPosition.getLongitude() - oldPositionLongitude;
+        for (int frame = 1; frame <= FRAMES; frame++) {
+            // Transition applies its interpolator before calling interpolate
+            final double v = Interpolator.EASE_BOTH.interpolate(0.0, 1.0, (double) frame / FRAMES);
+            final double latitude = oldPosition.getLatitude() + v * deltaLatitude;
+            final double longitude = oldPosition.getLongitude() + v * deltaLongitude;
+            marker.setPosition(new Coordinate(latitude, longitude));
+        }
+        marker.setPosition(newPosition);
+        return marker.getPosition();
+    }
+
+    @Benchmark
+    public Coordinate linear() {
+        final double startLatitude = oldPosition.getLatitude();
+        final double startLongitude = oldPosition.getLongitude();
+        final double deltaLatitude = newPosition.getLatitude() - startLatitude;
+        final double deltaLongitude = newPosition.getLongitude() - startLongitude;
+        double currentLatitude = startLatitude;
+        double currentLongitude = startLongitude;
+        for (int frame = 1; frame < FRAMES; frame++) {
+            final double t = Interpolator.EASE_BOTH.interpolate(0.0, 1.0, (double) frame / FRAMES);
+            final double latitude = startLatitude + t * deltaLatitude;
+            final double longitude = startLongitude + t * deltaLongitude;
+            if (Math.abs(latitude - currentLatitude) >= MIN_POSITION_CHANGE
+                || Math.abs(longitude - currentLongitude) >= MIN_POSITION_CHANGE) {
+                currentLatitude = latitude;
+                currentLongitude = longitude;
+                marker.setPosition(new Coordinate(latitude, longitude));
+            }
+        }
+        marker.setPosition(newPosition);
+        return marker.getPosition();
+    }
+
+    @Benchmark
+    public Coordinate greatCircle() {
+        final double phi1 = Math.toRadians(oldPosition.getLatitude());
+        final double lambda1 = Math.toRadians(oldPosition.getLongitude());
+        final double phi2 = Math.toRadians(newPosition.getLatitude());
+        final double lambda2 = Math.toRadians(newPosition.getLongitude());
+        final double startX = Math.cos(phi1) * Math.cos(lambda1);
+        final double startY = Math.cos(phi1) * Math.sin(lambda1);
+        final double startZ = Math.sin(phi1);
+        final double endX = Math.cos(phi2) * Math.cos(lambda2);
+        final double endY = Math.cos(phi2) * Math.sin(lambda2);
+        final double endZ = Math.sin(phi2);
+        final double angle = Math.acos(Math.max(-1, Math.min(1, startX * endX + startY * endY + startZ * endZ)));
+        final double sinAngle = Math.sin(angle);
+
+        double currentLatitude = oldPosition.getLatitude();
+        double currentLongitude = oldPosition.getLongitude();
+        for (int frame = 1; frame < FRAMES; frame++) {
+            final double t = Interpolator.EASE_BOTH.interpolate(0.0, 1.0, (double) frame / FRAMES);
+            final double a = Math.sin((1 - t) * angle) / sinAngle;
+            final double b = Math.sin(t * angle) / sinAngle;
+            final double x = a * startX + b * endX;
+            final double y = a * startY + b * endY;
+            final double z = a * startZ + b * endZ;
+            final double latitude = Math.toDegrees(Math.atan2(z, Math.sqrt(x * x + y * y)));
+            final double longitude = Math.toDegrees(Math.atan2(y, x));
+            if (Math.abs(latitude - currentLatitude) >= MIN_POSITION_CHANGE
+                || Math.abs(longitude - currentLongitude) >= MIN_POSITION_CHANGE) {
+                currentLatitude = latitude;
+                currentLongitude = longitude;
+                marker.setPosition(new Coordinate(latitude, longitude));
+            }
+        }
+        marker.setPosition(newPosition);
+        return marker.getPosition();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.benchmarks;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.CoordinateLine;
+import com.sothawo.mapjfx.Extent;
+import com.sothawo.mapjfxdemo.track.Track;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The extent of two tracks: {@link Extent#forCoordinates(java.util.Collection)} over the concatenated coordinate
+ * streams of two CoordinateLines as in the former {@code tracksExtent} computation, against the bounds that
+ * {@link Track} computes from its primitive columns and that are merged when a track is loaded.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ExtentBenchmark {
+
+    /** the number of points of both tracks together. */
+    @Param({"10000", "1000000", "10000000"})
+    private int points;
+
+    private double[] firstLatitudes;
+    private double[] firstLongitudes;
+    private double[] secondLatitudes;
+    private double[] secondLongitudes;
+    private CoordinateLine firstLine;
+    private CoordinateLine secondLine;
+    private List<Coordinate> coordinates;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final Track first = TrackGenerator.randomWalk(points / 2, 4711);
+        final Track second = TrackGenerator.randomWalk(points - points / 2, 42);
+        firstLatitudes = first.latitudes();
+        firstLongitudes = first.longitudes();
+        secondLatitudes = second.latitudes();
+        secondLongitudes = second.longitudes();
+        firstLine = first.toCoordinateLine();
+        secondLine = second.toCoordinateLine();
+        coordinates = new ArrayList<>(points);
+        coordinates.addAll(first.toCoordinates());
+        coordinates.addAll(second.toCoordinates());
+    }
+
+    @Benchmark
+    public Extent coordinateStreams() {
+        return Extent.forCoordinates(
+            Stream.concat(firstLine.getCoordinateStream(), secondLine.getCoordinateStream())
+                .collect(Collectors.toList()));
+    }
+
+    @Benchmark
+    public Extent coordinateList() {
+        return Extent.forCoordinates(coordinates);
+    }
+
+    @Benchmark
+    public Extent trackBounds() {
+        // Track.of computes the bounds of the columns
+        final Extent firstExtent = Track.of(firstLatitudes, firstLongitudes, firstLatitudes.length).getExtent()
+            .orElseThrow();
+        final Extent secondExtent = Track.of(secondLatitudes, secondLongitudes, secondLatitudes.length).getExtent()
+            .orElseThrow();
+        return Extent.forCoordinates(firstExtent.getMin(), firstExtent.getMax(), secondExtent.getMin(),
+            secondExtent.getMax());
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.benchmarks;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfxdemo.geofence.Geofence;
+import com.sothawo.mapjfxdemo.geofence.GeofenceEngine;
+import com.sothawo.mapjfxdemo.geofence.GeofenceEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Geofences for a batch of position updates: the prepared geofences and the grid of {@link GeofenceEngine}, evaluated
+ * in parallel, against testing every update against the bounding box and then the polygon or circle of every
+ * geofence. The geofences are polygons with 8 to 64 vertices and circles spread over Germany; half of the updates are
+ * near a geofence, the others anywhere in the area.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class GeofenceBenchmark {
+
+    private static final double MIN_LATITUDE = 47.3;
+    private static final double MAX_LATITUDE = 55.0;
+    private static final double MIN_LONGITUDE = 5.9;
+    private static final double MAX_LONGITUDE = 15.0;
+    private static final double EARTH_RADIUS = 6_371_008.8;
+    private static final int ASSETS = 10_000;
+
+    @Param({"10000"})
+    private int geofences;
+
+    @Param({"100000"})
+    private int updates;
+
+    /** the raw geofences: vertices of the polygons, or center and radius in meters of the circles. */
+    private double[][] fenceLatitudes;
+    private double[][] fenceLongitudes;
+    private double[] radiuses;
+    /** the bounding boxes for the naive test, four values per geofence. */
+    private double[] bounds;
+
+    private GeofenceEngine engine;
+    private int[] assetIds;
+    private double[] latitudes;
+    private double[] longitudes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final Random random = new Random(4711);
+        fenceLatitudes = new double[geofences][];
+        fenceLongitudes = new double[geofences][];
+        radiuses = new double[geofences];
+        for (int fence = 0; fence < geofences; fence++) {
+            final double latitude = MIN_LATITUDE + random.nextDouble() * (MAX_LATITUDE - MIN_LATITUDE);
+            final double longitude = MIN_LONGITUDE + random.nextDouble() * (MAX_LONGITUDE - MIN_LONGITUDE);
+            if (fence % 5 == 0) {
+                fenceLatitudes[fence] = new double[]{latitude};
+                fenceLongitudes[fence] = new double[]{longitude};
+                radiuses[fence] = 200 + random.nextDouble() * 4_800;
+            } else {
+                // a star shaped polygon with a random radius per vertex
+                final int vertices = 8 + random.nextInt(57);
+                fenceLatitudes[fence] = new double[vertices];
+                fenceLongitudes[fence] = new double[vertices];
+                for (int i = 0; i < vertices; i++) {
+                    final double angle = 2 * Math.PI * i / vertices;
+                    final double radius = 0.005 + random.nextDouble() * 0.045;
+                    fenceLatitudes[fence][i] = latitude + radius * Math.sin(angle);
+                    fenceLongitudes[fence][i] = longitude + radius * Math.cos(angle) * 1.5;
+                }
+            }
+        }
+        bounds = new double[4 * geofences];
+        for (int fence = 0; fence < geofences; fence++) {
+            // for the circles the radius as degrees around the center
+            final double latitudeMargin = Math.toDegrees(radiuses[fence] / EARTH_RADIUS);
+            final double longitudeMargin = latitudeMargin / Math.cos(Math.toRadians(fenceLatitudes[fence][0]));
+            bounds[4 * fence] = Arrays.stream(fenceLatitudes[fence]).min().orElseThrow() - latitudeMargin;
+            bounds[4 * fence + 1] = Arrays.stream(fenceLatitudes[fence]).max().orElseThrow() + latitudeMargin;
+            bounds[4 * fence + 2] = Arrays.stream(fenceLongitudes[fence]).min().orElseThrow() - longitudeMargin;
+            bounds[4 * fence + 3] = Arrays.stream(fenceLongitudes[fence]).max().orElseThrow() + longitudeMargin;
+        }
+        engine = new GeofenceEngine(prepare());
+
+        assetIds = new int[updates];
+        latitudes = new double[updates];
+        longitudes = new double[updates];
+        for (int i = 0; i < updates; i++) {
+            assetIds[i] = i % ASSETS;
+            if (i % 2 == 0) {
+                final int fence = random.nextInt(geofences);
+                latitudes[i] = fenceLatitudes[fence][0] + (random.nextDouble() - 0.5) * 0.05;
+                longitudes[i] = fenceLongitudes[fence][0] + (random.nextDouble() - 0.5) * 0.05;
+            } else {
+                latitudes[i] = MIN_LATITUDE + random.nextDouble() * (MAX_LATITUDE - MIN_LATITUDE);
+                longitudes[i] = MIN_LONGITUDE + random.nextDouble() * (MAX_LONGITUDE - MIN_LONGITUDE);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Geofence> prepare() {
+        final List<Geofence> result = new ArrayList<>(geofences);
+        for (int fence = 0; fence < geofences; fence++) {
+            if (radiuses[fence] > 0) {
+                result.add(Geofence.circle("circle " + fence,
+                    new Coordinate(fenceLatitudes[fence][0], fenceLongitudes[fence][0]), radiuses[fence]));
+            } else {
+                result.add(Geofence.polygon("polygon " + fence, fenceLatitudes[fence], fenceLongitudes[fence],
+                    fenceLatitudes[fence].length));
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public GeofenceEngine prepareEngine() {
+        return new GeofenceEngine(prepare());
+    }
+
+    @Benchmark
+    public List<GeofenceEvent> evaluate() {
+        return engine.evaluate(assetIds, latitudes, longitudes, updates);
+    }
+
+    /**
+     * @return the number of geofences containing the positions
+     */
+    @Benchmark
+    public long naive() {
+        long found = 0;
+        for (int i = 0; i < updates; i++) {
+            for (int fence = 0; fence < geofences; fence++) {
+                if (naiveContains(fence, latitudes[i], longitudes[i])) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    private boolean naiveContains(int fence, double latitude, double longitude) {
+        final double[] fenceLatitude = fenceLatitudes[fence];
+        final double[] fenceLongitude = fenceLongitudes[fence];
+        if (latitude < bounds[4 * fence] || latitude > bounds[4 * fence + 1]
+            || longitude < bounds[4 * fence + 2] || longitude > bounds[4 * fence + 3]) {
+            return false;
+        }
+        if (radiuses[fence] > 0) {
+            final double phi1 = Math.toRadians(fenceLatitude[0]);
+            final double phi2 = Math.toRadians(latitude);
+            final double sinDeltaPhi = Math.sin((phi2 - phi1) / 2);
+            final double sinDeltaLambda = Math.sin(Math.toRadians(longitude - fenceLongitude[0]) / 2);
+            final double a = sinDeltaPhi * sinDeltaPhi
+                + Math.cos(phi1) * Math.cos(phi2) * sinDeltaLambda * sinDeltaLambda;
+            return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(a)) <= radiuses[fence];
+        }
+        boolean inside = false;
+        for (int i = 0, j = fenceLatitude.length - 1; i < fenceLatitude.length; j = i++) {
+            if ((fenceLatitude[i] > latitude) != (fenceLatitude[j] > latitude)
+                && longitude < (fenceLongitude[j] - fenceLongitude[i]) * (latitude - fenceLatitude[i])
+                / (fenceLatitude[j] - fenceLatitude[i]) + fenceLongitude[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.benchmarks;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.Extent;
+import com.sothawo.mapjfxdemo.spatial.PointIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link PointIndex} with a linear scan over a list of Coordinates for nearest neighbour and range
+ * queries, and measures the bulk load.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PointIndexBenchmark {
+
+    /** number of precomputed queries, the benchmarks cycle through them. */
+    private static final int NUM_QUERIES = 1024;
+
+    @Param({"10000", "1000000"})
+    private int size;
+
+    private double[] latitudes;
+    private double[] longitudes;
+    private List<Coordinate> coordinates;
+    private PointIndex index;
+
+    private final Coordinate[] queries = new Coordinate[NUM_QUERIES];
+    private final Extent[] queryExtents = new Extent[NUM_QUERIES];
+    private int queryIndex;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        latitudes = new double[size];
+        longitudes = new double[size];
+        coordinates = new ArrayList<>(size);
+        final Random data = new Random(4711);
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = 47.3 + data.nextDouble() * 7.7;
+            longitudes[i] = 5.9 + data.nextDouble() * 9.1;
+            coordinates.add(new Coordinate(latitudes[i], longitudes[i]));
+        }
+        index = PointIndex.of(latitudes, longitudes, size);
+
+        final Random random = new Random(42);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            final double latitude = 47.3 + random.nextDouble() * 7.7;
+            final double longitude = 5.9 + random.nextDouble() * 9.1;
+            queries[i] = new Coordinate(latitude, longitude);
+            // roughly the extent of a city map
+            queryExtents[i] = Extent.forCoordinates(new Coordinate(latitude - 0.05, longitude - 0.08),
+                new Coordinate(latitude + 0.05, longitude + 0.08));
+        }
+    }
+
+    private int nextQuery() {
+        queryIndex = (queryIndex + 1) & (NUM_QUERIES - 1);
+        return queryIndex;
+    }
+
+    @Benchmark
+    public PointIndex bulkLoad() {
+        return PointIndex.of(latitudes, longitudes, size);
+    }
+
+    @Benchmark
+    public int nearestIndex() {
+        return index.nearest(queries[nextQuery()]);
+    }
+
+    @Benchmark
+    public int nearestLinearScan() {
+        final Coordinate query = queries[nextQuery()];
+        final double latitude = query.getLatitude();
+        final double longitude = query.getLongitude();
+        final double lonScale = Math.cos(Math.toRadians(latitude));
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < coordinates.size(); i++) {
+            final Coordinate coordinate = coordinates.get(i);
+            final double dx = (coordinate.getLongitude() - longitude) * lonScale;
+            final double dy = coordinate.getLatitude() - latitude;
+            final double distance = dx * dx + dy * dy;
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    @Benchmark
+    public int[] rangeIndex() {
+        return index.search(queryExtents[nextQuery()]);
+    }
+
+    @Benchmark
+    public List<Coordinate> rangeLinearScan() {
+        final Extent queryExtent = queryExtents[nextQuery()];
+        final double minLatitude = queryExtent.getMin().getLatitude();
+        final double minLongitude = queryExtent.getMin().getLongitude();
+        final double maxLatitude = queryExtent.getMax().getLatitude();
+        final double maxLongitude = queryExtent.getMax().getLongitude();
+        final List<Coordinate> result = new ArrayList<>();
+        for (Coordinate coordinate : coordinates) {
+            final double latitude = coordinate.getLatitude();
+            final double longitude = coordinate.getLongitude();
+            if (latitude >= minLatitude && latitude <= maxLatitude && longitude >= minLongitude &&
+                longitude <= maxLongitude) {
+                result.add(coordinate);
+            }
+        }
+        return result;
+    }
+}
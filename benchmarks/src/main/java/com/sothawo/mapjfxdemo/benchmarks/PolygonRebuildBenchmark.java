@@ -0,0 +1,99 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.benchmarks;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.CoordinateLine;
+import com.sothawo.mapjfxdemo.polygon.VertexBuffer;
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The rebuild of the polygon line when a vertex is added: copying the coordinates out of the current CoordinateLine
+ * as in the former {@code handlePolygonClick}, against building the line from the {@link VertexBuffer} as the
+ * PolygonEditor does. Both create the new styled CoordinateLine; adding it to the map is not part of the measurement.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PolygonRebuildBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int vertices;
+
+    private CoordinateLine polygonLine;
+    private final VertexBuffer vertexBuffer = new VertexBuffer();
+    private Coordinate click;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final Random random = new Random(4711);
+        final List<Coordinate> coordinates = new ArrayList<>(vertices);
+        for (int i = 0; i < vertices; i++) {
+            final double latitude = 49.0 + random.nextDouble() * 0.05;
+            final double longitude = 8.4 + random.nextDouble() * 0.08;
+            coordinates.add(new Coordinate(latitude, longitude));
+            vertexBuffer.append(latitude, longitude);
+        }
+        polygonLine = createPolygonLine(coordinates);
+        click = new Coordinate(49.01, 8.42);
+    }
+
+    @Benchmark
+    public CoordinateLine copyCoordinateLine() {
+        final List<Coordinate> coordinates = new ArrayList<>();
+        polygonLine.getCoordinateStream().forEach(coordinates::add);
+        coordinates.add(click);
+        return createPolygonLine(coordinates);
+    }
+
+    @Benchmark
+    public CoordinateLine vertexBuffer() {
+        vertexBuffer.append(click.getLatitude(), click.getLongitude());
+        final CoordinateLine line = createPolygonLine(vertexBuffer.toCoordinates());
+        // keep the number of vertices constant over the invocations
+        vertexBuffer.remove(vertexBuffer.size() - 1);
+        return line;
+    }
+
+    private static CoordinateLine createPolygonLine(List<Coordinate> coordinates) {
+        return new CoordinateLine(coordinates)
+            .setColor(Color.DODGERBLUE)
+            .setFillColor(Color.web("lawngreen", 0.4))
+            .setClosed(true);
+    }
+}
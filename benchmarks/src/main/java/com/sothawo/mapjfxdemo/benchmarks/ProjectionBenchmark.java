@@ -0,0 +1,126 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.benchmarks;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfxdemo.projection.BatchProjection;
+import com.sothawo.mapjfxdemo.track.Track;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Projecting a track to Web Mercator meters and to pixels: point by point from {@link Coordinate} objects with the
+ * textbook formulas, against the column transforms of {@link BatchProjection}, with the scalar kernels and, in a fork
+ * with the module jdk.incubator.vector, with the vector kernels. The accuracy of the batch transforms is checked in
+ * BatchProjectionTest of the application.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ProjectionBenchmark {
+
+    private static final double ZOOM = 14;
+
+    @Param({"10000", "1000000", "10000000"})
+    private int points;
+
+    private List<Coordinate> coordinates;
+    private double[] latitudes;
+    private double[] longitudes;
+    private double[] x;
+    private double[] y;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final Track track = TrackGenerator.randomWalk(points, 4711);
+        coordinates = track.toCoordinates();
+        latitudes = track.latitudes();
+        longitudes = track.longitudes();
+        x = new double[points];
+        y = new double[points];
+    }
+
+    @Benchmark
+    public double[] perPointMercator() {
+        for (int i = 0; i < points; i++) {
+            final Coordinate coordinate = coordinates.get(i);
+            x[i] = BatchProjection.EARTH_RADIUS * Math.toRadians(coordinate.getLongitude());
+            y[i] = BatchProjection.EARTH_RADIUS
+                * Math.log(Math.tan(Math.PI / 4 + Math.toRadians(coordinate.getLatitude()) / 2));
+        }
+        return y;
+    }
+
+    @Benchmark
+    public double[] batchMercator() {
+        BatchProjection.toMercator(latitudes, longitudes, x, y, points);
+        return y;
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules=jdk.incubator.vector"})
+    public double[] batchMercatorVector() {
+        return batchMercator();
+    }
+
+    @Benchmark
+    public double[] perPointPixels() {
+        final double worldSize = BatchProjection.worldSize(ZOOM);
+        for (int i = 0; i < points; i++) {
+            final Coordinate coordinate = coordinates.get(i);
+            x[i] = (coordinate.getLongitude() + 180) / 360 * worldSize;
+            final double phi = Math.toRadians(coordinate.getLatitude());
+            y[i] = (1 - Math.log(Math.tan(phi) + 1 / Math.cos(phi)) / Math.PI) / 2 * worldSize;
+        }
+        return y;
+    }
+
+    @Benchmark
+    public double[] batchPixels() {
+        BatchProjection.toPixels(latitudes, longitudes, ZOOM, x, y, points);
+        return y;
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules=jdk.incubator.vector"})
+    public double[] batchPixelsVector() {
+        return batchPixels();
+    }
+
+    @Benchmark
+    public double[] batchMercatorToPixels() {
+        BatchProjection.mercatorToPixels(longitudes, latitudes, ZOOM, x, y, points);
+        return y;
+    }
+}
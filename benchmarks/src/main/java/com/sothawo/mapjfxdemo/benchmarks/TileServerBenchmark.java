@@ -0,0 +1,123 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.benchmarks;
+
+import com.sothawo.mapjfxdemo.offline.TileDirectoryServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Tile throughput of the {@link TileDirectoryServer} with four concurrent clients, with and without the memory cache.
+ * The pyramid has zoom levels 0 to 4 with 341 tiles of 16 KiB. The clients use the keep-alive connections of
+ * HttpURLConnection, like the map's WebView.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class TileServerBenchmark {
+
+    private static final int MAX_ZOOM = 4;
+    private static final int TILE_SIZE = 16 * 1024;
+
+    /** 0 serves every tile from its file. */
+    @Param({"0", "67108864"})
+    private long cacheBytes;
+
+    private Path directory;
+    private TileDirectoryServer server;
+    private String[] urls;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("tile-server-benchmark");
+        final Random random = new Random(4711);
+        final byte[] tile = new byte[TILE_SIZE];
+        int count = 0;
+        for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+            count += 1 << (2 * zoom);
+        }
+        urls = new String[count];
+        int index = 0;
+        for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+            for (int x = 0; x < 1 << zoom; x++) {
+                final Path column = Files.createDirectories(directory.resolve(zoom + "/" + x));
+                for (int y = 0; y < 1 << zoom; y++) {
+                    random.nextBytes(tile);
+                    Files.write(column.resolve(y + ".png"), tile);
+                    urls[index++] = zoom + "/" + x + "/" + y;
+                }
+            }
+        }
+        server = TileDirectoryServer.start(directory, cacheBytes);
+        final String template = server.getUrlTemplate();
+        for (int i = 0; i < urls.length; i++) {
+            final String[] zxy = urls[i].split("/");
+            urls[i] = template.replace("{z}", zxy[0]).replace("{x}", zxy[1]).replace("{y}", zxy[2]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long fetchTile() throws IOException {
+        final String url = urls[ThreadLocalRandom.current().nextInt(urls.length)];
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        if (connection.getResponseCode() != 200) {
+            throw new IOException("status " + connection.getResponseCode() + " for " + url);
+        }
+        try (InputStream inputStream = connection.getInputStream()) {
+            // reading to the end returns the connection to the keep-alive cache
+            return inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.benchmarks;
+
+import com.sothawo.mapjfx.Extent;
+import com.sothawo.mapjfxdemo.track.Track;
+import com.sothawo.mapjfxdemo.track.TrackFile;
+import com.sothawo.mapjfxdemo.track.TrackLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a track from disk: the csv file with the {@link TrackLoader} against the {@link TrackFile}, either only for
+ * its extent or read into a {@link Track}. The files are in the page cache after the warmup.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TrackFileBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    private int points;
+
+    private Path directory;
+    private Path csv;
+    private Path trackFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("track-file-benchmark");
+        csv = Files.write(directory.resolve("track.csv"),
+            TrackGenerator.toCsv(TrackGenerator.randomWalk(points, 4711)));
+        trackFile = directory.resolve("track" + TrackFile.EXTENSION);
+        TrackFile.convert(csv, trackFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(csv);
+        Files.deleteIfExists(trackFile);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Track csvLoad() throws IOException {
+        return TrackLoader.load(csv);
+    }
+
+    @Benchmark
+    public Optional<Extent> trackFileExtent() throws IOException {
+        return TrackFile.open(trackFile).getExtent();
+    }
+
+    @Benchmark
+    public Track trackFileToTrack() throws IOException {
+        return TrackFile.open(trackFile).toTrack();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.benchmarks;
+
+import com.sothawo.mapjfxdemo.track.Track;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Creates synthetic tracks for the benchmarks. A track is a random walk that starts in Karlsruhe and moves about 10 m
+ * per point with a slowly changing heading, like a GPS track of a car sampled once per second. The same size and seed
+ * always give the same track, so the benchmark runs are comparable.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class TrackGenerator {
+
+    /** the largest track the benchmarks use. */
+    public static final int MAX_POINTS = 10_000_000;
+
+    /** distance between two points in degrees latitude, about 10 m. */
+    private static final double STEP_DEGREES = 0.00009;
+    /** max change of the heading between two points in radians. */
+    private static final double MAX_TURN = 0.2;
+    /** latitudes are kept within this limit, the walk turns back at it. */
+    private static final double MAX_LATITUDE = 85;
+    /** number of decimal places written to the csv, as in the track files of the demo. */
+    private static final int CSV_DECIMALS = 6;
+    private static final long CSV_SCALE = 1_000_000;
+    /** max bytes of a csv line: sign, 3 integer digits, point and decimals for both values, separator and newline. */
+    private static final int MAX_CSV_LINE_LENGTH = 2 * (1 + 3 + 1 + CSV_DECIMALS) + 2;
+
+    private TrackGenerator() {
+    }
+
+    /**
+     * @param points
+     *     the number of points, at most {@link #MAX_POINTS}
+     * @param seed
+     *     seed for the random walk
+     * @return the new track
+     */
+    public static Track randomWalk(int points, long seed) {
+        if (points < 0 || points > MAX_POINTS) {
+            throw new IllegalArgumentException("points must be between 0 and " + MAX_POINTS);
+        }
+        final double[] latitudes = new double[points];
+        final double[] longitudes = new double[points];
+        final Random random = new Random(seed);
+        double latitude = 49.0069;
+        double longitude = 8.4037;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < points; i++) {
+            latitudes[i] = latitude;
+            longitudes[i] = longitude;
+            heading += (random.nextDouble() * 2 - 1) * MAX_TURN;
+            latitude += STEP_DEGREES * Math.cos(heading);
+            longitude += STEP_DEGREES * Math.sin(heading) / Math.cos(Math.toRadians(latitude));
+            if (Math.abs(latitude) > MAX_LATITUDE) {
+                latitude = Math.copySign(2 * MAX_LATITUDE, latitude) - latitude;
+                heading = Math.PI - heading;
+            }
+            if (longitude > 180) {
+                longitude -= 360;
+            } else if (longitude < -180) {
+                longitude += 360;
+            }
+        }
+        return Track.of(latitudes, longitudes, points);
+    }
+
+    /**
+     * writes a track in the lat;lon csv format of the track files with 6 decimal places.
+     *
+     * @param track
+     *     the track
+     * @return the csv data
+     */
+    public static byte[] toCsv(Track track) {
+        // formatted by hand, String.format would take longer than the parsing that is to be measured
+        final byte[] csv = new byte[track.size() * MAX_CSV_LINE_LENGTH];
+        int position = 0;
+        for (int i = 0; i < track.size(); i++) {
+            position = appendDecimal(csv, position, track.getLatitude(i));
+            csv[position++] = ';';
+            position = appendDecimal(csv, position, track.getLongitude(i));
+            csv[position++] = '\n';
+        }
+        return Arrays.copyOf(csv, position);
+    }
+
+    private static int appendDecimal(byte[] target, int position, double value) {
+        long scaled = Math.round(value * CSV_SCALE);
+        if (scaled < 0) {
+            target[position++] = '-';
+            scaled = -scaled;
+        }
+        final long integer = scaled / CSV_SCALE;
+        final long fraction = scaled % CSV_SCALE;
+        if (integer >= 100) {
+            target[position++] = (byte) ('0' + integer / 100);
+        }
+        if (integer >= 10) {
+            target[position++] = (byte) ('0' + integer / 10 % 10);
+        }
+        target[position++] = (byte) ('0' + integer % 10);
+        target[position++] = '.';
+        long divisor = CSV_SCALE / 10;
+        for (int digit = 0; digit < CSV_DECIMALS; digit++) {
+            target[position++] = (byte) ('0' + fraction / divisor % 10);
+            divisor /= 10;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.benchmarks;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.CoordinateLine;
+import com.sothawo.mapjfxdemo.track.Track;
+import com.sothawo.mapjfxdemo.track.TrackLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Parsing of tracks in the lat;lon csv format: the {@link TrackLoader} against the line splitting into Coordinates of
+ * the former {@code Controller.loadCoordinateLine}. The data is in memory, so only the parsing is measured.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TrackLoaderBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    private int points;
+
+    private byte[] csv;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        csv = TrackGenerator.toCsv(TrackGenerator.randomWalk(points, 4711));
+    }
+
+    @Benchmark
+    public Track trackLoader() throws IOException {
+        return TrackLoader.load(new ByteArrayInputStream(csv));
+    }
+
+    @Benchmark
+    public CoordinateLine splitLines() {
+        try (
+            Stream<String> lines = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(csv), StandardCharsets.UTF_8)).lines()
+        ) {
+            return new CoordinateLine(
+                lines.map(line -> line.split(";")).filter(array -> array.length == 2)
+                    .map(values -> new Coordinate(Double.valueOf(values[0]), Double.valueOf(values[1])))
+                    .collect(Collectors.toList()));
+        }
+    }
+}
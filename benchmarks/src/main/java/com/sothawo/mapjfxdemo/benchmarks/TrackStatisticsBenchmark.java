@@ -0,0 +1,83 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.benchmarks;
+
+import com.sothawo.mapjfxdemo.statistics.TrackStatistics;
+import com.sothawo.mapjfxdemo.statistics.TrackStatisticsEngine;
+import com.sothawo.mapjfxdemo.track.Track;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The statistics of a track with the scalar and with the vector kernels of {@link TrackStatisticsEngine}: length and
+ * bounding box only, and with timestamps once per second for the speeds and stops. The fork adds the module
+ * jdk.incubator.vector, so both kernels are available.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules=jdk.incubator.vector"})
+public class TrackStatisticsBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    private int points;
+
+    @Param({"scalar", "vector"})
+    private String kernels;
+
+    private TrackStatisticsEngine engine;
+    private double[] latitudes;
+    private double[] longitudes;
+    private long[] timestamps;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = "vector".equals(kernels) ? TrackStatisticsEngine.vectorized() : TrackStatisticsEngine.scalar();
+        final Track track = TrackGenerator.randomWalk(points, 4711);
+        latitudes = track.latitudes();
+        longitudes = track.longitudes();
+        timestamps = new long[points];
+        for (int i = 0; i < points; i++) {
+            timestamps[i] = 1_600_000_000_000L + 1000L * i;
+        }
+    }
+
+    @Benchmark
+    public TrackStatistics lengthAndBounds() {
+        return engine.compute(latitudes, longitudes, null, points);
+    }
+
+    @Benchmark
+    public TrackStatistics withTimestamps() {
+        return engine.compute(latitudes, longitudes, timestamps, points);
+    }
+}
@@ -20,8 +20,39 @@ import com.sothawo.mapjfx.event.MapLabelEvent;
 import com.sothawo.mapjfx.event.MapViewEvent;
 import com.sothawo.mapjfx.event.MarkerEvent;
 import com.sothawo.mapjfx.offline.OfflineCache;
-import javafx.animation.AnimationTimer;
-import javafx.animation.Transition;
+import com.sothawo.mapjfxdemo.animation.FrameScheduler;
+import com.sothawo.mapjfxdemo.animation.MarkerAnimator;
+import com.sothawo.mapjfxdemo.geofence.Geofence;
+import com.sothawo.mapjfxdemo.geofence.GeofenceEngine;
+import com.sothawo.mapjfxdemo.geofence.GeofenceEvent;
+import com.sothawo.mapjfxdemo.geofence.GeofenceMonitor;
+import com.sothawo.mapjfxdemo.heatmap.HeatmapLayer;
+import com.sothawo.mapjfxdemo.heatmap.HeatmapTileServer;
+import com.sothawo.mapjfxdemo.live.LiveAssetLayer;
+import com.sothawo.mapjfxdemo.live.PositionFileTail;
+import com.sothawo.mapjfxdemo.live.PositionRingBuffer;
+import com.sothawo.mapjfxdemo.live.ReplayFeed;
+import com.sothawo.mapjfxdemo.offline.LoopbackHttpServers;
+import com.sothawo.mapjfxdemo.offline.TileCacheManager;
+import com.sothawo.mapjfxdemo.offline.TileCoverage;
+import com.sothawo.mapjfxdemo.offline.TileDirectoryServer;
+import com.sothawo.mapjfxdemo.offline.TilePrefetcher;
+import com.sothawo.mapjfxdemo.offline.TileSource;
+import com.sothawo.mapjfxdemo.pointer.PointerMovePipeline;
+import com.sothawo.mapjfxdemo.polygon.PolygonEditor;
+import com.sothawo.mapjfxdemo.spatial.ClusterIndex;
+import com.sothawo.mapjfxdemo.spatial.ClusterLayer;
+import com.sothawo.mapjfxdemo.spatial.PointIndex;
+import com.sothawo.mapjfxdemo.spatial.ViewportManager;
+import com.sothawo.mapjfxdemo.startup.StartupPhase;
+import com.sothawo.mapjfxdemo.startup.StartupProfiler;
+import com.sothawo.mapjfxdemo.statistics.TrackStatistics;
+import com.sothawo.mapjfxdemo.statistics.TrackStatisticsEngine;
+import com.sothawo.mapjfxdemo.track.LevelOfDetailTrack;
+import com.sothawo.mapjfxdemo.track.Track;
+import com.sothawo.mapjfxdemo.track.TrackImporter;
+import com.sothawo.mapjfxdemo.track.TrackLoader;
+import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.value.ChangeListener;
 import javafx.fxml.FXML;
@@ -29,6 +60,7 @@ import javafx.scene.control.Accordion;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.Slider;
 import javafx.scene.control.TextField;
@@ -38,20 +70,27 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.HBox;
 import javafx.scene.paint.Color;
+import javafx.stage.DirectoryChooser;
 import javafx.util.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Controller for the FXML defined code.
@@ -63,6 +102,22 @@ public class Controller {
     /** logger for the class. */
     private static final Logger logger = LoggerFactory.getLogger(Controller.class);
 
+    /** system property with an XYZ tile url template to use instead of the OpenStreetMap tiles. */
+    public static final String TILES_URL_PROPERTY = "mapjfx.demo.tiles.url";
+
+    /** system property with a local {z}/{x}/{y} tile directory that is served to the map as XYZ source. */
+    public static final String TILES_DIRECTORY_PROPERTY = "mapjfx.demo.tiles.directory";
+
+    /** system property with a file of id;lat;lon lines that is read as live feed instead of the replay. */
+    public static final String LIVE_FILE_PROPERTY = "mapjfx.demo.live.file";
+
+    /** system property with the csv track files for the live feed replay, separated by the path separator. */
+    public static final String LIVE_TRACKS_PROPERTY = "mapjfx.demo.live.tracks";
+
+    /** the resources with the two tracks. */
+    private static final String TRACK_MAGENTA_RESOURCE = "/M1.csv";
+    private static final String TRACK_CYAN_RESOURCE = "/M2.csv";
+
     /** some coordinates from around town. */
     private static final Coordinate coordKarlsruheCastle = new Coordinate(49.013517, 8.404435);
     private static final Coordinate coordKarlsruheHarbour = new Coordinate(49.015511, 8.323497);
@@ -80,6 +135,15 @@ public class Controller {
     /** default zoom value. */
     private static final int ZOOM_DEFAULT = 14;
 
+    /** number of random markers for the clustering demo. */
+    private static final int NUM_CLUSTER_MARKERS = 50_000;
+
+    /** number of vehicles in the live feed replay. */
+    private static final int NUM_LIVE_ASSETS = 2_000;
+
+    /** capacity of the buffer for the live position updates. */
+    private static final int LIVE_BUFFER_CAPACITY = 64 * 1024;
+
     /** the markers. */
     private final Marker markerKaHarbour;
     private final Marker markerKaCastle;
@@ -164,6 +228,10 @@ public class Controller {
     @FXML
     private Label labelEvent;
 
+    /** label to display the pointer position. */
+    @FXML
+    private Label labelPointer;
+
     /** RadioButton for MapStyle OSM */
     @FXML
     private RadioButton radioMsOSM;
@@ -228,28 +296,166 @@ public class Controller {
     @FXML
     private CheckBox checkClickMarker;
 
-    /** the first CoordinateLine */
-    private CoordinateLine trackMagenta;
+    /** Check button for the clustered markers */
+    @FXML
+    private CheckBox checkClusterMarkers;
+
+    /** the layer showing the clustered markers, null when not shown. */
+    private ClusterLayer clusterLayer;
+
+    /** Check button for the live feed replay */
+    @FXML
+    private CheckBox checkLiveFeed;
+
+    /** slider for the speed of the live feed replay. */
+    @FXML
+    private Slider sliderReplaySpeed;
+
+    /** label for the statistics of the live feed. */
+    @FXML
+    private Label labelLiveFeed;
+
+    /** Check button for the geofence events of the live feed. */
+    @FXML
+    private CheckBox checkGeofences;
+
+    /** label for the geofence events. */
+    @FXML
+    private Label labelGeofences;
+
+    /** evaluates the live positions against the castle circle and the drawn polygon. */
+    private GeofenceMonitor geofenceMonitor;
+
+    /** the running live feed replay, null if none. */
+    private ReplayFeed replayFeed;
+
+    /** the file the replay writes to, null if none. */
+    private Path liveFeedFile;
+
+    /** reads the live positions from the feed file, null if not running. */
+    private PositionFileTail positionFileTail;
+
+    /** the layer showing the live positions, null when not shown. */
+    private LiveAssetLayer liveAssetLayer;
+
+    /** drives all animations and per pulse updates. */
+    private final FrameScheduler frameScheduler = new FrameScheduler();
+
+    /** moves the click marker to the clicked positions. */
+    private final MarkerAnimator markerAnimator = new MarkerAnimator(frameScheduler);
+
+    /** the rotation of the soccer marker, null while the marker is hidden. */
+    private FrameScheduler.Registration soccerRotation;
+
+    /** the first track, shown with a zoom dependent level of detail */
+    private LevelOfDetailTrack trackMagenta;
     /** Check button for first track */
     @FXML
     private CheckBox checkTrackMagenta;
+    /** statistics of the first track */
+    @FXML
+    private Label labelTrackMagenta;
 
-    /** the second CoordinateLine */
-    private CoordinateLine trackCyan;
+    /** the second track, shown with a zoom dependent level of detail */
+    private LevelOfDetailTrack trackCyan;
     /** Check button for first track */
     @FXML
     private CheckBox checkTrackCyan;
+    /** statistics of the second track */
+    @FXML
+    private Label labelTrackCyan;
 
-    /** Coordinateline for polygon drawing. */
-    private CoordinateLine polygonLine;
+    /** serves the density of the points of all tracks, created when the heatmap is shown the first time. */
+    private HeatmapTileServer heatmapServer;
+    /** the heatmap over the map, null until it is shown the first time. */
+    private HeatmapLayer heatmapLayer;
+    /** Check button for the heatmap */
+    @FXML
+    private CheckBox checkHeatmap;
+
+    /** the combined extent of the tracks loaded so far, null as long as no track is loaded. */
+    private Extent tracksExtent;
+    /** the tracks loaded so far. */
+    private final List<LoadedTrack> loadedTracks = new ArrayList<>();
+    /** snapshot of the visible tracks, replaced on the FX thread and read by background tasks. */
+    private volatile List<LoadedTrack> visibleTracks = List.of();
+
+    /** executor for loading and preparing data in the background, one thread per task. */
+    private final ExecutorService backgroundExecutor = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "background-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** coalesces the pointer move events and looks up the nearest track point in the background. */
+    private final PointerMovePipeline<Optional<Coordinate>> pointerMovePipeline =
+        new PointerMovePipeline<>(frameScheduler, backgroundExecutor, this::nearestTrackPoint,
+            this::showPointerPosition);
+
+    /** keeps only the elements near the visible extent in the map. */
+    private ViewportManager viewportManager;
+    /** the last bounding extent reported by the map, null if not yet known. */
+    private Extent boundingExtent;
+
+    /** editor for polygon drawing. */
+    private PolygonEditor polygonEditor;
     /** Check Button for polygon drawing mode. */
     @FXML
     private CheckBox checkDrawPolygon;
+    /** Button to undo the last polygon edit. */
+    @FXML
+    private Button buttonUndoPolygon;
 
     /** Check Button for constraining th extent. */
     @FXML
     private CheckBox checkConstrainGermany;
 
+    /** the directory of the offline cache, null if the cache could not be activated. */
+    private Path offlineCacheDirectory;
+    /** keeps the offline cache within its budget, null if the cache could not be activated. */
+    private TileCacheManager tileCacheManager;
+    /** label for the statistics of the offline cache. */
+    @FXML
+    private Label labelCacheStatistics;
+    /** serves the tiles of a local directory, null if none is configured. */
+    private TileDirectoryServer tileDirectoryServer;
+    /** the running tile prefetch, null if none. */
+    private TilePrefetcher.Prefetch tilePrefetch;
+    /** Button to prefetch the tiles for Germany. */
+    @FXML
+    private Button buttonPrefetchGermany;
+    /** Button to prefetch the tiles along the visible tracks. */
+    @FXML
+    private Button buttonPrefetchTracks;
+    /** Button to cancel a running prefetch. */
+    @FXML
+    private Button buttonCancelPrefetch;
+    /** shows the progress of the tile prefetch. */
+    @FXML
+    private ProgressBar progressPrefetch;
+    /** label for the state of the tile prefetch. */
+    @FXML
+    private Label labelPrefetch;
+
+    /** the running track import, null if none. */
+    private TrackImporter.Import trackImport;
+    /** the tracks of the last directory import. */
+    private final List<LevelOfDetailTrack> importedTracks = new ArrayList<>();
+    /** Button to import the tracks of a directory. */
+    @FXML
+    private Button buttonImportTracks;
+    /** Button to cancel a running track import. */
+    @FXML
+    private Button buttonCancelImport;
+    /** shows the progress of the track import. */
+    @FXML
+    private ProgressBar progressImport;
+    /** label for the state of the track import. */
+    @FXML
+    private Label labelImport;
+    /** computes the statistics of the imported tracks. */
+    private final TrackStatisticsEngine trackStatisticsEngine = TrackStatisticsEngine.create();
+
     /** params for the WMS server. */
     private WMSParam wmsParam = new WMSParam()
         .setUrl("http://ows.terrestris.de/osm/service?")
@@ -298,18 +504,38 @@ public class Controller {
      */
     public void initMapAndControls(Projection projection) {
         logger.trace("begin initialize");
+        final long initStart = System.nanoTime();
+        final StartupProfiler startupProfiler = StartupProfiler.get();
+        startupProfiler.begin(StartupPhase.CONTROLLER_WIRING);
+
+        // start loading the tracks, they are added to the map as soon as they are available
+        startupProfiler.begin(StartupPhase.TRACK_LOADING);
+        final CompletableFuture<Void> tracksLoaded = loadTracks();
+        tracksLoaded.whenComplete((result, throwable) -> startupProfiler.end(StartupPhase.TRACK_LOADING));
+        tracksLoaded.whenCompleteAsync((result, throwable) -> {
+            logger.debug("all tracks processed after {} ms", (System.nanoTime() - initStart) / 1_000_000);
+            // the live feed replays the tracks
+            checkLiveFeed.setDisable(false);
+        }, Platform::runLater);
 
         // init MapView-Cache
         final OfflineCache offlineCache = mapView.getOfflineCache();
         final String cacheDir = System.getProperty("java.io.tmpdir") + "/mapjfx-cache";
-//        logger.info("using dir for cache: " + cacheDir);
-//        try {
-//            Files.createDirectories(Paths.get(cacheDir));
-//            offlineCache.setCacheDirectory(cacheDir);
-//            offlineCache.setActive(true);
-//        } catch (IOException e) {
-//            logger.warn("could not activate offline cache", e);
-//        }
+        logger.info("using dir for cache: {}", cacheDir);
+        try {
+            Files.createDirectories(Paths.get(cacheDir));
+            offlineCache.setCacheDirectory(cacheDir);
+            offlineCache.setActive(true);
+            offlineCacheDirectory = offlineCache.getCacheDirectory();
+            startTileCacheManager();
+        } catch (IOException e) {
+            logger.warn("could not activate offline cache", e);
+        }
+        setupPrefetchControls();
+
+        viewportManager = new ViewportManager(mapView);
+        setupImportControls();
+        setupHeatmap();
 
         // set the custom css file for the MapView
         mapView.setCustomMapviewCssURL(getClass().getResource("/custom_mapview.css"));
@@ -354,6 +580,9 @@ public class Controller {
         // watch the MapView's initialized property to finish initialization
         mapView.initializedProperty().addListener((observable, oldValue, newValue) -> {
             if (newValue) {
+                logger.debug("map initialized after {} ms", (System.nanoTime() - initStart) / 1_000_000);
+                startupProfiler.end(StartupPhase.MAP_INITIALIZED);
+                startupProfiler.begin(StartupPhase.FIRST_EXTENT);
                 afterMapIsInitialized();
             }
         });
@@ -386,11 +615,32 @@ public class Controller {
             mapView.setBingMapsApiKey(bingMapsApiKey.getText());
             mapView.setMapType(mapType);
         });
-        mapTypeGroup.selectToggle(radioMsOSM);
+        // with a tile url, e.g. of a local tile server, the map starts with that as XYZ source for reproducible runs
+        String tilesUrl = System.getProperty(TILES_URL_PROPERTY);
+        final String tilesDirectory = System.getProperty(TILES_DIRECTORY_PROPERTY);
+        if (tilesUrl == null && tilesDirectory != null) {
+            try {
+                tileDirectoryServer = TileDirectoryServer.start(Paths.get(tilesDirectory),
+                    TileDirectoryServer.DEFAULT_CACHE_BYTES);
+                tilesUrl = tileDirectoryServer.getUrlTemplate();
+                // the tiles are on disk already, no need for a second copy in the offline cache
+                LoopbackHttpServers.excludeFromOfflineCache(tilesUrl);
+            } catch (IOException e) {
+                logger.warn("could not serve the tiles in {}", tilesDirectory, e);
+            }
+        }
+        if (tilesUrl != null) {
+            logger.info("using tiles from {}", tilesUrl);
+            xyzParams = new XYZParam().withUrl(tilesUrl);
+            mapTypeGroup.selectToggle(radioMsXYZ);
+        } else {
+            mapTypeGroup.selectToggle(radioMsOSM);
+        }
 
         setupEventHandlers();
 
         // add the graphics to the checkboxes
+        startupProfiler.begin(StartupPhase.MARKER_ICONS);
         checkKaHarbourMarker.setGraphic(
             new ImageView(new Image(markerKaHarbour.getImageURL().toExternalForm(), 16.0, 16.0, true, true)));
         checkKaCastleMarker.setGraphic(
@@ -401,6 +651,7 @@ public class Controller {
             new ImageView(new Image(markerKaSoccer.getImageURL().toExternalForm(), 16.0, 16.0, true, true)));
         checkClickMarker.setGraphic(
             new ImageView(new Image(markerClick.getImageURL().toExternalForm(), 16.0, 16.0, true, true)));
+        startupProfiler.end(StartupPhase.MARKER_ICONS);
 
         // bind the checkboxes to the markers visibility
         checkKaHarbourMarker.selectedProperty().bindBidirectional(markerKaHarbour.visibleProperty());
@@ -408,35 +659,45 @@ public class Controller {
         checkKaStationMarker.selectedProperty().bindBidirectional(markerKaStation.visibleProperty());
         checkKaSoccerMarker.selectedProperty().bindBidirectional(markerKaSoccer.visibleProperty());
         checkClickMarker.selectedProperty().bindBidirectional(markerClick.visibleProperty());
+        checkClusterMarkers.selectedProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue) {
+                showClusterMarkers();
+            } else if (clusterLayer != null) {
+                clusterLayer.clear();
+                clusterLayer = null;
+            }
+        });
+        checkLiveFeed.setDisable(true);
+        checkLiveFeed.selectedProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue) {
+                startLiveFeed();
+            } else {
+                stopLiveFeed();
+            }
+        });
+        sliderReplaySpeed.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if (replayFeed != null) {
+                replayFeed.setSpeed(newValue.doubleValue());
+            }
+        });
         logger.trace("marker checks done");
 
-        // load two coordinate lines
-        trackMagenta = loadCoordinateLine(getClass().getResource("/M1.csv")).orElse(new CoordinateLine
-            ()).setColor(Color.MAGENTA);
-        trackCyan = loadCoordinateLine(getClass().getResource("/M2.csv")).orElse(new CoordinateLine
-            ()).setColor(Color.CYAN).setWidth(7);
-        logger.trace("tracks loaded");
-        checkTrackMagenta.selectedProperty().bindBidirectional(trackMagenta.visibleProperty());
-        checkTrackCyan.selectedProperty().bindBidirectional(trackCyan.visibleProperty());
-        logger.trace("tracks checks done");
-        // get the extent of both tracks
-        Extent tracksExtent = Extent.forCoordinates(
-            Stream.concat(trackMagenta.getCoordinateStream(), trackCyan.getCoordinateStream())
-                .collect(Collectors.toList()));
-        ChangeListener<Boolean> trackVisibleListener =
-            (observable, oldValue, newValue) -> mapView.setExtent(tracksExtent);
-        trackMagenta.visibleProperty().addListener(trackVisibleListener);
-        trackCyan.visibleProperty().addListener(trackVisibleListener);
+        // the track checkboxes are enabled when the tracks are loaded
+        checkTrackMagenta.setDisable(true);
+        checkTrackCyan.setDisable(true);
 
         // add the polygon check handler
+        polygonEditor = new PolygonEditor(mapView, frameScheduler);
         ChangeListener<Boolean> polygonListener =
             (observable, oldValue, newValue) -> {
-                if (!newValue && polygonLine != null) {
-                    mapView.removeCoordinateLine(polygonLine);
-                    polygonLine = null;
+                if (!newValue) {
+                    polygonEditor.clear();
                 }
             };
         checkDrawPolygon.selectedProperty().addListener(polygonListener);
+        buttonUndoPolygon.disableProperty().bind(polygonEditor.undoAvailableProperty().not());
+        buttonUndoPolygon.setOnAction(event -> polygonEditor.undo());
+        setupGeofences();
 
         // add the constrain listener
         checkConstrainGermany.selectedProperty().addListener(((observable, oldValue, newValue) -> {
@@ -449,27 +710,47 @@ public class Controller {
 
         // finally initialize the map view
         logger.trace("start map initialization");
+        startupProfiler.end(StartupPhase.CONTROLLER_WIRING);
+        startupProfiler.begin(StartupPhase.WEBVIEW_INIT);
         mapView.initialize(Configuration.builder()
             .projection(projection)
             .showZoomControls(false)
             .build());
+        startupProfiler.end(StartupPhase.WEBVIEW_INIT);
+        startupProfiler.begin(StartupPhase.MAP_INITIALIZED);
         logger.debug("initialization finished");
 
-        long animationStart = System.nanoTime();
-        new AnimationTimer() {
-            @Override
-            public void handle(long nanoSecondsNow) {
-                if (markerKaSoccer.getVisible()) {
-                    // every 100ms, increase the rotation of the markerKaSoccer by 9 degrees, make a turn in 4 seconds
-                    long milliSecondsDelta = (nanoSecondsNow - animationStart) / 1_000_000;
-                    long numSteps = milliSecondsDelta / 100;
-                    int angle = (int) ((numSteps * 9) % 360);
-                    if (markerKaSoccer.getRotation() != angle) {
-                        markerKaSoccer.setRotation(angle);
-                    }
+        // the soccer marker only rotates while it is visible
+        final long animationStart = System.nanoTime();
+        markerKaSoccer.visibleProperty().addListener((observable, oldValue, newValue) ->
+            updateSoccerRotation(newValue, animationStart));
+        updateSoccerRotation(markerKaSoccer.getVisible(), animationStart);
+    }
+
+    /**
+     * starts or stops the rotation of the soccer marker. Every 100ms its rotation is increased by 9 degrees, making a
+     * turn in 4 seconds.
+     *
+     * @param visible
+     *     the visibility of the marker
+     * @param animationStart
+     *     time where the rotation was 0
+     */
+    private void updateSoccerRotation(boolean visible, long animationStart) {
+        if (visible && soccerRotation == null) {
+            soccerRotation = frameScheduler.schedule(100, TimeUnit.MILLISECONDS, nanoSecondsNow -> {
+                long milliSecondsDelta = (nanoSecondsNow - animationStart) / 1_000_000;
+                long numSteps = milliSecondsDelta / 100;
+                int angle = (int) ((numSteps * 9) % 360);
+                if (markerKaSoccer.getRotation() != angle) {
+                    markerKaSoccer.setRotation(angle);
                 }
-            }
-        }.start();
+                return true;
+            });
+        } else if (!visible && soccerRotation != null) {
+            soccerRotation.cancel();
+            soccerRotation = null;
+        }
     }
 
     /**
@@ -480,14 +761,16 @@ public class Controller {
         mapView.addEventHandler(MapViewEvent.MAP_CLICKED, event -> {
             event.consume();
             final Coordinate newPosition = event.getCoordinate().normalize();
-            labelEvent.setText("Event: map clicked at: " + newPosition);
+            labelEvent.setText("Event: map clicked at: " + newPosition +
+                nearestTrackPointText(nearestTrackPoint(newPosition)));
             if (checkDrawPolygon.isSelected()) {
-                handlePolygonClick(event);
+                polygonEditor.mapClicked(event.getCoordinate());
             }
             if (markerClick.getVisible()) {
                 final Coordinate oldPosition = markerClick.getPosition();
                 if (oldPosition != null) {
-                    animateClickMarker(oldPosition, newPosition);
+                    markerAnimator.animate(markerClick, newPosition, Duration.seconds(1.0),
+                        MarkerAnimator.Interpolation.GREAT_CIRCLE);
                 } else {
                     markerClick.setPosition(newPosition);
                     // adding can only be done after coordinate is set
@@ -506,15 +789,32 @@ public class Controller {
         mapView.addEventHandler(MapViewEvent.MAP_BOUNDING_EXTENT, event -> {
             event.consume();
             labelExtent.setText(event.getExtent().toString());
+            // only the first call counts
+            StartupProfiler.get().end(StartupPhase.FIRST_EXTENT);
+            boundingExtent = event.getExtent();
+            viewportManager.setExtent(boundingExtent);
+            if (clusterLayer != null) {
+                clusterLayer.setExtent(boundingExtent);
+            }
+            if (liveAssetLayer != null) {
+                liveAssetLayer.setExtent(boundingExtent);
+            }
         });
 
         mapView.addEventHandler(MapViewEvent.MAP_RIGHTCLICKED, event -> {
             event.consume();
             labelEvent.setText("Event: map right clicked at: " + event.getCoordinate());
+            if (checkDrawPolygon.isSelected()) {
+                polygonEditor.insert(event.getCoordinate());
+            }
         });
         mapView.addEventHandler(MarkerEvent.MARKER_CLICKED, event -> {
             event.consume();
-            labelEvent.setText("Event: marker clicked: " + event.getMarker().getId());
+            if (clusterLayer != null && clusterLayer.handleMarkerClick(event.getMarker())) {
+                labelEvent.setText("Event: cluster expanded: " + event.getMarker().getId());
+            } else {
+                labelEvent.setText("Event: marker clicked: " + event.getMarker().getId());
+            }
         });
         mapView.addEventHandler(MarkerEvent.MARKER_RIGHTCLICKED, event -> {
             event.consume();
@@ -522,63 +822,481 @@ public class Controller {
         });
         mapView.addEventHandler(MapLabelEvent.MAPLABEL_CLICKED, event -> {
             event.consume();
-            labelEvent.setText("Event: label clicked: " + event.getMapLabel().getText());
+            if (polygonEditor.labelClicked(event.getMapLabel())) {
+                labelEvent.setText("Event: polygon vertex clicked");
+            } else {
+                labelEvent.setText("Event: label clicked: " + event.getMapLabel().getText());
+            }
         });
         mapView.addEventHandler(MapLabelEvent.MAPLABEL_RIGHTCLICKED, event -> {
             event.consume();
-            labelEvent.setText("Event: label right clicked: " + event.getMapLabel().getText());
+            if (polygonEditor.labelRightClicked(event.getMapLabel())) {
+                labelEvent.setText("Event: polygon vertex deleted");
+            } else {
+                labelEvent.setText("Event: label right clicked: " + event.getMapLabel().getText());
+            }
         });
 
         mapView.addEventHandler(MapViewEvent.MAP_POINTER_MOVED, event -> {
-            logger.debug("pointer moved to " + event.getCoordinate());
+            polygonEditor.pointerMoved(event.getCoordinate());
+            pointerMovePipeline.pointerMoved(event.getCoordinate());
         });
 
         logger.trace("map handlers initialized");
     }
 
-    private void animateClickMarker(Coordinate oldPosition, Coordinate newPosition) {
-        // animate the marker to the new position
-        final Transition transition = new Transition() {
-            private final Double oldPositionLongitude = oldPosition.getLongitude();
-            private final Double oldPositionLatitude = oldPosition.getLatitude();
-            private final double deltaLatitude = newPosition.getLatitude() - oldPositionLatitude;
-            private final double deltaLongitude = newPosition.getLongitude() - oldPositionLongitude;
+    /**
+     * creates random points spread over Germany, clusters them in the background and shows the clusters in the map.
+     */
+    private void showClusterMarkers() {
+        checkClusterMarkers.setDisable(true);
+        CompletableFuture.supplyAsync(() -> {
+            final Random random = new Random(42);
+            final double minLatitude = extentGermany.getMin().getLatitude();
+            final double minLongitude = extentGermany.getMin().getLongitude();
+            final double deltaLatitude = extentGermany.getMax().getLatitude() - minLatitude;
+            final double deltaLongitude = extentGermany.getMax().getLongitude() - minLongitude;
+            final double[] latitudes = new double[NUM_CLUSTER_MARKERS];
+            final double[] longitudes = new double[NUM_CLUSTER_MARKERS];
+            for (int i = 0; i < NUM_CLUSTER_MARKERS; i++) {
+                latitudes[i] = minLatitude + random.nextDouble() * deltaLatitude;
+                longitudes[i] = minLongitude + random.nextDouble() * deltaLongitude;
+            }
+            final long start = System.nanoTime();
+            final ClusterIndex clusterIndex = ClusterIndex.of(latitudes, longitudes, NUM_CLUSTER_MARKERS);
+            logger.debug("clustered {} markers in {} ms", NUM_CLUSTER_MARKERS, (System.nanoTime() - start) / 1_000_000);
+            final Marker[] markers = new Marker[NUM_CLUSTER_MARKERS];
+            return new ClusterLayer(mapView, clusterIndex, index -> {
+                if (markers[index] == null) {
+                    markers[index] = Marker.createProvided(Marker.Provided.GREEN)
+                        .setPosition(new Coordinate(latitudes[index], longitudes[index]));
+                }
+                return markers[index];
+            });
+        }, backgroundExecutor).thenAcceptAsync(layer -> {
+            checkClusterMarkers.setDisable(false);
+            if (checkClusterMarkers.isSelected()) {
+                clusterLayer = layer;
+                if (boundingExtent != null) {
+                    clusterLayer.setExtent(boundingExtent);
+                }
+            }
+        }, Platform::runLater);
+    }
 
-            {
-                setCycleDuration(Duration.seconds(1.0));
-                setOnFinished(evt -> markerClick.setPosition(newPosition));
+    /**
+     * sets up the geofence events of the live feed. The geofences are the castle circle and the drawn polygon, they
+     * are replaced whenever the polygon changes; the vehicles keep their state, so only actual changes are reported.
+     */
+    private void setupGeofences() {
+        geofenceMonitor = new GeofenceMonitor(new GeofenceEngine(createGeofences()), frameScheduler,
+            backgroundExecutor, this::showGeofenceEvents);
+        polygonEditor.polygonProperty().addListener(observable -> geofenceMonitor.setGeofences(createGeofences()));
+        checkGeofences.selectedProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue) {
+                geofenceMonitor.setEngine(new GeofenceEngine(createGeofences()));
+                geofenceMonitor.start();
+            } else {
+                geofenceMonitor.stop();
+                labelGeofences.setText("");
             }
+        });
+    }
 
-            @Override
-            protected void interpolate(double v) {
-                final double latitude = oldPosition.getLatitude() + v * deltaLatitude;
-                final double longitude = oldPosition.getLongitude() + v * deltaLongitude;
-                markerClick.setPosition(new Coordinate(latitude, longitude));
+    private List<Geofence> createGeofences() {
+        final List<Geofence> geofences = new ArrayList<>();
+        geofences.add(Geofence.of("castle", circleCastle));
+        final CoordinateLine polygon = polygonEditor.polygonProperty().get();
+        if (polygon != null && polygonEditor.size() >= 3) {
+            geofences.add(Geofence.of("polygon", polygon));
+        }
+        return geofences;
+    }
+
+    private void showGeofenceEvents(List<GeofenceEvent> events) {
+        if (logger.isDebugEnabled()) {
+            events.forEach(event -> logger.debug("{}", event));
+        }
+        final GeofenceEvent last = events.get(events.size() - 1);
+        labelGeofences.setText(String.format("%d vehicles in %d geofences, %d events, last: vehicle %d %s %s",
+            geofenceMonitor.getEngine().getAssetsInside(), geofenceMonitor.getEngine().getGeofenceCount(),
+            geofenceMonitor.getEvents(), last.getAssetId(),
+            last.getType() == GeofenceEvent.Type.ENTER ? "entered" : "left", last.getGeofence().getName()));
+    }
+
+    /**
+     * starts the live feed of vehicle positions. The positions are read from a file: either the one given with {@link
+     * #LIVE_FILE_PROPERTY} or a temporary file the replay of the tracks writes to.
+     */
+    private void startLiveFeed() {
+        final PositionRingBuffer buffer = new PositionRingBuffer(LIVE_BUFFER_CAPACITY);
+        final String liveFile = System.getProperty(LIVE_FILE_PROPERTY);
+        try {
+            if (liveFile != null) {
+                positionFileTail = new PositionFileTail(Paths.get(liveFile), buffer, true);
+            } else {
+                replayFeed = createReplayFeed();
+                liveFeedFile = Files.createTempFile("mapjfx-live-feed", ".csv");
+                replayFeed.start(liveFeedFile);
+                positionFileTail = new PositionFileTail(liveFeedFile, buffer, false);
+            }
+        } catch (IOException e) {
+            logger.warn("could not start the live feed", e);
+            stopLiveFeed();
+            labelLiveFeed.setText("could not start: " + e.getMessage());
+            return;
+        }
+        liveAssetLayer = new LiveAssetLayer(mapView, frameScheduler, buffer,
+            assetId -> Marker.createProvided(Marker.Provided.BLUE))
+            .setStatisticsListener(statistics -> labelLiveFeed.setText(statistics.toString()))
+            .setPositionListener(geofenceMonitor::offer);
+        if (boundingExtent != null) {
+            liveAssetLayer.setExtent(boundingExtent);
+        }
+        liveAssetLayer.start();
+        positionFileTail.start();
+    }
+
+    /**
+     * @return a replay of the track files given with {@link #LIVE_TRACKS_PROPERTY} or of the loaded tracks
+     */
+    private ReplayFeed createReplayFeed() throws IOException {
+        final String trackFiles = System.getProperty(LIVE_TRACKS_PROPERTY);
+        if (trackFiles != null) {
+            final List<Path> paths = new ArrayList<>();
+            for (String trackFile : trackFiles.split(File.pathSeparator)) {
+                paths.add(Paths.get(trackFile));
             }
-        };
-        transition.play();
+            return ReplayFeed.fromFiles(paths, NUM_LIVE_ASSETS / paths.size(), sliderReplaySpeed.getValue());
+        }
+        final List<Track> tracks = new ArrayList<>();
+        for (LoadedTrack loadedTrack : loadedTracks) {
+            tracks.add(loadedTrack.track.getTrack());
+        }
+        return new ReplayFeed(tracks, NUM_LIVE_ASSETS / Math.max(1, tracks.size()), sliderReplaySpeed.getValue());
     }
 
     /**
-     * shows a new polygon with the coordinate from the added.
+     * stops the live feed and removes the vehicles from the map.
+     */
+    private void stopLiveFeed() {
+        if (positionFileTail != null) {
+            positionFileTail.close();
+            positionFileTail = null;
+        }
+        if (replayFeed != null) {
+            replayFeed.close();
+            replayFeed = null;
+        }
+        if (liveFeedFile != null) {
+            try {
+                Files.deleteIfExists(liveFeedFile);
+            } catch (IOException e) {
+                logger.debug("could not delete {}", liveFeedFile, e);
+            }
+            liveFeedFile = null;
+        }
+        if (liveAssetLayer != null) {
+            liveAssetLayer.stop();
+            liveAssetLayer = null;
+        }
+        labelLiveFeed.setText("");
+    }
+
+    /**
+     * finds the track point nearest to a coordinate in the visible tracks. As this is called from background threads
+     * as well, it only uses the snapshot of the visible tracks.
      *
-     * @param event
-     *     event with coordinates
+     * @param coordinate
+     *     the coordinate
+     * @return the nearest track point, empty if no track is visible
      */
-    private void handlePolygonClick(MapViewEvent event) {
-        final List<Coordinate> coordinates = new ArrayList<>();
-        if (polygonLine != null) {
-            polygonLine.getCoordinateStream().forEach(coordinates::add);
-            mapView.removeCoordinateLine(polygonLine);
-            polygonLine = null;
-        }
-        coordinates.add(event.getCoordinate());
-        polygonLine = new CoordinateLine(coordinates)
-            .setColor(Color.DODGERBLUE)
-            .setFillColor(Color.web("lawngreen", 0.4))
-            .setClosed(true);
-        mapView.addCoordinateLine(polygonLine);
-        polygonLine.setVisible(true);
+    private Optional<Coordinate> nearestTrackPoint(Coordinate coordinate) {
+        final double lonScale = Math.cos(Math.toRadians(coordinate.getLatitude()));
+        Coordinate nearest = null;
+        double nearestDistance = Double.MAX_VALUE;
+        for (LoadedTrack loadedTrack : visibleTracks) {
+            final int index = loadedTrack.pointIndex.nearest(coordinate);
+            if (index >= 0) {
+                final Track track = loadedTrack.track.getTrack();
+                final double dx = (track.getLongitude(index) - coordinate.getLongitude()) * lonScale;
+                final double dy = track.getLatitude(index) - coordinate.getLatitude();
+                final double distance = dx * dx + dy * dy;
+                if (distance < nearestDistance) {
+                    nearestDistance = distance;
+                    nearest = new Coordinate(track.getLatitude(index), track.getLongitude(index));
+                }
+            }
+        }
+        return Optional.ofNullable(nearest);
+    }
+
+    private static String nearestTrackPointText(Optional<Coordinate> nearest) {
+        return nearest.map(coordinate -> ", nearest track point: " + coordinate).orElse("");
+    }
+
+    /**
+     * shows the coalesced pointer position, called on the FX thread by the pointer move pipeline.
+     *
+     * @param coordinate
+     *     the pointer position
+     * @param nearest
+     *     the nearest track point
+     */
+    private void showPointerPosition(Coordinate coordinate, Optional<Coordinate> nearest) {
+        if (logger.isTraceEnabled()) {
+            logger.trace("pointer moved to {}", coordinate);
+        }
+        labelPointer.setText("Pointer: " + coordinate.normalize() + nearestTrackPointText(nearest));
+    }
+
+    /**
+     * starts the management of the offline cache. The budget in MiB and the eviction policy can be set with the
+     * system properties mapjfx.demo.cache.megabytes and mapjfx.demo.cache.policy (OLDEST, LRU or LFU).
+     */
+    private void startTileCacheManager() {
+        final long megabytes = Long.getLong("mapjfx.demo.cache.megabytes", 256);
+        final TileCacheManager.EvictionPolicy policy =
+            TileCacheManager.EvictionPolicy.valueOf(System.getProperty("mapjfx.demo.cache.policy", "OLDEST"));
+        logger.info("offline cache budget {} MiB, eviction policy {}", megabytes, policy);
+        tileCacheManager = new TileCacheManager(offlineCacheDirectory, megabytes << 20, policy)
+            .setCompactionListener(statistics ->
+                Platform.runLater(() -> labelCacheStatistics.setText(statistics.toString())));
+        tileCacheManager.start(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * sets up the buttons to prefetch tiles into the offline cache.
+     */
+    private void setupPrefetchControls() {
+        buttonCancelPrefetch.setDisable(true);
+        if (offlineCacheDirectory == null) {
+            buttonPrefetchGermany.setDisable(true);
+            buttonPrefetchTracks.setDisable(true);
+            labelPrefetch.setText("offline cache not active");
+            return;
+        }
+        buttonPrefetchGermany.setOnAction(event ->
+            startPrefetch(() -> TileCoverage.forExtent(extentGermany, 0, 5, 9)));
+        buttonPrefetchTracks.setOnAction(event -> {
+            final List<List<Coordinate>> lines = new ArrayList<>();
+            for (LoadedTrack loadedTrack : visibleTracks) {
+                lines.add(loadedTrack.track.getTrack().toCoordinates());
+            }
+            if (lines.isEmpty()) {
+                labelPrefetch.setText("no track visible");
+                return;
+            }
+            startPrefetch(() -> TileCoverage.forLines(lines, 250, 12, 16));
+        });
+        buttonCancelPrefetch.setOnAction(event -> {
+            if (tilePrefetch != null) {
+                tilePrefetch.cancel();
+            }
+        });
+    }
+
+    /**
+     * prefetches the tiles for the current map type into the offline cache.
+     *
+     * @param coverage
+     *     supplies the tiles to load, called on a background thread
+     */
+    private void startPrefetch(Supplier<TileCoverage> coverage) {
+        final TileSource tileSource;
+        try {
+            tileSource = TileSource.forMapType(mapView.getMapType(), xyzParams, wmsParam);
+        } catch (IllegalArgumentException e) {
+            labelPrefetch.setText(e.getMessage());
+            return;
+        }
+        final TilePrefetcher prefetcher = new TilePrefetcher(tileSource, offlineCacheDirectory,
+            TilePrefetcher.DEFAULT_PARALLELISM);
+        setPrefetchRunning(true);
+        labelPrefetch.setText("computing tiles...");
+        CompletableFuture.supplyAsync(coverage, backgroundExecutor)
+            .thenAcceptAsync(tileCoverage -> {
+                tilePrefetch = prefetcher.start(tileCoverage,
+                    progress -> Platform.runLater(() -> showPrefetchProgress(progress)));
+                tilePrefetch.getResult().thenRunAsync(() -> {
+                    tilePrefetch = null;
+                    setPrefetchRunning(false);
+                    // the prefetched tiles count against the budget right away
+                    backgroundExecutor.execute(tileCacheManager::compact);
+                }, Platform::runLater);
+            }, Platform::runLater)
+            .exceptionally(throwable -> {
+                logger.warn("could not start the prefetch", throwable);
+                Platform.runLater(() -> setPrefetchRunning(false));
+                return null;
+            });
+    }
+
+    /**
+     * sets up the buttons to import the tracks of a directory.
+     */
+    private void setupImportControls() {
+        buttonCancelImport.setDisable(true);
+        buttonImportTracks.setOnAction(event -> {
+            final DirectoryChooser directoryChooser = new DirectoryChooser();
+            directoryChooser.setTitle("directory with csv or track files");
+            final File directory = directoryChooser.showDialog(buttonImportTracks.getScene().getWindow());
+            if (directory != null) {
+                startImport(directory.toPath());
+            }
+        });
+        buttonCancelImport.setOnAction(event -> {
+            if (trackImport != null) {
+                trackImport.cancel();
+            }
+        });
+    }
+
+    /**
+     * imports the tracks of a directory and replaces the tracks of the last import. The tracks are added to the map
+     * batch by batch as they are loaded, at the end the map is zoomed to the extent of all imported tracks.
+     *
+     * @param directory
+     *     the directory to import
+     */
+    private void startImport(Path directory) {
+        importedTracks.forEach(viewportManager::unregister);
+        importedTracks.clear();
+        rebuildHeatmap();
+        buttonImportTracks.setDisable(true);
+        buttonCancelImport.setDisable(false);
+        progressImport.setProgress(ProgressBar.INDETERMINATE_PROGRESS);
+        labelImport.setText("scanning " + directory + "...");
+
+        trackImport = TrackImporter.withDefaults().start(directory, Platform::runLater,
+            batch -> {
+                final List<Track> tracks = new ArrayList<>();
+                for (TrackImporter.ImportedTrack importedTrack : batch) {
+                    final LevelOfDetailTrack track = importedTrack.getTrack().setColor(Color.ORANGE).setWidth(3)
+                        .setVisible(true);
+                    importedTracks.add(track);
+                    viewportManager.register(track);
+                    tracks.add(track.getTrack());
+                }
+                addToHeatmap(tracks);
+            },
+            progress -> Platform.runLater(() -> showImportProgress(progress)));
+        trackImport.getResult().thenAcceptAsync(progress -> {
+            trackImport = null;
+            buttonImportTracks.setDisable(false);
+            buttonCancelImport.setDisable(true);
+            if (!progress.isCancelled()) {
+                progress.getExtent().ifPresent(mapView::setExtent);
+                showImportStatistics(progress);
+            }
+        }, Platform::runLater);
+    }
+
+    /**
+     * computes the statistics of the imported tracks in the background and adds them to the import label.
+     *
+     * @param progress
+     *     the final progress of the import
+     */
+    private void showImportStatistics(TrackImporter.Progress progress) {
+        final List<Track> tracks = new ArrayList<>();
+        for (LevelOfDetailTrack importedTrack : importedTracks) {
+            tracks.add(importedTrack.getTrack());
+        }
+        CompletableFuture.supplyAsync(() -> trackStatisticsEngine.computeFleet(tracks), backgroundExecutor)
+            .whenCompleteAsync((statistics, throwable) -> {
+                if (throwable != null) {
+                    logger.warn("could not compute the track statistics", throwable);
+                } else {
+                    labelImport.setText(String.format("%s, %.1f km", progress, statistics.getLengthMeters() / 1000));
+                }
+            }, Platform::runLater);
+    }
+
+    /**
+     * sets up the checkbox for the density heatmap of the tracks. The heatmap server and layer are created when the
+     * heatmap is shown the first time.
+     */
+    private void setupHeatmap() {
+        checkHeatmap.selectedProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue && heatmapLayer == null) {
+                try {
+                    heatmapServer = HeatmapTileServer.start();
+                } catch (IOException e) {
+                    logger.warn("could not start the heatmap server", e);
+                    checkHeatmap.setDisable(true);
+                    return;
+                }
+                try {
+                    heatmapLayer = HeatmapLayer.install(mapView, heatmapServer);
+                } catch (IllegalStateException e) {
+                    logger.warn("could not show the heatmap", e);
+                    heatmapServer.close();
+                    heatmapServer = null;
+                    checkHeatmap.setDisable(true);
+                    return;
+                }
+                rebuildHeatmap();
+            }
+            if (heatmapLayer != null) {
+                heatmapLayer.setVisible(newValue);
+            }
+        });
+    }
+
+    /**
+     * fills the heatmap with the points of the loaded and the imported tracks.
+     */
+    private void rebuildHeatmap() {
+        if (heatmapServer == null) {
+            return;
+        }
+        heatmapServer.clear();
+        final List<Track> tracks = new ArrayList<>();
+        for (LoadedTrack loadedTrack : loadedTracks) {
+            tracks.add(loadedTrack.track.getTrack());
+        }
+        for (LevelOfDetailTrack importedTrack : importedTracks) {
+            tracks.add(importedTrack.getTrack());
+        }
+        addToHeatmap(tracks);
+    }
+
+    /**
+     * adds tracks to the heatmap if it is shown; the changed tiles are rendered in the background and then reloaded.
+     *
+     * @param tracks
+     *     the tracks to add
+     */
+    private void addToHeatmap(List<Track> tracks) {
+        if (heatmapServer == null || tracks.isEmpty()) {
+            return;
+        }
+        heatmapServer.add(tracks).whenCompleteAsync((ignored, throwable) -> {
+            if (throwable != null) {
+                logger.warn("could not add tracks to the heatmap", throwable);
+            } else {
+                heatmapLayer.refresh();
+            }
+        }, Platform::runLater);
+    }
+
+    private void showImportProgress(TrackImporter.Progress progress) {
+        if (progress.getTotal() >= 0) {
+            progressImport.setProgress(progress.getFraction());
+        }
+        labelImport.setText(progress.toString());
+    }
+
+    private void setPrefetchRunning(boolean running) {
+        buttonPrefetchGermany.setDisable(running);
+        buttonPrefetchTracks.setDisable(running);
+        buttonCancelPrefetch.setDisable(!running);
+    }
+
+    private void showPrefetchProgress(TilePrefetcher.Progress progress) {
+        progressPrefetch.setProgress(progress.getFraction());
+        labelPrefetch.setText(progress.toString());
     }
 
     /**
@@ -601,48 +1319,209 @@ public class Controller {
         // start at the harbour with default zoom
         mapView.setZoom(ZOOM_DEFAULT);
         mapView.setCenter(coordKarlsruheHarbour);
-        // add the markers to the map - they are still invisible
-        mapView.addMarker(markerKaHarbour);
-        mapView.addMarker(markerKaCastle);
-        mapView.addMarker(markerKaStation);
-        mapView.addMarker(markerKaSoccer);
+        // register the markers with the viewport manager, they are added to the map when they are in the visible
+        // extent - they are still invisible
+        viewportManager.register(markerKaHarbour);
+        viewportManager.register(markerKaCastle);
+        viewportManager.register(markerKaStation);
+        viewportManager.register(markerKaSoccer);
         // can't add the markerClick at this moment, it has no position, so it would not be added to the map
 
-        // add the fix label, the other's are attached to markers.
-        mapView.addLabel(labelKaUniversity);
+        // register the fix label, the other's are attached to markers.
+        viewportManager.register(labelKaUniversity);
 
-        // add the tracks
-        mapView.addCoordinateLine(trackMagenta);
-        mapView.addCoordinateLine(trackCyan);
+        // register the tracks that are already loaded, the others are registered when loading is finished
+        if (trackMagenta != null) {
+            viewportManager.register(trackMagenta);
+        }
+        if (trackCyan != null) {
+            viewportManager.register(trackCyan);
+        }
 
-        // add the circle
-        mapView.addMapCircle(circleCastle);
+        // register the circle
+        viewportManager.register(circleCastle);
 
         // now enable the controls
         setControlsDisable(false);
     }
 
     /**
-     * load a coordinateLine from the given uri in lat;lon csv format
+     * starts loading the tracks in the background. Each track is added to the map on the JavaFX Application Thread as
+     * soon as it is loaded.
+     *
+     * @return a future that completes when all tracks are processed
+     */
+    private CompletableFuture<Void> loadTracks() {
+        final URL urlMagenta = getClass().getResource(TRACK_MAGENTA_RESOURCE);
+        final URL urlCyan = getClass().getResource(TRACK_CYAN_RESOURCE);
+
+        final CompletableFuture<Void> magenta =
+            CompletableFuture.supplyAsync(() -> loadTrack(urlMagenta), backgroundExecutor)
+                .thenAcceptAsync(loadedTrack -> {
+                    trackMagenta = loadedTrack.track.setColor(Color.MAGENTA);
+                    trackLoaded(loadedTrack, checkTrackMagenta, labelTrackMagenta);
+                }, Platform::runLater)
+                .exceptionally(throwable ->
+                    trackFailed(TRACK_MAGENTA_RESOURCE, throwable, checkTrackMagenta, labelTrackMagenta));
+        final CompletableFuture<Void> cyan =
+            CompletableFuture.supplyAsync(() -> loadTrack(urlCyan), backgroundExecutor)
+                .thenAcceptAsync(loadedTrack -> {
+                    trackCyan = loadedTrack.track.setColor(Color.CYAN).setWidth(7);
+                    trackLoaded(loadedTrack, checkTrackCyan, labelTrackCyan);
+                }, Platform::runLater)
+                .exceptionally(throwable ->
+                    trackFailed(TRACK_CYAN_RESOURCE, throwable, checkTrackCyan, labelTrackCyan));
+        return CompletableFuture.allOf(magenta, cyan);
+    }
+
+    /**
+     * called when a track could not be loaded or added to the map. The error is logged, the checkbox of the track stays
+     * disabled and its label shows the error.
+     *
+     * @param resource
+     *     the resource of the track
+     * @param throwable
+     *     the error
+     * @param checkBox
+     *     the checkbox controlling the track's visibility
+     * @param statisticsLabel
+     *     the label for the statistics of the track
+     * @return null, for use in {@link CompletableFuture#exceptionally(java.util.function.Function)}
+     */
+    private Void trackFailed(String resource, Throwable throwable, CheckBox checkBox, Label statisticsLabel) {
+        logger.error("could not load track {}", resource, throwable);
+        Platform.runLater(() -> {
+            checkBox.setDisable(true);
+            statisticsLabel.setText("could not load " + resource);
+        });
+        return null;
+    }
+
+    /**
+     * called on the JavaFX Application Thread when a track is loaded. Wires up the checkbox, shows the statistics,
+     * registers the track with the viewport manager if the map is already initialized and updates the combined extent
+     * of the tracks.
+     *
+     * @param loadedTrack
+     *     the loaded track
+     * @param checkBox
+     *     the checkbox controlling the track's visibility
+     * @param statisticsLabel
+     *     the label for the statistics of the track
+     */
+    private void trackLoaded(LoadedTrack loadedTrack, CheckBox checkBox, Label statisticsLabel) {
+        loadedTracks.add(loadedTrack);
+        final LevelOfDetailTrack track = loadedTrack.track;
+        checkBox.selectedProperty().bindBidirectional(track.visibleProperty());
+        checkBox.setDisable(false);
+        statisticsLabel.setText(formatStatistics(loadedTrack.statistics));
+        updateVisibleTracks();
+        track.visibleProperty().addListener((observable, oldValue, newValue) -> {
+            updateVisibleTracks();
+            if (tracksExtent != null) {
+                mapView.setExtent(tracksExtent);
+            }
+        });
+
+        loadedTrack.extent.ifPresent(extent -> tracksExtent = tracksExtent == null
+            ? extent
+            : Extent.forCoordinates(tracksExtent.getMin(), tracksExtent.getMax(), extent.getMin(), extent.getMax()));
+
+        if (mapView.getInitialized()) {
+            viewportManager.register(track);
+        }
+        addToHeatmap(List.of(track.getTrack()));
+    }
+
+    /**
+     * @return the length and bounds of a track, with speeds and stops if it has timestamps
+     */
+    private static String formatStatistics(TrackStatistics statistics) {
+        final StringBuilder text = new StringBuilder(String.format("%,d points, %.1f km", statistics.getPoints(),
+            statistics.getLengthMeters() / 1000));
+        if (statistics.getPoints() > 0) {
+            text.append(String.format("%nlat %.4f to %.4f, lon %.4f to %.4f", statistics.getMinLatitude(),
+                statistics.getMaxLatitude(), statistics.getMinLongitude(), statistics.getMaxLongitude()));
+        }
+        if (statistics.isTimed()) {
+            text.append(String.format("%n%.1f km/h average, %.1f km/h moving, %.1f km/h max, %d stops",
+                statistics.getAverageSpeed() * 3.6, statistics.getMovingSpeed() * 3.6, statistics.getMaxSpeed() * 3.6,
+                statistics.getStops().size()));
+        }
+        return text.toString();
+    }
+
+    private void updateVisibleTracks() {
+        final List<LoadedTrack> visible = new ArrayList<>();
+        for (LoadedTrack loadedTrack : loadedTracks) {
+            if (loadedTrack.track.getVisible()) {
+                visible.add(loadedTrack);
+            }
+        }
+        visibleTracks = List.copyOf(visible);
+    }
+
+    /**
+     * loads a track and creates the level of detail pyramid for it. This is called on a background thread.
      *
      * @param url
      *     url where to load from
-     * @return optional CoordinateLine object
+     * @return the loaded track, an empty one if the data could not be loaded
+     */
+    private LoadedTrack loadTrack(URL url) {
+        final long start = System.nanoTime();
+        final LoadedTrack loadedTrack = loadCoordinateTrack(url)
+            .map(track -> new LoadedTrack(LevelOfDetailTrack.of(track), track.getExtent(),
+                PointIndex.of(track.latitudes(), track.longitudes(), track.size()),
+                trackStatisticsEngine.compute(track)))
+            .orElseGet(() -> {
+                final Track emptyTrack = Track.of(new double[0], new double[0], 0);
+                return new LoadedTrack(LevelOfDetailTrack.of(emptyTrack), Optional.empty(),
+                    PointIndex.of(new double[0], new double[0], 0), trackStatisticsEngine.compute(emptyTrack));
+            });
+        logger.trace("loaded {} in {} ms", url, (System.nanoTime() - start) / 1_000_000);
+        return loadedTrack;
+    }
+
+    /**
+     * load a track from the given uri in lat;lon csv format. Lines that cannot be parsed are skipped and
+     * reported.
+     *
+     * @param url
+     *     url where to load from
+     * @return optional Track object
      * @throws java.lang.NullPointerException
      *     if uri is null
      */
-    private Optional<CoordinateLine> loadCoordinateLine(URL url) {
-        try (
-            Stream<String> lines = new BufferedReader(
-                new InputStreamReader(url.openStream(), StandardCharsets.UTF_8)).lines()
-        ) {
-            return Optional.of(new CoordinateLine(
-                lines.map(line -> line.split(";")).filter(array -> array.length == 2)
-                    .map(values -> new Coordinate(Double.valueOf(values[0]), Double.valueOf(values[1])))
-                    .collect(Collectors.toList())));
-        } catch (IOException | NumberFormatException e) {
+    private Optional<Track> loadCoordinateTrack(URL url) {
+        try {
+            final Track track = TrackLoader.load(url);
+            if (track.getBadLineCount() > 0) {
+                logger.warn("load {}: skipped {} bad lines, first ones: {}", url, track.getBadLineCount(),
+                    Arrays.toString(track.getBadLines()));
+            }
+            return Optional.of(track);
+        } catch (IOException e) {
             logger.error("load {}", url, e);
         }
         return Optional.empty();
     }
+
+    /**
+     * a track loaded in the background together with its extent and an index over its points.
+     */
+    private static final class LoadedTrack {
+        private final LevelOfDetailTrack track;
+        private final Optional<Extent> extent;
+        private final PointIndex pointIndex;
+        private final TrackStatistics statistics;
+
+        private LoadedTrack(LevelOfDetailTrack track, Optional<Extent> extent, PointIndex pointIndex,
+                            TrackStatistics statistics) {
+            this.track = track;
+            this.extent = extent;
+            this.pointIndex = pointIndex;
+            this.statistics = statistics;
+        }
+    }
 }
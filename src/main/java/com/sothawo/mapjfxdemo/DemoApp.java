@@ -16,7 +16,10 @@
 package com.sothawo.mapjfxdemo;
 
 import com.sothawo.mapjfx.Projection;
+import com.sothawo.mapjfxdemo.startup.StartupPhase;
+import com.sothawo.mapjfxdemo.startup.StartupProfiler;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
@@ -24,6 +27,9 @@ import javafx.stage.Stage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.Map;
+
 /**
  * Demo application for the mapjfx component.
  *
@@ -34,10 +40,25 @@ public class DemoApp extends Application {
     /** Logger for the class */
     private static final Logger logger = LoggerFactory.getLogger(DemoApp.class);
 
+    /**
+     * program argument to exit as soon as the map shows its first extent; used to measure the startup and for the
+     * training run of the class data sharing archive.
+     */
+    public static final String ARG_EXIT_AFTER_STARTUP = "exit-after-startup";
+
+    /** the objects of the fxml file by their fx:id. */
+    private Map<String, Object> fxmlNamespace = Map.of();
+
     public static void main(String[] args) {
+        // sets the reference time for the startup phases
+        StartupProfiler.get();
         logger.trace("begin main");
         launch(args);
         logger.trace("end main");
+        if (Arrays.asList(args).contains(ARG_EXIT_AFTER_STARTUP)) {
+            // don't wait for non-daemon threads of the toolkit, the JVM exit writes a class data sharing archive
+            System.exit(0);
+        }
     }
 
     @Override
@@ -45,14 +66,20 @@ public class DemoApp extends Application {
         logger.info("starting DemoApp");
         String fxmlFile = "/fxml/DemoApp.fxml";
         logger.debug("loading fxml file {}", fxmlFile);
+        StartupProfiler.get().begin(StartupPhase.FXML_PARSE);
         FXMLLoader fxmlLoader = new FXMLLoader();
         Parent rootNode = fxmlLoader.load(getClass().getResourceAsStream(fxmlFile));
+        StartupProfiler.get().end(StartupPhase.FXML_PARSE);
+        fxmlNamespace = fxmlLoader.getNamespace();
         logger.trace("stage loaded");
 
         final Controller controller = fxmlLoader.getController();
         final Projection projection = getParameters().getUnnamed().contains("wgs84")
                 ? Projection.WGS_84 : Projection.WEB_MERCATOR;
         controller.initMapAndControls(projection);
+        if (getParameters().getUnnamed().contains(ARG_EXIT_AFTER_STARTUP)) {
+            StartupProfiler.get().onReport(report -> Platform.runLater(Platform::exit));
+        }
 
         Scene scene = new Scene(rootNode);
         logger.trace("scene created");
@@ -64,4 +91,13 @@ public class DemoApp extends Application {
 
         logger.debug("application start method finished.");
     }
+
+    /**
+     * @param fxId
+     *     the fx:id of an object in the fxml file
+     * @return the object, null if there is none or the application is not yet started
+     */
+    protected Object getFxmlObject(String fxId) {
+        return fxmlNamespace.get(fxId);
+    }
 }
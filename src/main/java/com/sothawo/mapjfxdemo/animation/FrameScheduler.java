@@ -0,0 +1,250 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.animation;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one {@link AnimationTimer} of the application. Features register tasks that are called on JavaFX pulses, either
+ * on every pulse or at a fixed period; a task stays registered until it returns false or its registration is
+ * cancelled.
+ * <p>
+ * The timer only runs while there are tasks. When all tasks are periodic and the next one is not due for a few
+ * frames, the timer is stopped as well and restarted shortly before the due time, so a task that fires every 100 ms
+ * causes 10 pulses per second and not 60. Without tasks no pulses are requested at all.
+ * <p>
+ * All methods must be called on the JavaFX Application Thread.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class FrameScheduler {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(FrameScheduler.class);
+
+    /** the duration of a frame at 60 fps. */
+    private static final long FRAME_NANOS = 16_666_667L;
+
+    private final List<Task> tasks = new ArrayList<>();
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            tick(now);
+        }
+    };
+    private boolean timerRunning;
+    /** restarts the timer for periodic tasks, created when first needed. */
+    private ScheduledExecutorService wakeupExecutor;
+    private ScheduledFuture<?> wakeup;
+    /** incremented for each wakeup, so that a wakeup that was replaced or cancelled does nothing. */
+    private long wakeupGeneration;
+    private long pulses;
+
+    /**
+     * registers a task that is called on every pulse.
+     *
+     * @param task
+     *     the task
+     * @return the registration
+     */
+    public Registration everyFrame(FrameTask task) {
+        return schedule(0, TimeUnit.NANOSECONDS, task);
+    }
+
+    /**
+     * registers a task that is called on the first pulse and then on the first pulse after each period.
+     *
+     * @param period
+     *     the period, 0 to run on every pulse
+     * @param unit
+     *     unit of the period
+     * @param task
+     *     the task
+     * @return the registration
+     */
+    public Registration schedule(long period, TimeUnit unit, FrameTask task) {
+        if (period < 0) {
+            throw new IllegalArgumentException("period must not be negative");
+        }
+        final Task registration = new Task(task, unit.toNanos(period));
+        tasks.add(registration);
+        startTimer();
+        return registration;
+    }
+
+    /**
+     * @return the number of registered tasks
+     */
+    public int getActiveCount() {
+        int count = 0;
+        for (Task task : tasks) {
+            if (task.active) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of pulses the timer has handled
+     */
+    public long getPulseCount() {
+        return pulses;
+    }
+
+    private void startTimer() {
+        if (wakeup != null) {
+            wakeup.cancel(false);
+            wakeup = null;
+            wakeupGeneration++;
+        }
+        if (!timerRunning) {
+            timerRunning = true;
+            timer.start();
+            logger.trace("frame timer started");
+        }
+    }
+
+    private void stopTimer() {
+        if (timerRunning) {
+            timerRunning = false;
+            timer.stop();
+            logger.trace("frame timer stopped");
+        }
+    }
+
+    private void tick(long now) {
+        pulses++;
+        // tasks registered by a running task are called on the next pulse
+        final int size = tasks.size();
+        for (int i = 0; i < size; i++) {
+            final Task task = tasks.get(i);
+            if (!task.active) {
+                continue;
+            }
+            if (task.due <= now) {
+                boolean keep;
+                try {
+                    keep = task.task.run(now);
+                } catch (RuntimeException e) {
+                    logger.warn("frame task failed and is removed", e);
+                    keep = false;
+                }
+                if (!keep) {
+                    task.active = false;
+                    continue;
+                }
+                // skip missed periods instead of firing them in a burst
+                task.due = task.due == Long.MIN_VALUE || task.due + task.period <= now ? now + task.period
+                    : task.due + task.period;
+            }
+        }
+        tasks.removeIf(task -> !task.active);
+
+        long nextDue = Long.MAX_VALUE;
+        for (Task task : tasks) {
+            nextDue = Math.min(nextDue, task.due);
+        }
+        if (tasks.isEmpty()) {
+            stopTimer();
+        } else if (nextDue != Long.MIN_VALUE && nextDue - now > 2 * FRAME_NANOS) {
+            // only periodic tasks that are not due soon; sleep until a frame before the next one is due
+            stopTimer();
+            final long generation = ++wakeupGeneration;
+            final Runnable restart = () -> Platform.runLater(() -> {
+                if (generation == wakeupGeneration) {
+                    wakeup = null;
+                    startTimer();
+                }
+            });
+            wakeup = getWakeupExecutor().schedule(restart, nextDue - now - FRAME_NANOS, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private ScheduledExecutorService getWakeupExecutor() {
+        if (wakeupExecutor == null) {
+            final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                final Thread thread = new Thread(runnable, "frame-scheduler-wakeup");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            wakeupExecutor = executor;
+        }
+        return wakeupExecutor;
+    }
+
+    /**
+     * the work done on a pulse.
+     */
+    @FunctionalInterface
+    public interface FrameTask {
+        /**
+         * @param now
+         *     the timestamp of the pulse in nanoseconds, as passed to {@link AnimationTimer#handle(long)}
+         * @return true to stay registered, false to be removed
+         */
+        boolean run(long now);
+    }
+
+    /**
+     * handle for a registered task.
+     */
+    public interface Registration {
+        /**
+         * removes the task; it is not called again, even when it is already due on the current pulse.
+         */
+        void cancel();
+
+        /**
+         * @return true if the task is still registered
+         */
+        boolean isActive();
+    }
+
+    private static final class Task implements Registration {
+        private final FrameTask task;
+        private final long period;
+        /** pulse time when the task is due next, MIN_VALUE before the first call. */
+        private long due = Long.MIN_VALUE;
+        private boolean active = true;
+
+        private Task(FrameTask task, long period) {
+            this.task = task;
+            this.period = period;
+        }
+
+        @Override
+        public void cancel() {
+            active = false;
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.animation;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.Marker;
+import javafx.animation.Interpolator;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves markers to new positions. All running animations share one {@link FrameScheduler} task which is only
+ * registered while there is something to animate. Animating a marker that is already moving retargets the running
+ * animation: the new move starts at the marker's current position, so there are no competing animations and no
+ * jumps. The animation state is kept in primitive fields that are reused for the marker, and a position is only pushed
+ * to the marker when it changed.
+ * <p>
+ * With {@link Interpolation#GREAT_CIRCLE} the marker follows the shortest path on the earth's surface. As the positions
+ * are geographic coordinates, the path is right in every projection of the map; it shows as a curve in Web Mercator
+ * and as a different curve in WGS84.
+ * <p>
+ * All methods must be called on the JavaFX Application Thread.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class MarkerAnimator {
+
+    /** positions that differ by less than this, in degrees, are not pushed to the marker (about 1 cm). */
+    private static final double MIN_POSITION_CHANGE = 1e-7;
+
+    /** angles below this, in radians, are treated as no movement for the great circle interpolation. */
+    private static final double MIN_ANGLE = 1e-12;
+
+    /**
+     * the way between two positions.
+     */
+    public enum Interpolation {
+        /** straight interpolation of latitude and longitude, taking the shorter way around the antimeridian. */
+        LINEAR,
+        /** along the great circle through both positions. */
+        GREAT_CIRCLE
+    }
+
+    /** the animation state per marker, kept after the animation ends so that it can be reused. */
+    private final Map<Marker, MarkerAnimation> animations = new IdentityHashMap<>();
+    /** the running animations. */
+    private final List<MarkerAnimation> running = new ArrayList<>();
+
+    private final FrameScheduler frameScheduler;
+    /** the registration of the step task, null when no animation is running. */
+    private FrameScheduler.Registration registration;
+
+    /**
+     * @param frameScheduler
+     *     the scheduler that drives the animations
+     */
+    public MarkerAnimator(FrameScheduler frameScheduler) {
+        this.frameScheduler = frameScheduler;
+    }
+
+    /**
+     * moves a marker to a new position. If the marker is being animated, the running animation is retargeted to the
+     * new position and restarted with the given duration. A marker without a position is set to the target at once.
+     *
+     * @param marker
+     *     the marker
+     * @param target
+     *     the new position
+     * @param duration
+     *     duration of the move
+     * @param interpolation
+     *     the way between the current and the new position
+     */
+    public void animate(Marker marker, Coordinate target, Duration duration, Interpolation interpolation) {
+        MarkerAnimation animation = animations.get(marker);
+        if (animation == null) {
+            animation = new MarkerAnimation(marker);
+            animations.put(marker, animation);
+        }
+
+        final double startLatitude;
+        final double startLongitude;
+        if (animation.running) {
+            // continue from where the marker is now
+            startLatitude = animation.currentLatitude;
+            startLongitude = animation.currentLongitude;
+        } else if (marker.getPosition() != null) {
+            startLatitude = marker.getPosition().getLatitude();
+            startLongitude = marker.getPosition().getLongitude();
+        } else {
+            marker.setPosition(target);
+            return;
+        }
+        animation.start(startLatitude, startLongitude, target, (long) (duration.toMillis() * 1_000_000),
+            interpolation);
+        if (!animation.running) {
+            animation.running = true;
+            running.add(animation);
+        }
+        if (registration == null) {
+            registration = frameScheduler.everyFrame(this::step);
+        }
+    }
+
+    /**
+     * stops the animation of a marker, the marker stays at its current position.
+     *
+     * @param marker
+     *     the marker
+     */
+    public void cancel(Marker marker) {
+        final MarkerAnimation animation = animations.get(marker);
+        if (animation != null && animation.running) {
+            animation.running = false;
+            running.remove(animation);
+        }
+    }
+
+    /**
+     * stops the animation of a marker and forgets its state; to be called when the marker is not used any longer.
+     *
+     * @param marker
+     *     the marker
+     */
+    public void forget(Marker marker) {
+        cancel(marker);
+        animations.remove(marker);
+    }
+
+    /**
+     * @param marker
+     *     the marker
+     * @return true if the marker is being animated
+     */
+    public boolean isAnimating(Marker marker) {
+        final MarkerAnimation animation = animations.get(marker);
+        return animation != null && animation.running;
+    }
+
+    /**
+     * @return false when no animation is left, which removes the task from the scheduler
+     */
+    private boolean step(long now) {
+        for (int i = running.size() - 1; i >= 0; i--) {
+            final MarkerAnimation animation = running.get(i);
+            if (animation.step(now)) {
+                animation.running = false;
+                // order does not matter, so avoid shifting the list
+                final MarkerAnimation last = running.remove(running.size() - 1);
+                if (i < running.size()) {
+                    running.set(i, last);
+                }
+            }
+        }
+        if (running.isEmpty()) {
+            registration = null;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * the state of the animation of one marker.
+     */
+    private static final class MarkerAnimation {
+        private final Marker marker;
+        private boolean running;
+        private Interpolation interpolation;
+        /** start time in nanoseconds, set on the first pulse after the start. */
+        private long startNanos;
+        private long durationNanos;
+        private Coordinate target;
+
+        /** linear: start and delta in degrees. */
+        private double startLatitude;
+        private double startLongitude;
+        private double deltaLatitude;
+        private double deltaLongitude;
+
+        /** great circle: start and end as unit vectors and the angle between them. */
+        private double startX;
+        private double startY;
+        private double startZ;
+        private double endX;
+        private double endY;
+        private double endZ;
+        private double angle;
+        private double sinAngle;
+
+        /** the last position pushed to the marker. */
+        private double currentLatitude;
+        private double currentLongitude;
+
+        private MarkerAnimation(Marker marker) {
+            this.marker = marker;
+        }
+
+        private void start(double latitude, double longitude, Coordinate target, long durationNanos,
+                           Interpolation interpolation) {
+            this.target = target;
+            this.durationNanos = Math.max(0, durationNanos);
+            this.interpolation = interpolation;
+            this.startNanos = -1;
+            currentLatitude = latitude;
+            currentLongitude = longitude;
+
+            startLatitude = latitude;
+            startLongitude = longitude;
+            deltaLatitude = target.getLatitude() - latitude;
+            deltaLongitude = normalizeLongitude(target.getLongitude() - longitude);
+
+            final double phi1 = Math.toRadians(latitude);
+            final double lambda1 = Math.toRadians(longitude);
+            final double phi2 = Math.toRadians(target.getLatitude());
+            final double lambda2 = Math.toRadians(target.getLongitude());
+            startX = Math.cos(phi1) * Math.cos(lambda1);
+            startY = Math.cos(phi1) * Math.sin(lambda1);
+            startZ = Math.sin(phi1);
+            endX = Math.cos(phi2) * Math.cos(lambda2);
+            endY = Math.cos(phi2) * Math.sin(lambda2);
+            endZ = Math.sin(phi2);
+            final double dot = Math.max(-1, Math.min(1, startX * endX + startY * endY + startZ * endZ));
+            angle = Math.acos(dot);
+            sinAngle = Math.sin(angle);
+        }
+
+        /**
+         * moves the marker to the position for the given time.
+         *
+         * @return true if the animation has finished
+         */
+        private boolean step(long now) {
+            if (startNanos < 0) {
+                startNanos = now;
+            }
+            final double elapsed = durationNanos == 0 ? 1 : (double) (now - startNanos) / durationNanos;
+            if (elapsed >= 1) {
+                marker.setPosition(target);
+                currentLatitude = target.getLatitude();
+                currentLongitude = target.getLongitude();
+                return true;
+            }
+            final double t = Interpolator.EASE_BOTH.interpolate(0.0, 1.0, elapsed);
+
+            final double latitude;
+            final double longitude;
+            // a great circle is not defined for identical or antipodal points, fall back to linear then
+            if (interpolation == Interpolation.GREAT_CIRCLE && sinAngle > MIN_ANGLE) {
+                final double a = Math.sin((1 - t) * angle) / sinAngle;
+                final double b = Math.sin(t * angle) / sinAngle;
+                final double x = a * startX + b * endX;
+                final double y = a * startY + b * endY;
+                final double z = a * startZ + b * endZ;
+                latitude = Math.toDegrees(Math.atan2(z, Math.sqrt(x * x + y * y)));
+                longitude = Math.toDegrees(Math.atan2(y, x));
+            } else {
+                latitude = startLatitude + t * deltaLatitude;
+                longitude = normalizeLongitude(startLongitude + t * deltaLongitude);
+            }
+
+            if (Math.abs(latitude - currentLatitude) >= MIN_POSITION_CHANGE
+                || Math.abs(longitude - currentLongitude) >= MIN_POSITION_CHANGE) {
+                currentLatitude = latitude;
+                currentLongitude = longitude;
+                // Coordinate is immutable, this is the one allocation per pushed frame
+                marker.setPosition(new Coordinate(latitude, longitude));
+            }
+            return false;
+        }
+
+        private static double normalizeLongitude(double longitude) {
+            double normalized = longitude % 360;
+            if (normalized > 180) {
+                normalized -= 360;
+            } else if (normalized < -180) {
+                normalized += 360;
+            }
+            return normalized;
+        }
+    }
+}
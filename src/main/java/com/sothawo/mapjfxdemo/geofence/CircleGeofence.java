@@ -0,0 +1,78 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.geofence;
+
+/**
+ * A circle on the earth's surface; a position is inside when its great circle distance to the center is at most the
+ * radius. The haversine term of the radius is computed once, so a test needs no square root or arc sine. The bounding
+ * box is cut at the antimeridian, so circles crossing it are not supported.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+final class CircleGeofence extends Geofence {
+
+    /** mean earth radius in meters. */
+    private static final double EARTH_RADIUS = 6_371_008.8;
+
+    private final double centerPhi;
+    private final double centerLambda;
+    private final double cosCenterPhi;
+    /** the haversine of the central angle of the radius. */
+    private final double maxHaversine;
+
+    CircleGeofence(String name, double latitude, double longitude, double radius) {
+        super(name, Math.max(-90, latitude - Math.toDegrees(radius / EARTH_RADIUS)),
+            Math.min(90, latitude + Math.toDegrees(radius / EARTH_RADIUS)),
+            minLongitude(latitude, longitude, radius), maxLongitude(latitude, longitude, radius));
+        centerPhi = Math.toRadians(latitude);
+        centerLambda = Math.toRadians(longitude);
+        cosCenterPhi = Math.cos(centerPhi);
+        final double sinHalfAngle = Math.sin(Math.min(Math.PI, radius / EARTH_RADIUS) / 2);
+        maxHaversine = sinHalfAngle * sinHalfAngle;
+    }
+
+    /**
+     * the longitude span of the bounding box; near the poles and across the antimeridian it is the whole range.
+     */
+    private static double longitudeSpan(double latitude, double radius) {
+        final double angle = radius / EARTH_RADIUS;
+        final double phi = Math.toRadians(Math.abs(latitude));
+        if (phi + angle >= Math.PI / 2) {
+            return 360;
+        }
+        return Math.toDegrees(Math.asin(Math.min(1, Math.sin(angle) / Math.cos(phi))));
+    }
+
+    private static double minLongitude(double latitude, double longitude, double radius) {
+        final double min = longitude - longitudeSpan(latitude, radius);
+        return min < -180 ? -180 : min;
+    }
+
+    private static double maxLongitude(double latitude, double longitude, double radius) {
+        final double max = longitude + longitudeSpan(latitude, radius);
+        return max > 180 ? 180 : max;
+    }
+
+    @Override
+    boolean containsInBounds(double latitude, double longitude) {
+        final double phi = Math.toRadians(latitude);
+        final double sinDeltaPhi = Math.sin((phi - centerPhi) / 2);
+        final double sinDeltaLambda = Math.sin((Math.toRadians(longitude) - centerLambda) / 2);
+        final double haversine =
+            sinDeltaPhi * sinDeltaPhi + cosCenterPhi * Math.cos(phi) * sinDeltaLambda * sinDeltaLambda;
+        return haversine <= maxHaversine;
+    }
+}
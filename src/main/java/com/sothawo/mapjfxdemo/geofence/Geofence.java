@@ -0,0 +1,176 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.geofence;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.CoordinateLine;
+import com.sothawo.mapjfx.Extent;
+import com.sothawo.mapjfx.MapCircle;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * An area for the {@link GeofenceEngine}, prepared for fast containment tests. A geofence is immutable and can be used
+ * from several threads.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public abstract class Geofence {
+
+    private final String name;
+    final double minLatitude;
+    final double maxLatitude;
+    final double minLongitude;
+    final double maxLongitude;
+
+    Geofence(String name, double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        this.name = name;
+        this.minLatitude = minLatitude;
+        this.maxLatitude = maxLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    /**
+     * creates a polygon geofence. The edges are straight lines in latitude and longitude, which for the polygons drawn
+     * in the map is close enough to the shown lines; polygons crossing the antimeridian are not supported.
+     *
+     * @param name
+     *     name of the geofence
+     * @param latitudes
+     *     latitude values of the vertices
+     * @param longitudes
+     *     longitude values of the vertices
+     * @param size
+     *     number of vertices, the polygon is closed from the last to the first vertex
+     * @return the geofence
+     * @throws IllegalArgumentException
+     *     if there are less than 3 vertices or the arrays are shorter than size
+     */
+    public static Geofence polygon(String name, double[] latitudes, double[] longitudes, int size) {
+        if (size < 3 || latitudes.length < size || longitudes.length < size) {
+            throw new IllegalArgumentException("a polygon needs at least 3 vertices and arrays of at least " + size
+                + " values");
+        }
+        return new PolygonGeofence(name, latitudes, longitudes, size);
+    }
+
+    /**
+     * creates a polygon geofence, see {@link #polygon(String, double[], double[], int)}.
+     *
+     * @param name
+     *     name of the geofence
+     * @param vertices
+     *     the vertices
+     * @return the geofence
+     */
+    public static Geofence polygon(String name, List<Coordinate> vertices) {
+        final int size = vertices.size();
+        final double[] latitudes = new double[size];
+        final double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = vertices.get(i).getLatitude();
+            longitudes[i] = vertices.get(i).getLongitude();
+        }
+        return polygon(name, latitudes, longitudes, size);
+    }
+
+    /**
+     * creates a polygon geofence from the coordinates of a line, see {@link #polygon(String, double[], double[], int)}.
+     *
+     * @param name
+     *     name of the geofence
+     * @param coordinateLine
+     *     the line
+     * @return the geofence
+     */
+    public static Geofence of(String name, CoordinateLine coordinateLine) {
+        return polygon(name, coordinateLine.getCoordinateStream().collect(Collectors.toList()));
+    }
+
+    /**
+     * creates a circular geofence.
+     *
+     * @param name
+     *     name of the geofence
+     * @param center
+     *     the center
+     * @param radius
+     *     the radius in meters
+     * @return the geofence
+     */
+    public static Geofence circle(String name, Coordinate center, double radius) {
+        if (!(radius > 0)) {
+            throw new IllegalArgumentException("radius must be positive");
+        }
+        return new CircleGeofence(name, center.getLatitude(), center.getLongitude(), radius);
+    }
+
+    /**
+     * creates a circular geofence with the center and radius of a MapCircle.
+     *
+     * @param name
+     *     name of the geofence
+     * @param mapCircle
+     *     the circle
+     * @return the geofence
+     */
+    public static Geofence of(String name, MapCircle mapCircle) {
+        return circle(name, mapCircle.getCenter(), mapCircle.getRadius());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the bounding box of the geofence
+     */
+    public Extent getExtent() {
+        return Extent.forCoordinates(new Coordinate(minLatitude, minLongitude),
+            new Coordinate(maxLatitude, maxLongitude));
+    }
+
+    /**
+     * @param latitude
+     *     latitude of the position
+     * @param longitude
+     *     longitude of the position
+     * @return true if the position is inside the geofence
+     */
+    public final boolean contains(double latitude, double longitude) {
+        return latitude >= minLatitude && latitude <= maxLatitude
+            && longitude >= minLongitude && longitude <= maxLongitude
+            && containsInBounds(latitude, longitude);
+    }
+
+    /**
+     * the containment test for positions within the bounding box.
+     */
+    abstract boolean containsInBounds(double latitude, double longitude);
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "name='" + name + '\'' +
+            ", minLatitude=" + minLatitude +
+            ", maxLatitude=" + maxLatitude +
+            ", minLongitude=" + minLongitude +
+            ", maxLongitude=" + maxLongitude +
+            '}';
+    }
+}
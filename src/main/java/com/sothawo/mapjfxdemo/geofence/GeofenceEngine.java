@@ -0,0 +1,343 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.geofence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Evaluates position updates of assets against a set of {@link Geofence}s and reports when an asset enters or leaves a
+ * geofence. The geofences are indexed in a grid over their bounding boxes, so a position is only tested against the
+ * geofences of its grid cell.
+ * <p>
+ * A batch of updates is evaluated in two steps: the geofences containing each position are found in parallel on the
+ * common fork-join pool, then the results are compared in the order of the updates with the geofences each asset was
+ * in before, so several updates of the same asset in one batch give the right sequence of events.
+ * <p>
+ * The geofences are fixed; when they change, a new engine is created, which can take over the state of the previous
+ * one so that the assets stay in the geofences that were kept. {@link #evaluate(int[], double[], double[], int)} must
+ * not be called concurrently.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class GeofenceEngine {
+
+    /** the largest number of grid rows and columns. */
+    private static final int MAX_GRID = 1024;
+    /** the number of updates a parallel task works on. */
+    private static final int CHUNK_SIZE = 2048;
+    private static final int[] NONE = new int[0];
+
+    private final Geofence[] geofences;
+    private final int grid;
+    private final double minLatitude;
+    private final double minLongitude;
+    private final double rowsPerDegree;
+    private final double columnsPerDegree;
+    /** start of the geofences of each cell in cellGeofences. */
+    private final int[] cellStart;
+    /** the indexes of the geofences per cell, ascending within a cell. */
+    private final int[] cellGeofences;
+
+    /** the sorted indexes of the geofences each asset is in, by asset id. */
+    private int[][] inside = new int[0][];
+
+    /**
+     * @param geofences
+     *     the geofences
+     */
+    public GeofenceEngine(Collection<? extends Geofence> geofences) {
+        this(geofences, null);
+    }
+
+    /**
+     * creates an engine that takes over the state of a previous one. Geofences are matched by their name; an asset
+     * that was in a geofence of the previous engine is in the geofence with the same name in this one, so a changed
+     * geofence only reports the assets that actually entered or left it with their next update. The previous engine
+     * must not be evaluating while this one is created.
+     *
+     * @param geofences
+     *     the geofences
+     * @param previous
+     *     the engine to take the state from, may be null
+     */
+    public GeofenceEngine(Collection<? extends Geofence> geofences, GeofenceEngine previous) {
+        this.geofences = geofences.toArray(new Geofence[0]);
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        double minLongitude = Double.POSITIVE_INFINITY;
+        double maxLongitude = Double.NEGATIVE_INFINITY;
+        for (final Geofence geofence : this.geofences) {
+            minLatitude = Math.min(minLatitude, geofence.minLatitude);
+            maxLatitude = Math.max(maxLatitude, geofence.maxLatitude);
+            minLongitude = Math.min(minLongitude, geofence.minLongitude);
+            maxLongitude = Math.max(maxLongitude, geofence.maxLongitude);
+        }
+        grid = Math.max(1, Math.min(MAX_GRID, (int) Math.ceil(2 * Math.sqrt(this.geofences.length))));
+        this.minLatitude = minLatitude;
+        this.minLongitude = minLongitude;
+        // without extent all positions end up in cell 0, the geofences are then tested directly
+        rowsPerDegree = maxLatitude > minLatitude ? grid / (maxLatitude - minLatitude) : 0;
+        columnsPerDegree = maxLongitude > minLongitude ? grid / (maxLongitude - minLongitude) : 0;
+
+        final int[] counts = new int[grid * grid];
+        for (final Geofence geofence : this.geofences) {
+            forEachCell(geofence, cell -> counts[cell]++);
+        }
+        cellStart = new int[grid * grid + 1];
+        for (int cell = 0; cell < grid * grid; cell++) {
+            cellStart[cell + 1] = cellStart[cell] + counts[cell];
+        }
+        cellGeofences = new int[cellStart[grid * grid]];
+        Arrays.fill(counts, 0);
+        for (int index = 0; index < this.geofences.length; index++) {
+            final int geofenceIndex = index;
+            forEachCell(this.geofences[index],
+                cell -> cellGeofences[cellStart[cell] + counts[cell]++] = geofenceIndex);
+        }
+        if (previous != null) {
+            takeOver(previous);
+        }
+    }
+
+    /**
+     * maps the geofences the assets are in from the indexes of the previous engine to the ones of this engine.
+     */
+    private void takeOver(GeofenceEngine previous) {
+        final Map<String, Integer> indexes = new HashMap<>();
+        for (int index = 0; index < geofences.length; index++) {
+            indexes.putIfAbsent(geofences[index].getName(), index);
+        }
+        final int[] mapping = new int[previous.geofences.length];
+        for (int index = 0; index < mapping.length; index++) {
+            mapping[index] = indexes.getOrDefault(previous.geofences[index].getName(), -1);
+        }
+        inside = new int[previous.inside.length][];
+        for (int assetId = 0; assetId < inside.length; assetId++) {
+            final int[] previousIndexes = previous.inside[assetId];
+            int[] mapped = new int[previousIndexes.length];
+            int size = 0;
+            for (final int index : previousIndexes) {
+                if (mapping[index] >= 0) {
+                    mapped[size++] = mapping[index];
+                }
+            }
+            if (size == 0) {
+                mapped = NONE;
+            } else {
+                mapped = Arrays.copyOf(mapped, size);
+                Arrays.sort(mapped);
+            }
+            inside[assetId] = mapped;
+        }
+    }
+
+    private void forEachCell(Geofence geofence, IntConsumer consumer) {
+        final int firstRow = row(geofence.minLatitude);
+        final int lastRow = row(geofence.maxLatitude);
+        final int firstColumn = column(geofence.minLongitude);
+        final int lastColumn = column(geofence.maxLongitude);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                consumer.accept(row * grid + column);
+            }
+        }
+    }
+
+    public int getGeofenceCount() {
+        return geofences.length;
+    }
+
+    /**
+     * @param latitude
+     *     latitude of the position
+     * @param longitude
+     *     longitude of the position
+     * @return the geofences containing the position
+     */
+    public List<Geofence> geofencesAt(double latitude, double longitude) {
+        final List<Geofence> result = new ArrayList<>();
+        final int cell = cell(latitude, longitude);
+        for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+            final Geofence geofence = geofences[cellGeofences[i]];
+            if (geofence.contains(latitude, longitude)) {
+                result.add(geofence);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * evaluates a batch of position updates.
+     *
+     * @param assetIds
+     *     the ids of the assets, not negative; updates with negative ids are ignored
+     * @param latitudes
+     *     the latitudes of the positions
+     * @param longitudes
+     *     the longitudes of the positions
+     * @param size
+     *     number of updates
+     * @return the events in the order of the updates
+     */
+    public List<GeofenceEvent> evaluate(int[] assetIds, double[] latitudes, double[] longitudes, int size) {
+        if (size < 0 || assetIds.length < size || latitudes.length < size || longitudes.length < size) {
+            throw new IllegalArgumentException("arrays must contain at least " + size + " values");
+        }
+        final int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        // the number of geofences per update, and per chunk the indexes of the geofences of its updates
+        final int[] counts = new int[size];
+        final int[][] found = new int[chunks][];
+        if (chunks == 1) {
+            found[0] = findGeofences(latitudes, longitudes, 0, size, counts);
+        } else if (chunks > 1) {
+            IntStream.range(0, chunks).parallel().forEach(chunk -> found[chunk] =
+                findGeofences(latitudes, longitudes, chunk * CHUNK_SIZE, Math.min(size, (chunk + 1) * CHUNK_SIZE),
+                    counts));
+        }
+
+        final List<GeofenceEvent> events = new ArrayList<>();
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int offset = 0;
+            for (int i = chunk * CHUNK_SIZE; i < Math.min(size, (chunk + 1) * CHUNK_SIZE); i++) {
+                if (assetIds[i] >= 0) {
+                    update(assetIds[i], latitudes[i], longitudes[i], found[chunk], offset, offset + counts[i], events);
+                }
+                offset += counts[i];
+            }
+        }
+        return events;
+    }
+
+    /**
+     * finds the geofences for the updates from to to.
+     *
+     * @return the geofence indexes for the updates one after the other, the counts per update are set in counts
+     */
+    private int[] findGeofences(double[] latitudes, double[] longitudes, int from, int to, int[] counts) {
+        int[] result = new int[to - from];
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            final double latitude = latitudes[i];
+            final double longitude = longitudes[i];
+            final int cell = cell(latitude, longitude);
+            final int start = size;
+            for (int j = cellStart[cell]; j < cellStart[cell + 1]; j++) {
+                final int index = cellGeofences[j];
+                if (geofences[index].contains(latitude, longitude)) {
+                    if (size == result.length) {
+                        result = Arrays.copyOf(result, Math.max(16, size * 2));
+                    }
+                    result[size++] = index;
+                }
+            }
+            counts[i] = size - start;
+        }
+        return result;
+    }
+
+    /**
+     * compares the geofences of an update with the ones the asset was in and adds the events.
+     */
+    private void update(int assetId, double latitude, double longitude, int[] found, int from, int to,
+                        List<GeofenceEvent> events) {
+        if (assetId >= inside.length) {
+            final int oldLength = inside.length;
+            inside = Arrays.copyOf(inside, Math.max(assetId + 1, oldLength * 2));
+            Arrays.fill(inside, oldLength, inside.length, NONE);
+        }
+        final int[] previous = inside[assetId];
+        // both are sorted, so a merge finds the differences; the exits are reported before the enters
+        boolean changed = false;
+        int q = from;
+        for (final int index : previous) {
+            while (q < to && found[q] < index) {
+                q++;
+            }
+            if (q == to || found[q] != index) {
+                events.add(new GeofenceEvent(GeofenceEvent.Type.EXIT, assetId, geofences[index], latitude, longitude));
+                changed = true;
+            }
+        }
+        int p = 0;
+        for (int i = from; i < to; i++) {
+            while (p < previous.length && previous[p] < found[i]) {
+                p++;
+            }
+            if (p == previous.length || previous[p] != found[i]) {
+                events.add(new GeofenceEvent(GeofenceEvent.Type.ENTER, assetId, geofences[found[i]], latitude,
+                    longitude));
+                changed = true;
+            }
+        }
+        if (changed) {
+            inside[assetId] = from == to ? NONE : Arrays.copyOfRange(found, from, to);
+        }
+    }
+
+    /**
+     * @param assetId
+     *     id of the asset
+     * @return the geofences the asset is in after the last evaluation
+     */
+    public List<Geofence> getGeofences(int assetId) {
+        final List<Geofence> result = new ArrayList<>();
+        if (assetId >= 0 && assetId < inside.length) {
+            for (final int index : inside[assetId]) {
+                result.add(geofences[index]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of assets that are in at least one geofence
+     */
+    public int getAssetsInside() {
+        int count = 0;
+        for (final int[] indexes : inside) {
+            if (indexes.length > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * forgets in which geofences the assets are, the next update of each asset reports the geofences it is in.
+     */
+    public void reset() {
+        inside = new int[0][];
+    }
+
+    private int cell(double latitude, double longitude) {
+        return row(latitude) * grid + column(longitude);
+    }
+
+    private int row(double latitude) {
+        return Math.max(0, Math.min(grid - 1, (int) ((latitude - minLatitude) * rowsPerDegree)));
+    }
+
+    private int column(double longitude) {
+        return Math.max(0, Math.min(grid - 1, (int) ((longitude - minLongitude) * columnsPerDegree)));
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.geofence;
+
+import com.sothawo.mapjfx.Coordinate;
+
+/**
+ * An asset entered or left a geofence.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class GeofenceEvent {
+
+    public enum Type {
+        ENTER,
+        EXIT
+    }
+
+    private final Type type;
+    private final int assetId;
+    private final Geofence geofence;
+    private final double latitude;
+    private final double longitude;
+
+    GeofenceEvent(Type type, int assetId, Geofence geofence, double latitude, double longitude) {
+        this.type = type;
+        this.assetId = assetId;
+        this.geofence = geofence;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getAssetId() {
+        return assetId;
+    }
+
+    public Geofence getGeofence() {
+        return geofence;
+    }
+
+    /**
+     * @return the position that caused the event
+     */
+    public Coordinate getPosition() {
+        return new Coordinate(latitude, longitude);
+    }
+
+    @Override
+    public String toString() {
+        return "GeofenceEvent{" +
+            "type=" + type +
+            ", assetId=" + assetId +
+            ", geofence=" + geofence.getName() +
+            ", latitude=" + latitude +
+            ", longitude=" + longitude +
+            '}';
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.geofence;
+
+import com.sothawo.mapjfxdemo.animation.FrameScheduler;
+import javafx.application.Platform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Feeds live position updates to a {@link GeofenceEngine} and reports the events on the JavaFX Application Thread.
+ * The updates are collected in primitive arrays; every {@link #EVALUATION_INTERVAL_MILLIS} the collected batch is
+ * evaluated on a background executor while the next batch is collected. Only one batch is evaluated at a time, so the
+ * events keep the order of the updates; when the evaluation cannot keep up, the batch grows up to
+ * {@link #MAX_BATCH_SIZE} updates and further updates are dropped.
+ * <p>
+ * All methods must be called on the JavaFX Application Thread.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class GeofenceMonitor {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(GeofenceMonitor.class);
+
+    public static final long EVALUATION_INTERVAL_MILLIS = 100;
+    public static final int MAX_BATCH_SIZE = 1 << 20;
+
+    private final FrameScheduler frameScheduler;
+    private final Executor executor;
+    private final Consumer<List<GeofenceEvent>> listener;
+    private GeofenceEngine engine;
+    /** geofences for the engine that are applied when the running evaluation is done, null if there are none. */
+    private Collection<? extends Geofence> pendingGeofences;
+
+    /** the batch collecting the updates. */
+    private Batch collecting = new Batch();
+    /** the batch that is reused when the evaluation is done, null while it is evaluated. */
+    private Batch spare = new Batch();
+    /** the task starting the evaluations, null when the monitor is stopped. */
+    private FrameScheduler.Registration evaluationTask;
+
+    private long updatesEvaluated;
+    private long updatesDropped;
+    private long events;
+    private long lastEvaluationNanos;
+
+    /**
+     * @param engine
+     *     the engine with the geofences
+     * @param frameScheduler
+     *     the scheduler for starting the evaluations
+     * @param executor
+     *     the executor for the evaluations
+     * @param listener
+     *     receives the events of each evaluation that has events
+     */
+    public GeofenceMonitor(GeofenceEngine engine, FrameScheduler frameScheduler, Executor executor,
+                           Consumer<List<GeofenceEvent>> listener) {
+        this.engine = engine;
+        this.frameScheduler = frameScheduler;
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    /**
+     * replaces the engine, for example when the geofences changed. The new engine reports the geofences the assets
+     * are in with their next update.
+     *
+     * @param engine
+     *     the new engine
+     */
+    public void setEngine(GeofenceEngine engine) {
+        this.engine = engine;
+        pendingGeofences = null;
+    }
+
+    /**
+     * replaces the geofences, for example when one of them was edited. The assets stay in the geofences with the same
+     * name, so the next updates only report the changes. While a batch is evaluated, the geofences are replaced when
+     * it is done.
+     *
+     * @param geofences
+     *     the new geofences
+     */
+    public void setGeofences(Collection<? extends Geofence> geofences) {
+        if (spare == null) {
+            pendingGeofences = geofences;
+        } else {
+            engine = new GeofenceEngine(geofences, engine);
+        }
+    }
+
+    public GeofenceEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * starts evaluating the collected updates.
+     */
+    public void start() {
+        if (evaluationTask == null) {
+            evaluationTask = frameScheduler.schedule(EVALUATION_INTERVAL_MILLIS, TimeUnit.MILLISECONDS, now -> {
+                evaluate();
+                return true;
+            });
+        }
+    }
+
+    /**
+     * stops evaluating, the collected updates are discarded.
+     */
+    public void stop() {
+        if (evaluationTask != null) {
+            evaluationTask.cancel();
+            evaluationTask = null;
+        }
+        collecting.size = 0;
+        logger.debug("geofence monitor stopped: {} updates evaluated, {} dropped, {} events", updatesEvaluated,
+            updatesDropped, events);
+    }
+
+    /**
+     * adds a position update; it is called for every update and only allocates when the batch grows.
+     *
+     * @param assetId
+     *     id of the asset
+     * @param latitude
+     *     latitude of the position
+     * @param longitude
+     *     longitude of the position
+     */
+    public void offer(int assetId, double latitude, double longitude) {
+        if (evaluationTask == null) {
+            return;
+        }
+        if (!collecting.add(assetId, latitude, longitude)) {
+            updatesDropped++;
+        }
+    }
+
+    public long getUpdatesEvaluated() {
+        return updatesEvaluated;
+    }
+
+    public long getUpdatesDropped() {
+        return updatesDropped;
+    }
+
+    /**
+     * @return the number of events reported so far
+     */
+    public long getEvents() {
+        return events;
+    }
+
+    /**
+     * @return the duration of the last evaluation in milliseconds
+     */
+    public double getLastEvaluationMillis() {
+        return lastEvaluationNanos / 1e6;
+    }
+
+    private void evaluate() {
+        if (spare == null || collecting.size == 0) {
+            return;
+        }
+        final Batch batch = collecting;
+        collecting = spare;
+        spare = null;
+        final GeofenceEngine batchEngine = engine;
+        CompletableFuture.supplyAsync(() -> {
+            final long start = System.nanoTime();
+            final List<GeofenceEvent> batchEvents =
+                batchEngine.evaluate(batch.assetIds, batch.latitudes, batch.longitudes, batch.size);
+            lastEvaluationNanos = System.nanoTime() - start;
+            return batchEvents;
+        }, executor).whenCompleteAsync((batchEvents, throwable) -> {
+            updatesEvaluated += batch.size;
+            batch.size = 0;
+            spare = batch;
+            if (pendingGeofences != null) {
+                engine = new GeofenceEngine(pendingGeofences, engine);
+                pendingGeofences = null;
+            }
+            if (throwable != null) {
+                logger.warn("could not evaluate the geofences", throwable);
+            } else if (evaluationTask != null && !batchEvents.isEmpty()) {
+                events += batchEvents.size();
+                listener.accept(batchEvents);
+            }
+        }, Platform::runLater);
+    }
+
+    /**
+     * position updates in primitive arrays.
+     */
+    private static final class Batch {
+        private int[] assetIds = new int[1024];
+        private double[] latitudes = new double[1024];
+        private double[] longitudes = new double[1024];
+        private int size;
+
+        private boolean add(int assetId, double latitude, double longitude) {
+            if (size == assetIds.length) {
+                if (size == MAX_BATCH_SIZE) {
+                    return false;
+                }
+                final int capacity = Math.min(MAX_BATCH_SIZE, size * 2);
+                assetIds = Arrays.copyOf(assetIds, capacity);
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+            }
+            assetIds[size] = assetId;
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            size++;
+            return true;
+        }
+    }
+}
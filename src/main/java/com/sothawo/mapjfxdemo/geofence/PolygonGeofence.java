@@ -0,0 +1,189 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.geofence;
+
+import java.util.Arrays;
+
+/**
+ * A polygon prepared as an edge grid. The bounding box is divided into rows and columns; each row keeps the edges that
+ * reach into it, and each cell is marked as inside, outside or crossed by an edge. A position in an inside or outside
+ * cell is answered from the cell alone, in the few crossed cells a ray is cast along the row, testing only the edges
+ * of that row. The edges of a row are stored one after the other in a double array, so the ray test reads memory in
+ * order.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+final class PolygonGeofence extends Geofence {
+
+    /** the largest number of rows and columns. */
+    private static final int MAX_GRID = 64;
+    private static final byte OUTSIDE = 0;
+    private static final byte INSIDE = 1;
+    private static final byte CROSSED = 2;
+
+    private final int grid;
+    private final double rowsPerDegree;
+    private final double columnsPerDegree;
+    /** the cell states, row by row. */
+    private final byte[] cells;
+    /** start of the edges of each row in rowEdges, in edges. */
+    private final int[] rowStart;
+    /** latitude and longitude of the start and end of the edges, four values per edge. */
+    private final double[] rowEdges;
+
+    PolygonGeofence(String name, double[] latitudes, double[] longitudes, int size) {
+        super(name, min(latitudes, size), max(latitudes, size), min(longitudes, size), max(longitudes, size));
+        grid = Math.min(MAX_GRID, (int) Math.ceil(2 * Math.sqrt(size)));
+        // a polygon without area gets a zero scale and contains nothing, all positions are in the outside cell 0
+        final double height = maxLatitude - minLatitude;
+        final double width = maxLongitude - minLongitude;
+        final boolean hasArea = height > 0 && width > 0;
+        rowsPerDegree = hasArea ? grid / height : 0;
+        columnsPerDegree = hasArea ? grid / width : 0;
+        cells = new byte[grid * grid];
+        rowStart = new int[grid + 1];
+        if (!hasArea) {
+            rowEdges = new double[0];
+            return;
+        }
+
+        // count the edges per row, then fill them in
+        final int[] counts = new int[grid];
+        for (int edge = 0; edge < size; edge++) {
+            final int next = edge + 1 == size ? 0 : edge + 1;
+            final int firstRow = row(Math.min(latitudes[edge], latitudes[next]));
+            final int lastRow = row(Math.max(latitudes[edge], latitudes[next]));
+            for (int row = firstRow; row <= lastRow; row++) {
+                counts[row]++;
+            }
+        }
+        for (int row = 0; row < grid; row++) {
+            rowStart[row + 1] = rowStart[row] + counts[row];
+        }
+        rowEdges = new double[4 * rowStart[grid]];
+        Arrays.fill(counts, 0);
+        for (int edge = 0; edge < size; edge++) {
+            final int next = edge + 1 == size ? 0 : edge + 1;
+            final double latitude1 = latitudes[edge];
+            final double longitude1 = longitudes[edge];
+            final double latitude2 = latitudes[next];
+            final double longitude2 = longitudes[next];
+            final int firstRow = row(Math.min(latitude1, latitude2));
+            final int lastRow = row(Math.max(latitude1, latitude2));
+            for (int row = firstRow; row <= lastRow; row++) {
+                final int offset = 4 * (rowStart[row] + counts[row]++);
+                rowEdges[offset] = latitude1;
+                rowEdges[offset + 1] = longitude1;
+                rowEdges[offset + 2] = latitude2;
+                rowEdges[offset + 3] = longitude2;
+                markCrossedCells(row, latitude1, longitude1, latitude2, longitude2);
+            }
+        }
+
+        // the state of the cells without edges is the one of their center
+        for (int row = 0; row < grid; row++) {
+            final double latitude = minLatitude + (row + 0.5) / rowsPerDegree;
+            for (int column = 0; column < grid; column++) {
+                if (cells[row * grid + column] != CROSSED) {
+                    final double longitude = minLongitude + (column + 0.5) / columnsPerDegree;
+                    cells[row * grid + column] = castRay(row, latitude, longitude) ? INSIDE : OUTSIDE;
+                }
+            }
+        }
+    }
+
+    /**
+     * marks the cells of a row that the part of the edge within the row's latitudes passes.
+     */
+    private void markCrossedCells(int row, double latitude1, double longitude1, double latitude2,
+                                  double longitude2) {
+        final double longitudeA;
+        final double longitudeB;
+        if (latitude1 == latitude2) {
+            longitudeA = longitude1;
+            longitudeB = longitude2;
+        } else {
+            final double rowMin = Math.max(Math.min(latitude1, latitude2), minLatitude + row / rowsPerDegree);
+            final double rowMax = Math.min(Math.max(latitude1, latitude2), minLatitude + (row + 1) / rowsPerDegree);
+            final double slope = (longitude2 - longitude1) / (latitude2 - latitude1);
+            longitudeA = longitude1 + (rowMin - latitude1) * slope;
+            longitudeB = longitude1 + (rowMax - latitude1) * slope;
+        }
+        // a small margin so that rounding in the interpolation does not miss a cell
+        final double margin = 1e-9 / columnsPerDegree;
+        final int firstColumn = column(Math.min(longitudeA, longitudeB) - margin);
+        final int lastColumn = column(Math.max(longitudeA, longitudeB) + margin);
+        for (int column = firstColumn; column <= lastColumn; column++) {
+            cells[row * grid + column] = CROSSED;
+        }
+    }
+
+    @Override
+    boolean containsInBounds(double latitude, double longitude) {
+        final int row = row(latitude);
+        final byte state = cells[row * grid + column(longitude)];
+        if (state == CROSSED) {
+            return castRay(row, latitude, longitude);
+        }
+        return state == INSIDE;
+    }
+
+    /**
+     * counts the crossings of the edges of a row with a ray from the position towards increasing longitudes.
+     */
+    private boolean castRay(int row, double latitude, double longitude) {
+        boolean inside = false;
+        final int end = 4 * rowStart[row + 1];
+        for (int offset = 4 * rowStart[row]; offset < end; offset += 4) {
+            final double latitude1 = rowEdges[offset];
+            final double latitude2 = rowEdges[offset + 2];
+            if ((latitude1 > latitude) != (latitude2 > latitude)) {
+                final double longitude1 = rowEdges[offset + 1];
+                final double longitude2 = rowEdges[offset + 3];
+                final double crossing =
+                    longitude1 + (latitude - latitude1) * (longitude2 - longitude1) / (latitude2 - latitude1);
+                if (longitude < crossing) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    private int row(double latitude) {
+        return Math.max(0, Math.min(grid - 1, (int) ((latitude - minLatitude) * rowsPerDegree)));
+    }
+
+    private int column(double longitude) {
+        return Math.max(0, Math.min(grid - 1, (int) ((longitude - minLongitude) * columnsPerDegree)));
+    }
+
+    private static double min(double[] values, int size) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    private static double max(double[] values, int size) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.harness;
+
+import com.sothawo.mapjfx.MapView;
+import javafx.scene.Node;
+import javafx.scene.web.WebView;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts the calls from Java into the JavaScript of the map. mapjfx calls the methods of the JavaScript objects for the
+ * map, its coordinate lines, circles and markers through the WebView bridge; the counter wraps the prototype methods of
+ * these objects and counts the calls that come from outside of them. Calls between the objects are not counted, so the
+ * numbers are the bridge crossings.
+ * <p>
+ * All methods must be called on the JavaFX Application Thread after the map is initialized.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+final class BridgeCallCounter {
+
+    private static final String INSTALL_SCRIPT = String.join("\n",
+        "(function () {",
+        "    if (window.__bridgeCalls) {",
+        "        return;",
+        "    }",
+        "    var counts = {};",
+        "    var depth = 0;",
+        "    function wrap(type, typeName) {",
+        "        Object.keys(type.prototype).forEach(function (name) {",
+        "            var f = type.prototype[name];",
+        "            if (typeof f !== 'function') {",
+        "                return;",
+        "            }",
+        "            type.prototype[name] = function () {",
+        "                if (depth === 0) {",
+        "                    var key = typeName + '.' + name;",
+        "                    counts[key] = (counts[key] || 0) + 1;",
+        "                }",
+        "                depth++;",
+        "                try {",
+        "                    return f.apply(this, arguments);",
+        "                } finally {",
+        "                    depth--;",
+        "                }",
+        "            };",
+        "        });",
+        "    }",
+        "    wrap(JSMapView, 'JSMapView');",
+        "    wrap(CoordinateLine, 'CoordinateLine');",
+        "    wrap(MapCircle, 'MapCircle');",
+        "    wrap(MapObject, 'MapObject');",
+        "    window.__bridgeCalls = {",
+        "        take: function () {",
+        "            var result = [];",
+        "            for (var key in counts) {",
+        "                result.push(key + '=' + counts[key]);",
+        "            }",
+        "            counts = {};",
+        "            return result.join(',');",
+        "        }",
+        "    };",
+        "})();");
+
+    private final WebView webView;
+
+    private BridgeCallCounter(WebView webView) {
+        this.webView = webView;
+    }
+
+    /**
+     * installs the counter in the map.
+     *
+     * @param mapView
+     *     the initialized map
+     * @return the counter
+     * @throws IllegalStateException
+     *     if the map has no WebView
+     */
+    static BridgeCallCounter install(MapView mapView) {
+        final Node node = mapView.lookup(".web-view");
+        if (!(node instanceof WebView)) {
+            throw new IllegalStateException("no WebView in the map");
+        }
+        final WebView webView = (WebView) node;
+        webView.getEngine().executeScript(INSTALL_SCRIPT);
+        return new BridgeCallCounter(webView);
+    }
+
+    /**
+     * @return the calls since the last call by function name; the counters are reset
+     */
+    Map<String, Long> takeCounts() {
+        final Map<String, Long> counts = new TreeMap<>();
+        final Object result = webView.getEngine().executeScript("window.__bridgeCalls.take()");
+        if (result instanceof String && !((String) result).isEmpty()) {
+            for (String entry : ((String) result).split(",")) {
+                final int separator = entry.lastIndexOf('=');
+                counts.put(entry.substring(0, separator), Long.parseLong(entry.substring(separator + 1)));
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.harness;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The measurements of a harness run, one entry per scripted step. Times are in nanoseconds and sizes in bytes; in the
+ * JSON form they are converted to milliseconds and MiB.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class HarnessReport {
+
+    private final String projection;
+    private final Map<String, String> options;
+    private final List<Step> steps;
+
+    HarnessReport(String projection, Map<String, String> options, List<Step> steps) {
+        this.projection = projection;
+        this.options = Collections.unmodifiableMap(new TreeMap<>(options));
+        this.steps = List.copyOf(steps);
+    }
+
+    public String getProjection() {
+        return projection;
+    }
+
+    /**
+     * @return the options of the run by name, sorted
+     */
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return the report as JSON object
+     */
+    public String toJson() {
+        final StringBuilder json = new StringBuilder(4096);
+        json.append("{\n");
+        json.append("  \"javaVersion\": \"").append(Runtime.version()).append("\",\n");
+        json.append("  \"projection\": \"").append(projection).append("\",\n");
+        json.append("  \"options\": {");
+        boolean firstOption = true;
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            json.append(firstOption ? "" : ", ").append('"').append(option.getKey()).append("\": \"")
+                .append(option.getValue()).append('"');
+            firstOption = false;
+        }
+        json.append("},\n");
+        json.append("  \"steps\": [");
+        for (int i = 0; i < steps.size(); i++) {
+            final Step step = steps.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"name\": \"").append(step.getName()).append('"')
+                .append(", \"durationMillis\": ").append(millis(step.getDurationNanos()))
+                .append(", \"pulses\": ").append(step.getPulses())
+                .append(", \"frameMillisP50\": ").append(millis(step.getFrameNanosP50()))
+                .append(", \"frameMillisP95\": ").append(millis(step.getFrameNanosP95()))
+                .append(", \"frameMillisMax\": ").append(millis(step.getFrameNanosMax()))
+                .append(", \"slowFrames\": ").append(step.getSlowFrames())
+                .append(", \"layoutMillisP95\": ").append(millis(step.getLayoutNanosP95()))
+                .append(", \"layoutMillisMax\": ").append(millis(step.getLayoutNanosMax()))
+                .append(",\n     \"heapUsedMaxMiB\": ").append(mebibytes(step.getHeapUsedMax()))
+                .append(", \"heapUsedEndMiB\": ").append(mebibytes(step.getHeapUsedEnd()))
+                .append(", \"gcCount\": ").append(step.getGcCount())
+                .append(", \"gcMillis\": ").append(step.getGcMillis())
+                .append(", \"tileRequests\": ").append(step.getTileRequests())
+                .append(", \"bridgeCalls\": ").append(step.getBridgeCalls())
+                .append(",\n     \"bridgeCallsByFunction\": {");
+            boolean first = true;
+            for (Map.Entry<String, Long> calls : step.getBridgeCallsByFunction().entrySet()) {
+                json.append(first ? "" : ", ").append('"').append(calls.getKey()).append("\": ")
+                    .append(calls.getValue());
+                first = false;
+            }
+            json.append("}}");
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1_000_000.0);
+    }
+
+    private static String mebibytes(long bytes) {
+        return String.format(Locale.ROOT, "%.1f", bytes / (1024.0 * 1024.0));
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    /**
+     * the measurements of one step.
+     */
+    public static final class Step {
+        private final String name;
+        private final long durationNanos;
+        private final PulseRecorder.Statistics pulses;
+        private final long heapUsedEnd;
+        private final long gcCount;
+        private final long gcMillis;
+        private final long tileRequests;
+        private final Map<String, Long> bridgeCallsByFunction;
+
+        Step(String name, long durationNanos, PulseRecorder.Statistics pulses, long heapUsedEnd, long gcCount,
+             long gcMillis, long tileRequests, Map<String, Long> bridgeCallsByFunction) {
+            this.name = name;
+            this.durationNanos = durationNanos;
+            this.pulses = pulses;
+            this.heapUsedEnd = heapUsedEnd;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+            this.tileRequests = tileRequests;
+            this.bridgeCallsByFunction = Collections.unmodifiableMap(new TreeMap<>(bridgeCallsByFunction));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public int getPulses() {
+            return pulses.getPulses();
+        }
+
+        public long getFrameNanosP50() {
+            return pulses.getFrameNanos(50);
+        }
+
+        public long getFrameNanosP95() {
+            return pulses.getFrameNanos(95);
+        }
+
+        public long getFrameNanosMax() {
+            return pulses.getFrameNanos(100);
+        }
+
+        /**
+         * @return the number of frames that took longer than two frames at 60 fps
+         */
+        public int getSlowFrames() {
+            return pulses.getSlowFrames();
+        }
+
+        public long getLayoutNanosP95() {
+            return pulses.getLayoutNanos(95);
+        }
+
+        public long getLayoutNanosMax() {
+            return pulses.getLayoutNanos(100);
+        }
+
+        public long getHeapUsedMax() {
+            return pulses.getMaxHeapUsed();
+        }
+
+        public long getHeapUsedEnd() {
+            return heapUsedEnd;
+        }
+
+        public long getGcCount() {
+            return gcCount;
+        }
+
+        public long getGcMillis() {
+            return gcMillis;
+        }
+
+        public long getTileRequests() {
+            return tileRequests;
+        }
+
+        /**
+         * @return the number of calls from Java into the JavaScript of the map
+         */
+        public long getBridgeCalls() {
+            return bridgeCallsByFunction.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        /**
+         * @return the calls into the JavaScript of the map by function name, sorted
+         */
+        public Map<String, Long> getBridgeCallsByFunction() {
+            return bridgeCallsByFunction;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.harness;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.MapView;
+import com.sothawo.mapjfx.Marker;
+import com.sothawo.mapjfx.event.MapViewEvent;
+import com.sothawo.mapjfxdemo.offline.LocalTileServer;
+import javafx.animation.PauseTransition;
+import javafx.scene.Scene;
+import javafx.scene.control.ButtonBase;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Slider;
+import javafx.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs the scripted steps of the performance harness in the demo application and measures each of them. The steps
+ * use the controls of the application like a user would, so the controller's code paths are the ones measured. The
+ * run starts when the map is initialized and the tracks are loaded; each action of a step is followed by a pause in
+ * which the map renders and loads its tiles.
+ * <p>
+ * All methods must be called on the JavaFX Application Thread.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+final class HarnessRun {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(HarnessRun.class);
+
+    /** max time to wait for the map and the tracks. */
+    private static final long READY_TIMEOUT_NANOS = 120_000_000_000L;
+    private static final long POLL_MILLIS = 100;
+    /** pause between the clicks when drawing a polygon. */
+    private static final long CLICK_PAUSE_MILLIS = 50;
+    /** radius of the drawn polygons in degrees. */
+    private static final double POLYGON_RADIUS = 0.005;
+    /** area of the added markers and drawn polygons, around the Karlsruhe locations. */
+    private static final double MIN_LATITUDE = 48.99;
+    private static final double MAX_LATITUDE = 49.03;
+    private static final double MIN_LONGITUDE = 8.32;
+    private static final double MAX_LONGITUDE = 8.42;
+
+    private final Function<String, Object> fxmlObjects;
+    private final Scene scene;
+    private final MapView mapView;
+    private final LocalTileServer tileServer;
+    private final String projection;
+    private final Map<String, String> options;
+    private final int markers;
+    private final int polygons;
+    private final int vertices;
+    private final long settleMillis;
+    private final Consumer<HarnessReport> onFinished;
+    private final Random random = new Random(4711);
+
+    private final List<Step> steps = new ArrayList<>();
+    private final List<HarnessReport.Step> results = new ArrayList<>();
+    private PulseRecorder pulseRecorder;
+    private BridgeCallCounter bridgeCallCounter;
+
+    /** the values at the start of the current step. */
+    private long stepStart;
+    private long stepGcCount;
+    private long stepGcMillis;
+    private long stepTileRequests;
+
+    /**
+     * @param fxmlObjects
+     *     returns the objects of the application's fxml file by fx:id
+     * @param scene
+     *     the scene of the application
+     * @param tileServer
+     *     the server the map loads its tiles from
+     * @param projection
+     *     name of the projection of the map, for the report
+     * @param options
+     *     the options: markers, polygons, vertices and settle (the pause after each action in milliseconds)
+     * @param onFinished
+     *     called with the report when all steps are done
+     */
+    HarnessRun(Function<String, Object> fxmlObjects, Scene scene, LocalTileServer tileServer, String projection,
+               Map<String, String> options, Consumer<HarnessReport> onFinished) {
+        this.fxmlObjects = fxmlObjects;
+        this.scene = scene;
+        this.mapView = fxmlObject("mapView", MapView.class);
+        this.tileServer = tileServer;
+        this.projection = projection;
+        this.options = options;
+        this.markers = Integer.parseInt(options.getOrDefault("markers", "500"));
+        this.polygons = Integer.parseInt(options.getOrDefault("polygons", "5"));
+        this.vertices = Integer.parseInt(options.getOrDefault("vertices", "20"));
+        this.settleMillis = Long.parseLong(options.getOrDefault("settle", "1000"));
+        this.onFinished = onFinished;
+    }
+
+    /**
+     * waits for the map and the tracks and then runs the steps.
+     */
+    void start() {
+        final long start = System.nanoTime();
+        final CheckBox checkTrackMagenta = fxmlObject("checkTrackMagenta", CheckBox.class);
+        waitUntil(() -> mapView.getInitialized() && !checkTrackMagenta.isDisabled(), start, () -> {
+            logger.info("map and tracks ready after {} ms, starting the harness steps",
+                (System.nanoTime() - start) / 1_000_000);
+            bridgeCallCounter = BridgeCallCounter.install(mapView);
+            pulseRecorder = new PulseRecorder(scene);
+            pulseRecorder.start();
+            createSteps();
+            runStep(0);
+        });
+    }
+
+    private void waitUntil(BooleanSupplier condition, long start, Runnable then) {
+        if (condition.getAsBoolean()) {
+            then.run();
+        } else if (System.nanoTime() - start > READY_TIMEOUT_NANOS) {
+            logger.error("map or tracks not ready after {} s, stopping", READY_TIMEOUT_NANOS / 1_000_000_000L);
+            onFinished.accept(new HarnessReport(projection, options, results));
+        } else {
+            pause(POLL_MILLIS, () -> waitUntil(condition, start, then));
+        }
+    }
+
+    private void createSteps() {
+        // the tiles of the start position
+        steps.add(new Step("initial-tiles").then(() -> {
+        }, 3 * settleMillis));
+
+        final Step locations = new Step("center-locations");
+        for (String button : List.of("buttonKaHarbour", "buttonKaCastle", "buttonKaStation", "buttonKaSoccer",
+            "buttonAllLocations")) {
+            locations.then(fxmlObject(button, ButtonBase.class)::fire, settleMillis);
+        }
+        steps.add(locations);
+
+        final Slider sliderZoom = fxmlObject("sliderZoom", Slider.class);
+        final Step zoomSweep = new Step("zoom-sweep").then(fxmlObject("buttonKaCastle", ButtonBase.class)::fire,
+            settleMillis);
+        for (int zoom = 10; zoom <= 18; zoom++) {
+            final int value = zoom;
+            zoomSweep.then(() -> sliderZoom.setValue(value), settleMillis / 4);
+        }
+        for (int zoom = 17; zoom >= 10; zoom--) {
+            final int value = zoom;
+            zoomSweep.then(() -> sliderZoom.setValue(value), settleMillis / 4);
+        }
+        steps.add(zoomSweep);
+
+        final CheckBox checkTrackMagenta = fxmlObject("checkTrackMagenta", CheckBox.class);
+        final CheckBox checkTrackCyan = fxmlObject("checkTrackCyan", CheckBox.class);
+        steps.add(new Step("toggle-tracks")
+            .then(checkTrackMagenta::fire, settleMillis)
+            .then(checkTrackCyan::fire, settleMillis)
+            .then(checkTrackMagenta::fire, settleMillis)
+            .then(checkTrackCyan::fire, settleMillis));
+
+        final List<Marker> addedMarkers = new ArrayList<>();
+        steps.add(new Step("add-markers")
+            .then(() -> {
+                for (int i = 0; i < markers; i++) {
+                    final Marker marker = Marker.createProvided(Marker.Provided.BLUE)
+                        .setPosition(randomCoordinate())
+                        .setVisible(true);
+                    mapView.addMarker(marker);
+                    addedMarkers.add(marker);
+                }
+            }, settleMillis)
+            .then(() -> {
+                addedMarkers.forEach(mapView::removeMarker);
+                addedMarkers.clear();
+            }, settleMillis));
+
+        final CheckBox checkDrawPolygon = fxmlObject("checkDrawPolygon", CheckBox.class);
+        final Step drawPolygons = new Step("draw-polygons");
+        for (int polygon = 0; polygon < polygons; polygon++) {
+            final Coordinate center = randomCoordinate();
+            drawPolygons.then(() -> checkDrawPolygon.setSelected(true), CLICK_PAUSE_MILLIS);
+            for (int vertex = 0; vertex < vertices; vertex++) {
+                final double angle = 2 * Math.PI * vertex / vertices;
+                final Coordinate coordinate = new Coordinate(
+                    center.getLatitude() + POLYGON_RADIUS * Math.sin(angle),
+                    center.getLongitude() + POLYGON_RADIUS * Math.cos(angle) * 1.5);
+                drawPolygons.then(() -> mapView.fireEvent(new MapViewEvent(MapViewEvent.MAP_CLICKED, coordinate)),
+                    CLICK_PAUSE_MILLIS);
+            }
+            // unchecking clears the polygon
+            drawPolygons.then(() -> checkDrawPolygon.setSelected(false), settleMillis);
+        }
+        steps.add(drawPolygons);
+    }
+
+    private Coordinate randomCoordinate() {
+        return new Coordinate(MIN_LATITUDE + random.nextDouble() * (MAX_LATITUDE - MIN_LATITUDE),
+            MIN_LONGITUDE + random.nextDouble() * (MAX_LONGITUDE - MIN_LONGITUDE));
+    }
+
+    private void runStep(int index) {
+        if (index == steps.size()) {
+            pulseRecorder.stop();
+            final HarnessReport report = new HarnessReport(projection, options, results);
+            onFinished.accept(report);
+            return;
+        }
+        final Step step = steps.get(index);
+        logger.info("harness step {}", step.name);
+        // discard what happened between the steps
+        pulseRecorder.takeStatistics();
+        bridgeCallCounter.takeCounts();
+        stepGcCount = gcCount();
+        stepGcMillis = gcMillis();
+        stepTileRequests = tileServer.getRequestCount();
+        stepStart = System.nanoTime();
+        runAction(index, 0);
+    }
+
+    private void runAction(int stepIndex, int actionIndex) {
+        final Step step = steps.get(stepIndex);
+        if (actionIndex == step.actions.size()) {
+            final HarnessReport.Step result = new HarnessReport.Step(step.name, System.nanoTime() - stepStart,
+                pulseRecorder.takeStatistics(), PulseRecorder.heapUsed(), gcCount() - stepGcCount,
+                gcMillis() - stepGcMillis, tileServer.getRequestCount() - stepTileRequests,
+                bridgeCallCounter.takeCounts());
+            logger.info("harness step {}: {} ms, {} pulses, {} slow frames, {} bridge calls", step.name,
+                result.getDurationNanos() / 1_000_000, result.getPulses(), result.getSlowFrames(),
+                result.getBridgeCalls());
+            results.add(result);
+            runStep(stepIndex + 1);
+            return;
+        }
+        final Action action = step.actions.get(actionIndex);
+        try {
+            action.run.run();
+        } catch (RuntimeException e) {
+            logger.warn("harness action of step {} failed", step.name, e);
+        }
+        pause(action.pauseMillis, () -> runAction(stepIndex, actionIndex + 1));
+    }
+
+    private static void pause(long millis, Runnable then) {
+        final PauseTransition pause = new PauseTransition(Duration.millis(millis));
+        pause.setOnFinished(event -> then.run());
+        pause.play();
+    }
+
+    private <T> T fxmlObject(String fxId, Class<T> type) {
+        final Object object = fxmlObjects.apply(fxId);
+        if (!type.isInstance(object)) {
+            throw new IllegalStateException("no " + type.getSimpleName() + " with fx:id " + fxId);
+        }
+        return type.cast(object);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * a named sequence of actions that is measured as a whole.
+     */
+    private static final class Step {
+        private final String name;
+        private final List<Action> actions = new ArrayList<>();
+
+        private Step(String name) {
+            this.name = name;
+        }
+
+        private Step then(Runnable action, long pauseMillis) {
+            actions.add(new Action(action, pauseMillis));
+            return this;
+        }
+    }
+
+    private static final class Action {
+        private final Runnable run;
+        private final long pauseMillis;
+
+        private Action(Runnable run, long pauseMillis) {
+            this.run = run;
+            this.pauseMillis = pauseMillis;
+        }
+    }
+}
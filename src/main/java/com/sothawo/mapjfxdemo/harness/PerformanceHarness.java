@@ -0,0 +1,102 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.harness;
+
+import com.sothawo.mapjfxdemo.Controller;
+import com.sothawo.mapjfxdemo.DemoApp;
+import com.sothawo.mapjfxdemo.offline.LocalTileServer;
+import com.sothawo.mapjfxdemo.offline.LoopbackHttpServers;
+import com.sothawo.mapjfxdemo.startup.StartupProfiler;
+import javafx.application.Platform;
+import javafx.stage.Stage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs the demo application with a scripted sequence of user actions and writes a report with the frame times, layout
+ * times, heap, garbage collections, tile requests and Java to JavaScript calls of each step. The map loads its tiles
+ * from a {@link LocalTileServer}, bypassing the offline cache, so that the results do not depend on the network or on
+ * earlier runs. The harness is meant to run without a screen, e.g. with xvfb-run, and uses software rendering unless
+ * the prism.order property is set.
+ * <p>
+ * Named program arguments: --markers (500), --polygons (5), --vertices (20), --settle (pause after each action in
+ * milliseconds, 1000) and --report (file for the JSON report, harness-report.json). The unnamed argument wgs84 uses the
+ * WGS84 projection like in the demo application.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public class PerformanceHarness extends DemoApp {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(PerformanceHarness.class);
+
+    /** the server for the map tiles, started before the application. */
+    private static LocalTileServer tileServer;
+
+    public static void main(String[] args) {
+        StartupProfiler.get();
+        if (System.getProperty("prism.order") == null) {
+            // the harness runs without a GPU, make the results comparable between machines
+            System.setProperty("prism.order", "sw");
+        }
+        int exitCode = 0;
+        try (LocalTileServer server = LocalTileServer.start()) {
+            tileServer = server;
+            // tiles from the offline cache of a previous run would not reach the server and skew the tile counts
+            LoopbackHttpServers.excludeFromOfflineCache(server.getUrlTemplate());
+            System.setProperty(Controller.TILES_URL_PROPERTY, server.getUrlTemplate());
+            launch(PerformanceHarness.class, args);
+        } catch (IOException | RuntimeException e) {
+            logger.error("harness failed", e);
+            exitCode = 1;
+        }
+        // don't wait for non-daemon threads of the toolkit
+        System.exit(exitCode);
+    }
+
+    @Override
+    public void start(Stage primaryStage) throws Exception {
+        super.start(primaryStage);
+
+        final Map<String, String> options = new HashMap<>();
+        options.put("markers", "500");
+        options.put("polygons", "5");
+        options.put("vertices", "20");
+        options.put("settle", "1000");
+        options.putAll(getParameters().getNamed());
+        final Path reportFile = Path.of(options.getOrDefault("report", "harness-report.json"));
+        options.remove("report");
+        final String projection = getParameters().getUnnamed().contains("wgs84") ? "WGS_84" : "WEB_MERCATOR";
+
+        new HarnessRun(this::getFxmlObject, primaryStage.getScene(), tileServer, projection, options, report -> {
+            logger.info("harness report:\n{}", report);
+            try {
+                Files.writeString(reportFile, report.toJson(), StandardCharsets.UTF_8);
+                logger.info("harness report written to {}", reportFile.toAbsolutePath());
+            } catch (IOException e) {
+                logger.warn("could not write the harness report to {}", reportFile, e);
+            }
+            Platform.exit();
+        }).start();
+    }
+}
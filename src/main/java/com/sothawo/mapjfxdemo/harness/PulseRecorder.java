@@ -0,0 +1,170 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.harness;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.Scene;
+
+import java.util.Arrays;
+
+/**
+ * Records the JavaFX pulses of a scene. While the recorder runs, an {@link AnimationTimer} requests a pulse for every
+ * frame, so the interval between two pulses is the frame time: it is about 16.7 ms at 60 fps and grows when a pulse
+ * keeps the FX thread busy for longer than a frame. The CSS and layout pass of each pulse is timed with the scene's
+ * pulse listeners, and the used heap is sampled on every pulse.
+ * <p>
+ * All methods must be called on the JavaFX Application Thread.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+final class PulseRecorder {
+
+    /** frames taking longer than this are counted as slow, two frames at 60 fps. */
+    static final long SLOW_FRAME_NANOS = 33_333_333L;
+
+    private final Scene scene;
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            pulse(now);
+        }
+    };
+    private final Runnable preLayout = () -> layoutStart = System.nanoTime();
+    private final Runnable postLayout = this::layoutDone;
+
+    private long lastPulse;
+    private long layoutStart;
+    private long[] frames = new long[1024];
+    private int frameCount;
+    private long[] layouts = new long[1024];
+    private int layoutCount;
+    private long maxHeapUsed;
+
+    PulseRecorder(Scene scene) {
+        this.scene = scene;
+    }
+
+    void start() {
+        scene.addPreLayoutPulseListener(preLayout);
+        scene.addPostLayoutPulseListener(postLayout);
+        timer.start();
+    }
+
+    void stop() {
+        timer.stop();
+        scene.removePreLayoutPulseListener(preLayout);
+        scene.removePostLayoutPulseListener(postLayout);
+    }
+
+    /**
+     * @return the statistics since the last call; the recorder continues with empty counters
+     */
+    Statistics takeStatistics() {
+        final Statistics statistics = new Statistics(frameCount, sortedCopy(frames, frameCount),
+            sortedCopy(layouts, layoutCount), maxHeapUsed);
+        frameCount = 0;
+        layoutCount = 0;
+        maxHeapUsed = heapUsed();
+        return statistics;
+    }
+
+    private void pulse(long now) {
+        if (lastPulse != 0) {
+            if (frameCount == frames.length) {
+                frames = Arrays.copyOf(frames, frameCount * 2);
+            }
+            frames[frameCount++] = now - lastPulse;
+        }
+        lastPulse = now;
+        maxHeapUsed = Math.max(maxHeapUsed, heapUsed());
+    }
+
+    private void layoutDone() {
+        if (layoutStart == 0) {
+            return;
+        }
+        if (layoutCount == layouts.length) {
+            layouts = Arrays.copyOf(layouts, layoutCount * 2);
+        }
+        layouts[layoutCount++] = System.nanoTime() - layoutStart;
+        layoutStart = 0;
+    }
+
+    static long heapUsed() {
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long[] sortedCopy(long[] values, int count) {
+        final long[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * the pulses of a period.
+     */
+    static final class Statistics {
+        private final int pulses;
+        private final long[] sortedFrames;
+        private final long[] sortedLayouts;
+        private final long maxHeapUsed;
+
+        private Statistics(int pulses, long[] sortedFrames, long[] sortedLayouts, long maxHeapUsed) {
+            this.pulses = pulses;
+            this.sortedFrames = sortedFrames;
+            this.sortedLayouts = sortedLayouts;
+            this.maxHeapUsed = maxHeapUsed;
+        }
+
+        int getPulses() {
+            return pulses;
+        }
+
+        /**
+         * @param percentile
+         *     the percentile between 0 and 100
+         * @return the frame time at the percentile, 0 if there were no pulses
+         */
+        long getFrameNanos(double percentile) {
+            return percentile(sortedFrames, percentile);
+        }
+
+        long getLayoutNanos(double percentile) {
+            return percentile(sortedLayouts, percentile);
+        }
+
+        int getSlowFrames() {
+            int slow = 0;
+            for (int i = sortedFrames.length - 1; i >= 0 && sortedFrames[i] > SLOW_FRAME_NANOS; i--) {
+                slow++;
+            }
+            return slow;
+        }
+
+        long getMaxHeapUsed() {
+            return maxHeapUsed;
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            final int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+            return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.heatmap;
+
+import com.sothawo.mapjfxdemo.projection.BatchProjection;
+import com.sothawo.mapjfxdemo.track.Track;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Counts track points per cell of the Web Mercator tile grid for the zoom levels 0 to {@link #MAX_ZOOM}. Each tile is
+ * divided into {@link #CELLS} x {@link #CELLS} cells; only tiles that contain points have a count array. Adding
+ * points returns the tiles that changed, so only those need to be rendered again. Each zoom level keeps the count of
+ * its fullest cell for the color scale; when it grows, all tiles of that zoom level change.
+ * <p>
+ * The grid can be used from several threads; adding points blocks the readers.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class DensityGrid {
+
+    /** the highest zoom level with counts, the map scales up these tiles for higher zoom levels. */
+    public static final int MAX_ZOOM = 16;
+    /** number of cells along a tile side. */
+    public static final int CELLS = 64;
+    private static final int CELL_BITS = 6;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /** the tiles for each zoom level by tile key. */
+    private final List<Map<Long, Tile>> tiles;
+    /** the highest cell count of each zoom level. */
+    private final int[] maxCounts = new int[MAX_ZOOM + 1];
+    /** changes when the highest cell count of a zoom level changes. */
+    private final long[] scaleVersions = new long[MAX_ZOOM + 1];
+    private long points;
+
+    public DensityGrid() {
+        tiles = new ArrayList<>(MAX_ZOOM + 1);
+        for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+            tiles.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * @param zoom
+     *     zoom level
+     * @param x
+     *     tile x
+     * @param y
+     *     tile y
+     * @return the key of a tile
+     */
+    public static long tileKey(int zoom, int x, int y) {
+        return (long) zoom << 58 | (long) x << 29 | y;
+    }
+
+    public static int zoomOf(long tileKey) {
+        return (int) (tileKey >>> 58);
+    }
+
+    public static int xOf(long tileKey) {
+        return (int) (tileKey >>> 29) & 0x1fff_ffff;
+    }
+
+    public static int yOf(long tileKey) {
+        return (int) tileKey & 0x1fff_ffff;
+    }
+
+    /**
+     * adds the points of a track.
+     *
+     * @param track
+     *     the track
+     * @return the keys of the tiles whose rendering changed, including the neighbours of changed tiles as their
+     * borders are blended
+     */
+    public Set<Long> add(Track track) {
+        final int size = track.size();
+        // the cell coordinates at the highest zoom level, the lower levels are derived by shifting
+        final int[] cellX = new int[size];
+        final int[] cellY = new int[size];
+        // the copies of the columns receive the pixel coordinates
+        final double[] pixelY = track.latitudes();
+        final double[] pixelX = track.longitudes();
+        BatchProjection.toPixels(pixelY, pixelX, MAX_ZOOM, pixelX, pixelY, size);
+        final double cellsPerPixel = (double) CELLS / BatchProjection.TILE_SIZE;
+        final double worldCells = (double) (CELLS << MAX_ZOOM);
+        for (int i = 0; i < size; i++) {
+            cellX[i] = (int) Math.max(0, Math.min(worldCells - 1, pixelX[i] * cellsPerPixel));
+            cellY[i] = (int) Math.max(0, Math.min(worldCells - 1, pixelY[i] * cellsPerPixel));
+        }
+
+        final Set<Long> changed = new HashSet<>();
+        lock.writeLock().lock();
+        try {
+            for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+                final int shift = MAX_ZOOM - zoom;
+                final Map<Long, Tile> zoomTiles = tiles.get(zoom);
+                long lastKey = -1;
+                Tile tile = null;
+                int maxCount = maxCounts[zoom];
+                for (int i = 0; i < size; i++) {
+                    final int cx = cellX[i] >>> shift;
+                    final int cy = cellY[i] >>> shift;
+                    final long key = tileKey(zoom, cx >>> CELL_BITS, cy >>> CELL_BITS);
+                    // consecutive points of a track are mostly in the same tile
+                    if (key != lastKey) {
+                        tile = zoomTiles.computeIfAbsent(key, k -> new Tile());
+                        if (changed.add(key)) {
+                            tile.version++;
+                        }
+                        lastKey = key;
+                    }
+                    final int count = ++tile.counts[(cy & (CELLS - 1)) * CELLS + (cx & (CELLS - 1))];
+                    if (count > maxCount) {
+                        maxCount = count;
+                    }
+                }
+                if (maxCount != maxCounts[zoom]) {
+                    maxCounts[zoom] = maxCount;
+                    scaleVersions[zoom]++;
+                }
+            }
+            points += size;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        final Set<Long> withNeighbours = new HashSet<>(changed);
+        for (long key : changed) {
+            final int zoom = zoomOf(key);
+            final int x = xOf(key);
+            final int y = yOf(key);
+            final int maxTile = (1 << zoom) - 1;
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (x + dx >= 0 && x + dx <= maxTile && y + dy >= 0 && y + dy <= maxTile) {
+                        withNeighbours.add(tileKey(zoom, x + dx, y + dy));
+                    }
+                }
+            }
+        }
+        return withNeighbours;
+    }
+
+    /**
+     * removes all points.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+                tiles.get(zoom).clear();
+                maxCounts[zoom] = 0;
+                scaleVersions[zoom]++;
+            }
+            points = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of points added
+     */
+    public long getPoints() {
+        lock.readLock().lock();
+        try {
+            return points;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param zoom
+     *     zoom level
+     * @return changes when the color scale of the zoom level changes
+     */
+    public long getScaleVersion(int zoom) {
+        lock.readLock().lock();
+        try {
+            return scaleVersions[zoom];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * copies the counts of a tile together with a border of one cell from the neighbouring tiles.
+     *
+     * @param tileKey
+     *     the tile
+     * @return the counts, null if the tile and its neighbours have no points
+     */
+    public Snapshot snapshot(long tileKey) {
+        final int zoom = zoomOf(tileKey);
+        final int x = xOf(tileKey);
+        final int y = yOf(tileKey);
+        if (zoom > MAX_ZOOM) {
+            return null;
+        }
+        final int paddedCells = CELLS + 2;
+        lock.readLock().lock();
+        try {
+            int[] counts = null;
+            long version = scaleVersions[zoom] << 32;
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (x + dx < 0 || y + dy < 0) {
+                        continue;
+                    }
+                    final Tile tile = tiles.get(zoom).get(tileKey(zoom, x + dx, y + dy));
+                    if (tile == null) {
+                        continue;
+                    }
+                    if (counts == null) {
+                        counts = new int[paddedCells * paddedCells];
+                    }
+                    version += tile.version;
+                    // the part of the neighbour that lies in the padded area, in cells of the padded grid
+                    final int fromX = dx < 0 ? 0 : dx == 0 ? 1 : CELLS + 1;
+                    final int toX = dx < 0 ? 1 : dx == 0 ? CELLS + 1 : CELLS + 2;
+                    final int fromY = dy < 0 ? 0 : dy == 0 ? 1 : CELLS + 1;
+                    final int toY = dy < 0 ? 1 : dy == 0 ? CELLS + 1 : CELLS + 2;
+                    for (int py = fromY; py < toY; py++) {
+                        final int tileY = py - 1 - dy * CELLS;
+                        for (int px = fromX; px < toX; px++) {
+                            final int tileX = px - 1 - dx * CELLS;
+                            counts[py * paddedCells + px] = tile.counts[tileY * CELLS + tileX];
+                        }
+                    }
+                }
+            }
+            return counts == null ? null : new Snapshot(counts, maxCounts[zoom], version);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static final class Tile {
+        private final int[] counts = new int[CELLS * CELLS];
+        private long version;
+    }
+
+    /**
+     * the counts of a tile with a one cell border, (CELLS + 2) x (CELLS + 2) values.
+     */
+    public static final class Snapshot {
+        private final int[] counts;
+        private final int maxCount;
+        private final long version;
+
+        private Snapshot(int[] counts, int maxCount, long version) {
+            this.counts = counts;
+            this.maxCount = maxCount;
+            this.version = version;
+        }
+
+        public int[] getCounts() {
+            return counts;
+        }
+
+        /**
+         * @return the highest cell count of the zoom level
+         */
+        public int getMaxCount() {
+            return maxCount;
+        }
+
+        /**
+         * @return changes when the counts of the tile or its neighbours or the color scale change
+         */
+        public long getVersion() {
+            return version;
+        }
+    }
+}
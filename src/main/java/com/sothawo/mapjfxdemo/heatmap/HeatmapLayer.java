@@ -0,0 +1,150 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.heatmap;
+
+import com.sothawo.mapjfx.MapView;
+import com.sothawo.mapjfxdemo.offline.LoopbackHttpServers;
+import javafx.scene.Node;
+import javafx.scene.web.WebEngine;
+import javafx.scene.web.WebView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shows the tiles of a {@link HeatmapTileServer} as a transparent layer over the map. mapjfx uses an XYZ source only
+ * as base map, so the layer is added to the OpenLayers map in the map's WebView, between the base map and the layer
+ * with the lines and markers. As mapjfx replaces the layers when the map type changes, the layer is added again after
+ * each change of the map type.
+ * <p>
+ * mapjfx has no API for additional layers, so the layer relies on internals of the map's JavaScript code that were
+ * checked against mapjfx 3.1.0: the global {@code _jsMapView} with its OpenLayers map in {@code _jsMapView.map}, and
+ * {@code JSMapView.prototype.setMapType}, which is wrapped to add the layer again. Installing fails with an error in
+ * the log when one of them is missing, which is to be checked after an update of mapjfx.
+ * <p>
+ * All methods must be called on the JavaFX Application Thread after the map is initialized.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class HeatmapLayer {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(HeatmapLayer.class);
+
+    /** returns null when the layer is installed, otherwise the missing mapjfx internal. */
+    private static final String INSTALL_SCRIPT = String.join("\n",
+        "(function () {",
+        "    if (window.__heatmapLayer) {",
+        "        return null;",
+        "    }",
+        "    if (typeof _jsMapView === 'undefined' || !_jsMapView || !_jsMapView.map",
+        "        || typeof _jsMapView.map.getLayerGroup !== 'function') {",
+        "        return '_jsMapView.map.getLayerGroup()';",
+        "    }",
+        "    if (typeof JSMapView === 'undefined' || typeof JSMapView.prototype.setMapType !== 'function') {",
+        "        return 'JSMapView.prototype.setMapType';",
+        "    }",
+        "    var heatmap = {url: null, maxZoom: 16, visible: false, version: 0, layer: null};",
+        "    heatmap.apply = function () {",
+        "        var layers = _jsMapView.map.getLayerGroup().getLayers();",
+        "        if (heatmap.layer) {",
+        "            layers.remove(heatmap.layer);",
+        "        }",
+        "        if (!heatmap.visible || !heatmap.url) {",
+        "            return;",
+        "        }",
+        "        if (!heatmap.layer) {",
+        "            heatmap.layer = new ol.layer.Tile({",
+        "                opacity: 0.8,",
+        "                source: new ol.source.XYZ({",
+        "                    projection: 'EPSG:3857',",
+        "                    maxZoom: heatmap.maxZoom,",
+        "                    url: heatmap.url + '?v=' + heatmap.version",
+        "                })",
+        "            });",
+        "        }",
+        "        // the last layer has the lines and markers",
+        "        layers.insertAt(Math.max(0, layers.getLength() - 1), heatmap.layer);",
+        "    };",
+        "    heatmap.refresh = function () {",
+        "        heatmap.version++;",
+        "        if (heatmap.layer) {",
+        "            heatmap.layer.getSource().setUrl(heatmap.url + '?v=' + heatmap.version);",
+        "        }",
+        "    };",
+        "    var setMapType = JSMapView.prototype.setMapType;",
+        "    JSMapView.prototype.setMapType = function () {",
+        "        var result = setMapType.apply(this, arguments);",
+        "        heatmap.apply();",
+        "        return result;",
+        "    };",
+        "    window.__heatmapLayer = heatmap;",
+        "    return null;",
+        "})();");
+
+    private final WebEngine engine;
+    private boolean visible;
+
+    private HeatmapLayer(WebEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * adds the layer to a map, it is not visible until {@link #setVisible(boolean)} is called.
+     *
+     * @param mapView
+     *     the initialized map
+     * @param server
+     *     the server for the tiles
+     * @return the layer
+     * @throws IllegalStateException
+     *     if the map has no WebView or the mapjfx internals the layer needs are missing
+     */
+    public static HeatmapLayer install(MapView mapView, HeatmapTileServer server) {
+        final Node node = mapView.lookup(".web-view");
+        if (!(node instanceof WebView)) {
+            throw new IllegalStateException("no WebView in the map");
+        }
+        final WebEngine engine = ((WebView) node).getEngine();
+        // every refresh creates new tile urls, the offline cache would keep all of them on disk
+        LoopbackHttpServers.excludeFromOfflineCache(server.getUrlTemplate());
+        final Object missing = engine.executeScript(INSTALL_SCRIPT);
+        if (missing instanceof String) {
+            logger.error("cannot install the heatmap layer, {} is missing in the map's JavaScript code; the layer "
+                + "was written against the internals of mapjfx 3.1.0", missing);
+            throw new IllegalStateException("mapjfx internal " + missing + " is missing");
+        }
+        // the url is created by the server and contains no quotes
+        engine.executeScript("window.__heatmapLayer.url = '" + server.getUrlTemplate() + "';"
+            + "window.__heatmapLayer.maxZoom = " + server.getMaxZoom() + ';');
+        return new HeatmapLayer(engine);
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+        engine.executeScript("window.__heatmapLayer.visible = " + visible + "; window.__heatmapLayer.apply();");
+    }
+
+    /**
+     * reloads the tiles, to be called when points were added to the server.
+     */
+    public void refresh() {
+        engine.executeScript("window.__heatmapLayer.refresh();");
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.heatmap;
+
+/**
+ * Renders the cell counts of a tile into a 256 x 256 pixel PNG. The counts are smoothed over the neighbouring cells,
+ * interpolated between the cell centers and mapped on a logarithmic scale from transparent blue to red, relative to
+ * the fullest cell of the zoom level.
+ * <p>
+ * The renderer has no state and can be used from several threads.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+final class HeatmapRenderer {
+
+    static final int TILE_SIZE = 256;
+    private static final int CELLS = DensityGrid.CELLS;
+    private static final int PADDED_CELLS = CELLS + 2;
+    private static final int PIXELS_PER_CELL = TILE_SIZE / CELLS;
+
+    /** color stops as position and RGBA. */
+    private static final double[] STOPS = {0.0, 0.2, 0.4, 0.6, 0.8, 1.0};
+    private static final int[][] STOP_COLORS = {
+        {0, 0, 255, 0},
+        {0, 0, 255, 140},
+        {0, 255, 255, 180},
+        {0, 255, 0, 210},
+        {255, 255, 0, 230},
+        {255, 0, 0, 255}
+    };
+    /** the color ramp as RGBA bytes. */
+    private static final byte[] RAMP = createRamp(256);
+
+    /** a tile without points. */
+    static final byte[] EMPTY_TILE = PngEncoder.encode(TILE_SIZE, TILE_SIZE, new byte[TILE_SIZE * TILE_SIZE * 4]);
+
+    private HeatmapRenderer() {
+    }
+
+    /**
+     * @param snapshot
+     *     the counts of the tile, may be null
+     * @return the PNG image of the tile
+     */
+    static byte[] render(DensityGrid.Snapshot snapshot) {
+        if (snapshot == null || snapshot.getMaxCount() == 0) {
+            return EMPTY_TILE;
+        }
+        final int[] counts = snapshot.getCounts();
+        final double scale = 1 / Math.log1p(snapshot.getMaxCount());
+
+        // smoothed and scaled values at the cell centers, with the border cells for the interpolation at the edges
+        final double[] values = new double[PADDED_CELLS * PADDED_CELLS];
+        for (int y = 0; y < PADDED_CELLS; y++) {
+            for (int x = 0; x < PADDED_CELLS; x++) {
+                double sum = 0;
+                double weights = 0;
+                for (int dy = -1; dy <= 1; dy++) {
+                    final int ny = y + dy;
+                    if (ny < 0 || ny >= PADDED_CELLS) {
+                        continue;
+                    }
+                    for (int dx = -1; dx <= 1; dx++) {
+                        final int nx = x + dx;
+                        if (nx < 0 || nx >= PADDED_CELLS) {
+                            continue;
+                        }
+                        final double weight = (dx == 0 ? 2 : 1) * (dy == 0 ? 2 : 1);
+                        sum += weight * counts[ny * PADDED_CELLS + nx];
+                        weights += weight;
+                    }
+                }
+                values[y * PADDED_CELLS + x] = Math.min(1, Math.log1p(sum / weights * 4) * scale);
+            }
+        }
+
+        final byte[] rgba = new byte[TILE_SIZE * TILE_SIZE * 4];
+        for (int py = 0; py < TILE_SIZE; py++) {
+            // position in the padded grid, cell centers are at integer positions
+            final double gy = (py + 0.5) / PIXELS_PER_CELL + 0.5;
+            final int y0 = (int) gy;
+            final double fy = gy - y0;
+            for (int px = 0; px < TILE_SIZE; px++) {
+                final double gx = (px + 0.5) / PIXELS_PER_CELL + 0.5;
+                final int x0 = (int) gx;
+                final double fx = gx - x0;
+                final int index = y0 * PADDED_CELLS + x0;
+                final double value = (values[index] * (1 - fx) + values[index + 1] * fx) * (1 - fy)
+                    + (values[index + PADDED_CELLS] * (1 - fx) + values[index + PADDED_CELLS + 1] * fx) * fy;
+                if (value > 0) {
+                    final int ramp = (int) (value * 255) * 4;
+                    final int pixel = (py * TILE_SIZE + px) * 4;
+                    rgba[pixel] = RAMP[ramp];
+                    rgba[pixel + 1] = RAMP[ramp + 1];
+                    rgba[pixel + 2] = RAMP[ramp + 2];
+                    rgba[pixel + 3] = RAMP[ramp + 3];
+                }
+            }
+        }
+        return PngEncoder.encode(TILE_SIZE, TILE_SIZE, rgba);
+    }
+
+    private static byte[] createRamp(int size) {
+        final byte[] ramp = new byte[size * 4];
+        for (int i = 0; i < size; i++) {
+            final double position = (double) i / (size - 1);
+            int stop = 1;
+            while (stop < STOPS.length - 1 && position > STOPS[stop]) {
+                stop++;
+            }
+            final double f = (position - STOPS[stop - 1]) / (STOPS[stop] - STOPS[stop - 1]);
+            for (int channel = 0; channel < 4; channel++) {
+                ramp[i * 4 + channel] = (byte) Math.round(
+                    STOP_COLORS[stop - 1][channel] + f * (STOP_COLORS[stop][channel] - STOP_COLORS[stop - 1][channel]));
+            }
+        }
+        return ramp;
+    }
+}
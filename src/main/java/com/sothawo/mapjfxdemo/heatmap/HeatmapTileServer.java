@@ -0,0 +1,237 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.heatmap;
+
+import com.sothawo.mapjfxdemo.offline.LoopbackHttpServers;
+import com.sothawo.mapjfxdemo.track.Track;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the density of track points as transparent heatmap tiles on the loopback interface. The points are binned
+ * into a {@link DensityGrid}; the tiles are rendered when they are requested and kept in a cache of recently used
+ * tiles. The requests are handled and the tiles rendered on a fork-join pool.
+ * <p>
+ * When tracks are added, only the cached tiles whose counts or color scale changed are rendered again, in parallel;
+ * the returned future completes when the cache is up to date, then the map can reload the tiles.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class HeatmapTileServer implements AutoCloseable {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(HeatmapTileServer.class);
+
+    private static final Pattern TILE_PATH = Pattern.compile("/heatmap/(\\d+)/(\\d+)/(\\d+)\\.png");
+    private static final int MAX_CACHED_TILES = 2048;
+
+    private final DensityGrid grid = new DensityGrid();
+    private final ForkJoinPool pool;
+    private final HttpServer server;
+    /** the rendered tiles by tile key, least recently used first; guarded by itself. */
+    private final LinkedHashMap<Long, RenderedTile> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, RenderedTile> eldest) {
+            return size() > MAX_CACHED_TILES;
+        }
+    };
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong renderCount = new AtomicLong();
+
+    private HeatmapTileServer(HttpServer server, ForkJoinPool pool) {
+        this.server = server;
+        this.pool = pool;
+    }
+
+    /**
+     * starts a server on a free port of the loopback interface.
+     *
+     * @return the running server
+     * @throws IOException
+     *     if the server cannot be started
+     */
+    public static HeatmapTileServer start() throws IOException {
+        final HttpServer server = LoopbackHttpServers.create();
+        final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), forkJoinPool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("heatmap-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        final HeatmapTileServer heatmapServer = new HeatmapTileServer(server, pool);
+        server.createContext("/heatmap/", heatmapServer::handle);
+        server.setExecutor(pool);
+        server.start();
+        logger.info("heatmap tile server started on port {}", server.getAddress().getPort());
+        return heatmapServer;
+    }
+
+    /**
+     * @return the url template for the tiles of this server
+     */
+    public String getUrlTemplate() {
+        return "http://" + server.getAddress().getHostString() + ':' + server.getAddress().getPort()
+            + "/heatmap/{z}/{x}/{y}.png";
+    }
+
+    /**
+     * @return the highest zoom level with own tiles, the map scales these up for higher zoom levels
+     */
+    public int getMaxZoom() {
+        return DensityGrid.MAX_ZOOM;
+    }
+
+    /**
+     * adds the points of tracks in the background.
+     *
+     * @param tracks
+     *     the tracks
+     * @return future that completes when the points are added and the changed tiles in the cache are rendered again
+     */
+    public CompletableFuture<Void> add(Collection<Track> tracks) {
+        final List<Track> copy = List.copyOf(tracks);
+        return CompletableFuture.runAsync(() -> {
+            final long start = System.nanoTime();
+            final long[] scaleVersions = new long[DensityGrid.MAX_ZOOM + 1];
+            for (int zoom = 0; zoom <= DensityGrid.MAX_ZOOM; zoom++) {
+                scaleVersions[zoom] = grid.getScaleVersion(zoom);
+            }
+            final Set<Long> changed = new HashSet<>();
+            int points = 0;
+            for (Track track : copy) {
+                changed.addAll(grid.add(track));
+                points += track.size();
+            }
+
+            final List<Long> stale = new ArrayList<>();
+            synchronized (cache) {
+                for (Long key : cache.keySet()) {
+                    final int zoom = DensityGrid.zoomOf(key);
+                    if (changed.contains(key) || grid.getScaleVersion(zoom) != scaleVersions[zoom]) {
+                        stale.add(key);
+                    }
+                }
+            }
+            // runs on the pool of this task
+            stale.parallelStream().forEach(this::renderAndCache);
+            logger.debug("added {} points, {} changed tiles, rendered {} cached tiles in {} ms", points,
+                changed.size(), stale.size(), (System.nanoTime() - start) / 1_000_000);
+        }, pool);
+    }
+
+    /**
+     * removes all points.
+     */
+    public void clear() {
+        grid.clear();
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return the number of points in the heatmap
+     */
+    public long getPoints() {
+        return grid.getPoints();
+    }
+
+    private byte[] renderAndCache(long key) {
+        final DensityGrid.Snapshot snapshot = grid.snapshot(key);
+        final byte[] png = HeatmapRenderer.render(snapshot);
+        renderCount.incrementAndGet();
+        final long version = snapshot == null ? -1 : snapshot.getVersion();
+        synchronized (cache) {
+            final RenderedTile cached = cache.get(key);
+            // a tile that was rendered from older counts must not replace a newer one
+            if (cached == null || cached.version <= version) {
+                cache.put(key, new RenderedTile(png, version));
+            }
+        }
+        return png;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requestCount.incrementAndGet();
+            final Matcher matcher = TILE_PATH.matcher(exchange.getRequestURI().getPath());
+            if (!matcher.matches()) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            final int zoom = Integer.parseInt(matcher.group(1));
+            final int x = Integer.parseInt(matcher.group(2));
+            final int y = Integer.parseInt(matcher.group(3));
+            if (zoom > DensityGrid.MAX_ZOOM || x >= 1 << zoom || y >= 1 << zoom) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            final long key = DensityGrid.tileKey(zoom, x, y);
+            final RenderedTile cached;
+            synchronized (cache) {
+                cached = cache.get(key);
+            }
+            final byte[] png = cached != null ? cached.png : renderAndCache(key);
+            exchange.getResponseHeaders().add("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, png.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(png);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        pool.shutdown();
+        logger.info("heatmap tile server stopped: {}", this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d points, %d requests, %d tiles rendered", grid.getPoints(), requestCount.get(),
+            renderCount.get());
+    }
+
+    private static final class RenderedTile {
+        private final byte[] png;
+        private final long version;
+
+        private RenderedTile(byte[] png, long version) {
+            this.png = png;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.heatmap;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes RGBA images as PNG without the AWT image classes, so that the tiles can be created on any thread of a
+ * headless JVM.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+final class PngEncoder {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final byte BIT_DEPTH = 8;
+    private static final byte COLOR_TYPE_RGBA = 6;
+
+    private PngEncoder() {
+    }
+
+    /**
+     * @param width
+     *     image width
+     * @param height
+     *     image height
+     * @param rgba
+     *     the pixels, 4 bytes per pixel, row by row
+     * @return the PNG data
+     */
+    static byte[] encode(int width, int height, byte[] rgba) {
+        final int rowBytes = width * 4;
+        // each row starts with the filter type, 0 is none
+        final byte[] raw = new byte[height * (rowBytes + 1)];
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(rgba, row * rowBytes, raw, row * (rowBytes + 1) + 1, rowBytes);
+        }
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(raw);
+        deflater.finish();
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 8 + 64);
+        final byte[] buffer = new byte[16 * 1024];
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+
+        final ByteArrayOutputStream png = new ByteArrayOutputStream(compressed.size() + 64);
+        png.writeBytes(SIGNATURE);
+        writeChunk(png, "IHDR", ByteBuffer.allocate(13)
+            .putInt(width).putInt(height).put(BIT_DEPTH).put(COLOR_TYPE_RGBA).put((byte) 0).put((byte) 0)
+            .put((byte) 0).array());
+        writeChunk(png, "IDAT", compressed.toByteArray());
+        writeChunk(png, "IEND", new byte[0]);
+        return png.toByteArray();
+    }
+
+    private static void writeChunk(ByteArrayOutputStream png, String type, byte[] data) {
+        final byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        final CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        png.writeBytes(ByteBuffer.allocate(4).putInt(data.length).array());
+        png.writeBytes(typeBytes);
+        png.writeBytes(data);
+        png.writeBytes(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+    }
+}
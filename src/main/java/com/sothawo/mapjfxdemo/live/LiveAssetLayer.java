@@ -0,0 +1,343 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.live;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.Extent;
+import com.sothawo.mapjfx.MapView;
+import com.sothawo.mapjfx.Marker;
+import com.sothawo.mapjfxdemo.animation.FrameScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Shows the live positions of assets from a {@link PositionRingBuffer} as markers in a {@link MapView}. Once per
+ * JavaFX pulse the buffer is drained; the updates for the same asset are coalesced so that only the latest position
+ * of each changed asset is applied to its marker. Assets outside of the current extent are not in the map, their
+ * positions are only recorded, so the work per pulse depends on the number of changed visible assets and not on the
+ * message rate.
+ * <p>
+ * All methods must be called on the JavaFX Application Thread.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class LiveAssetLayer {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(LiveAssetLayer.class);
+
+    /** interval for the statistics listener. */
+    private static final long STATISTICS_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final MapView mapView;
+    private final PositionRingBuffer buffer;
+    /** supplies the marker for an asset, argument is the asset id. */
+    private final IntFunction<Marker> markerFactory;
+
+    /** the latest positions per asset id, NaN if the asset is not yet known. */
+    private double[] latitudes = new double[0];
+    private double[] longitudes = new double[0];
+    private Marker[] markers = new Marker[0];
+    private boolean[] inMap = new boolean[0];
+    /** true for the assets in changedIds. */
+    private boolean[] changed = new boolean[0];
+    /** ids of the assets that changed in the current pulse. */
+    private int[] changedIds = new int[64];
+    private int changedCount;
+    private int assetCount;
+    private int inMapCount;
+
+    /** the last extent set, null if not yet known. */
+    private Extent extent;
+
+    private final FrameScheduler frameScheduler;
+    /** the task applying the updates once per pulse, null when the layer is stopped. */
+    private FrameScheduler.Registration updateTask;
+
+    private Consumer<Statistics> statisticsListener;
+    /** receives every drained update, null if not set. */
+    private PositionRingBuffer.PositionConsumer positionListener;
+    private long windowStart = System.nanoTime();
+    private long windowReceived;
+    private long windowApplied;
+    private long updatesReceived;
+    private long updatesApplied;
+    private double receivedPerSecond;
+    private double appliedPerSecond;
+
+    /**
+     * @param mapView
+     *     the map to show the assets in
+     * @param frameScheduler
+     *     the scheduler for the once per pulse updates
+     * @param buffer
+     *     the buffer the updates arrive in; the layer is its only consumer
+     * @param markerFactory
+     *     creates the marker for an asset id when the asset is first seen
+     */
+    public LiveAssetLayer(MapView mapView, FrameScheduler frameScheduler, PositionRingBuffer buffer,
+                          IntFunction<Marker> markerFactory) {
+        this.mapView = mapView;
+        this.frameScheduler = frameScheduler;
+        this.buffer = buffer;
+        this.markerFactory = markerFactory;
+    }
+
+    /**
+     * @param statisticsListener
+     *     called about once per second while the layer is running
+     * @return this object
+     */
+    public LiveAssetLayer setStatisticsListener(Consumer<Statistics> statisticsListener) {
+        this.statisticsListener = statisticsListener;
+        return this;
+    }
+
+    /**
+     * @param positionListener
+     *     called on the JavaFX Application Thread for every update drained from the buffer, before updates of the same
+     *     asset are coalesced
+     * @return this object
+     */
+    public LiveAssetLayer setPositionListener(PositionRingBuffer.PositionConsumer positionListener) {
+        this.positionListener = positionListener;
+        return this;
+    }
+
+    /**
+     * starts applying the updates from the buffer.
+     */
+    public void start() {
+        windowStart = System.nanoTime();
+        if (updateTask == null) {
+            updateTask = frameScheduler.everyFrame(now -> {
+                applyUpdates(now);
+                return true;
+            });
+        }
+    }
+
+    /**
+     * stops applying updates and removes all markers from the map; the updates in the buffer are discarded.
+     */
+    public void stop() {
+        if (updateTask != null) {
+            updateTask.cancel();
+            updateTask = null;
+        }
+        buffer.drain((assetId, latitude, longitude) -> {
+        }, buffer.getCapacity());
+        for (int assetId = 0; assetId < assetCount; assetId++) {
+            if (inMap[assetId]) {
+                mapView.removeMarker(markers[assetId]);
+                inMap[assetId] = false;
+            }
+        }
+        inMapCount = 0;
+        logger.debug("live asset layer stopped: {}", getStatistics());
+    }
+
+    /**
+     * sets the visible extent; assets entering it are added to the map, the ones leaving it are removed.
+     *
+     * @param extent
+     *     the new extent
+     */
+    public void setExtent(Extent extent) {
+        this.extent = extent;
+        for (int assetId = 0; assetId < assetCount; assetId++) {
+            if (!Double.isNaN(latitudes[assetId])) {
+                updateMarker(assetId);
+            }
+        }
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(assetCount, inMapCount, updatesReceived, updatesApplied, receivedPerSecond,
+            appliedPerSecond, buffer.getRejected());
+    }
+
+    private void applyUpdates(long now) {
+        // only drain what was there at the start, a fast producer must not keep the pulse busy
+        final int received = buffer.drain(this::record, buffer.getCapacity());
+        updatesReceived += received;
+        windowReceived += received;
+
+        for (int i = 0; i < changedCount; i++) {
+            final int assetId = changedIds[i];
+            changed[assetId] = false;
+            if (updateMarker(assetId)) {
+                updatesApplied++;
+                windowApplied++;
+            }
+        }
+        changedCount = 0;
+
+        if (now - windowStart >= STATISTICS_INTERVAL_NANOS) {
+            receivedPerSecond = windowReceived * 1e9 / (now - windowStart);
+            appliedPerSecond = windowApplied * 1e9 / (now - windowStart);
+            windowStart = now;
+            windowReceived = 0;
+            windowApplied = 0;
+            if (statisticsListener != null) {
+                statisticsListener.accept(getStatistics());
+            }
+        }
+    }
+
+    /**
+     * records the latest position of an asset; called for every drained update, so it must not allocate.
+     */
+    private void record(int assetId, double latitude, double longitude) {
+        if (assetId < 0) {
+            return;
+        }
+        if (positionListener != null) {
+            positionListener.accept(assetId, latitude, longitude);
+        }
+        if (assetId >= latitudes.length) {
+            grow(assetId + 1);
+        }
+        assetCount = Math.max(assetCount, assetId + 1);
+        latitudes[assetId] = latitude;
+        longitudes[assetId] = longitude;
+        if (!changed[assetId]) {
+            changed[assetId] = true;
+            if (changedCount == changedIds.length) {
+                changedIds = Arrays.copyOf(changedIds, changedCount * 2);
+            }
+            changedIds[changedCount++] = assetId;
+        }
+    }
+
+    /**
+     * brings the marker of an asset in line with its position and the extent.
+     *
+     * @return true if the marker's position was set
+     */
+    private boolean updateMarker(int assetId) {
+        final double latitude = latitudes[assetId];
+        final double longitude = longitudes[assetId];
+        final boolean visible = extent != null
+            && latitude >= extent.getMin().getLatitude() && latitude <= extent.getMax().getLatitude()
+            && longitude >= extent.getMin().getLongitude() && longitude <= extent.getMax().getLongitude();
+        if (visible) {
+            Marker marker = markers[assetId];
+            if (marker == null) {
+                marker = markerFactory.apply(assetId);
+                markers[assetId] = marker;
+            }
+            final Coordinate position = marker.getPosition();
+            if (position != null && position.getLatitude() == latitude && position.getLongitude() == longitude) {
+                return false;
+            }
+            marker.setPosition(new Coordinate(latitude, longitude));
+            if (!inMap[assetId]) {
+                // adding can only be done after the position is set
+                mapView.addMarker(marker);
+                inMap[assetId] = true;
+                inMapCount++;
+            }
+            return true;
+        } else if (inMap[assetId]) {
+            mapView.removeMarker(markers[assetId]);
+            inMap[assetId] = false;
+            inMapCount--;
+        }
+        return false;
+    }
+
+    private void grow(int minSize) {
+        final int size = Math.max(minSize, latitudes.length * 2);
+        final int oldSize = latitudes.length;
+        latitudes = Arrays.copyOf(latitudes, size);
+        longitudes = Arrays.copyOf(longitudes, size);
+        Arrays.fill(latitudes, oldSize, size, Double.NaN);
+        Arrays.fill(longitudes, oldSize, size, Double.NaN);
+        markers = Arrays.copyOf(markers, size);
+        inMap = Arrays.copyOf(inMap, size);
+        changed = Arrays.copyOf(changed, size);
+    }
+
+    /**
+     * snapshot of the layer's counters.
+     */
+    public static final class Statistics {
+        private final int assets;
+        private final int assetsInMap;
+        private final long updatesReceived;
+        private final long updatesApplied;
+        private final double receivedPerSecond;
+        private final double appliedPerSecond;
+        private final long updatesDropped;
+
+        private Statistics(int assets, int assetsInMap, long updatesReceived, long updatesApplied,
+                           double receivedPerSecond, double appliedPerSecond, long updatesDropped) {
+            this.assets = assets;
+            this.assetsInMap = assetsInMap;
+            this.updatesReceived = updatesReceived;
+            this.updatesApplied = updatesApplied;
+            this.receivedPerSecond = receivedPerSecond;
+            this.appliedPerSecond = appliedPerSecond;
+            this.updatesDropped = updatesDropped;
+        }
+
+        public int getAssets() {
+            return assets;
+        }
+
+        public int getAssetsInMap() {
+            return assetsInMap;
+        }
+
+        public long getUpdatesReceived() {
+            return updatesReceived;
+        }
+
+        /**
+         * @return the number of marker position changes; lower than the received updates because of coalescing and
+         * assets outside of the extent
+         */
+        public long getUpdatesApplied() {
+            return updatesApplied;
+        }
+
+        public double getReceivedPerSecond() {
+            return receivedPerSecond;
+        }
+
+        public double getAppliedPerSecond() {
+            return appliedPerSecond;
+        }
+
+        /**
+         * @return the number of updates dropped because the buffer was full
+         */
+        public long getUpdatesDropped() {
+            return updatesDropped;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d assets, %d in map, %.0f updates/s received, %.0f/s applied, %d dropped", assets,
+                assetsInMap, receivedPerSecond, appliedPerSecond, updatesDropped);
+        }
+    }
+}
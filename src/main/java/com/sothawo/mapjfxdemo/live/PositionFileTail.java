@@ -0,0 +1,286 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.live;
+
+import com.sothawo.mapjfxdemo.track.TrackLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads position updates from a file that another process appends to, like {@code tail -F}, and offers them to a
+ * {@link PositionRingBuffer}. Each line has the form {@code id;lat;lon} with a non-negative integer asset id; empty
+ * lines are skipped, lines that cannot be parsed are counted and skipped.
+ * <p>
+ * The reader thread polls the file every {@link #POLL_MILLIS} ms when it has reached the end. It waits for the file
+ * if it does not exist yet, starts from the beginning again when the file was truncated and opens it again when it
+ * was replaced. A partial last line is kept until the writer has finished it.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class PositionFileTail implements AutoCloseable {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(PositionFileTail.class);
+
+    /** the time between two checks of the file when all data has been read. */
+    public static final long POLL_MILLIS = 10;
+    /** size of the read buffer, lines must be shorter than this. */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final PositionRingBuffer buffer;
+    private final boolean fromEnd;
+
+    private volatile boolean running;
+    private Thread thread;
+    private final AtomicLong linesRead = new AtomicLong();
+    private final AtomicLong badLines = new AtomicLong();
+
+    /**
+     * @param file
+     *     the file to read
+     * @param buffer
+     *     the buffer to offer the updates to
+     * @param fromEnd
+     *     if true, the content the file has when it is opened first is skipped and only the lines appended after that
+     *     are read
+     */
+    public PositionFileTail(Path file, PositionRingBuffer buffer, boolean fromEnd) {
+        this.file = Objects.requireNonNull(file);
+        this.buffer = Objects.requireNonNull(buffer);
+        this.fromEnd = fromEnd;
+    }
+
+    /**
+     * @return the number of updates read from the file and offered to the buffer, including the ones the buffer
+     * rejected
+     */
+    public long getLinesRead() {
+        return linesRead.get();
+    }
+
+    /**
+     * @return the number of lines that could not be parsed
+     */
+    public long getBadLines() {
+        return badLines.get();
+    }
+
+    /**
+     * starts reading on a background thread.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            throw new IllegalStateException("tail already started");
+        }
+        running = true;
+        thread = new Thread(this::run, "live-file-tail");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("reading positions from {}", file);
+    }
+
+    /**
+     * stops reading.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            thread = null;
+        }
+    }
+
+    private void run() {
+        final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        final byte[] bytes = readBuffer.array();
+        FileChannel channel = null;
+        Object fileKey = null;
+        boolean skipToEnd = fromEnd;
+        // after jumping into the middle of the data, the bytes up to the next line end are not a complete line
+        boolean skipPartialLine = false;
+        try {
+            while (running) {
+                try {
+                    if (channel == null) {
+                        channel = FileChannel.open(file, StandardOpenOption.READ);
+                        fileKey = fileKey(file);
+                        readBuffer.clear();
+                        skipPartialLine = false;
+                        if (skipToEnd) {
+                            skipToEnd = false;
+                            final long size = channel.size();
+                            if (size > 0) {
+                                final ByteBuffer lastByte = ByteBuffer.allocate(1);
+                                channel.read(lastByte, size - 1);
+                                skipPartialLine = lastByte.get(0) != '\n';
+                            }
+                            channel.position(size);
+                        }
+                    }
+
+                    final int numRead = channel.read(readBuffer);
+                    if (numRead > 0) {
+                        final int end = readBuffer.position();
+                        int lineStart = 0;
+                        for (int i = 0; i < end; i++) {
+                            if (bytes[i] == '\n') {
+                                if (skipPartialLine) {
+                                    skipPartialLine = false;
+                                } else {
+                                    processLine(bytes, lineStart, i);
+                                }
+                                lineStart = i + 1;
+                            }
+                        }
+                        if (lineStart == 0 && end == bytes.length) {
+                            // no line end in the whole buffer
+                            badLines.incrementAndGet();
+                            readBuffer.clear();
+                            skipPartialLine = true;
+                        } else {
+                            // keep the partial last line for the next read
+                            readBuffer.limit(end).position(lineStart);
+                            readBuffer.compact();
+                        }
+                    } else if (channel.size() < channel.position()) {
+                        logger.debug("{} was truncated", file);
+                        channel.position(0);
+                        readBuffer.clear();
+                        skipPartialLine = false;
+                    } else if (!Objects.equals(fileKey, fileKey(file))) {
+                        logger.debug("{} was replaced", file);
+                        channel.close();
+                        channel = null;
+                    } else {
+                        LockSupport.parkNanos(POLL_MILLIS * 1_000_000);
+                    }
+                } catch (NoSuchFileException e) {
+                    // not yet created or just being replaced
+                    if (channel != null) {
+                        channel.close();
+                        channel = null;
+                    }
+                    LockSupport.parkNanos(POLL_MILLIS * 1_000_000);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("could not read {}", file, e);
+        } finally {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.debug("could not close {}", file, e);
+                }
+            }
+        }
+        logger.info("stopped reading {} after {} updates, {} bad lines", file, linesRead.get(), badLines.get());
+    }
+
+    /**
+     * @return the key that identifies the file, null if the file system has no such key
+     */
+    private static Object fileKey(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+
+    private void processLine(byte[] bytes, int from, int to) {
+        while (from < to && isWhitespace(bytes[from])) {
+            from++;
+        }
+        while (to > from && isWhitespace(bytes[to - 1])) {
+            to--;
+        }
+        if (from == to) {
+            return;
+        }
+        final int first = indexOf(bytes, from, to, (byte) ';');
+        final int second = first < 0 ? -1 : indexOf(bytes, first + 1, to, (byte) ';');
+        final int assetId = second < 0 ? -1 : parseAssetId(bytes, from, first);
+        if (assetId < 0) {
+            badLine(bytes, from, to);
+            return;
+        }
+        final double latitude = TrackLoader.parseDouble(bytes, first + 1, second);
+        final double longitude = TrackLoader.parseDouble(bytes, second + 1, to);
+        if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+            badLine(bytes, from, to);
+            return;
+        }
+        linesRead.incrementAndGet();
+        buffer.offer(assetId, latitude, longitude);
+    }
+
+    private void badLine(byte[] bytes, int from, int to) {
+        if (badLines.getAndIncrement() == 0) {
+            logger.debug("skipping bad line '{}' in {}", new String(bytes, from, to - from), file);
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the id or -1 if the range is not a non-negative int
+     */
+    private static int parseAssetId(byte[] bytes, int from, int to) {
+        while (from < to && isWhitespace(bytes[from])) {
+            from++;
+        }
+        while (to > from && isWhitespace(bytes[to - 1])) {
+            to--;
+        }
+        if (from == to) {
+            return -1;
+        }
+        long id = 0;
+        for (int i = from; i < to; i++) {
+            final int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            id = id * 10 + digit;
+            if (id > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return (int) id;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.live;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue of position updates for any number of producer threads and a single consumer. The updates
+ * are stored in primitive arrays, so neither offering nor draining allocates. Each slot carries a sequence number: a
+ * producer claims a slot by advancing the tail with a CAS, writes the values and then publishes the slot by setting
+ * its sequence; the consumer reads a slot only after it has been published and hands it back by setting the sequence
+ * for the next round.
+ * <p>
+ * When the buffer is full, {@link #offer(int, double, double)} returns false instead of blocking. For live positions
+ * that is the right thing to do, the next update of the asset supersedes the dropped one.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class PositionRingBuffer {
+
+    private final int capacity;
+    private final int mask;
+    private final int[] assetIds;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    /** per slot the position at which it can be written (== position) or read (== position + 1). */
+    private final AtomicLongArray sequences;
+    /** the next position to be claimed by a producer. */
+    private final AtomicLong tail = new AtomicLong();
+    /** the next position to be read, only accessed by the consumer. */
+    private long head;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param capacity
+     *     the number of updates the buffer can hold, rounded up to a power of two
+     */
+    public PositionRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        assetIds = new int[this.capacity];
+        latitudes = new double[this.capacity];
+        longitudes = new double[this.capacity];
+        sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * adds an update, may be called from any thread.
+     *
+     * @param assetId
+     *     id of the asset, not negative
+     * @param latitude
+     *     the latitude of the position
+     * @param longitude
+     *     the longitude of the position
+     * @return false if the buffer is full and the update was dropped
+     */
+    public boolean offer(int assetId, double latitude, double longitude) {
+        long position = tail.get();
+        while (true) {
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    assetIds[index] = assetId;
+                    latitudes[index] = latitude;
+                    longitudes[index] = longitude;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // the slot still holds an update from the last round that was not consumed
+                rejected.incrementAndGet();
+                return false;
+            } else {
+                // another producer claimed the slot
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * hands the available updates to a consumer; must only be called from one thread at a time.
+     *
+     * @param consumer
+     *     the consumer
+     * @param maxUpdates
+     *     the maximum number of updates to drain
+     * @return the number of drained updates
+     */
+    public int drain(PositionConsumer consumer, int maxUpdates) {
+        int drained = 0;
+        while (drained < maxUpdates) {
+            final int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            consumer.accept(assetIds[index], latitudes[index], longitudes[index]);
+            sequences.set(index, head + capacity);
+            head++;
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * @return the approximate number of updates in the buffer
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(capacity, tail.get() - head));
+    }
+
+    /**
+     * @return the number of updates dropped because the buffer was full
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * receives the updates from {@link #drain(PositionConsumer, int)}.
+     */
+    @FunctionalInterface
+    public interface PositionConsumer {
+        void accept(int assetId, double latitude, double longitude);
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.live;
+
+import com.sothawo.mapjfxdemo.track.Track;
+import com.sothawo.mapjfxdemo.track.TrackLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Test feed that replays tracks as live positions of many assets. The track files have no timestamps, so consecutive
+ * points are taken to be {@link #SAMPLE_INTERVAL_MILLIS} apart; the speed factor scales the replay time. Every track
+ * is driven by a number of assets that start at different points of the track, have a small fixed offset from it and
+ * move back and forth along it. On each tick the feed reports the position of every asset, so the message rate is the
+ * number of assets times the tick rate.
+ * <p>
+ * The updates go either directly into a {@link PositionRingBuffer} or as {@code id;lat;lon} lines into a feed file
+ * that is read by a {@link PositionFileTail}.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class ReplayFeed implements AutoCloseable {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(ReplayFeed.class);
+
+    /** the assumed time between two points of a track. */
+    public static final long SAMPLE_INTERVAL_MILLIS = 1_000;
+    /** the time between two rounds of updates. */
+    public static final long TICK_MILLIS = 50;
+    /** maximum offset of an asset from its track in degrees. */
+    private static final double MAX_OFFSET_DEGREES = 0.002;
+    /** size at which the feed file is truncated and written from the start again. */
+    private static final long MAX_FEED_FILE_BYTES = 16 * 1024 * 1024;
+
+    private final List<Track> tracks;
+    private final int assetsPerTrack;
+    /** per asset the phase in track points and the offset from the track. */
+    private final double[] phases;
+    private final double[] latitudeOffsets;
+    private final double[] longitudeOffsets;
+
+    private volatile double speed;
+    private volatile boolean running;
+    private Thread thread;
+    private final AtomicLong updatesOffered = new AtomicLong();
+
+    /**
+     * @param tracks
+     *     the tracks to replay, tracks with less than two points are ignored
+     * @param assetsPerTrack
+     *     the number of assets moving along each track
+     * @param speed
+     *     the replay speed factor, 1 is real time
+     */
+    public ReplayFeed(List<Track> tracks, int assetsPerTrack, double speed) {
+        if (assetsPerTrack < 1) {
+            throw new IllegalArgumentException("assetsPerTrack must be positive");
+        }
+        this.tracks = new ArrayList<>();
+        for (Track track : tracks) {
+            if (track.size() > 1) {
+                this.tracks.add(track);
+            }
+        }
+        this.assetsPerTrack = assetsPerTrack;
+        setSpeed(speed);
+
+        final int assets = getAssetCount();
+        phases = new double[assets];
+        latitudeOffsets = new double[assets];
+        longitudeOffsets = new double[assets];
+        final Random random = new Random(42);
+        for (int assetId = 0; assetId < assets; assetId++) {
+            final Track track = this.tracks.get(assetId / assetsPerTrack);
+            phases[assetId] = random.nextDouble() * 2 * (track.size() - 1);
+            latitudeOffsets[assetId] = (random.nextDouble() * 2 - 1) * MAX_OFFSET_DEGREES;
+            longitudeOffsets[assetId] = (random.nextDouble() * 2 - 1) * MAX_OFFSET_DEGREES;
+        }
+    }
+
+    /**
+     * creates a feed for the tracks in the given csv files.
+     *
+     * @param csvFiles
+     *     the track files with {@code lat;lon} lines, see {@link TrackLoader}
+     * @param assetsPerTrack
+     *     the number of assets moving along each track
+     * @param speed
+     *     the replay speed factor, 1 is real time
+     * @return the feed
+     * @throws IOException
+     *     if a file cannot be read
+     */
+    public static ReplayFeed fromFiles(List<Path> csvFiles, int assetsPerTrack, double speed) throws IOException {
+        final List<Track> tracks = new ArrayList<>();
+        for (Path csvFile : csvFiles) {
+            final Track track = TrackLoader.load(csvFile);
+            if (track.getBadLineCount() > 0) {
+                logger.warn("{} has {} lines that could not be parsed", csvFile, track.getBadLineCount());
+            }
+            tracks.add(track);
+        }
+        return new ReplayFeed(tracks, assetsPerTrack, speed);
+    }
+
+    /**
+     * @return the number of assets, the asset ids range from 0 to this value - 1
+     */
+    public int getAssetCount() {
+        return tracks.size() * assetsPerTrack;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @param speed
+     *     the replay speed factor, 1 is real time; may be changed while the feed is running
+     */
+    public void setSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be positive");
+        }
+        this.speed = speed;
+    }
+
+    /**
+     * @return the number of updates offered to the buffer or written to the feed file, including the rejected ones
+     */
+    public long getUpdatesOffered() {
+        return updatesOffered.get();
+    }
+
+    /**
+     * starts the replay on a background thread.
+     *
+     * @param buffer
+     *     the buffer to write the updates to
+     */
+    public void start(PositionRingBuffer buffer) {
+        start(buffer::offer, "buffer");
+    }
+
+    /**
+     * starts the replay on a background thread that writes the updates as {@code id;lat;lon} lines to the given file.
+     * The file is truncated first and again whenever it has grown to 16 MiB; readers notice that from the file being
+     * smaller than their read position.
+     *
+     * @param feedFile
+     *     the file to write
+     * @throws IOException
+     *     if the file cannot be opened
+     */
+    public void start(Path feedFile) throws IOException {
+        final FeedFileSink sink = new FeedFileSink(FileChannel.open(feedFile, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+        try {
+            start(sink, feedFile.toString());
+        } catch (RuntimeException e) {
+            sink.close();
+            throw e;
+        }
+    }
+
+    private synchronized void start(Sink sink, String target) {
+        if (thread != null) {
+            throw new IllegalStateException("feed already started");
+        }
+        running = true;
+        thread = new Thread(() -> run(sink), "live-replay");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("replaying {} tracks with {} assets to {}", tracks.size(), getAssetCount(), target);
+    }
+
+    /**
+     * stops the replay.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            thread = null;
+        }
+    }
+
+    private void run(Sink sink) {
+        final long tickNanos = TICK_MILLIS * 1_000_000;
+        long nextTick = System.nanoTime();
+        // the replay time in track points
+        double points = 0;
+        try (sink) {
+            while (running) {
+                points += speed * TICK_MILLIS / SAMPLE_INTERVAL_MILLIS;
+                for (int assetId = 0; assetId < phases.length && running; assetId++) {
+                    final Track track = tracks.get(assetId / assetsPerTrack);
+                    final int last = track.size() - 1;
+                    // move back and forth along the track instead of jumping from the end to the start
+                    double position = (points + phases[assetId]) % (2 * last);
+                    if (position > last) {
+                        position = 2 * last - position;
+                    }
+                    final int index = Math.min((int) position, last - 1);
+                    final double fraction = position - index;
+                    final double latitude = track.getLatitude(index)
+                        + fraction * (track.getLatitude(index + 1) - track.getLatitude(index));
+                    final double longitude = track.getLongitude(index)
+                        + fraction * (track.getLongitude(index + 1) - track.getLongitude(index));
+                    sink.accept(assetId, latitude + latitudeOffsets[assetId],
+                        longitude + longitudeOffsets[assetId]);
+                }
+                sink.endOfTick();
+                updatesOffered.addAndGet(phases.length);
+
+                nextTick += tickNanos;
+                long now = System.nanoTime();
+                if (nextTick < now) {
+                    // behind schedule, don't try to catch up with a burst
+                    nextTick = now;
+                }
+                while (running && now < nextTick) {
+                    LockSupport.parkNanos(nextTick - now);
+                    now = System.nanoTime();
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("replay aborted", e);
+        }
+        logger.info("replay stopped after {} updates", updatesOffered.get());
+    }
+
+    /**
+     * where the replay writes its updates to.
+     */
+    private interface Sink extends PositionRingBuffer.PositionConsumer, Closeable {
+
+        /**
+         * called after each round of updates.
+         */
+        default void endOfTick() throws IOException {
+        }
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    /**
+     * writes the updates as {@code id;lat;lon} lines, one write per tick so that readers rarely see a partial line.
+     */
+    private static final class FeedFileSink implements Sink {
+        private final FileChannel channel;
+        private final StringBuilder lines = new StringBuilder(64 * 1024);
+
+        private FeedFileSink(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void accept(int assetId, double latitude, double longitude) {
+            lines.append(assetId).append(';').append(latitude).append(';').append(longitude).append('\n');
+        }
+
+        @Override
+        public void endOfTick() throws IOException {
+            if (channel.position() >= MAX_FEED_FILE_BYTES) {
+                // truncating moves the write position back to the start
+                channel.truncate(0);
+                logger.debug("feed file truncated");
+            }
+            final ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.US_ASCII));
+            lines.setLength(0);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.offline;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal tile server on the loopback interface that answers every request for {@code /tiles/{z}/{x}/{y}.png} with
+ * the same small PNG image. It stands in for a real tile server when testing the prefetcher or the cache and can
+ * simulate slow links and failures.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class LocalTileServer implements AutoCloseable {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(LocalTileServer.class);
+
+    /** a transparent 1x1 pixel PNG. */
+    private static final byte[] TILE = Base64.getDecoder()
+        .decode("iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAQAAAC1HAwCAAAAC0lEQVR42mNkYAAAAAYAAjCB0C8AAAAASUVORK5CYII=");
+
+    private static final Pattern TILE_PATH = Pattern.compile("/tiles/(\\d+)/(\\d+)/(\\d+)\\.png");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requestCount = new AtomicLong();
+    private volatile long delayMillis;
+    /** every n-th request fails with status 500, 0 for no failures. */
+    private volatile int failEvery;
+
+    private LocalTileServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * starts a server on a free port of the loopback interface.
+     *
+     * @return the running server
+     * @throws IOException
+     *     if the server cannot be started
+     */
+    public static LocalTileServer start() throws IOException {
+        final HttpServer server = LoopbackHttpServers.create();
+        final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "local-tile-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final LocalTileServer tileServer = new LocalTileServer(server, executor);
+        server.createContext("/tiles/", tileServer::handle);
+        server.setExecutor(executor);
+        server.start();
+        logger.info("local tile server started on port {}", tileServer.getPort());
+        return tileServer;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the url template for the tiles of this server, usable for a {@link TileSource} or an XYZ param
+     */
+    public String getUrlTemplate() {
+        return "http://" + server.getAddress().getHostString() + ':' + getPort() + "/tiles/{z}/{x}/{y}.png";
+    }
+
+    /**
+     * @return the number of requests received so far
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @param delayMillis
+     *     time to wait before answering a request
+     * @return this object
+     */
+    public LocalTileServer setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+        return this;
+    }
+
+    /**
+     * @param failEvery
+     *     every n-th request is answered with status 500, 0 for no failures
+     * @return this object
+     */
+    public LocalTileServer setFailEvery(int failEvery) {
+        this.failEvery = failEvery;
+        return this;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            final long request = requestCount.incrementAndGet();
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            final Matcher matcher = TILE_PATH.matcher(exchange.getRequestURI().getPath());
+            if (!matcher.matches()) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            final int fail = failEvery;
+            if (fail > 0 && request % fail == 0) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, TILE.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(TILE);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+        logger.info("local tile server stopped after {} requests", requestCount.get());
+    }
+}
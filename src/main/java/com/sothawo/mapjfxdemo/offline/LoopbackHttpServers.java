@@ -0,0 +1,85 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.offline;
+
+import com.sothawo.mapjfx.offline.OfflineCache;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Creates the http servers of the local tile servers and the other loopback endpoints of the demo.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class LoopbackHttpServers {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(LoopbackHttpServers.class);
+
+    private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private LoopbackHttpServers() {
+    }
+
+    /**
+     * creates a server on a free port of the loopback interface. The server is not started.
+     * <p>
+     * The JDK http server writes the response headers and the body separately. Without TCP_NODELAY the body waits for
+     * the delayed acknowledgement of the headers, which adds about 40 ms to every tile; so TCP_NODELAY is switched on
+     * unless it is configured explicitly. The setting is read when the first server of the JVM is created.
+     *
+     * @return the new server
+     * @throws IOException
+     *     if the server cannot be created
+     */
+    public static HttpServer create() throws IOException {
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+        return HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    }
+
+    /**
+     * keeps the responses of a loopback server out of the mapjfx offline cache. The offline cache is global to the JVM
+     * and would store every tile of the server on disk, although the tiles are local anyway and may change between
+     * requests or runs.
+     *
+     * @param url
+     *     a url or url template of the server, the filter covers all urls with the same scheme, host and port
+     */
+    public static void excludeFromOfflineCache(String url) {
+        final int pathStart = url.indexOf('/', url.indexOf("://") + 3);
+        final String prefix = pathStart < 0 ? url + '/' : url.substring(0, pathStart + 1);
+        final String filter = Pattern.quote(prefix) + ".*";
+        final OfflineCache offlineCache = OfflineCache.INSTANCE;
+        synchronized (offlineCache) {
+            final List<String> filters = new ArrayList<>(offlineCache.getNoCacheFilters());
+            if (!filters.contains(filter)) {
+                filters.add(filter);
+                offlineCache.setNoCacheFilters(filters);
+                logger.debug("not caching the urls of {}", prefix);
+            }
+        }
+    }
+}
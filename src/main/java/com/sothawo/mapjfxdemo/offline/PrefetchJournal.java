@@ -0,0 +1,69 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.offline;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Append-only file with the urls that have been prefetched successfully. A prefetch that is interrupted, cancelled or
+ * run again skips the urls in the journal. The journal should live in the cache directory so that clearing the
+ * cache removes it as well.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+final class PrefetchJournal implements Closeable {
+
+    private final Set<String> done = new HashSet<>();
+    private final BufferedWriter writer;
+
+    PrefetchJournal(Path file) throws IOException {
+        if (Files.exists(file)) {
+            done.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+        } else if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND);
+    }
+
+    synchronized boolean contains(String url) {
+        return done.contains(url);
+    }
+
+    /**
+     * records a url as done; the line is flushed immediately so it survives a crash.
+     */
+    synchronized void add(String url) throws IOException {
+        if (done.add(url)) {
+            writer.write(url);
+            writer.newLine();
+            writer.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.offline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the directory of the mapjfx offline cache within a byte budget. The offline cache itself only ever adds
+ * files; this manager indexes them and, on a periodic background compaction, evicts tiles until the cache is below
+ * the budget again. It also removes the info files of mapjfx whose data file is gone.
+ * <p>
+ * The map reads the cache files directly through the offline cache, so this manager never sees those reads. The only
+ * trace they leave is the access time of the files, which is updated lazily or not at all on file systems mounted
+ * with relatime or noatime. The default policy {@link EvictionPolicy#OLDEST} therefore only uses the modification
+ * time; {@link EvictionPolicy#LRU} and {@link EvictionPolicy#LFU} are approximations that are only as good as the
+ * access times of the file system.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class TileCacheManager implements AutoCloseable {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(TileCacheManager.class);
+
+    /** suffix of the files where mapjfx stores the headers of a cached url. */
+    private static final String INFO_SUFFIX = ".dataInfo";
+    /** the cache files are named after the encoded url, so they all start with the encoded protocol. */
+    private static final String CACHE_FILE_PREFIX = "http";
+    /** after a compaction the cache is filled to this fraction of the budget. */
+    private static final double LOW_WATER_MARK = 0.9;
+
+    /**
+     * which tiles to evict first.
+     */
+    public enum EvictionPolicy {
+        /** the tiles that were stored first, independent of the access times. */
+        OLDEST,
+        /** least recently used, taken from the access times of the files. */
+        LRU,
+        /**
+         * least frequently used, ties broken by the access time. The frequency is the number of compactions that saw a
+         * newer access time of a file, so it is a coarse estimate even when the access times are reliable.
+         */
+        LFU
+    }
+
+    private final Path cacheDirectory;
+    private final long maxBytes;
+    private final EvictionPolicy policy;
+
+    /** the cache entries by file name. */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong evictedBytes = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+    private Consumer<Statistics> compactionListener = statistics -> {
+    };
+
+    /**
+     * @param cacheDirectory
+     *     the directory of the offline cache
+     * @param maxBytes
+     *     the budget for the files in the directory
+     * @param policy
+     *     the eviction policy
+     */
+    public TileCacheManager(Path cacheDirectory, long maxBytes, EvictionPolicy policy) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("invalid cache size");
+        }
+        this.cacheDirectory = cacheDirectory;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+    }
+
+    /**
+     * @param compactionListener
+     *     called with the statistics after each compaction, on the compaction thread
+     * @return this object
+     */
+    public TileCacheManager setCompactionListener(Consumer<Statistics> compactionListener) {
+        this.compactionListener = compactionListener;
+        return this;
+    }
+
+    /**
+     * starts the periodic compaction on a background thread; the first one runs immediately and builds the index.
+     *
+     * @param interval
+     *     time between two compactions
+     * @param unit
+     *     unit of the interval
+     */
+    public synchronized void start(long interval, TimeUnit unit) {
+        if (scheduler != null) {
+            throw new IllegalStateException("already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "tile-cache-compaction");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (RuntimeException e) {
+                logger.warn("tile cache compaction failed", e);
+            }
+        }, 0, interval, unit);
+    }
+
+    /**
+     * rescans the cache directory and evicts tiles until the cache is below the budget. Called periodically after
+     * {@link #start(long, TimeUnit)}, can be called directly as well.
+     */
+    public synchronized void compact() {
+        final long start = System.nanoTime();
+        final Set<String> seen = new HashSet<>();
+        final List<Path> orphanInfos = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> directory = Files.newDirectoryStream(cacheDirectory)) {
+            for (Path path : directory) {
+                final String fileName = path.getFileName().toString();
+                if (!fileName.startsWith(CACHE_FILE_PREFIX)) {
+                    continue;
+                }
+                if (fileName.endsWith(INFO_SUFFIX)) {
+                    final Path dataFile = path.resolveSibling(
+                        fileName.substring(0, fileName.length() - INFO_SUFFIX.length()));
+                    if (!Files.exists(dataFile)) {
+                        orphanInfos.add(path);
+                    }
+                    continue;
+                }
+                final BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    // deleted in the meantime
+                    continue;
+                }
+                final long size = attributes.size() + sizeQuietly(path.resolveSibling(fileName + INFO_SUFFIX));
+                final long modified = attributes.lastModifiedTime().toMillis();
+                // reads of the map only show up in the file's access time
+                final long fileAccess = Math.max(attributes.lastAccessTime().toMillis(), modified);
+                final Entry entry = entries.computeIfAbsent(fileName, name -> new Entry());
+                entry.bytes = size;
+                entry.modified = modified;
+                if (fileAccess > entry.lastAccess) {
+                    if (entry.lastAccess > 0) {
+                        entry.accessCount.incrementAndGet();
+                    }
+                    entry.lastAccess = fileAccess;
+                }
+                seen.add(fileName);
+                total += size;
+            }
+        } catch (IOException e) {
+            logger.warn("could not scan cache directory {}", cacheDirectory, e);
+            return;
+        }
+        entries.keySet().retainAll(seen);
+        diskBytes.set(total);
+
+        for (Path orphan : orphanInfos) {
+            deleteQuietly(orphan);
+        }
+        if (total > maxBytes) {
+            evict((long) (maxBytes * LOW_WATER_MARK));
+        }
+        final Statistics statistics = getStatistics();
+        logger.debug("tile cache compacted in {} ms, removed {} orphans: {}", (System.nanoTime() - start) / 1_000_000,
+            orphanInfos.size(), statistics);
+        compactionListener.accept(statistics);
+    }
+
+    private void evict(long targetBytes) {
+        final Comparator<Map.Entry<String, Entry>> byAccess =
+            Comparator.comparingLong(mapEntry -> mapEntry.getValue().lastAccess);
+        final Comparator<Map.Entry<String, Entry>> order;
+        switch (policy) {
+            case LRU:
+                order = byAccess;
+                break;
+            case LFU:
+                order = Comparator.<Map.Entry<String, Entry>>comparingLong(
+                    mapEntry -> mapEntry.getValue().accessCount.get()).thenComparing(byAccess);
+                break;
+            default:
+                order = Comparator.comparingLong(mapEntry -> mapEntry.getValue().modified);
+                break;
+        }
+        final List<Map.Entry<String, Entry>> candidates = new ArrayList<>(entries.entrySet());
+        candidates.sort(order);
+
+        final Iterator<Map.Entry<String, Entry>> iterator = candidates.iterator();
+        while (diskBytes.get() > targetBytes && iterator.hasNext()) {
+            final Map.Entry<String, Entry> candidate = iterator.next();
+            final String fileName = candidate.getKey();
+            final Path dataFile = cacheDirectory.resolve(fileName);
+            if (deleteQuietly(dataFile)) {
+                deleteQuietly(dataFile.resolveSibling(fileName + INFO_SUFFIX));
+                entries.remove(fileName);
+                diskBytes.addAndGet(-candidate.getValue().bytes);
+                evictions.incrementAndGet();
+                evictedBytes.addAndGet(candidate.getValue().bytes);
+            }
+        }
+    }
+
+    /**
+     * @return the current counters
+     */
+    public Statistics getStatistics() {
+        return new Statistics(evictions.get(), evictedBytes.get(), entries.size(), diskBytes.get(), maxBytes);
+    }
+
+    private static long sizeQuietly(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static boolean deleteQuietly(Path path) {
+        try {
+            return Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.debug("could not delete {}", path, e);
+            return false;
+        }
+    }
+
+    /**
+     * the name of the cache file for a url, the same one the mapjfx offline cache uses.
+     */
+    static String fileName(String url) {
+        return URLEncoder.encode(url.replaceAll("[a-z]\\.tile\\.openstreetmap\\.org", "x.tile.openstreetmap.org"),
+            StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * index data of a cache file.
+     */
+    private static final class Entry {
+        /** size of the data and the info file. */
+        private volatile long bytes;
+        private volatile long modified;
+        private volatile long lastAccess;
+        private final AtomicLong accessCount = new AtomicLong();
+    }
+
+    /**
+     * snapshot of the cache counters.
+     */
+    public static final class Statistics {
+        private static final double MIB = 1024 * 1024;
+
+        private final long evictions;
+        private final long evictedBytes;
+        private final int entries;
+        private final long diskBytes;
+        private final long maxBytes;
+
+        private Statistics(long evictions, long evictedBytes, int entries, long diskBytes, long maxBytes) {
+            this.evictions = evictions;
+            this.evictedBytes = evictedBytes;
+            this.entries = entries;
+            this.diskBytes = diskBytes;
+            this.maxBytes = maxBytes;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getEvictedBytes() {
+            return evictedBytes;
+        }
+
+        /**
+         * @return the number of tiles on disk
+         */
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getDiskBytes() {
+            return diskBytes;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d tiles, %.1f/%.1f MiB on disk, %d evictions (%.1f MiB)", entries, diskBytes / MIB,
+                maxBytes / MIB, evictions, evictedBytes / MIB);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.offline;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.CoordinateLine;
+import com.sothawo.mapjfx.Extent;
+import com.sothawo.mapjfx.MapView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The set of map tiles covering a region over a range of zoom levels. A region is either an extent or the corridor
+ * along a line, both can be enlarged by a buffer distance. For an extent the tiles of a zoom level form a rectangle
+ * and are not stored; for a line the tile keys of each level are collected, sorted and deduplicated.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class TileCoverage {
+
+    /** meters per degree of latitude. */
+    private static final double METERS_PER_DEGREE = 111_320.0;
+    /** the latitude limit of the Web Mercator projection. */
+    private static final double MAX_LATITUDE = 85.0511287798066;
+
+    private final int minZoom;
+    private final int maxZoom;
+    /** per zoom level minX, minY, maxX, maxY; null for line coverages. */
+    private final int[][] rectangles;
+    /** per zoom level the sorted tile keys (x << 32 | y); null for extent coverages. */
+    private final long[][] keys;
+
+    private TileCoverage(int minZoom, int maxZoom, int[][] rectangles, long[][] keys) {
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+        this.rectangles = rectangles;
+        this.keys = keys;
+    }
+
+    /**
+     * creates the coverage for an extent.
+     *
+     * @param extent
+     *     the extent
+     * @param bufferMeters
+     *     distance by which the extent is enlarged on each side
+     * @param minZoom
+     *     the lowest zoom level
+     * @param maxZoom
+     *     the highest zoom level
+     * @return the coverage
+     */
+    public static TileCoverage forExtent(Extent extent, double bufferMeters, int minZoom, int maxZoom) {
+        checkZoom(minZoom, maxZoom);
+        final double bufferLatitude = bufferMeters / METERS_PER_DEGREE;
+        final double minLatitude = extent.getMin().getLatitude() - bufferLatitude;
+        final double maxLatitude = extent.getMax().getLatitude() + bufferLatitude;
+        final double widestLatitude = Math.min(Math.max(Math.abs(minLatitude), Math.abs(maxLatitude)), MAX_LATITUDE);
+        final double bufferLongitude = bufferMeters / (METERS_PER_DEGREE * Math.cos(Math.toRadians(widestLatitude)));
+        final double minLongitude = extent.getMin().getLongitude() - bufferLongitude;
+        final double maxLongitude = extent.getMax().getLongitude() + bufferLongitude;
+
+        final int[][] rectangles = new int[maxZoom - minZoom + 1][];
+        for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+            final int tiles = 1 << zoom;
+            rectangles[zoom - minZoom] = new int[]{
+                tile(mercatorX(minLongitude), tiles), tile(mercatorY(maxLatitude), tiles),
+                tile(mercatorX(maxLongitude), tiles), tile(mercatorY(minLatitude), tiles)};
+        }
+        return new TileCoverage(minZoom, maxZoom, rectangles, null);
+    }
+
+    /**
+     * creates the coverage for the corridor along a line.
+     *
+     * @param line
+     *     the line
+     * @param bufferMeters
+     *     the width of the corridor on each side of the line
+     * @param minZoom
+     *     the lowest zoom level
+     * @param maxZoom
+     *     the highest zoom level
+     * @return the coverage
+     */
+    public static TileCoverage forLine(CoordinateLine line, double bufferMeters, int minZoom, int maxZoom) {
+        return forLine(line.getCoordinateStream().collect(Collectors.toList()), bufferMeters, minZoom, maxZoom);
+    }
+
+    /**
+     * creates the coverage for the corridor along a line.
+     *
+     * @param coordinates
+     *     the coordinates of the line
+     * @param bufferMeters
+     *     the width of the corridor on each side of the line
+     * @param minZoom
+     *     the lowest zoom level
+     * @param maxZoom
+     *     the highest zoom level
+     * @return the coverage
+     */
+    public static TileCoverage forLine(List<? extends Coordinate> coordinates, double bufferMeters, int minZoom,
+                                       int maxZoom) {
+        return forLines(List.of(coordinates), bufferMeters, minZoom, maxZoom);
+    }
+
+    /**
+     * creates the coverage for the corridors along several lines.
+     *
+     * @param lines
+     *     the coordinates of the lines
+     * @param bufferMeters
+     *     the width of the corridors on each side of the lines
+     * @param minZoom
+     *     the lowest zoom level
+     * @param maxZoom
+     *     the highest zoom level
+     * @return the coverage
+     */
+    public static TileCoverage forLines(List<? extends List<? extends Coordinate>> lines, double bufferMeters,
+                                        int minZoom, int maxZoom) {
+        checkZoom(minZoom, maxZoom);
+        final List<ProjectedLine> projected = new ArrayList<>(lines.size());
+        for (List<? extends Coordinate> coordinates : lines) {
+            projected.add(new ProjectedLine(coordinates, bufferMeters));
+        }
+
+        final long[][] keys = new long[maxZoom - minZoom + 1][];
+        for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+            final KeyCollector collector = new KeyCollector();
+            for (ProjectedLine line : projected) {
+                line.collectKeys(collector, 1 << zoom);
+            }
+            keys[zoom - minZoom] = collector.toSortedUniqueKeys();
+        }
+        return new TileCoverage(minZoom, maxZoom, null, keys);
+    }
+
+    public int getMinZoom() {
+        return minZoom;
+    }
+
+    public int getMaxZoom() {
+        return maxZoom;
+    }
+
+    /**
+     * @return the number of tiles over all zoom levels
+     */
+    public long size() {
+        long size = 0;
+        for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+            if (rectangles != null) {
+                final int[] r = rectangles[zoom - minZoom];
+                size += (long) (r[2] - r[0] + 1) * (r[3] - r[1] + 1);
+            } else {
+                size += keys[zoom - minZoom].length;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * visits all tiles, starting with the lowest zoom level.
+     *
+     * @param visitor
+     *     the visitor
+     * @return false if the visitor stopped the iteration
+     */
+    public boolean forEach(TileVisitor visitor) {
+        for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+            if (rectangles != null) {
+                final int[] r = rectangles[zoom - minZoom];
+                for (int y = r[1]; y <= r[3]; y++) {
+                    for (int x = r[0]; x <= r[2]; x++) {
+                        if (!visitor.visit(zoom, x, y)) {
+                            return false;
+                        }
+                    }
+                }
+            } else {
+                for (long key : keys[zoom - minZoom]) {
+                    if (!visitor.visit(zoom, (int) (key >>> 32), (int) key)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void checkZoom(int minZoom, int maxZoom) {
+        if (minZoom < MapView.MIN_ZOOM || maxZoom > MapView.MAX_ZOOM || minZoom > maxZoom) {
+            throw new IllegalArgumentException("invalid zoom range " + minZoom + '-' + maxZoom);
+        }
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    private static int tile(double normalized, int tiles) {
+        final int tile = (int) Math.floor(normalized * tiles);
+        return tile < 0 ? 0 : tile >= tiles ? tiles - 1 : tile;
+    }
+
+    private static double mercatorX(double longitude) {
+        return longitude / 360 + 0.5;
+    }
+
+    private static double mercatorY(double latitude) {
+        final double sin = Math.sin(Math.toRadians(latitude));
+        final double y = 0.5 - 0.25 * Math.log((1 + sin) / (1 - sin)) / Math.PI;
+        return y < 0 ? 0 : y > 1 ? 1 : y;
+    }
+
+    @Override
+    public String toString() {
+        return "TileCoverage{zoom " + minZoom + '-' + maxZoom + ", " + size() + " tiles}";
+    }
+
+    /**
+     * a line in normalized Web Mercator coordinates.
+     */
+    private static final class ProjectedLine {
+        private final double[] x;
+        private final double[] y;
+        /** the buffer in normalized units at each point, it grows with 1 / cos(latitude). */
+        private final double[] buffer;
+
+        private ProjectedLine(List<? extends Coordinate> coordinates, double bufferMeters) {
+            final int n = coordinates.size();
+            x = new double[n];
+            y = new double[n];
+            buffer = new double[n];
+            for (int i = 0; i < n; i++) {
+                final Coordinate coordinate = coordinates.get(i);
+                final double latitude = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, coordinate.getLatitude()));
+                x[i] = mercatorX(coordinate.getLongitude());
+                y[i] = mercatorY(latitude);
+                buffer[i] = bufferMeters / (METERS_PER_DEGREE * 360 * Math.cos(Math.toRadians(latitude)));
+            }
+        }
+
+        /**
+         * collects the tiles along the line by sampling each segment with at most half a tile spacing; the tiles
+         * within the buffer plus half the spacing around each sample cover every point of the segment.
+         */
+        private void collectKeys(KeyCollector collector, int tiles) {
+            for (int i = 0; i < x.length; i++) {
+                final int next = i + 1 < x.length ? i + 1 : i;
+                final double dx = x[next] - x[i];
+                final double dy = y[next] - y[i];
+                final double length = Math.sqrt(dx * dx + dy * dy);
+                final int steps = Math.max(1, (int) Math.ceil(length * tiles * 2));
+                final double radius = Math.max(buffer[i], buffer[next]) + length / steps / 2;
+                for (int step = 0; step < steps; step++) {
+                    final double t = (double) step / steps;
+                    final double sx = x[i] + t * dx;
+                    final double sy = y[i] + t * dy;
+                    final int minX = tile(sx - radius, tiles);
+                    final int maxX = tile(sx + radius, tiles);
+                    final int minY = tile(sy - radius, tiles);
+                    final int maxY = tile(sy + radius, tiles);
+                    for (int tx = minX; tx <= maxX; tx++) {
+                        for (int ty = minY; ty <= maxY; ty++) {
+                            collector.add(key(tx, ty));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * growable array of tile keys.
+     */
+    private static final class KeyCollector {
+        private long[] keys = new long[64];
+        private int size;
+
+        private void add(long key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = key;
+        }
+
+        private long[] toSortedUniqueKeys() {
+            Arrays.sort(keys, 0, size);
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique == 0 || keys[i] != keys[unique - 1]) {
+                    keys[unique++] = keys[i];
+                }
+            }
+            return Arrays.copyOf(keys, unique);
+        }
+    }
+
+    /**
+     * callback for the tiles of a coverage.
+     */
+    @FunctionalInterface
+    public interface TileVisitor {
+        /**
+         * @param zoom
+         *     the zoom level
+         * @param x
+         *     the tile column
+         * @param y
+         *     the tile row, counted from the top
+         * @return false to stop the iteration
+         */
+        boolean visit(int zoom, int x, int y);
+    }
+}
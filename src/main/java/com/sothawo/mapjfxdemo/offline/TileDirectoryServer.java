@@ -0,0 +1,285 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.offline;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Tile server on the loopback interface that serves the tiles of a local tile pyramid, a directory with the layout
+ * {@code {z}/{x}/{y}.{extension}} like it is written by most tile export tools. The map loads the tiles with
+ * {@link #getUrlTemplate()} as XYZ source and works without network access.
+ * <p>
+ * Recently used tiles are kept in memory up to a byte budget and are written to the connection from there; other tiles
+ * are read with a file channel and added to the cache. Files that are larger than the cache budget are transferred
+ * from the file channel to the response without being cached. The server answers with a content length, so the
+ * connections of the map's tile requests are kept alive.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class TileDirectoryServer implements AutoCloseable {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(TileDirectoryServer.class);
+
+    public static final long DEFAULT_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private static final Pattern TILE_PATH = Pattern.compile("/tiles/(\\d+)/(\\d+)/(\\d+)\\.([a-z]+)");
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+        "png", "image/png",
+        "jpg", "image/jpeg",
+        "jpeg", "image/jpeg",
+        "webp", "image/webp");
+    private static final String DEFAULT_EXTENSION = "png";
+    /** the tiles of a local directory don't change while the map is shown. */
+    private static final String CACHE_CONTROL = "max-age=86400";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Path root;
+    private final String extension;
+    private final TileCache cache;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    private TileDirectoryServer(HttpServer server, ExecutorService executor, Path root, String extension,
+                                long cacheBytes) {
+        this.server = server;
+        this.executor = executor;
+        this.root = root;
+        this.extension = extension;
+        this.cache = new TileCache(cacheBytes);
+    }
+
+    /**
+     * starts a server for a tile directory on a free port of the loopback interface. The tile format is taken from
+     * the first tile found in the directory.
+     *
+     * @param root
+     *     the directory with the {z}/{x}/{y} tiles
+     * @param cacheBytes
+     *     the budget for the tiles that are kept in memory, 0 for no caching
+     * @return the running server
+     * @throws IOException
+     *     if the directory cannot be read or the server cannot be started
+     */
+    public static TileDirectoryServer start(Path root, long cacheBytes) throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new NoSuchFileException(root.toString(), null, "not a directory");
+        }
+        final String extension = detectExtension(root).orElse(DEFAULT_EXTENSION);
+        final HttpServer server = LoopbackHttpServers.create();
+        final AtomicInteger threadNumber = new AtomicInteger();
+        // the map loads up to a few dozen tiles at once
+        final ExecutorService executor = Executors.newFixedThreadPool(8, runnable -> {
+            final Thread thread = new Thread(runnable, "tile-directory-server-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final TileDirectoryServer tileServer = new TileDirectoryServer(server, executor, root, extension, cacheBytes);
+        server.createContext("/tiles/", tileServer::handle);
+        server.setExecutor(executor);
+        server.start();
+        logger.info("tile directory server for {} ({}) started on port {}", root, extension, tileServer.getPort());
+        return tileServer;
+    }
+
+    private static Optional<String> detectExtension(Path root) throws IOException {
+        try (Stream<Path> files = Files.find(root, 3, (path, attributes) -> attributes.isRegularFile())) {
+            return files
+                .map(path -> {
+                    final String name = path.getFileName().toString();
+                    return name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+                })
+                .filter(CONTENT_TYPES::containsKey)
+                .findFirst();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the url template for the tiles of this server, usable for a {@link TileSource} or an XYZ param
+     */
+    public String getUrlTemplate() {
+        return "http://" + server.getAddress().getHostString() + ':' + getPort() + "/tiles/{z}/{x}/{y}." + extension;
+    }
+
+    /**
+     * @return the number of requests received so far
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of requests that were answered from the memory cache
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * @return the number of requests for tiles that are not in the directory
+     */
+    public long getNotFound() {
+        return notFound.get();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requestCount.incrementAndGet();
+            final Matcher matcher = TILE_PATH.matcher(exchange.getRequestURI().getPath());
+            final String contentType = matcher.matches() ? CONTENT_TYPES.get(matcher.group(4)) : null;
+            if (contentType == null) {
+                notFound.incrementAndGet();
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            final String key = matcher.group(1) + '/' + matcher.group(2) + '/' + matcher.group(3) + '.'
+                + matcher.group(4);
+            exchange.getResponseHeaders().add("Content-Type", contentType);
+            exchange.getResponseHeaders().add("Cache-Control", CACHE_CONTROL);
+
+            final byte[] cached = cache.get(key);
+            if (cached != null) {
+                cacheHits.incrementAndGet();
+                send(exchange, cached);
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(root.resolve(key), StandardOpenOption.READ)) {
+                final long size = channel.size();
+                if (size > cache.getMaxBytes()) {
+                    exchange.sendResponseHeaders(200, size == 0 ? -1 : size);
+                    try (OutputStream outputStream = exchange.getResponseBody()) {
+                        final WritableByteChannel target = Channels.newChannel(outputStream);
+                        long position = 0;
+                        while (position < size) {
+                            position += channel.transferTo(position, size - position, target);
+                        }
+                    }
+                    bytesServed.addAndGet(size);
+                } else {
+                    final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                    while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                        // read until the buffer is full
+                    }
+                    final byte[] tile = buffer.array();
+                    cache.put(key, tile);
+                    send(exchange, tile);
+                }
+            } catch (NoSuchFileException e) {
+                notFound.incrementAndGet();
+                exchange.getResponseHeaders().remove("Content-Type");
+                exchange.sendResponseHeaders(404, -1);
+            }
+        }
+    }
+
+    private void send(HttpExchange exchange, byte[] tile) throws IOException {
+        // a length of 0 means chunked encoding for the http server, -1 means no body
+        exchange.sendResponseHeaders(200, tile.length == 0 ? -1 : tile.length);
+        if (tile.length > 0) {
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(tile);
+            }
+        }
+        bytesServed.addAndGet(tile.length);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+        logger.info("tile directory server stopped after {} requests, {} from memory", requestCount.get(),
+            cacheHits.get());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d requests, %d from memory, %d not found, %d KiB, %d tiles in memory",
+            requestCount.get(), cacheHits.get(), notFound.get(), bytesServed.get() / 1024, cache.size());
+    }
+
+    /**
+     * least recently used tiles up to a byte budget.
+     */
+    private static final class TileCache {
+        private final long maxBytes;
+        private final LinkedHashMap<String, byte[]> tiles = new LinkedHashMap<>(256, 0.75f, true);
+        private long bytes;
+
+        private TileCache(long maxBytes) {
+            this.maxBytes = Math.max(0, maxBytes);
+        }
+
+        private long getMaxBytes() {
+            return maxBytes;
+        }
+
+        private synchronized byte[] get(String key) {
+            return tiles.get(key);
+        }
+
+        private synchronized void put(String key, byte[] tile) {
+            final byte[] previous = tiles.put(key, tile);
+            bytes += tile.length - (previous == null ? 0 : previous.length);
+            final Iterator<byte[]> eldest = tiles.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+
+        private synchronized int size() {
+            return tiles.size();
+        }
+    }
+}
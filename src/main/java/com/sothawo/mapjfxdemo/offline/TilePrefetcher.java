@@ -0,0 +1,350 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.offline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Downloads the tiles of a {@link TileCoverage} from a {@link TileSource}. The tiles are loaded through the normal
+ * {@link URL} machinery, so when the mapjfx offline cache is active, every downloaded tile ends up in the cache and is
+ * served from there when the map needs it.
+ * <p>
+ * The downloads run on a fixed number of threads; the coverage is enumerated lazily and only a bounded number of
+ * downloads is queued at any time. Finished urls are recorded in a journal file in the cache directory, a prefetch that
+ * is started again after a cancel, a crash or a network failure continues where the last one stopped. Urls from the
+ * journal whose cache file has been evicted in the meantime are loaded again.
+ * <p>
+ * Public tile servers have usage policies that forbid bulk downloads, so keep the regions and zoom ranges small when
+ * prefetching from them.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class TilePrefetcher {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(TilePrefetcher.class);
+
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MILLIS = 500;
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+    /** minimum time between two progress reports. */
+    private static final long PROGRESS_INTERVAL_NANOS = 250_000_000L;
+    private static final String USER_AGENT = "mapjfx-demo tile prefetcher";
+
+    private final TileSource tileSource;
+    private final Path cacheDirectory;
+    private final Path journalFile;
+    private final int parallelism;
+
+    /**
+     * @param tileSource
+     *     the source to load the tiles from
+     * @param cacheDirectory
+     *     the directory of the offline cache the tiles are loaded into, the journal is stored there as well, so
+     *     clearing the cache clears it too
+     * @param parallelism
+     *     the number of concurrent downloads
+     */
+    public TilePrefetcher(TileSource tileSource, Path cacheDirectory, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.tileSource = tileSource;
+        this.cacheDirectory = cacheDirectory;
+        this.journalFile = cacheDirectory.resolve("prefetch-" + tileSource.getName() + ".journal");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * starts the prefetch in the background.
+     *
+     * @param coverage
+     *     the tiles to load; zoom levels outside of the tile source's range are skipped
+     * @param progressListener
+     *     called with the progress at most every 250 ms and once at the end, on one of the download threads
+     * @return the running prefetch
+     */
+    public Prefetch start(TileCoverage coverage, Consumer<Progress> progressListener) {
+        final Prefetch prefetch = new Prefetch(coverage, progressListener);
+        final Thread thread = new Thread(prefetch::run, "tile-prefetch");
+        thread.setDaemon(true);
+        thread.start();
+        return prefetch;
+    }
+
+    /**
+     * a running prefetch.
+     */
+    public final class Prefetch {
+        private final TileCoverage coverage;
+        private final Consumer<Progress> progressListener;
+        private final CompletableFuture<Progress> result = new CompletableFuture<>();
+        private final long total;
+        private final long start = System.nanoTime();
+        private final AtomicLong downloaded = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong lastReport = new AtomicLong(start);
+        private volatile boolean cancelled;
+
+        private Prefetch(TileCoverage coverage, Consumer<Progress> progressListener) {
+            this.coverage = coverage;
+            this.progressListener = progressListener;
+            this.total = coverage.size() * tileSource.getLayerCount();
+        }
+
+        /**
+         * @return future completed with the final progress when the prefetch has finished or was cancelled
+         */
+        public CompletableFuture<Progress> getResult() {
+            return result;
+        }
+
+        /**
+         * stops the prefetch; running downloads are finished, queued ones are dropped.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public Progress getProgress() {
+            return snapshot(result.isDone());
+        }
+
+        private Progress snapshot(boolean finished) {
+            return new Progress(total, downloaded.get(), skipped.get(), failed.get(), bytes.get(),
+                System.nanoTime() - start, cancelled, finished);
+        }
+
+        private void run() {
+            final AtomicInteger threadNumber = new AtomicInteger();
+            final ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+                final Thread thread = new Thread(runnable, "tile-prefetch-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            // bounds the number of queued downloads so that huge coverages are not materialized
+            final int maxQueued = parallelism * 4;
+            final Semaphore permits = new Semaphore(maxQueued);
+            logger.info("prefetching {} urls from {}", total, tileSource);
+
+            try (PrefetchJournal journal = new PrefetchJournal(journalFile)) {
+                coverage.forEach((zoom, x, y) -> {
+                    if (cancelled) {
+                        return false;
+                    }
+                    if (zoom < tileSource.getMinZoom() || zoom > tileSource.getMaxZoom()) {
+                        skipped.addAndGet(tileSource.getLayerCount());
+                        return true;
+                    }
+                    for (String url : tileSource.getUrls(zoom, x, y)) {
+                        if (journal.contains(url) && isCached(url)) {
+                            skipped.incrementAndGet();
+                            continue;
+                        }
+                        try {
+                            permits.acquire();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            cancelled = true;
+                            return false;
+                        }
+                        workers.execute(() -> {
+                            try {
+                                if (!cancelled) {
+                                    download(url, journal);
+                                }
+                            } finally {
+                                permits.release();
+                            }
+                            maybeReport();
+                        });
+                    }
+                    maybeReport();
+                    return true;
+                });
+                // wait for the running downloads
+                permits.acquireUninterruptibly(maxQueued);
+            } catch (IOException e) {
+                logger.warn("could not use prefetch journal {}", journalFile, e);
+            } catch (RuntimeException e) {
+                logger.warn("prefetch aborted", e);
+            } finally {
+                workers.shutdown();
+                // always complete, otherwise callers waiting for the result are stuck
+                final Progress progress = snapshot(true);
+                result.complete(progress);
+                logger.info("prefetch finished: {}", progress);
+                progressListener.accept(progress);
+            }
+        }
+
+        /**
+         * the cache manager may have evicted a tile since it was recorded in the journal.
+         */
+        private boolean isCached(String url) {
+            return Files.exists(cacheDirectory.resolve(TileCacheManager.fileName(url)));
+        }
+
+        private void download(String url, PrefetchJournal journal) {
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+                try {
+                    final URLConnection connection = new URL(url).openConnection();
+                    connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+                    connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+                    connection.setRequestProperty("User-Agent", USER_AGENT);
+                    if (connection instanceof HttpURLConnection) {
+                        final int status = ((HttpURLConnection) connection).getResponseCode();
+                        if (status >= 400 && status < 500) {
+                            // no use in retrying client errors
+                            logger.debug("got status {} for {}", status, url);
+                            failed.incrementAndGet();
+                            return;
+                        } else if (status >= 500) {
+                            throw new IOException("got status " + status);
+                        }
+                    }
+                    try (InputStream inputStream = connection.getInputStream()) {
+                        // reading the stream to the end is what stores the tile in the offline cache
+                        bytes.addAndGet(inputStream.transferTo(OutputStream.nullOutputStream()));
+                    }
+                    journal.add(url);
+                    downloaded.incrementAndGet();
+                    return;
+                } catch (IOException e) {
+                    if (attempt == MAX_ATTEMPTS) {
+                        logger.debug("could not load {}", url, e);
+                        failed.incrementAndGet();
+                        return;
+                    }
+                    try {
+                        Thread.sleep(RETRY_DELAY_MILLIS * attempt);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        failed.incrementAndGet();
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void maybeReport() {
+            final long now = System.nanoTime();
+            final long last = lastReport.get();
+            if (now - last >= PROGRESS_INTERVAL_NANOS && lastReport.compareAndSet(last, now)) {
+                progressListener.accept(getProgress());
+            }
+        }
+    }
+
+    /**
+     * snapshot of the progress of a prefetch.
+     */
+    public static final class Progress {
+        private final long total;
+        private final long downloaded;
+        private final long skipped;
+        private final long failed;
+        private final long bytes;
+        private final long elapsedNanos;
+        private final boolean cancelled;
+        private final boolean finished;
+
+        private Progress(long total, long downloaded, long skipped, long failed, long bytes, long elapsedNanos,
+                         boolean cancelled, boolean finished) {
+            this.total = total;
+            this.downloaded = downloaded;
+            this.skipped = skipped;
+            this.failed = failed;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+            this.cancelled = cancelled;
+            this.finished = finished;
+        }
+
+        /**
+         * @return the number of urls in the coverage
+         */
+        public long getTotal() {
+            return total;
+        }
+
+        public long getDownloaded() {
+            return downloaded;
+        }
+
+        /**
+         * @return the number of urls that were already loaded by an earlier prefetch or are outside the zoom range
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * @return the processed fraction of the urls, between 0 and 1
+         */
+        public double getFraction() {
+            return total == 0 ? 1 : (double) (downloaded + skipped + failed) / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d downloaded, %d skipped, %d failed, %d KiB in %.1f s%s", downloaded, total,
+                skipped, failed, bytes / 1024, elapsedNanos / 1e9, cancelled ? " (cancelled)" : "");
+        }
+    }
+}
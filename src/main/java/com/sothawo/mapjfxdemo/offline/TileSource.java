@@ -0,0 +1,284 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.offline;
+
+import com.sothawo.mapjfx.MapType;
+import com.sothawo.mapjfx.MapView;
+import com.sothawo.mapjfx.WMSParam;
+import com.sothawo.mapjfx.XYZParam;
+
+import java.math.BigDecimal;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the tile URLs for a map type the same way the OpenLayers sources in the MapView do, so that the tiles loaded
+ * by a prefetch are exactly the ones the map requests later from the offline cache. All sources use the standard Web
+ * Mercator tile grid with 256 pixel tiles and 2^zoom tiles per axis.
+ * <p>
+ * The Bing Maps sources are not supported, their tile URLs are obtained from a metadata service at runtime and need an
+ * API key.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class TileSource {
+
+    /** the OpenLayers OSM source. */
+    private static final String OSM_TEMPLATE = "https://{a-c}.tile.openstreetmap.org/{z}/{x}/{y}.png";
+    private static final int OSM_MAX_ZOOM = 19;
+    /** the OpenLayers Stamen source, the MapView shows watercolor tiles with terrain labels on top. */
+    private static final String STAMEN_WATERCOLOR_TEMPLATE =
+        "https://stamen-tiles-{a-d}.a.ssl.fastly.net/watercolor/{z}/{x}/{y}.jpg";
+    private static final String STAMEN_LABELS_TEMPLATE =
+        "https://stamen-tiles-{a-d}.a.ssl.fastly.net/terrain-labels/{z}/{x}/{y}.png";
+    private static final int STAMEN_MAX_ZOOM = 18;
+
+    /** half the size of the EPSG:3857 extent in meters. */
+    private static final double HALF_WORLD = 20037508.342789244;
+    /** version used by the OpenLayers TileWMS source. */
+    private static final String WMS_VERSION = "1.3.0";
+
+    private static final Pattern CHAR_RANGE = Pattern.compile("\\{([a-z])-([a-z])}");
+    private static final Pattern NUMBER_RANGE = Pattern.compile("\\{(\\d+)-(\\d+)}");
+
+    private final String name;
+    private final List<TileUrlFunction> layers;
+    private final int minZoom;
+    private final int maxZoom;
+
+    private TileSource(String name, List<TileUrlFunction> layers, int minZoom, int maxZoom) {
+        this.name = name;
+        this.layers = layers;
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+    }
+
+    /**
+     * returns the tile source for a map type.
+     *
+     * @param mapType
+     *     the map type
+     * @param xyzParam
+     *     the params used for {@link MapType#XYZ}
+     * @param wmsParam
+     *     the params used for {@link MapType#WMS}
+     * @return the tile source
+     * @throws IllegalArgumentException
+     *     if the map type is not supported
+     */
+    public static TileSource forMapType(MapType mapType, XYZParam xyzParam, WMSParam wmsParam) {
+        switch (mapType) {
+            case OSM:
+                return osm();
+            case STAMEN_WC:
+                return new TileSource("stamen-watercolor",
+                    List.of(template(STAMEN_WATERCOLOR_TEMPLATE), template(STAMEN_LABELS_TEMPLATE)), 0,
+                    STAMEN_MAX_ZOOM);
+            case XYZ:
+                return xyz(xyzParam);
+            case WMS:
+                return wms(wmsParam);
+            default:
+                throw new IllegalArgumentException("map type " + mapType + " is not supported for prefetching");
+        }
+    }
+
+    public static TileSource osm() {
+        return new TileSource("osm", List.of(template(OSM_TEMPLATE)), 0, OSM_MAX_ZOOM);
+    }
+
+    /**
+     * @param xyzParam
+     *     the XYZ params, the url is used as template with the {x}, {y}, {-y}, {z} and {a-c} placeholders
+     * @return the tile source
+     */
+    public static TileSource xyz(XYZParam xyzParam) {
+        final int minZoom = xyzParam.getMinZoom() != null ? xyzParam.getMinZoom() : MapView.MIN_ZOOM;
+        final int maxZoom = xyzParam.getMaxZoom() != null ? xyzParam.getMaxZoom() : MapView.MAX_ZOOM;
+        return ofTemplate("xyz", xyzParam.getUrl(), minZoom, maxZoom);
+    }
+
+    /**
+     * @param name
+     *     name of the source
+     * @param template
+     *     url template with the {x}, {y}, {-y}, {z} and {a-c} placeholders
+     * @param minZoom
+     *     the lowest zoom level with tiles
+     * @param maxZoom
+     *     the highest zoom level with tiles
+     * @return a tile source for the template
+     */
+    public static TileSource ofTemplate(String name, String template, int minZoom, int maxZoom) {
+        return new TileSource(name, List.of(template(template)), minZoom, maxZoom);
+    }
+
+    /**
+     * @param wmsParam
+     *     the WMS params
+     * @return tile source building the GetMap requests of the OpenLayers TileWMS source
+     */
+    public static TileSource wms(WMSParam wmsParam) {
+        final String baseUrl = wmsParam.getUrl().replaceAll("[?&]$", "");
+        final String separator = baseUrl.contains("?") ? "&" : "?";
+        final Map<String, String> params = new LinkedHashMap<>();
+        params.put("SERVICE", "WMS");
+        params.put("VERSION", WMS_VERSION);
+        params.put("REQUEST", "GetMap");
+        params.put("FORMAT", "image/png");
+        params.put("TRANSPARENT", "true");
+        params.putAll(wmsParam.getParams());
+        params.put("WIDTH", "256");
+        params.put("HEIGHT", "256");
+        params.put("CRS", "EPSG:3857");
+        params.putIfAbsent("STYLES", "");
+
+        final StringBuilder prefix = new StringBuilder(baseUrl).append(separator);
+        params.forEach((key, value) -> {
+            if (!"BBOX".equals(key)) {
+                prefix.append(key).append('=').append(encodeURIComponent(value)).append('&');
+            }
+        });
+        prefix.append("BBOX=");
+        final String urlPrefix = prefix.toString();
+
+        return new TileSource("wms", List.of((zoom, x, y) -> {
+            // same operations as the OpenLayers tile grid, so the numbers match to the last digit
+            final double resolution = 2 * HALF_WORLD / 256 / Math.pow(2, zoom);
+            final double minX = -HALF_WORLD + (double) x * 256 * resolution;
+            final double minY = HALF_WORLD - ((double) y + 1) * 256 * resolution;
+            final double maxX = minX + 256 * resolution;
+            final double maxY = minY + 256 * resolution;
+            return urlPrefix + encodeURIComponent(
+                jsNumber(minX) + ',' + jsNumber(minY) + ',' + jsNumber(maxX) + ',' + jsNumber(maxY));
+        }), MapView.MIN_ZOOM, MapView.MAX_ZOOM);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMinZoom() {
+        return minZoom;
+    }
+
+    public int getMaxZoom() {
+        return maxZoom;
+    }
+
+    /**
+     * @return the number of layers, which is the number of urls per tile
+     */
+    public int getLayerCount() {
+        return layers.size();
+    }
+
+    /**
+     * returns the urls for a tile, one for each layer of the source.
+     *
+     * @param zoom
+     *     the zoom level
+     * @param x
+     *     the tile column
+     * @param y
+     *     the tile row, counted from the top
+     * @return the urls
+     */
+    public List<String> getUrls(int zoom, int x, int y) {
+        if (layers.size() == 1) {
+            return Collections.singletonList(layers.get(0).url(zoom, x, y));
+        }
+        final List<String> urls = new ArrayList<>(layers.size());
+        for (TileUrlFunction layer : layers) {
+            urls.add(layer.url(zoom, x, y));
+        }
+        return urls;
+    }
+
+    /**
+     * creates the url function for a template. Like in OpenLayers, a range like {a-c} or {1-4} expands the template
+     * into several ones of which one is chosen by a hash of the tile coordinates.
+     */
+    private static TileUrlFunction template(String template) {
+        final List<String> templates = expandRanges(template);
+        return (zoom, x, y) -> {
+            final int index = Math.floorMod((x << zoom) + y, templates.size());
+            return templates.get(index)
+                .replace("{z}", Integer.toString(zoom))
+                .replace("{x}", Integer.toString(x))
+                .replace("{y}", Integer.toString(y))
+                .replace("{-y}", Integer.toString((1 << zoom) - 1 - y));
+        };
+    }
+
+    private static List<String> expandRanges(String template) {
+        final List<String> templates = new ArrayList<>();
+        Matcher matcher = CHAR_RANGE.matcher(template);
+        if (matcher.find()) {
+            for (char c = matcher.group(1).charAt(0); c <= matcher.group(2).charAt(0); c++) {
+                templates.add(template.substring(0, matcher.start()) + c + template.substring(matcher.end()));
+            }
+            return templates;
+        }
+        matcher = NUMBER_RANGE.matcher(template);
+        if (matcher.find()) {
+            final int end = Integer.parseInt(matcher.group(2));
+            for (int i = Integer.parseInt(matcher.group(1)); i <= end; i++) {
+                templates.add(template.substring(0, matcher.start()) + i + template.substring(matcher.end()));
+            }
+            return templates;
+        }
+        templates.add(template);
+        return templates;
+    }
+
+    /**
+     * formats a number like JavaScript's Number.toString() for the values in a bounding box.
+     */
+    static String jsNumber(double value) {
+        return new BigDecimal(Double.toString(value)).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * encodes a value like JavaScript's encodeURIComponent().
+     */
+    static String encodeURIComponent(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8)
+            .replace("+", "%20")
+            .replace("%21", "!")
+            .replace("%27", "'")
+            .replace("%28", "(")
+            .replace("%29", ")")
+            .replace("%7E", "~");
+    }
+
+    @Override
+    public String toString() {
+        return "TileSource{" + name + ", zoom " + minZoom + '-' + maxZoom + '}';
+    }
+
+    @FunctionalInterface
+    private interface TileUrlFunction {
+        String url(int zoom, int x, int y);
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.pointer;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfxdemo.animation.FrameScheduler;
+import javafx.application.Platform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Coalesces pointer move events from the map. The events arriving between two JavaFX pulses are collapsed to the
+ * latest one, which is handed to a computation running on a background executor. Only one computation runs at a time;
+ * when it finishes, the latest position that arrived in the meantime is processed next and all older ones are
+ * dropped. The results are delivered on the JavaFX Application Thread.
+ * <p>
+ * The pipeline counts received, dispatched and computed events and measures the latency from the arrival of an event
+ * to the delivery of its result.
+ *
+ * @param <R>
+ *     the type of the computed result
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class PointerMovePipeline<R> {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(PointerMovePipeline.class);
+
+    /** length of the window for the event rate. */
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+
+    private final Executor executor;
+    private final Function<Coordinate, R> computation;
+    private final BiConsumer<Coordinate, R> resultConsumer;
+
+    /** the latest position not yet dispatched, only accessed on the FX thread. */
+    private Coordinate pending;
+    /** arrival time of the oldest event coalesced into pending. */
+    private long pendingSince;
+    private final FrameScheduler frameScheduler;
+    /** the task dispatching once per pulse as long as there are pending events, null if not registered. */
+    private FrameScheduler.Registration dispatchTask;
+
+    /** the next request for the background computation. */
+    private final AtomicReference<Request> queued = new AtomicReference<>();
+    /** true while a background computation is running. */
+    private final AtomicBoolean computing = new AtomicBoolean(false);
+
+    /** counters, the ones without Atomic are only accessed on the FX thread. */
+    private long eventsReceived;
+    private long eventsDispatched;
+    private final AtomicLong resultsComputed = new AtomicLong();
+    private long resultsDelivered;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+    private long windowStart = System.nanoTime();
+    private long windowEvents;
+    private double eventsPerSecond;
+
+    /**
+     * @param frameScheduler
+     *     the scheduler for the once per pulse dispatch
+     * @param executor
+     *     executor for the computation
+     * @param computation
+     *     the computation to run for a pointer position, called on a background thread
+     * @param resultConsumer
+     *     consumer for the results, called on the JavaFX Application Thread
+     */
+    public PointerMovePipeline(FrameScheduler frameScheduler, Executor executor, Function<Coordinate, R> computation,
+                               BiConsumer<Coordinate, R> resultConsumer) {
+        this.frameScheduler = frameScheduler;
+        this.executor = executor;
+        this.computation = computation;
+        this.resultConsumer = resultConsumer;
+    }
+
+    /**
+     * called on the JavaFX Application Thread for every pointer move event.
+     *
+     * @param coordinate
+     *     the pointer position
+     */
+    public void pointerMoved(Coordinate coordinate) {
+        final long now = System.nanoTime();
+        eventsReceived++;
+        windowEvents++;
+        if (now - windowStart >= RATE_WINDOW_NANOS) {
+            eventsPerSecond = windowEvents * 1e9 / (now - windowStart);
+            windowStart = now;
+            windowEvents = 0;
+            if (logger.isDebugEnabled()) {
+                logger.debug("pointer events: {}", getStatistics());
+            }
+        }
+        if (pending == null) {
+            pendingSince = now;
+        }
+        pending = coordinate;
+        if (dispatchTask == null) {
+            dispatchTask = frameScheduler.everyFrame(pulse -> dispatch());
+        }
+    }
+
+    /**
+     * stops the pipeline; pending events are dropped.
+     */
+    public void stop() {
+        if (dispatchTask != null) {
+            dispatchTask.cancel();
+            dispatchTask = null;
+        }
+        pending = null;
+        queued.set(null);
+    }
+
+    /**
+     * @return the current statistics, must be called on the JavaFX Application Thread
+     */
+    public Statistics getStatistics() {
+        return new Statistics(eventsReceived, eventsDispatched, resultsComputed.get(), resultsDelivered,
+            eventsPerSecond, resultsDelivered == 0 ? 0 : totalLatencyNanos / resultsDelivered / 1e6,
+            maxLatencyNanos / 1e6);
+    }
+
+    /**
+     * @return false when there was nothing to dispatch, which removes the task from the scheduler
+     */
+    private boolean dispatch() {
+        if (pending == null) {
+            // nothing arrived since the last pulse, no need to run every frame
+            dispatchTask = null;
+            return false;
+        }
+        final Request request = new Request(pending, pendingSince);
+        pending = null;
+        eventsDispatched++;
+
+        queued.set(request);
+        if (computing.compareAndSet(false, true)) {
+            executor.execute(this::compute);
+        }
+        return true;
+    }
+
+    private void compute() {
+        while (true) {
+            final Request request = queued.getAndSet(null);
+            if (request == null) {
+                computing.set(false);
+                // a request may have been queued between the getAndSet and resetting the flag
+                if (queued.get() != null && computing.compareAndSet(false, true)) {
+                    continue;
+                }
+                return;
+            }
+            try {
+                final R result = computation.apply(request.coordinate);
+                resultsComputed.incrementAndGet();
+                Platform.runLater(() -> deliver(request, result));
+            } catch (RuntimeException e) {
+                logger.warn("pointer computation failed for {}", request.coordinate, e);
+            }
+        }
+    }
+
+    private void deliver(Request request, R result) {
+        final long latency = System.nanoTime() - request.receivedNanos;
+        resultsDelivered++;
+        totalLatencyNanos += latency;
+        maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+        resultConsumer.accept(request.coordinate, result);
+    }
+
+    /**
+     * a coalesced pointer position.
+     */
+    private static final class Request {
+        private final Coordinate coordinate;
+        private final long receivedNanos;
+
+        private Request(Coordinate coordinate, long receivedNanos) {
+            this.coordinate = coordinate;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+
+    /**
+     * snapshot of the pipeline's counters.
+     */
+    public static final class Statistics {
+        private final long eventsReceived;
+        private final long eventsDispatched;
+        private final long resultsComputed;
+        private final long resultsDelivered;
+        private final double eventsPerSecond;
+        private final double averageLatencyMillis;
+        private final double maxLatencyMillis;
+
+        private Statistics(long eventsReceived, long eventsDispatched, long resultsComputed, long resultsDelivered,
+                           double eventsPerSecond, double averageLatencyMillis, double maxLatencyMillis) {
+            this.eventsReceived = eventsReceived;
+            this.eventsDispatched = eventsDispatched;
+            this.resultsComputed = resultsComputed;
+            this.resultsDelivered = resultsDelivered;
+            this.eventsPerSecond = eventsPerSecond;
+            this.averageLatencyMillis = averageLatencyMillis;
+            this.maxLatencyMillis = maxLatencyMillis;
+        }
+
+        public long getEventsReceived() {
+            return eventsReceived;
+        }
+
+        public long getEventsDispatched() {
+            return eventsDispatched;
+        }
+
+        public long getResultsComputed() {
+            return resultsComputed;
+        }
+
+        public long getResultsDelivered() {
+            return resultsDelivered;
+        }
+
+        /**
+         * @return the rate of received events, measured over the last completed one second window
+         */
+        public double getEventsPerSecond() {
+            return eventsPerSecond;
+        }
+
+        /**
+         * @return average time from receiving an event to delivering its result
+         */
+        public double getAverageLatencyMillis() {
+            return averageLatencyMillis;
+        }
+
+        public double getMaxLatencyMillis() {
+            return maxLatencyMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("received=%d, dispatched=%d, computed=%d, delivered=%d, rate=%.1f/s, " +
+                    "latency avg=%.2f ms, max=%.2f ms", eventsReceived, eventsDispatched, resultsComputed,
+                resultsDelivered, eventsPerSecond, averageLatencyMillis, maxLatencyMillis);
+        }
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.polygon;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.CoordinateLine;
+import com.sothawo.mapjfx.MapLabel;
+import com.sothawo.mapjfx.MapView;
+import com.sothawo.mapjfxdemo.animation.FrameScheduler;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.scene.paint.Color;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Interactive editing of a polygon in a {@link MapView}. The vertices are kept in a {@link VertexBuffer}; every
+ * vertex has a small handle label in the map. Edits only change the buffer and the affected handle and mark the
+ * geometry as dirty; the {@link CoordinateLine} in the map is rebuilt at most once per JavaFX pulse, no matter how
+ * many edits happened in between. As a CoordinateLine cannot be changed once created, this batching is what keeps the
+ * traffic over the JavaScript bridge down.
+ * <p>
+ * Supported edits:
+ * <ul>
+ * <li>append a vertex</li>
+ * <li>insert a vertex into the nearest edge</li>
+ * <li>move a vertex by dragging: a click on its handle picks it up, it follows the pointer and the next click on
+ * the map drops it</li>
+ * <li>delete a vertex</li>
+ * <li>undo of all the above</li>
+ * </ul>
+ * <p>
+ * All methods must be called on the JavaFX Application Thread.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class PolygonEditor {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(PolygonEditor.class);
+
+    /** css class for the vertex handles. */
+    public static final String VERTEX_LABEL_CSS_CLASS = "polygon-vertex";
+    /** css class for the vertex handle that is being dragged. */
+    public static final String DRAGGED_VERTEX_LABEL_CSS_CLASS = "polygon-vertex-dragged";
+
+    private static final String HANDLE_TEXT = "●";
+
+    private final MapView mapView;
+    private final VertexBuffer vertices = new VertexBuffer();
+    /** the handle labels, parallel to the vertices. */
+    private final List<MapLabel> handles = new ArrayList<>();
+    private final Deque<Edit> undoStack = new ArrayDeque<>();
+    private final ReadOnlyBooleanWrapper undoAvailable = new ReadOnlyBooleanWrapper(false);
+
+    /** the polygon currently shown in the map, null if none. */
+    private CoordinateLine polygonLine;
+    /** publishes polygonLine when it changed. */
+    private final ReadOnlyObjectWrapper<CoordinateLine> polygon = new ReadOnlyObjectWrapper<>();
+    private final FrameScheduler frameScheduler;
+    /** the pending flush, null if there are no changes. */
+    private FrameScheduler.Registration flushTask;
+
+    /** index of the vertex being dragged, -1 if none. */
+    private int draggedIndex = -1;
+    private double dragStartLatitude;
+    private double dragStartLongitude;
+    /** the latest pointer position during a drag, applied on the next pulse. */
+    private Coordinate dragTarget;
+
+    public PolygonEditor(MapView mapView, FrameScheduler frameScheduler) {
+        this.mapView = mapView;
+        this.frameScheduler = frameScheduler;
+    }
+
+    /**
+     * @return the number of vertices
+     */
+    public int size() {
+        return vertices.size();
+    }
+
+    /**
+     * @return true if a vertex is being dragged
+     */
+    public boolean isDragging() {
+        return draggedIndex >= 0;
+    }
+
+    public boolean isUndoAvailable() {
+        return undoAvailable.get();
+    }
+
+    public ReadOnlyBooleanProperty undoAvailableProperty() {
+        return undoAvailable.getReadOnlyProperty();
+    }
+
+    /**
+     * @return the polygon currently shown in the map, changes at most once per pulse; null if there is none
+     */
+    public ReadOnlyObjectProperty<CoordinateLine> polygonProperty() {
+        return polygon.getReadOnlyProperty();
+    }
+
+    /**
+     * handles a click on the map: drops a dragged vertex, otherwise appends a vertex.
+     *
+     * @param coordinate
+     *     the clicked position
+     */
+    public void mapClicked(Coordinate coordinate) {
+        if (isDragging()) {
+            dropVertex(coordinate);
+        } else {
+            append(coordinate);
+        }
+    }
+
+    /**
+     * handles a pointer move; only has an effect when a vertex is being dragged.
+     *
+     * @param coordinate
+     *     the pointer position
+     */
+    public void pointerMoved(Coordinate coordinate) {
+        if (isDragging()) {
+            dragTarget = coordinate;
+            markDirty();
+        }
+    }
+
+    /**
+     * handles a click on a label; if it is a vertex handle, the vertex is picked up for dragging or, if it already is
+     * dragged, dropped at its current position.
+     *
+     * @param label
+     *     the clicked label
+     * @return true if the label was a vertex handle of this editor
+     */
+    public boolean labelClicked(MapLabel label) {
+        final int index = handles.indexOf(label);
+        if (index < 0) {
+            return false;
+        }
+        if (index == draggedIndex) {
+            dropVertex(label.getPosition());
+        } else {
+            if (isDragging()) {
+                dropVertex(handles.get(draggedIndex).getPosition());
+            }
+            startDrag(index);
+        }
+        return true;
+    }
+
+    /**
+     * handles a right click on a label; if it is a vertex handle, the vertex is deleted.
+     *
+     * @param label
+     *     the clicked label
+     * @return true if the label was a vertex handle of this editor
+     */
+    public boolean labelRightClicked(MapLabel label) {
+        final int index = handles.indexOf(label);
+        if (index < 0) {
+            return false;
+        }
+        cancelDrag();
+        delete(index);
+        return true;
+    }
+
+    /**
+     * appends a vertex at the end.
+     *
+     * @param coordinate
+     *     the position of the vertex
+     */
+    public void append(Coordinate coordinate) {
+        final int index = vertices.size();
+        insertVertex(index, coordinate.getLatitude(), coordinate.getLongitude());
+        pushUndo(new Edit(EditType.INSERT, index, 0, 0));
+    }
+
+    /**
+     * inserts a vertex into the edge nearest to the position; with less than two vertices it is appended.
+     *
+     * @param coordinate
+     *     the position of the new vertex
+     */
+    public void insert(Coordinate coordinate) {
+        cancelDrag();
+        final int edge = vertices.nearestEdge(coordinate.getLatitude(), coordinate.getLongitude(), true);
+        if (edge < 0) {
+            append(coordinate);
+            return;
+        }
+        final int index = edge + 1;
+        insertVertex(index, coordinate.getLatitude(), coordinate.getLongitude());
+        pushUndo(new Edit(EditType.INSERT, index, 0, 0));
+    }
+
+    /**
+     * moves a vertex.
+     *
+     * @param index
+     *     index of the vertex
+     * @param coordinate
+     *     the new position
+     */
+    public void move(int index, Coordinate coordinate) {
+        cancelDrag();
+        final double oldLatitude = vertices.getLatitude(index);
+        final double oldLongitude = vertices.getLongitude(index);
+        setVertex(index, coordinate.getLatitude(), coordinate.getLongitude());
+        pushUndo(new Edit(EditType.MOVE, index, oldLatitude, oldLongitude));
+    }
+
+    /**
+     * deletes a vertex.
+     *
+     * @param index
+     *     index of the vertex
+     */
+    public void delete(int index) {
+        cancelDrag();
+        final double latitude = vertices.getLatitude(index);
+        final double longitude = vertices.getLongitude(index);
+        removeVertex(index);
+        pushUndo(new Edit(EditType.DELETE, index, latitude, longitude));
+    }
+
+    /**
+     * undoes the last edit.
+     *
+     * @return true if there was an edit to undo
+     */
+    public boolean undo() {
+        cancelDrag();
+        final Edit edit = undoStack.pollLast();
+        undoAvailable.set(!undoStack.isEmpty());
+        if (edit == null) {
+            return false;
+        }
+        switch (edit.type) {
+            case INSERT:
+                removeVertex(edit.index);
+                break;
+            case MOVE:
+                setVertex(edit.index, edit.latitude, edit.longitude);
+                break;
+            case DELETE:
+                insertVertex(edit.index, edit.latitude, edit.longitude);
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * removes the polygon and all handles from the map and clears the vertices and the undo history.
+     */
+    public void clear() {
+        draggedIndex = -1;
+        dragTarget = null;
+        handles.forEach(mapView::removeLabel);
+        handles.clear();
+        vertices.clear();
+        undoStack.clear();
+        undoAvailable.set(false);
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        if (polygonLine != null) {
+            mapView.removeCoordinateLine(polygonLine);
+            polygonLine = null;
+        }
+        polygon.set(null);
+    }
+
+    private void startDrag(int index) {
+        draggedIndex = index;
+        dragStartLatitude = vertices.getLatitude(index);
+        dragStartLongitude = vertices.getLongitude(index);
+        handles.get(index).setCssClass(DRAGGED_VERTEX_LABEL_CSS_CLASS);
+    }
+
+    /**
+     * drops the dragged vertex at the given position, the whole drag is one undoable edit.
+     */
+    private void dropVertex(Coordinate coordinate) {
+        final int index = draggedIndex;
+        dragTarget = null;
+        draggedIndex = -1;
+        handles.get(index).setCssClass(VERTEX_LABEL_CSS_CLASS);
+        setVertex(index, coordinate.getLatitude(), coordinate.getLongitude());
+        pushUndo(new Edit(EditType.MOVE, index, dragStartLatitude, dragStartLongitude));
+    }
+
+    /**
+     * stops a drag and moves the vertex back to where it was picked up.
+     */
+    private void cancelDrag() {
+        if (isDragging()) {
+            final int index = draggedIndex;
+            dragTarget = null;
+            draggedIndex = -1;
+            handles.get(index).setCssClass(VERTEX_LABEL_CSS_CLASS);
+            setVertex(index, dragStartLatitude, dragStartLongitude);
+        }
+    }
+
+    private void insertVertex(int index, double latitude, double longitude) {
+        vertices.insert(index, latitude, longitude);
+        final MapLabel handle = new MapLabel(HANDLE_TEXT, -5, -9)
+            .setPosition(new Coordinate(latitude, longitude))
+            .setCssClass(VERTEX_LABEL_CSS_CLASS)
+            .setVisible(true);
+        handles.add(index, handle);
+        mapView.addLabel(handle);
+        markDirty();
+    }
+
+    private void setVertex(int index, double latitude, double longitude) {
+        vertices.set(index, latitude, longitude);
+        handles.get(index).setPosition(new Coordinate(latitude, longitude));
+        markDirty();
+    }
+
+    private void removeVertex(int index) {
+        vertices.remove(index);
+        mapView.removeLabel(handles.remove(index));
+        markDirty();
+    }
+
+    private void pushUndo(Edit edit) {
+        undoStack.addLast(edit);
+        undoAvailable.set(true);
+    }
+
+    private void markDirty() {
+        if (flushTask == null) {
+            // applied once on the next pulse
+            flushTask = frameScheduler.everyFrame(now -> {
+                flush();
+                return false;
+            });
+        }
+    }
+
+    /**
+     * applies the pending changes to the map, called once per pulse while there are changes.
+     */
+    private void flush() {
+        flushTask = null;
+        if (dragTarget != null && isDragging()) {
+            vertices.set(draggedIndex, dragTarget.getLatitude(), dragTarget.getLongitude());
+            handles.get(draggedIndex).setPosition(dragTarget);
+            dragTarget = null;
+        }
+
+        final long start = System.nanoTime();
+        if (polygonLine != null) {
+            mapView.removeCoordinateLine(polygonLine);
+            polygonLine = null;
+        }
+        if (!vertices.isEmpty()) {
+            polygonLine = new CoordinateLine(vertices.toCoordinates())
+                .setColor(Color.DODGERBLUE)
+                .setFillColor(Color.web("lawngreen", 0.4))
+                .setClosed(true);
+            mapView.addCoordinateLine(polygonLine);
+            polygonLine.setVisible(true);
+        }
+        polygon.set(polygonLine);
+        if (logger.isTraceEnabled()) {
+            logger.trace("polygon with {} vertices updated in {} µs", vertices.size(),
+                (System.nanoTime() - start) / 1_000);
+        }
+    }
+
+    private enum EditType {
+        /** a vertex was inserted or appended, undone by removing it. */
+        INSERT,
+        /** a vertex was moved, undone by moving it back. */
+        MOVE,
+        /** a vertex was deleted, undone by inserting it again. */
+        DELETE
+    }
+
+    /**
+     * an undoable edit, latitude and longitude hold the position to restore for moves and deletes.
+     */
+    private static final class Edit {
+        private final EditType type;
+        private final int index;
+        private final double latitude;
+        private final double longitude;
+
+        private Edit(EditType type, int index, double latitude, double longitude) {
+            this.type = type;
+            this.index = index;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+}
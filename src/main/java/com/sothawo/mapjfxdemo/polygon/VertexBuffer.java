@@ -0,0 +1,196 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.polygon;
+
+import com.sothawo.mapjfx.Coordinate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Growable buffer of vertices stored in two primitive arrays. Appending is amortized O(1), inserting and deleting
+ * shift the following vertices with {@link System#arraycopy(Object, int, Object, int, int)}.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class VertexBuffer {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private double[] latitudes = new double[INITIAL_CAPACITY];
+    private double[] longitudes = new double[INITIAL_CAPACITY];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double getLatitude(int index) {
+        checkIndex(index, size);
+        return latitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        checkIndex(index, size);
+        return longitudes[index];
+    }
+
+    /**
+     * appends a vertex.
+     *
+     * @param latitude
+     *     the latitude
+     * @param longitude
+     *     the longitude
+     */
+    public void append(double latitude, double longitude) {
+        ensureCapacity(size + 1);
+        latitudes[size] = latitude;
+        longitudes[size] = longitude;
+        size++;
+    }
+
+    /**
+     * inserts a vertex before the vertex at the given index.
+     *
+     * @param index
+     *     the index of the new vertex, 0 to size
+     * @param latitude
+     *     the latitude
+     * @param longitude
+     *     the longitude
+     */
+    public void insert(int index, double latitude, double longitude) {
+        checkIndex(index, size + 1);
+        ensureCapacity(size + 1);
+        System.arraycopy(latitudes, index, latitudes, index + 1, size - index);
+        System.arraycopy(longitudes, index, longitudes, index + 1, size - index);
+        latitudes[index] = latitude;
+        longitudes[index] = longitude;
+        size++;
+    }
+
+    /**
+     * moves a vertex to a new position.
+     *
+     * @param index
+     *     the index of the vertex
+     * @param latitude
+     *     the new latitude
+     * @param longitude
+     *     the new longitude
+     */
+    public void set(int index, double latitude, double longitude) {
+        checkIndex(index, size);
+        latitudes[index] = latitude;
+        longitudes[index] = longitude;
+    }
+
+    /**
+     * removes a vertex.
+     *
+     * @param index
+     *     the index of the vertex
+     */
+    public void remove(int index) {
+        checkIndex(index, size);
+        System.arraycopy(latitudes, index + 1, latitudes, index, size - index - 1);
+        System.arraycopy(longitudes, index + 1, longitudes, index, size - index - 1);
+        size--;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * returns the index of the edge nearest to a position. Edge i runs from vertex i to vertex i + 1; when the buffer
+     * is treated as closed, the last edge runs from the last vertex back to the first one. Distances are measured in
+     * degrees with the longitude scaled by the cosine of the latitude, which is accurate enough for picking.
+     *
+     * @param latitude
+     *     the latitude of the position
+     * @param longitude
+     *     the longitude of the position
+     * @param closed
+     *     whether the vertices form a closed ring
+     * @return the index of the nearest edge, -1 if there are less than two vertices
+     */
+    public int nearestEdge(double latitude, double longitude, boolean closed) {
+        if (size < 2) {
+            return -1;
+        }
+        final double lonScale = Math.cos(Math.toRadians(latitude));
+        final int numEdges = closed ? size : size - 1;
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < numEdges; i++) {
+            final int j = i + 1 == size ? 0 : i + 1;
+            final double ax = longitudes[i] * lonScale;
+            final double ay = latitudes[i];
+            final double dx = longitudes[j] * lonScale - ax;
+            final double dy = latitudes[j] - ay;
+            final double px = longitude * lonScale - ax;
+            final double py = latitude - ay;
+            final double lengthSquared = dx * dx + dy * dy;
+            double t = lengthSquared == 0 ? 0 : (px * dx + py * dy) / lengthSquared;
+            t = t < 0 ? 0 : t > 1 ? 1 : t;
+            final double ex = px - t * dx;
+            final double ey = py - t * dy;
+            final double distance = ex * ex + ey * ey;
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * @return the vertices as a new list of coordinates
+     */
+    public List<Coordinate> toCoordinates() {
+        final List<Coordinate> coordinates = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            coordinates.add(new Coordinate(latitudes[i], longitudes[i]));
+        }
+        return coordinates;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > latitudes.length) {
+            final int newCapacity = Math.max(capacity, latitudes.length * 2);
+            latitudes = Arrays.copyOf(latitudes, newCapacity);
+            longitudes = Arrays.copyOf(longitudes, newCapacity);
+        }
+    }
+
+    private static void checkIndex(int index, int limit) {
+        if (index < 0 || index >= limit) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + limit);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "VertexBuffer{size=" + size + '}';
+    }
+}
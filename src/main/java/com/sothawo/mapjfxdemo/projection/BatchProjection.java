@@ -0,0 +1,309 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.projection;
+
+import com.sothawo.mapjfx.Projection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Transforms whole coordinate columns between WGS84 degrees, Web Mercator meters (EPSG:3857) and the pixel
+ * coordinates of the tile grid at a zoom level. The pixel coordinates count from the top left corner of the world,
+ * which is {@link #TILE_SIZE} * 2^zoom pixels wide and high; the tile of a pixel is its coordinate divided by
+ * {@link #TILE_SIZE}.
+ * <p>
+ * The methods work on primitive arrays without creating objects. Each loop has a single simple body with the
+ * constants computed before it, so the JIT removes the bounds checks, and the linear transforms compile to vector
+ * instructions. The transforms that need a logarithm or exponent per point keep them out of the linear loops; these
+ * loops use the vector API of the JDK when the JVM is started with {@code --add-modules jdk.incubator.vector}.
+ * <p>
+ * The target arrays may be the source arrays, x may be the same array as the longitudes and y the same as the
+ * latitudes. Latitudes beyond {@link #MAX_LATITUDE} are clamped, as Web Mercator is not defined at the poles.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class BatchProjection {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(BatchProjection.class);
+
+    /** the sphere radius of Web Mercator, the semi-major axis of WGS84. */
+    public static final double EARTH_RADIUS = 6_378_137;
+    /** half the width of the world in Web Mercator meters. */
+    public static final double HALF_WORLD = Math.PI * EARTH_RADIUS;
+    /** the latitude where Web Mercator meets the edge of the square world. */
+    public static final double MAX_LATITUDE = 85.0511287798066;
+    /** size of a map tile in pixels. */
+    public static final int TILE_SIZE = 256;
+
+    private static final double METERS_PER_DEGREE = HALF_WORLD / 180;
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private static final MercatorKernels kernels = createKernels();
+
+    private BatchProjection() {
+    }
+
+    private static MercatorKernels createKernels() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                if (VectorMercatorKernels.isUseful()) {
+                    return new VectorMercatorKernels();
+                }
+            } catch (LinkageError e) {
+                logger.warn("vector kernels cannot be used", e);
+            }
+        }
+        return new ScalarMercatorKernels();
+    }
+
+    /**
+     * @return true if the logarithm and exponent loops use the vector API
+     */
+    public static boolean isVectorized() {
+        return kernels instanceof VectorMercatorKernels;
+    }
+
+    /**
+     * @param zoom
+     *     the zoom level, may be fractional
+     * @return the width and height of the world in pixels at the zoom level
+     */
+    public static double worldSize(double zoom) {
+        return TILE_SIZE * Math.pow(2, zoom);
+    }
+
+    /**
+     * WGS84 degrees to Web Mercator meters.
+     *
+     * @param latitudes
+     *     latitude values in degrees
+     * @param longitudes
+     *     longitude values in degrees
+     * @param x
+     *     receives the easting in meters
+     * @param y
+     *     receives the northing in meters
+     * @param size
+     *     number of points
+     */
+    public static void toMercator(double[] latitudes, double[] longitudes, double[] x, double[] y, int size) {
+        checkSize(size, latitudes, longitudes, x, y);
+        kernels.forward(latitudes, 0, EARTH_RADIUS / 2, y, size);
+        for (int i = 0; i < size; i++) {
+            x[i] = longitudes[i] * METERS_PER_DEGREE;
+        }
+    }
+
+    /**
+     * Web Mercator meters to WGS84 degrees.
+     *
+     * @param x
+     *     easting values in meters
+     * @param y
+     *     northing values in meters
+     * @param latitudes
+     *     receives the latitudes in degrees
+     * @param longitudes
+     *     receives the longitudes in degrees
+     * @param size
+     *     number of points
+     */
+    public static void fromMercator(double[] x, double[] y, double[] latitudes, double[] longitudes, int size) {
+        checkSize(size, x, y, latitudes, longitudes);
+        kernels.inverse(y, 0, 1 / EARTH_RADIUS, latitudes, size);
+        final double degreesPerMeter = 1 / METERS_PER_DEGREE;
+        for (int i = 0; i < size; i++) {
+            longitudes[i] = x[i] * degreesPerMeter;
+        }
+    }
+
+    /**
+     * Web Mercator meters to pixel coordinates.
+     *
+     * @param x
+     *     easting values in meters
+     * @param y
+     *     northing values in meters
+     * @param zoom
+     *     the zoom level, may be fractional
+     * @param pixelX
+     *     receives the pixel x coordinates
+     * @param pixelY
+     *     receives the pixel y coordinates
+     * @param size
+     *     number of points
+     */
+    public static void mercatorToPixels(double[] x, double[] y, double zoom, double[] pixelX, double[] pixelY,
+                                        int size) {
+        checkSize(size, x, y, pixelX, pixelY);
+        final double scale = worldSize(zoom) / (2 * HALF_WORLD);
+        final double offset = HALF_WORLD * scale;
+        for (int i = 0; i < size; i++) {
+            pixelX[i] = x[i] * scale + offset;
+        }
+        for (int i = 0; i < size; i++) {
+            pixelY[i] = offset - y[i] * scale;
+        }
+    }
+
+    /**
+     * pixel coordinates to Web Mercator meters.
+     *
+     * @param pixelX
+     *     pixel x coordinates
+     * @param pixelY
+     *     pixel y coordinates
+     * @param zoom
+     *     the zoom level, may be fractional
+     * @param x
+     *     receives the easting in meters
+     * @param y
+     *     receives the northing in meters
+     * @param size
+     *     number of points
+     */
+    public static void pixelsToMercator(double[] pixelX, double[] pixelY, double zoom, double[] x, double[] y,
+                                        int size) {
+        checkSize(size, pixelX, pixelY, x, y);
+        final double scale = 2 * HALF_WORLD / worldSize(zoom);
+        for (int i = 0; i < size; i++) {
+            x[i] = pixelX[i] * scale - HALF_WORLD;
+        }
+        for (int i = 0; i < size; i++) {
+            y[i] = HALF_WORLD - pixelY[i] * scale;
+        }
+    }
+
+    /**
+     * WGS84 degrees to pixel coordinates, without the intermediate meters.
+     *
+     * @param latitudes
+     *     latitude values in degrees
+     * @param longitudes
+     *     longitude values in degrees
+     * @param zoom
+     *     the zoom level, may be fractional
+     * @param pixelX
+     *     receives the pixel x coordinates
+     * @param pixelY
+     *     receives the pixel y coordinates
+     * @param size
+     *     number of points
+     */
+    public static void toPixels(double[] latitudes, double[] longitudes, double zoom, double[] pixelX,
+                                double[] pixelY, int size) {
+        checkSize(size, latitudes, longitudes, pixelX, pixelY);
+        final double worldSize = worldSize(zoom);
+        final double center = worldSize / 2;
+        kernels.forward(latitudes, center, -worldSize / (4 * Math.PI), pixelY, size);
+        final double xScale = worldSize / 360;
+        for (int i = 0; i < size; i++) {
+            pixelX[i] = longitudes[i] * xScale + center;
+        }
+    }
+
+    /**
+     * pixel coordinates to WGS84 degrees.
+     *
+     * @param pixelX
+     *     pixel x coordinates
+     * @param pixelY
+     *     pixel y coordinates
+     * @param zoom
+     *     the zoom level, may be fractional
+     * @param latitudes
+     *     receives the latitudes in degrees
+     * @param longitudes
+     *     receives the longitudes in degrees
+     * @param size
+     *     number of points
+     */
+    public static void fromPixels(double[] pixelX, double[] pixelY, double zoom, double[] latitudes,
+                                  double[] longitudes, int size) {
+        checkSize(size, pixelX, pixelY, latitudes, longitudes);
+        final double worldSize = worldSize(zoom);
+        final double center = worldSize / 2;
+        kernels.inverse(pixelY, center, -2 * Math.PI / worldSize, latitudes, size);
+        final double xScale = 360 / worldSize;
+        for (int i = 0; i < size; i++) {
+            longitudes[i] = (pixelX[i] - center) * xScale;
+        }
+    }
+
+    /**
+     * WGS84 degrees to the units of a map projection: meters for {@link Projection#WEB_MERCATOR}, degrees with x as
+     * longitude and y as latitude for {@link Projection#WGS_84}.
+     *
+     * @param projection
+     *     the projection of the map
+     * @param latitudes
+     *     latitude values in degrees
+     * @param longitudes
+     *     longitude values in degrees
+     * @param x
+     *     receives the x values
+     * @param y
+     *     receives the y values
+     * @param size
+     *     number of points
+     */
+    public static void toMapUnits(Projection projection, double[] latitudes, double[] longitudes, double[] x,
+                                  double[] y, int size) {
+        if (projection == Projection.WEB_MERCATOR) {
+            toMercator(latitudes, longitudes, x, y, size);
+        } else {
+            checkSize(size, latitudes, longitudes, x, y);
+            System.arraycopy(latitudes, 0, y, 0, size);
+            System.arraycopy(longitudes, 0, x, 0, size);
+        }
+    }
+
+    /**
+     * the units of a map projection to WGS84 degrees, the inverse of
+     * {@link #toMapUnits(Projection, double[], double[], double[], double[], int)}.
+     *
+     * @param projection
+     *     the projection of the map
+     * @param x
+     *     x values
+     * @param y
+     *     y values
+     * @param latitudes
+     *     receives the latitudes in degrees
+     * @param longitudes
+     *     receives the longitudes in degrees
+     * @param size
+     *     number of points
+     */
+    public static void fromMapUnits(Projection projection, double[] x, double[] y, double[] latitudes,
+                                    double[] longitudes, int size) {
+        if (projection == Projection.WEB_MERCATOR) {
+            fromMercator(x, y, latitudes, longitudes, size);
+        } else {
+            checkSize(size, x, y, latitudes, longitudes);
+            System.arraycopy(y, 0, latitudes, 0, size);
+            System.arraycopy(x, 0, longitudes, 0, size);
+        }
+    }
+
+    private static void checkSize(int size, double[] first, double[] second, double[] third, double[] fourth) {
+        if (size < 0 || first.length < size || second.length < size || third.length < size
+            || fourth.length < size) {
+            throw new IllegalArgumentException("arrays must contain at least " + size + " values");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.projection;
+
+/**
+ * The loops with the logarithm and exponent of the Mercator northing, the other transforms are linear.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+interface MercatorKernels {
+
+    /**
+     * computes {@code target[i] = offset + factor * ln((1 + sin(phi)) / (1 - sin(phi)))} with phi the clamped
+     * latitude in radians.
+     *
+     * @param latitudes
+     *     latitude values in degrees
+     * @param offset
+     *     added to the scaled value
+     * @param factor
+     *     scales the logarithm
+     * @param target
+     *     receives the values
+     * @param size
+     *     number of points
+     */
+    void forward(double[] latitudes, double offset, double factor, double[] target, int size);
+
+    /**
+     * the inverse of {@link #forward(double[], double, double, double[], int)} with the reciprocal factor,
+     * {@code latitudes[i] = 2 * atan(exp((source[i] - offset) * factor)) - pi / 2} in degrees.
+     *
+     * @param source
+     *     the values
+     * @param offset
+     *     subtracted from the values
+     * @param factor
+     *     scales the values for the exponent
+     * @param latitudes
+     *     receives the latitudes in degrees
+     * @param size
+     *     number of points
+     */
+    void inverse(double[] source, double offset, double factor, double[] latitudes, int size);
+}
@@ -0,0 +1,44 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.projection;
+
+/**
+ * Plain loops, used when the vector API is not available.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+final class ScalarMercatorKernels implements MercatorKernels {
+
+    private static final double DEGREES_TO_RADIANS = Math.PI / 180;
+    private static final double RADIANS_TO_DEGREES = 180 / Math.PI;
+
+    @Override
+    public void forward(double[] latitudes, double offset, double factor, double[] target, int size) {
+        for (int i = 0; i < size; i++) {
+            final double latitude =
+                Math.max(-BatchProjection.MAX_LATITUDE, Math.min(BatchProjection.MAX_LATITUDE, latitudes[i]));
+            final double sin = Math.sin(latitude * DEGREES_TO_RADIANS);
+            target[i] = offset + factor * Math.log((1 + sin) / (1 - sin));
+        }
+    }
+
+    @Override
+    public void inverse(double[] source, double offset, double factor, double[] latitudes, int size) {
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = (2 * Math.atan(Math.exp((source[i] - offset) * factor)) - Math.PI / 2) * RADIANS_TO_DEGREES;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.projection;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The loops with the incubating vector API of Java 17. This class must only be loaded when the module
+ * jdk.incubator.vector is present, see {@link BatchProjection#isVectorized()}.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+final class VectorMercatorKernels implements MercatorKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final double DEGREES_TO_RADIANS = Math.PI / 180;
+    private static final double RADIANS_TO_DEGREES = 180 / Math.PI;
+
+    /**
+     * @return true if the preferred vector shape holds more than one double
+     */
+    static boolean isUseful() {
+        return SPECIES.length() > 1;
+    }
+
+    @Override
+    public void forward(double[] latitudes, double offset, double factor, double[] target, int size) {
+        final int upper = SPECIES.loopBound(size);
+        for (int i = 0; i < upper; i += SPECIES.length()) {
+            final DoubleVector sin = DoubleVector.fromArray(SPECIES, latitudes, i)
+                .max(-BatchProjection.MAX_LATITUDE)
+                .min(BatchProjection.MAX_LATITUDE)
+                .mul(DEGREES_TO_RADIANS)
+                .lanewise(VectorOperators.SIN);
+            sin.add(1.0).div(sin.neg().add(1.0))
+                .lanewise(VectorOperators.LOG)
+                .mul(factor)
+                .add(offset)
+                .intoArray(target, i);
+        }
+        for (int i = upper; i < size; i++) {
+            final double latitude =
+                Math.max(-BatchProjection.MAX_LATITUDE, Math.min(BatchProjection.MAX_LATITUDE, latitudes[i]));
+            final double sin = Math.sin(latitude * DEGREES_TO_RADIANS);
+            target[i] = offset + factor * Math.log((1 + sin) / (1 - sin));
+        }
+    }
+
+    @Override
+    public void inverse(double[] source, double offset, double factor, double[] latitudes, int size) {
+        final int upper = SPECIES.loopBound(size);
+        for (int i = 0; i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, source, i)
+                .sub(offset)
+                .mul(factor)
+                .lanewise(VectorOperators.EXP)
+                .lanewise(VectorOperators.ATAN)
+                .mul(2.0)
+                .sub(Math.PI / 2)
+                .mul(RADIANS_TO_DEGREES)
+                .intoArray(latitudes, i);
+        }
+        for (int i = upper; i < size; i++) {
+            latitudes[i] = (2 * Math.atan(Math.exp((source[i] - offset) * factor)) - Math.PI / 2) * RADIANS_TO_DEGREES;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.spatial;
+
+import com.sothawo.mapjfx.Extent;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Hierarchical point clustering, precomputed for every zoom level. The points are projected to normalized Web
+ * Mercator coordinates; starting at the max zoom, all points within a pixel radius of each other are merged into a
+ * weighted cluster, and the clusters of one zoom level are the input for the next lower one. Each level has its own
+ * {@link PointIndex}, so the clusters for a visible extent are found with one range query.
+ * <p>
+ * Clusters are identified by their zoom level and an id within that level. The index is immutable after creation and
+ * can be built on a background thread.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class ClusterIndex {
+
+    /** default cluster radius in pixels. */
+    public static final int DEFAULT_RADIUS = 60;
+    /** default max zoom level on which points are clustered; above this all points are shown. */
+    public static final int DEFAULT_MAX_ZOOM = 16;
+
+    /** size of a map tile in pixels. */
+    private static final double TILE_SIZE = 256.0;
+
+    private final int maxZoom;
+    /** the levels, index is the zoom; level maxZoom + 1 contains the input points. */
+    private final Level[] levels;
+
+    private ClusterIndex(int maxZoom, Level[] levels) {
+        this.maxZoom = maxZoom;
+        this.levels = levels;
+    }
+
+    /**
+     * builds the cluster hierarchy with the default radius and max zoom.
+     *
+     * @param latitudes
+     *     the latitudes of the points
+     * @param longitudes
+     *     the longitudes of the points
+     * @param size
+     *     the number of points
+     * @return the cluster index
+     */
+    public static ClusterIndex of(double[] latitudes, double[] longitudes, int size) {
+        return of(latitudes, longitudes, size, DEFAULT_RADIUS, DEFAULT_MAX_ZOOM);
+    }
+
+    /**
+     * builds the cluster hierarchy.
+     *
+     * @param latitudes
+     *     the latitudes of the points
+     * @param longitudes
+     *     the longitudes of the points
+     * @param size
+     *     the number of points
+     * @param radius
+     *     the cluster radius in pixels
+     * @param maxZoom
+     *     the highest zoom level on which points are clustered
+     * @return the cluster index
+     */
+    public static ClusterIndex of(double[] latitudes, double[] longitudes, int size, int radius, int maxZoom) {
+        if (size < 0 || latitudes.length < size || longitudes.length < size) {
+            throw new IllegalArgumentException("arrays must contain at least " + size + " values");
+        }
+        if (radius <= 0 || maxZoom < 0) {
+            throw new IllegalArgumentException("radius must be positive and maxZoom must not be negative");
+        }
+
+        final double[] x = new double[size];
+        final double[] y = new double[size];
+        final int[] count = new int[size];
+        final int[] pointIndex = new int[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = mercatorX(longitudes[i]);
+            y[i] = mercatorY(latitudes[i]);
+            count[i] = 1;
+            pointIndex[i] = i;
+        }
+
+        final Level[] levels = new Level[maxZoom + 2];
+        levels[maxZoom + 1] = new Level(x, y, count, pointIndex, size);
+        for (int zoom = maxZoom; zoom >= 0; zoom--) {
+            levels[zoom] = cluster(levels[zoom + 1], radius / (TILE_SIZE * Math.pow(2, zoom)));
+        }
+        return new ClusterIndex(maxZoom, levels);
+    }
+
+    private static Level cluster(Level input, double radius) {
+        final int n = input.size;
+        final double radiusSquared = radius * radius;
+        final int[] parent = new int[n];
+        Arrays.fill(parent, -1);
+
+        double[] x = new double[Math.max(16, n / 2)];
+        double[] y = new double[x.length];
+        int[] count = new int[x.length];
+        int[] pointIndex = new int[x.length];
+        int size = 0;
+
+        final Neighbours neighbours = new Neighbours(input, parent, radiusSquared);
+        for (int i = 0; i < n; i++) {
+            if (parent[i] >= 0) {
+                continue;
+            }
+            final int id = size;
+            parent[i] = id;
+            neighbours.reset(id, input.x[i], input.y[i], input.count[i]);
+            input.index.search(input.y[i] - radius, input.x[i] - radius, input.y[i] + radius, input.x[i] + radius,
+                neighbours);
+
+            if (size == x.length) {
+                final int newCapacity = x.length * 2;
+                x = Arrays.copyOf(x, newCapacity);
+                y = Arrays.copyOf(y, newCapacity);
+                count = Arrays.copyOf(count, newCapacity);
+                pointIndex = Arrays.copyOf(pointIndex, newCapacity);
+            }
+            if (neighbours.numMerged == 0) {
+                x[size] = input.x[i];
+                y[size] = input.y[i];
+                count[size] = input.count[i];
+                pointIndex[size] = input.pointIndex[i];
+            } else {
+                x[size] = neighbours.weightedX / neighbours.total;
+                y[size] = neighbours.weightedY / neighbours.total;
+                count[size] = neighbours.total;
+                pointIndex[size] = -1;
+            }
+            size++;
+        }
+
+        final Level level = new Level(x, y, count, pointIndex, size);
+        level.setChildren(parent);
+        return level;
+    }
+
+    /**
+     * @return the highest zoom level with clusters
+     */
+    public int getMaxZoom() {
+        return maxZoom;
+    }
+
+    /**
+     * returns the level to use for a map zoom value.
+     *
+     * @param zoom
+     *     the map's zoom
+     * @return the cluster level
+     */
+    public int levelForZoom(double zoom) {
+        return (int) Math.max(0, Math.min(maxZoom + 1, Math.floor(zoom)));
+    }
+
+    /**
+     * returns the ids of all clusters of a level that are within the given extent.
+     *
+     * @param extent
+     *     the extent
+     * @param level
+     *     the level as returned by {@link #levelForZoom(double)}
+     * @return cluster ids
+     */
+    public int[] getClusters(Extent extent, int level) {
+        final Level l = levels[level];
+        final double minX = mercatorX(extent.getMin().getLongitude());
+        final double maxX = mercatorX(extent.getMax().getLongitude());
+        final double minY = mercatorY(extent.getMax().getLatitude());
+        final double maxY = mercatorY(extent.getMin().getLatitude());
+        final IntArrayBuilder result = new IntArrayBuilder();
+        l.index.search(minY, minX, maxY, maxX, result);
+        return result.toArray();
+    }
+
+    public double getLatitude(int level, int id) {
+        return latitude(levels[level].y[id]);
+    }
+
+    public double getLongitude(int level, int id) {
+        return longitude(levels[level].x[id]);
+    }
+
+    /**
+     * @return the number of points in the cluster
+     */
+    public int getCount(int level, int id) {
+        return levels[level].count[id];
+    }
+
+    /**
+     * @return the index of the input point if the entry is a single point, -1 for a cluster
+     */
+    public int getPointIndex(int level, int id) {
+        return levels[level].pointIndex[id];
+    }
+
+    /**
+     * returns the zoom level at which the given cluster splits into more than one entry.
+     *
+     * @param level
+     *     the cluster's level
+     * @param id
+     *     the cluster's id
+     * @return the zoom where the cluster falls apart
+     */
+    public int getExpansionZoom(int level, int id) {
+        int currentLevel = level;
+        int currentId = id;
+        while (currentLevel <= maxZoom) {
+            final Level l = levels[currentLevel];
+            final int numChildren = l.childStart[currentId + 1] - l.childStart[currentId];
+            if (numChildren != 1) {
+                return currentLevel + 1;
+            }
+            currentId = l.children[l.childStart[currentId]];
+            currentLevel++;
+        }
+        return currentLevel;
+    }
+
+    static double mercatorX(double longitude) {
+        return longitude / 360 + 0.5;
+    }
+
+    static double mercatorY(double latitude) {
+        final double sin = Math.sin(Math.toRadians(latitude));
+        final double y = 0.5 - 0.25 * Math.log((1 + sin) / (1 - sin)) / Math.PI;
+        return y < 0 ? 0 : y > 1 ? 1 : y;
+    }
+
+    static double longitude(double x) {
+        return (x - 0.5) * 360;
+    }
+
+    static double latitude(double y) {
+        final double y2 = (180 - y * 360) * Math.PI / 180;
+        return 360 * Math.atan(Math.exp(y2)) / Math.PI - 90;
+    }
+
+    /**
+     * the entries of one zoom level.
+     */
+    private static final class Level {
+        private final double[] x;
+        private final double[] y;
+        private final int[] count;
+        private final int[] pointIndex;
+        private final int size;
+        private final PointIndex index;
+        /** for each entry the start position of its children in {@link #children}, size + 1 entries. */
+        private int[] childStart;
+        /** the ids of the children on the next higher level, grouped by parent. */
+        private int[] children;
+
+        private Level(double[] x, double[] y, int[] count, int[] pointIndex, int size) {
+            this.x = x;
+            this.y = y;
+            this.count = count;
+            this.pointIndex = pointIndex;
+            this.size = size;
+            // y is used as latitude and x as longitude, the index just needs two axes
+            this.index = PointIndex.of(y, x, size);
+            this.childStart = new int[size + 1];
+            this.children = new int[0];
+        }
+
+        /**
+         * sets up the child lists from the parent ids of the next higher level with a counting sort.
+         */
+        private void setChildren(int[] parent) {
+            childStart = new int[size + 1];
+            for (int p : parent) {
+                childStart[p + 1]++;
+            }
+            for (int i = 0; i < size; i++) {
+                childStart[i + 1] += childStart[i];
+            }
+            children = new int[parent.length];
+            final int[] next = Arrays.copyOf(childStart, size);
+            for (int child = 0; child < parent.length; child++) {
+                children[next[parent[child]]++] = child;
+            }
+        }
+    }
+
+    /**
+     * collects the unassigned neighbours of an entry during clustering.
+     */
+    private static final class Neighbours implements IntConsumer {
+        private final Level input;
+        private final int[] parent;
+        private final double radiusSquared;
+        private int id;
+        private double centerX;
+        private double centerY;
+        private double weightedX;
+        private double weightedY;
+        private int total;
+        private int numMerged;
+
+        private Neighbours(Level input, int[] parent, double radiusSquared) {
+            this.input = input;
+            this.parent = parent;
+            this.radiusSquared = radiusSquared;
+        }
+
+        private void reset(int id, double x, double y, int count) {
+            this.id = id;
+            this.centerX = x;
+            this.centerY = y;
+            this.weightedX = x * count;
+            this.weightedY = y * count;
+            this.total = count;
+            this.numMerged = 0;
+        }
+
+        @Override
+        public void accept(int neighbour) {
+            if (parent[neighbour] >= 0) {
+                return;
+            }
+            final double dx = input.x[neighbour] - centerX;
+            final double dy = input.y[neighbour] - centerY;
+            if (dx * dx + dy * dy <= radiusSquared) {
+                parent[neighbour] = id;
+                final int count = input.count[neighbour];
+                weightedX += input.x[neighbour] * count;
+                weightedY += input.y[neighbour] * count;
+                total += count;
+                numMerged++;
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.spatial;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.Extent;
+import com.sothawo.mapjfx.MapLabel;
+import com.sothawo.mapjfx.MapView;
+import com.sothawo.mapjfx.Marker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Shows the clusters of a {@link ClusterIndex} in a {@link MapView}. Clusters are shown as markers with an attached
+ * label containing the number of points, single points are shown with the marker supplied by the caller. When the
+ * visible extent or the zoom changes, only the markers that differ from the ones already in the map are added or
+ * removed. Clicking on a cluster marker zooms in to the level where the cluster falls apart.
+ * <p>
+ * All methods must be called on the JavaFX Application Thread.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class ClusterLayer {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(ClusterLayer.class);
+
+    /** css class for the count labels. */
+    public static final String CLUSTER_LABEL_CSS_CLASS = "cluster-label";
+
+    /** upper 32 bits of the keys for single points. */
+    private static final long POINT_KEY_PREFIX = 0xffffffffL << 32;
+
+    private final MapView mapView;
+    private final ClusterIndex clusterIndex;
+    /** supplies the marker for a single point, argument is the index of the point. */
+    private final IntFunction<Marker> pointMarkers;
+
+    /** the markers in the map, the key is built from level and cluster id, or from the point index. */
+    private final Map<Long, Marker> markersInMap = new HashMap<>();
+    /** the cluster keys of the cluster markers in the map. */
+    private final Map<Marker, Long> clusterMarkers = new HashMap<>();
+
+    /** the last extent set, null if not yet known. */
+    private Extent extent;
+
+    /**
+     * @param mapView
+     *     the map to show the clusters in
+     * @param clusterIndex
+     *     the clusters
+     * @param pointMarkers
+     *     function returning the marker for a single point; it is called with the index of the point in the data the
+     *     cluster index was built from, the returned marker must have a position.
+     */
+    public ClusterLayer(MapView mapView, ClusterIndex clusterIndex, IntFunction<Marker> pointMarkers) {
+        this.mapView = mapView;
+        this.clusterIndex = clusterIndex;
+        this.pointMarkers = pointMarkers;
+    }
+
+    /**
+     * sets the visible extent and updates the markers in the map for the map's current zoom.
+     *
+     * @param extent
+     *     the visible extent
+     */
+    public void setExtent(Extent extent) {
+        this.extent = extent;
+        update();
+    }
+
+    /**
+     * removes all markers of this layer from the map.
+     */
+    public void clear() {
+        markersInMap.values().forEach(mapView::removeMarker);
+        markersInMap.clear();
+        clusterMarkers.clear();
+        extent = null;
+    }
+
+    /**
+     * checks if the marker is a cluster marker of this layer and if so, zooms the map so that the cluster is
+     * expanded.
+     *
+     * @param marker
+     *     the clicked marker
+     * @return true if the marker was a cluster marker of this layer
+     */
+    public boolean handleMarkerClick(Marker marker) {
+        final Long key = clusterMarkers.get(marker);
+        if (key == null) {
+            return false;
+        }
+        final int level = (int) (key >> 32);
+        final int id = (int) (long) key;
+        final int expansionZoom = clusterIndex.getExpansionZoom(level, id);
+        logger.debug("expanding cluster {}/{} at zoom {}", level, id, expansionZoom);
+        mapView.setCenter(marker.getPosition());
+        mapView.setZoom(Math.min(expansionZoom, MapView.MAX_ZOOM));
+        return true;
+    }
+
+    private void update() {
+        if (extent == null) {
+            return;
+        }
+        final long start = System.nanoTime();
+        final int level = clusterIndex.levelForZoom(mapView.getZoom());
+        final int[] ids = clusterIndex.getClusters(extent, level);
+
+        final Set<Long> visibleKeys = new HashSet<>(ids.length * 2);
+        for (int id : ids) {
+            visibleKeys.add(key(level, id));
+        }
+
+        int removed = 0;
+        final Iterator<Map.Entry<Long, Marker>> iterator = markersInMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Long, Marker> entry = iterator.next();
+            if (!visibleKeys.contains(entry.getKey())) {
+                mapView.removeMarker(entry.getValue());
+                clusterMarkers.remove(entry.getValue());
+                iterator.remove();
+                removed++;
+            }
+        }
+
+        int added = 0;
+        for (int id : ids) {
+            final long key = key(level, id);
+            if (!markersInMap.containsKey(key)) {
+                final Marker marker = createMarker(level, id, key);
+                markersInMap.put(key, marker);
+                mapView.addMarker(marker);
+                added++;
+            }
+        }
+        if (logger.isTraceEnabled()) {
+            logger.trace("cluster level {}: {} added, {} removed, {} in map, took {} µs", level, added, removed,
+                markersInMap.size(), (System.nanoTime() - start) / 1_000);
+        }
+    }
+
+    private Marker createMarker(int level, int id, long key) {
+        final int pointIndex = clusterIndex.getPointIndex(level, id);
+        if (pointIndex >= 0) {
+            return pointMarkers.apply(pointIndex).setVisible(true);
+        }
+        final Marker marker = Marker.createProvided(Marker.Provided.BLUE)
+            .setPosition(new Coordinate(clusterIndex.getLatitude(level, id), clusterIndex.getLongitude(level, id)))
+            .setVisible(true);
+        marker.attachLabel(new MapLabel(String.valueOf(clusterIndex.getCount(level, id)), 10, -10)
+            .setCssClass(CLUSTER_LABEL_CSS_CLASS)
+            .setVisible(true));
+        clusterMarkers.put(marker, key);
+        return marker;
+    }
+
+    /**
+     * builds the key for an entry. Single points get a key independent of the level, so their markers stay in the
+     * map when the zoom changes.
+     */
+    private long key(int level, int id) {
+        final int pointIndex = clusterIndex.getPointIndex(level, id);
+        if (pointIndex >= 0) {
+            return POINT_KEY_PREFIX | pointIndex;
+        }
+        return ((long) level << 32) | (id & 0xffffffffL);
+    }
+}
@@ -0,0 +1,507 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.spatial;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.Extent;
+import com.sothawo.mapjfx.MapCoordinateElement;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A static, packed R-tree over points. The index is bulk loaded once: the points are sorted along a Hilbert curve and
+ * packed into nodes of {@value #NODE_SIZE} entries, level by level up to the root. All node boxes and entry references
+ * are kept in flat primitive arrays, so a tree over a million points consists of a handful of objects.
+ * <p>
+ * Query results are the positions of the points in the input that was used to build the index, so the caller can map
+ * them back to its own objects. The index is immutable and can be queried from several threads.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class PointIndex {
+
+    /** number of entries per node. */
+    public static final int NODE_SIZE = 16;
+
+    /** max value of the Hilbert grid coordinates. */
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+
+    /** number of indexed points. */
+    private final int numItems;
+    /** the boxes of all entries and nodes as minLon, minLat, maxLon, maxLat. */
+    private final double[] boxes;
+    /**
+     * for the entries on level 0 the index of the point in the input, for nodes the position of the first child.
+     */
+    private final int[] indices;
+    /** end position (exclusive) of each level, level 0 are the points. */
+    private final int[] levelBounds;
+
+    private PointIndex(int numItems, double[] boxes, int[] indices, int[] levelBounds) {
+        this.numItems = numItems;
+        this.boxes = boxes;
+        this.indices = indices;
+        this.levelBounds = levelBounds;
+    }
+
+    /**
+     * builds an index over the given coordinate columns.
+     *
+     * @param latitudes
+     *     the latitudes
+     * @param longitudes
+     *     the longitudes
+     * @param size
+     *     the number of points to index, the first size entries of the arrays are used
+     * @return the index
+     * @throws IllegalArgumentException
+     *     if the arrays contain less than size values
+     */
+    public static PointIndex of(double[] latitudes, double[] longitudes, int size) {
+        if (size < 0 || latitudes.length < size || longitudes.length < size) {
+            throw new IllegalArgumentException("arrays must contain at least " + size + " values");
+        }
+
+        // compute the number of nodes per level
+        int[] levelBounds = new int[8];
+        int numLevels = 0;
+        int count = size;
+        int numNodes = size;
+        levelBounds[numLevels++] = numNodes;
+        while (count > 1) {
+            count = (count + NODE_SIZE - 1) / NODE_SIZE;
+            numNodes += count;
+            if (numLevels == levelBounds.length) {
+                levelBounds = Arrays.copyOf(levelBounds, numLevels * 2);
+            }
+            levelBounds[numLevels++] = numNodes;
+        }
+        levelBounds = Arrays.copyOf(levelBounds, numLevels);
+
+        final double[] boxes = new double[numNodes * 4];
+        final int[] indices = new int[numNodes];
+        if (size == 0) {
+            return new PointIndex(0, boxes, indices, levelBounds);
+        }
+
+        // sort the points along the Hilbert curve over their bounding box
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double minLongitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        double maxLongitude = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            if (latitudes[i] < minLatitude) {
+                minLatitude = latitudes[i];
+            }
+            if (latitudes[i] > maxLatitude) {
+                maxLatitude = latitudes[i];
+            }
+            if (longitudes[i] < minLongitude) {
+                minLongitude = longitudes[i];
+            }
+            if (longitudes[i] > maxLongitude) {
+                maxLongitude = longitudes[i];
+            }
+        }
+        final double width = maxLongitude - minLongitude;
+        final double height = maxLatitude - minLatitude;
+        final double scaleX = width > 0 ? HILBERT_MAX / width : 0;
+        final double scaleY = height > 0 ? HILBERT_MAX / height : 0;
+
+        // sort key: 32 bit Hilbert value followed by the 31 bit input index
+        final long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            final int x = (int) ((longitudes[i] - minLongitude) * scaleX);
+            final int y = (int) ((latitudes[i] - minLatitude) * scaleY);
+            keys[i] = (hilbert(x, y) << 31) | i;
+        }
+        Arrays.sort(keys);
+
+        for (int position = 0; position < size; position++) {
+            final int index = (int) (keys[position] & 0x7fffffffL);
+            indices[position] = index;
+            final int offset = position * 4;
+            boxes[offset] = longitudes[index];
+            boxes[offset + 1] = latitudes[index];
+            boxes[offset + 2] = longitudes[index];
+            boxes[offset + 3] = latitudes[index];
+        }
+
+        // build the node levels bottom up
+        int position = size;
+        for (int level = 1; level < numLevels; level++) {
+            final int childStart = level == 1 ? 0 : levelBounds[level - 2];
+            final int childEnd = levelBounds[level - 1];
+            for (int child = childStart; child < childEnd; child += NODE_SIZE) {
+                double nodeMinX = Double.POSITIVE_INFINITY;
+                double nodeMinY = Double.POSITIVE_INFINITY;
+                double nodeMaxX = Double.NEGATIVE_INFINITY;
+                double nodeMaxY = Double.NEGATIVE_INFINITY;
+                final int end = Math.min(child + NODE_SIZE, childEnd);
+                for (int i = child; i < end; i++) {
+                    // plain comparisons instead of Math.min/max so that NaN positions are ignored
+                    final int offset = i * 4;
+                    if (boxes[offset] < nodeMinX) {
+                        nodeMinX = boxes[offset];
+                    }
+                    if (boxes[offset + 1] < nodeMinY) {
+                        nodeMinY = boxes[offset + 1];
+                    }
+                    if (boxes[offset + 2] > nodeMaxX) {
+                        nodeMaxX = boxes[offset + 2];
+                    }
+                    if (boxes[offset + 3] > nodeMaxY) {
+                        nodeMaxY = boxes[offset + 3];
+                    }
+                }
+                final int offset = position * 4;
+                boxes[offset] = nodeMinX;
+                boxes[offset + 1] = nodeMinY;
+                boxes[offset + 2] = nodeMaxX;
+                boxes[offset + 3] = nodeMaxY;
+                indices[position] = child;
+                position++;
+            }
+        }
+        return new PointIndex(size, boxes, indices, levelBounds);
+    }
+
+    /**
+     * builds an index over the given coordinates.
+     *
+     * @param coordinates
+     *     the coordinates
+     * @return the index, query results are positions in the list
+     */
+    public static PointIndex ofCoordinates(List<? extends Coordinate> coordinates) {
+        final int size = coordinates.size();
+        final double[] latitudes = new double[size];
+        final double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            final Coordinate coordinate = coordinates.get(i);
+            latitudes[i] = coordinate.getLatitude();
+            longitudes[i] = coordinate.getLongitude();
+        }
+        return of(latitudes, longitudes, size);
+    }
+
+    /**
+     * builds an index over the positions of the given elements, for example markers. Elements without a position
+     * are indexed at latitude and longitude NaN and are never found.
+     *
+     * @param elements
+     *     the elements
+     * @return the index, query results are positions in the list
+     */
+    public static PointIndex ofElements(List<? extends MapCoordinateElement> elements) {
+        final int size = elements.size();
+        final double[] latitudes = new double[size];
+        final double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            final Coordinate position = elements.get(i).getPosition();
+            latitudes[i] = position == null ? Double.NaN : position.getLatitude();
+            longitudes[i] = position == null ? Double.NaN : position.getLongitude();
+        }
+        return of(latitudes, longitudes, size);
+    }
+
+    /**
+     * @return the number of indexed points
+     */
+    public int size() {
+        return numItems;
+    }
+
+    /**
+     * calls the consumer with the input index of every point within the given bounds.
+     *
+     * @param minLatitude
+     *     min latitude, inclusive
+     * @param minLongitude
+     *     min longitude, inclusive
+     * @param maxLatitude
+     *     max latitude, inclusive
+     * @param maxLongitude
+     *     max longitude, inclusive
+     * @param consumer
+     *     the consumer for the results
+     * @return the number of points found
+     */
+    public int search(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+                      IntConsumer consumer) {
+        if (numItems == 0) {
+            return 0;
+        }
+        int found = 0;
+        // stack of node positions and their levels
+        final int[] stack = new int[(levelBounds.length + 1) * NODE_SIZE * 2];
+        int stackSize = 0;
+        int node = boxes.length / 4 - 1;
+        int level = levelBounds.length - 1;
+
+        while (true) {
+            if (level == 0) {
+                // single point index, the root is the point itself
+                if (intersects(node, minLatitude, minLongitude, maxLatitude, maxLongitude)) {
+                    consumer.accept(indices[node]);
+                    found++;
+                }
+            } else {
+                final int childStart = indices[node];
+                final int childEnd = Math.min(childStart + NODE_SIZE, levelBounds[level - 1]);
+                for (int child = childStart; child < childEnd; child++) {
+                    if (intersects(child, minLatitude, minLongitude, maxLatitude, maxLongitude)) {
+                        if (level == 1) {
+                            consumer.accept(indices[child]);
+                            found++;
+                        } else {
+                            stack[stackSize++] = child;
+                            stack[stackSize++] = level - 1;
+                        }
+                    }
+                }
+            }
+            if (stackSize == 0) {
+                break;
+            }
+            level = stack[--stackSize];
+            node = stack[--stackSize];
+        }
+        return found;
+    }
+
+    /**
+     * returns the input indices of all points within the given extent.
+     *
+     * @param extent
+     *     the extent
+     * @return the indices of the points, in no particular order
+     */
+    public int[] search(Extent extent) {
+        final IntArrayBuilder result = new IntArrayBuilder();
+        search(extent.getMin().getLatitude(), extent.getMin().getLongitude(), extent.getMax().getLatitude(),
+            extent.getMax().getLongitude(), result);
+        return result.toArray();
+    }
+
+    /**
+     * finds the point nearest to the given coordinate. Distances are compared in a local equirectangular
+     * approximation around the query point, which is exact enough for picking objects on the screen.
+     *
+     * @param latitude
+     *     the latitude
+     * @param longitude
+     *     the longitude
+     * @return the input index of the nearest point, -1 if the index is empty
+     */
+    public int nearest(double latitude, double longitude) {
+        if (numItems == 0) {
+            return -1;
+        }
+        final double lonScale = Math.cos(Math.toRadians(latitude));
+        final NodeQueue queue = new NodeQueue();
+
+        int node = boxes.length / 4 - 1;
+        int level = levelBounds.length - 1;
+        if (level == 0) {
+            return indices[node];
+        }
+        while (true) {
+            final int childStart = indices[node];
+            final int childEnd = Math.min(childStart + NODE_SIZE, levelBounds[level - 1]);
+            for (int child = childStart; child < childEnd; child++) {
+                final double distance = boxDistanceSquared(child, latitude, longitude, lonScale);
+                if (!Double.isNaN(distance)) {
+                    queue.push(distance, child, level - 1);
+                }
+            }
+            // a point on top of the queue is closer than every remaining node
+            if (!queue.isEmpty() && queue.peekLevel() == 0) {
+                return indices[queue.pop()];
+            }
+            if (queue.isEmpty()) {
+                return -1;
+            }
+            level = queue.peekLevel();
+            node = queue.pop();
+        }
+    }
+
+    /**
+     * finds the point nearest to the given coordinate.
+     *
+     * @param coordinate
+     *     the coordinate
+     * @return the input index of the nearest point, -1 if the index is empty
+     */
+    public int nearest(Coordinate coordinate) {
+        return nearest(coordinate.getLatitude(), coordinate.getLongitude());
+    }
+
+    private boolean intersects(int position, double minLatitude, double minLongitude, double maxLatitude,
+                               double maxLongitude) {
+        final int offset = position * 4;
+        return boxes[offset] <= maxLongitude && boxes[offset + 1] <= maxLatitude && boxes[offset + 2] >= minLongitude
+            && boxes[offset + 3] >= minLatitude;
+    }
+
+    private double boxDistanceSquared(int position, double latitude, double longitude, double lonScale) {
+        final int offset = position * 4;
+        final double dx = axisDistance(longitude, boxes[offset], boxes[offset + 2]) * lonScale;
+        final double dy = axisDistance(latitude, boxes[offset + 1], boxes[offset + 3]);
+        return dx * dx + dy * dy;
+    }
+
+    private static double axisDistance(double value, double min, double max) {
+        return value < min ? min - value : value <= max ? 0 : value - max;
+    }
+
+    /**
+     * computes the position on a 16 bit Hilbert curve, see "Fast Hilbert curve generation, sorting, and range
+     * queries" by rawrunprotected.
+     *
+     * @return the Hilbert value as unsigned 32 bit number
+     */
+    static long hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int A = a | (b >> 1);
+        int B = (a >> 1) ^ a;
+        int C = ((c >> 1) ^ (b & (d >> 1))) ^ c;
+        int D = ((a & (c >> 1)) ^ (d >> 1)) ^ d;
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >> 2)) ^ (b & (b >> 2)));
+        B = ((a & (b >> 2)) ^ (b & ((a ^ b) >> 2)));
+        C ^= ((a & (c >> 2)) ^ (b & (d >> 2)));
+        D ^= ((b & (c >> 2)) ^ ((a ^ b) & (d >> 2)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >> 4)) ^ (b & (b >> 4)));
+        B = ((a & (b >> 4)) ^ (b & ((a ^ b) >> 4)));
+        C ^= ((a & (c >> 4)) ^ (b & (d >> 4)));
+        D ^= ((b & (c >> 4)) ^ ((a ^ b) & (d >> 4)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        C ^= ((a & (c >> 8)) ^ (b & (d >> 8)));
+        D ^= ((b & (c >> 8)) ^ ((a ^ b) & (d >> 8)));
+
+        a = C ^ (C >> 1);
+        b = D ^ (D >> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        i0 = (i0 | (i0 << 8)) & 0x00FF00FF;
+        i0 = (i0 | (i0 << 4)) & 0x0F0F0F0F;
+        i0 = (i0 | (i0 << 2)) & 0x33333333;
+        i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+        i1 = (i1 | (i1 << 8)) & 0x00FF00FF;
+        i1 = (i1 | (i1 << 4)) & 0x0F0F0F0F;
+        i1 = (i1 | (i1 << 2)) & 0x33333333;
+        i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+        return ((i1 << 1) | i0) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * binary min heap of node positions keyed by distance.
+     */
+    private static final class NodeQueue {
+        private double[] distances = new double[64];
+        private int[] positions = new int[64];
+        private int[] levels = new int[64];
+        private int size;
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private int peekLevel() {
+            return levels[0];
+        }
+
+        private void push(double distance, int position, int level) {
+            if (size == distances.length) {
+                distances = Arrays.copyOf(distances, size * 2);
+                positions = Arrays.copyOf(positions, size * 2);
+                levels = Arrays.copyOf(levels, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                final int parent = (i - 1) >> 1;
+                if (distances[parent] <= distance) {
+                    break;
+                }
+                set(i, parent);
+                i = parent;
+            }
+            distances[i] = distance;
+            positions[i] = position;
+            levels[i] = level;
+        }
+
+        private int pop() {
+            final int top = positions[0];
+            size--;
+            if (size > 0) {
+                final double distance = distances[size];
+                final int position = positions[size];
+                final int level = levels[size];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && distances[child + 1] < distances[child]) {
+                        child++;
+                    }
+                    if (distance <= distances[child]) {
+                        break;
+                    }
+                    set(i, child);
+                    i = child;
+                }
+                distances[i] = distance;
+                positions[i] = position;
+                levels[i] = level;
+            }
+            return top;
+        }
+
+        private void set(int to, int from) {
+            distances[to] = distances[from];
+            positions[to] = positions[from];
+            levels[to] = levels[from];
+        }
+    }
+}
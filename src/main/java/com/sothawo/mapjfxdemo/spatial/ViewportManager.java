@@ -0,0 +1,421 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.spatial;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.CoordinateLine;
+import com.sothawo.mapjfx.Extent;
+import com.sothawo.mapjfx.MapCircle;
+import com.sothawo.mapjfx.MapCoordinateElement;
+import com.sothawo.mapjfx.MapLabel;
+import com.sothawo.mapjfx.MapView;
+import com.sothawo.mapjfx.Marker;
+import com.sothawo.mapjfxdemo.track.LevelOfDetailTrack;
+import com.sothawo.mapjfxdemo.track.Track;
+import javafx.beans.value.ChangeListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps only those map elements in the {@link MapView} that intersect the currently visible extent plus a margin.
+ * The registered elements are stored in a uniform grid over their bounding boxes; when the map reports a new bounding
+ * extent, the grid cells covering it are queried, elements that came into view are added to the map and elements
+ * that left it are removed. Culling is done per element, a track is either completely in the map or not.
+ * <p>
+ * All methods must be called on the JavaFX Application Thread.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class ViewportManager {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(ViewportManager.class);
+
+    /** default size of a grid cell in degrees. */
+    public static final double DEFAULT_CELL_SIZE = 0.1;
+    /** default margin around the visible extent as fraction of its size. */
+    public static final double DEFAULT_MARGIN = 0.25;
+
+    /** elements covering more cells than this are not put into the grid but checked on every update. */
+    private static final int MAX_CELLS_PER_ENTRY = 64;
+    /** meters per degree of latitude. */
+    private static final double METERS_PER_DEGREE = 111_320.0;
+
+    private final MapView mapView;
+    private final double cellSize;
+    private final double margin;
+
+    /** all registered elements. */
+    private final Map<Object, Entry> entries = new IdentityHashMap<>();
+    /** the grid cells, key is built from the cell row and column. */
+    private final Map<Long, List<Entry>> grid = new HashMap<>();
+    /** entries that are too large for the grid. */
+    private final List<Entry> largeEntries = new ArrayList<>();
+    /** the entries currently in the map. */
+    private final Set<Entry> inMapEntries = Collections.newSetFromMap(new IdentityHashMap<>());
+    /** the entries found in the current query. */
+    private final List<Entry> found = new ArrayList<>();
+
+    /** the current query box including the margin, null as long as no extent is known. */
+    private double[] queryBox;
+    /** counter to mark the entries found in a query. */
+    private int queryRound;
+
+    public ViewportManager(MapView mapView) {
+        this(mapView, DEFAULT_CELL_SIZE, DEFAULT_MARGIN);
+    }
+
+    /**
+     * @param mapView
+     *     the map to manage
+     * @param cellSize
+     *     the size of a grid cell in degrees
+     * @param margin
+     *     the margin added around the visible extent, as fraction of the extent's size
+     */
+    public ViewportManager(MapView mapView, double cellSize, double margin) {
+        if (cellSize <= 0 || margin < 0) {
+            throw new IllegalArgumentException("cellSize must be positive and margin must not be negative");
+        }
+        this.mapView = mapView;
+        this.cellSize = cellSize;
+        this.margin = margin;
+    }
+
+    /**
+     * registers a marker. The marker is re-indexed when its position changes; markers without a position are not
+     * added to the map.
+     *
+     * @param marker
+     *     the marker
+     */
+    public void register(Marker marker) {
+        registerCoordinateElement(marker, () -> mapView.addMarker(marker), () -> mapView.removeMarker(marker));
+    }
+
+    /**
+     * registers a label. Only labels that are not attached to a marker should be registered, attached labels are
+     * handled with their marker.
+     *
+     * @param label
+     *     the label
+     */
+    public void register(MapLabel label) {
+        registerCoordinateElement(label, () -> mapView.addLabel(label), () -> mapView.removeLabel(label));
+    }
+
+    public void register(MapCircle circle) {
+        final Coordinate center = circle.getCenter();
+        final double deltaLatitude = circle.getRadius() / METERS_PER_DEGREE;
+        final double deltaLongitude =
+            deltaLatitude / Math.max(0.01, Math.cos(Math.toRadians(center.getLatitude())));
+        register(circle, center.getLatitude() - deltaLatitude, center.getLongitude() - deltaLongitude,
+            center.getLatitude() + deltaLatitude, center.getLongitude() + deltaLongitude,
+            () -> mapView.addMapCircle(circle), () -> mapView.removeMapCircle(circle));
+    }
+
+    public void register(CoordinateLine coordinateLine) {
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double minLongitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        double maxLongitude = Double.NEGATIVE_INFINITY;
+        for (Coordinate coordinate : (Iterable<Coordinate>) coordinateLine.getCoordinateStream()::iterator) {
+            minLatitude = Math.min(minLatitude, coordinate.getLatitude());
+            minLongitude = Math.min(minLongitude, coordinate.getLongitude());
+            maxLatitude = Math.max(maxLatitude, coordinate.getLatitude());
+            maxLongitude = Math.max(maxLongitude, coordinate.getLongitude());
+        }
+        register(coordinateLine, minLatitude, minLongitude, maxLatitude, maxLongitude,
+            () -> mapView.addCoordinateLine(coordinateLine), () -> mapView.removeCoordinateLine(coordinateLine));
+    }
+
+    public void register(LevelOfDetailTrack track) {
+        final Track fullTrack = track.getTrack();
+        register(track, fullTrack.getMinLatitude(), fullTrack.getMinLongitude(), fullTrack.getMaxLatitude(),
+            fullTrack.getMaxLongitude(), () -> track.addTo(mapView), track::removeFromMap);
+    }
+
+    /**
+     * removes an element from the manager and from the map.
+     *
+     * @param element
+     *     the element to remove
+     */
+    public void unregister(Object element) {
+        final Entry entry = entries.remove(element);
+        if (entry != null) {
+            removeFromIndex(entry);
+            if (entry.positionListener != null) {
+                ((MapCoordinateElement) element).positionProperty().removeListener(entry.positionListener);
+            }
+            if (entry.inMap) {
+                removeFromMap(entry);
+            }
+        }
+    }
+
+    /**
+     * @return the number of registered elements
+     */
+    public int getRegisteredCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of registered elements that are currently in the map
+     */
+    public int getInMapCount() {
+        return inMapEntries.size();
+    }
+
+    /**
+     * sets the currently visible extent of the map and updates the elements in the map.
+     *
+     * @param extent
+     *     the visible extent
+     */
+    public void setExtent(Extent extent) {
+        final double minLatitude = extent.getMin().getLatitude();
+        final double minLongitude = extent.getMin().getLongitude();
+        final double maxLatitude = extent.getMax().getLatitude();
+        final double maxLongitude = extent.getMax().getLongitude();
+        final double marginLatitude = (maxLatitude - minLatitude) * margin;
+        final double marginLongitude = (maxLongitude - minLongitude) * margin;
+        queryBox = new double[]{minLatitude - marginLatitude, minLongitude - marginLongitude,
+            maxLatitude + marginLatitude, maxLongitude + marginLongitude};
+        update();
+    }
+
+    private void update() {
+        if (queryBox == null) {
+            return;
+        }
+        final long start = System.nanoTime();
+        final int round = ++queryRound;
+
+        final int minRow = row(queryBox[0]);
+        final int maxRow = row(queryBox[2]);
+        final int minColumn = column(queryBox[1]);
+        final int maxColumn = column(queryBox[3]);
+        final long numCells = (long) (maxRow - minRow + 1) * (maxColumn - minColumn + 1);
+
+        if (numCells > grid.size()) {
+            // checking the occupied cells directly is cheaper
+            for (Map.Entry<Long, List<Entry>> cell : grid.entrySet()) {
+                final long key = cell.getKey();
+                final int row = (int) (key >> 32);
+                final int column = (int) key;
+                if (row >= minRow && row <= maxRow && column >= minColumn && column <= maxColumn) {
+                    markIntersecting(cell.getValue(), round);
+                }
+            }
+        } else {
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    final List<Entry> cell = grid.get(key(row, column));
+                    if (cell != null) {
+                        markIntersecting(cell, round);
+                    }
+                }
+            }
+        }
+        markIntersecting(largeEntries, round);
+
+        int removed = 0;
+        for (Entry entry : new ArrayList<>(inMapEntries)) {
+            if (entry.round != round) {
+                removeFromMap(entry);
+                removed++;
+            }
+        }
+        int added = 0;
+        for (Entry entry : found) {
+            if (!entry.inMap) {
+                addToMap(entry);
+                added++;
+            }
+        }
+        found.clear();
+        if (logger.isTraceEnabled()) {
+            logger.trace("viewport update: {} added, {} removed, {} of {} in map, took {} µs", added, removed,
+                getInMapCount(), entries.size(), (System.nanoTime() - start) / 1_000);
+        }
+    }
+
+    private void markIntersecting(List<Entry> candidates, int round) {
+        for (Entry entry : candidates) {
+            if (entry.round != round && entry.intersects(queryBox)) {
+                entry.round = round;
+                found.add(entry);
+            }
+        }
+    }
+
+    private void registerCoordinateElement(MapCoordinateElement element, Runnable adder, Runnable remover) {
+        final Coordinate position = element.getPosition();
+        final Entry entry = position == null
+            ? register(element, Double.NaN, Double.NaN, Double.NaN, Double.NaN, adder, remover)
+            : register(element, position.getLatitude(), position.getLongitude(), position.getLatitude(),
+            position.getLongitude(), adder, remover);
+        entry.positionListener = (observable, oldValue, newValue) -> positionChanged(entry, newValue);
+        element.positionProperty().addListener(entry.positionListener);
+    }
+
+    private Entry register(Object element, double minLatitude, double minLongitude, double maxLatitude,
+                           double maxLongitude, Runnable adder, Runnable remover) {
+        if (entries.containsKey(element)) {
+            throw new IllegalArgumentException("element is already registered: " + element);
+        }
+        final Entry entry = new Entry(adder, remover);
+        entry.setBounds(minLatitude, minLongitude, maxLatitude, maxLongitude);
+        entries.put(element, entry);
+        addToIndex(entry);
+        if (queryBox != null && entry.intersects(queryBox)) {
+            addToMap(entry);
+        }
+        return entry;
+    }
+
+    private void positionChanged(Entry entry, Coordinate position) {
+        removeFromIndex(entry);
+        if (position == null) {
+            entry.setBounds(Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+        } else {
+            entry.setBounds(position.getLatitude(), position.getLongitude(), position.getLatitude(),
+                position.getLongitude());
+        }
+        addToIndex(entry);
+        final boolean inView = queryBox != null && entry.intersects(queryBox);
+        if (inView && !entry.inMap) {
+            addToMap(entry);
+        } else if (!inView && entry.inMap) {
+            removeFromMap(entry);
+        }
+    }
+
+    private void addToMap(Entry entry) {
+        entry.adder.run();
+        entry.inMap = true;
+        inMapEntries.add(entry);
+    }
+
+    private void removeFromMap(Entry entry) {
+        entry.remover.run();
+        entry.inMap = false;
+        inMapEntries.remove(entry);
+    }
+
+    private void addToIndex(Entry entry) {
+        if (Double.isNaN(entry.minLatitude)) {
+            return;
+        }
+        final int minRow = row(entry.minLatitude);
+        final int maxRow = row(entry.maxLatitude);
+        final int minColumn = column(entry.minLongitude);
+        final int maxColumn = column(entry.maxLongitude);
+        if ((long) (maxRow - minRow + 1) * (maxColumn - minColumn + 1) > MAX_CELLS_PER_ENTRY) {
+            largeEntries.add(entry);
+            entry.large = true;
+            return;
+        }
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                grid.computeIfAbsent(key(row, column), k -> new ArrayList<>()).add(entry);
+            }
+        }
+    }
+
+    private void removeFromIndex(Entry entry) {
+        if (Double.isNaN(entry.minLatitude)) {
+            return;
+        }
+        if (entry.large) {
+            largeEntries.remove(entry);
+            entry.large = false;
+            return;
+        }
+        final int minRow = row(entry.minLatitude);
+        final int maxRow = row(entry.maxLatitude);
+        final int minColumn = column(entry.minLongitude);
+        final int maxColumn = column(entry.maxLongitude);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                final Long key = key(row, column);
+                final List<Entry> cell = grid.get(key);
+                if (cell != null) {
+                    cell.remove(entry);
+                    if (cell.isEmpty()) {
+                        grid.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor(latitude / cellSize);
+    }
+
+    private int column(double longitude) {
+        return (int) Math.floor(longitude / cellSize);
+    }
+
+    private static long key(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+
+    /**
+     * a registered element with its bounding box.
+     */
+    private static final class Entry {
+        private final Runnable adder;
+        private final Runnable remover;
+        private double minLatitude;
+        private double minLongitude;
+        private double maxLatitude;
+        private double maxLongitude;
+        private boolean inMap;
+        private boolean large;
+        private int round;
+        private ChangeListener<Coordinate> positionListener;
+
+        private Entry(Runnable adder, Runnable remover) {
+            this.adder = adder;
+            this.remover = remover;
+        }
+
+        private void setBounds(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+            this.minLatitude = minLatitude;
+            this.minLongitude = minLongitude;
+            this.maxLatitude = maxLatitude;
+            this.maxLongitude = maxLongitude;
+        }
+
+        private boolean intersects(double[] box) {
+            // comparisons with NaN are false, so elements without bounds never intersect
+            return minLatitude <= box[2] && maxLatitude >= box[0] && minLongitude <= box[3] &&
+                maxLongitude >= box[1];
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.startup;
+
+/**
+ * The phases of the application startup, in the order in which they begin.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public enum StartupPhase {
+    /** loading and parsing the FXML file, including the creation of the controller. */
+    FXML_PARSE("fxml-parse"),
+    /** wiring up the controls in the controller, until the map initialization is started. */
+    CONTROLLER_WIRING("controller-wiring"),
+    /** loading the marker icons for the checkboxes. */
+    MARKER_ICONS("marker-icons"),
+    /** loading and preparing the tracks in the background. */
+    TRACK_LOADING("track-loading"),
+    /** the call to MapView.initialize, which creates the WebView and starts loading the map page. */
+    WEBVIEW_INIT("webview-init"),
+    /** from the end of MapView.initialize until the initialized property is first true. */
+    MAP_INITIALIZED("map-initialized"),
+    /** from the map being initialized until the first extent event; its end is the time to interactive. */
+    FIRST_EXTENT("first-extent");
+
+    private final String key;
+
+    StartupPhase(String key) {
+        this.key = key;
+    }
+
+    /**
+     * @return the name of the phase in the report
+     */
+    public String getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.startup;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for a startup phase. The event's start and end are the ones of the phase, so the phases show up on the
+ * timeline of a recording next to GC, class loading and JIT activity.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+@Name("com.sothawo.mapjfxdemo.StartupPhase")
+@Label("Startup Phase")
+@Category({"mapjfx-demo", "Startup"})
+@Description("A phase of the application startup")
+@StackTrace(false)
+class StartupPhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Offset")
+    @Description("Time from the start of main to the start of the phase")
+    @Timespan(Timespan.NANOSECONDS)
+    long offset;
+}
@@ -0,0 +1,207 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.startup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Records the {@link StartupPhase}s of the application. The times are taken with {@link System#nanoTime()} and are
+ * relative to the first use of this class, which happens at the start of main. Each phase is also emitted as a JFR
+ * event, which is recorded when the application runs with a flight recording.
+ * <p>
+ * When the first extent event has been seen and all started phases have ended, the report is logged and, if the
+ * system property {@value #REPORT_PROPERTY} is set, written as JSON to the file it names.
+ * <p>
+ * The methods can be called from any thread; a phase must be begun before it is ended, and each phase is only recorded
+ * once, later calls are ignored.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class StartupProfiler {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(StartupProfiler.class);
+
+    /** system property with the path of the JSON report. */
+    public static final String REPORT_PROPERTY = "mapjfx.demo.startup.report";
+
+    private static final StartupProfiler INSTANCE = new StartupProfiler();
+
+    /** the reference point for all times. */
+    private final long originNanos = System.nanoTime();
+    /** time from the JVM start to the origin, -1 if unknown. */
+    private final long jvmStartToOriginNanos;
+    private final Map<StartupPhase, PhaseTiming> timings = new EnumMap<>(StartupPhase.class);
+    private final Map<StartupPhase, StartupPhaseEvent> events = new EnumMap<>(StartupPhase.class);
+    private StartupReport report;
+    private final List<Consumer<StartupReport>> reportListeners = new ArrayList<>();
+
+    private StartupProfiler() {
+        jvmStartToOriginNanos = ProcessHandle.current().info().startInstant()
+            .map(start -> Duration.between(start, Instant.now()).toNanos())
+            .orElse(-1L);
+    }
+
+    /**
+     * @return the profiler of the application
+     */
+    public static StartupProfiler get() {
+        return INSTANCE;
+    }
+
+    /**
+     * records the begin of a phase.
+     *
+     * @param phase
+     *     the phase
+     */
+    public synchronized void begin(StartupPhase phase) {
+        if (timings.containsKey(phase)) {
+            return;
+        }
+        // create the event first, the first one loads the event class which must not count for the phase
+        final StartupPhaseEvent event = new StartupPhaseEvent();
+        final long now = System.nanoTime();
+        timings.put(phase, new PhaseTiming(phase, now - originNanos, Thread.currentThread().getName()));
+        if (event.isEnabled()) {
+            event.begin();
+            event.phase = phase.getKey();
+            event.offset = now - originNanos;
+            events.put(phase, event);
+        }
+    }
+
+    /**
+     * records the end of a phase.
+     *
+     * @param phase
+     *     the phase
+     */
+    public synchronized void end(StartupPhase phase) {
+        final PhaseTiming timing = timings.get(phase);
+        if (timing == null || timing.endNanos >= 0) {
+            return;
+        }
+        timing.endNanos = System.nanoTime() - originNanos;
+        final StartupPhaseEvent event = events.remove(phase);
+        if (event != null) {
+            event.end();
+            event.commit();
+        }
+        logger.debug("startup phase {} took {} ms", phase.getKey(), toMillis(timing.endNanos - timing.startNanos));
+        if (report == null && isComplete()) {
+            report = createReport();
+            logger.info("time to interactive {} ms", toMillis(report.getTimeToInteractiveNanos()));
+            logger.debug("startup report: {}", report.toJson());
+            writeReport(report);
+            reportListeners.forEach(listener -> listener.accept(report));
+            reportListeners.clear();
+        }
+    }
+
+    /**
+     * registers a listener for the report; it is called once on the thread that completes the startup, or at once if
+     * the startup is already complete.
+     *
+     * @param listener
+     *     the listener
+     */
+    public synchronized void onReport(Consumer<StartupReport> listener) {
+        if (report != null) {
+            listener.accept(report);
+        } else {
+            reportListeners.add(listener);
+        }
+    }
+
+    /**
+     * @return the report, empty while the startup is not complete
+     */
+    public synchronized Optional<StartupReport> getReport() {
+        return Optional.ofNullable(report);
+    }
+
+    private boolean isComplete() {
+        final PhaseTiming firstExtent = timings.get(StartupPhase.FIRST_EXTENT);
+        if (firstExtent == null || firstExtent.endNanos < 0) {
+            return false;
+        }
+        for (PhaseTiming timing : timings.values()) {
+            if (timing.endNanos < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private StartupReport createReport() {
+        final List<StartupReport.Phase> phases = new ArrayList<>();
+        for (PhaseTiming timing : timings.values()) {
+            phases.add(new StartupReport.Phase(timing.phase.getKey(), timing.startNanos, timing.endNanos,
+                timing.thread));
+        }
+        return new StartupReport(jvmStartToOriginNanos, timings.get(StartupPhase.FIRST_EXTENT).endNanos, phases);
+    }
+
+    private static void writeReport(StartupReport report) {
+        final String file = System.getProperty(REPORT_PROPERTY);
+        if (file == null || file.isBlank()) {
+            return;
+        }
+        try {
+            final Path path = Paths.get(file);
+            Files.writeString(path, report.toJson(), StandardCharsets.UTF_8);
+            logger.info("startup report written to {}", path.toAbsolutePath());
+        } catch (IOException e) {
+            logger.warn("could not write startup report to {}", file, e);
+        }
+    }
+
+    static double toMillis(long nanos) {
+        return Math.round(nanos / 1e4) / 100.0;
+    }
+
+    /**
+     * the mutable timing of a phase, guarded by the profiler's lock.
+     */
+    private static final class PhaseTiming {
+        private final StartupPhase phase;
+        private final long startNanos;
+        private final String thread;
+        private long endNanos = -1;
+
+        private PhaseTiming(StartupPhase phase, long startNanos, String thread) {
+            this.phase = phase;
+            this.startNanos = startNanos;
+            this.thread = thread;
+        }
+    }
+}
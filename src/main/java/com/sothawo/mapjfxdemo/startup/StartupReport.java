@@ -0,0 +1,147 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.startup;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The timings of a completed application startup. All times are in nanoseconds relative to the start of main; in the
+ * JSON form they are converted to milliseconds.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class StartupReport {
+
+    private final long jvmStartToMainNanos;
+    private final long timeToInteractiveNanos;
+    private final List<Phase> phases;
+
+    StartupReport(long jvmStartToMainNanos, long timeToInteractiveNanos, List<Phase> phases) {
+        this.jvmStartToMainNanos = jvmStartToMainNanos;
+        this.timeToInteractiveNanos = timeToInteractiveNanos;
+        this.phases = List.copyOf(phases);
+    }
+
+    /**
+     * @return the time from the JVM process start to the start of main, -1 if the process start is unknown
+     */
+    public long getJvmStartToMainNanos() {
+        return jvmStartToMainNanos;
+    }
+
+    /**
+     * @return the time from the start of main until the map showed its first extent
+     */
+    public long getTimeToInteractiveNanos() {
+        return timeToInteractiveNanos;
+    }
+
+    /**
+     * @return the phases in the order of {@link StartupPhase}
+     */
+    public List<Phase> getPhases() {
+        return phases;
+    }
+
+    /**
+     * @return the report as JSON object
+     */
+    public String toJson() {
+        final StringBuilder json = new StringBuilder(1024);
+        json.append("{\n");
+        json.append("  \"javaVersion\": \"").append(Runtime.version()).append("\",\n");
+        json.append("  \"jvmStartToMainMillis\": ")
+            .append(jvmStartToMainNanos < 0 ? "null" : millis(jvmStartToMainNanos)).append(",\n");
+        json.append("  \"timeToInteractiveMillis\": ").append(millis(timeToInteractiveNanos)).append(",\n");
+        json.append("  \"phases\": [");
+        for (int i = 0; i < phases.size(); i++) {
+            final Phase phase = phases.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"name\": \"").append(phase.getName())
+                .append("\", \"startMillis\": ").append(millis(phase.getStartNanos()))
+                .append(", \"endMillis\": ").append(millis(phase.getEndNanos()))
+                .append(", \"durationMillis\": ").append(millis(phase.getDurationNanos()))
+                .append(", \"thread\": \"").append(escape(phase.getThread())).append("\"}");
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", StartupProfiler.toMillis(nanos));
+    }
+
+    private static String escape(String value) {
+        final StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    /**
+     * the timing of one phase.
+     */
+    public static final class Phase {
+        private final String name;
+        private final long startNanos;
+        private final long endNanos;
+        private final String thread;
+
+        Phase(String name, long startNanos, long endNanos, String thread) {
+            this.name = name;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.thread = thread;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        public long getEndNanos() {
+            return endNanos;
+        }
+
+        public long getDurationNanos() {
+            return endNanos - startNanos;
+        }
+
+        /**
+         * @return the name of the thread the phase began on
+         */
+        public String getThread() {
+            return thread;
+        }
+    }
+}
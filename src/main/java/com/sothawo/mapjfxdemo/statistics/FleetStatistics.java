@@ -0,0 +1,158 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.statistics;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.Extent;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The combined statistics of a number of tracks, see {@link TrackStatisticsEngine#computeFleet(List)}.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class FleetStatistics {
+
+    private final List<TrackStatistics> tracks;
+    private final long points;
+    private final double lengthMeters;
+    private final double minLatitude;
+    private final double maxLatitude;
+    private final double minLongitude;
+    private final double maxLongitude;
+    private final long durationMillis;
+    private final long movingMillis;
+    private final double movingMeters;
+    private final double maxSpeed;
+    private final int stops;
+
+    FleetStatistics(List<TrackStatistics> tracks) {
+        this.tracks = List.copyOf(tracks);
+        long points = 0;
+        double lengthMeters = 0;
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        double minLongitude = Double.POSITIVE_INFINITY;
+        double maxLongitude = Double.NEGATIVE_INFINITY;
+        long durationMillis = 0;
+        long movingMillis = 0;
+        double movingMeters = 0;
+        double maxSpeed = 0;
+        int stops = 0;
+        for (final TrackStatistics track : tracks) {
+            points += track.getPoints();
+            lengthMeters += track.getLengthMeters();
+            if (track.getPoints() > 0) {
+                minLatitude = Math.min(minLatitude, track.getMinLatitude());
+                maxLatitude = Math.max(maxLatitude, track.getMaxLatitude());
+                minLongitude = Math.min(minLongitude, track.getMinLongitude());
+                maxLongitude = Math.max(maxLongitude, track.getMaxLongitude());
+            }
+            durationMillis += track.getDurationMillis();
+            movingMillis += track.getMovingMillis();
+            movingMeters += track.getMovingMeters();
+            maxSpeed = Math.max(maxSpeed, track.getMaxSpeed());
+            stops += track.getStops().size();
+        }
+        this.points = points;
+        this.lengthMeters = lengthMeters;
+        this.minLatitude = minLatitude;
+        this.maxLatitude = maxLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLongitude = maxLongitude;
+        this.durationMillis = durationMillis;
+        this.movingMillis = movingMillis;
+        this.movingMeters = movingMeters;
+        this.maxSpeed = maxSpeed;
+        this.stops = stops;
+    }
+
+    /**
+     * @return the statistics of the single tracks in the order of the input
+     */
+    public List<TrackStatistics> getTracks() {
+        return tracks;
+    }
+
+    public long getPoints() {
+        return points;
+    }
+
+    public double getLengthMeters() {
+        return lengthMeters;
+    }
+
+    /**
+     * @return the bounding box of all tracks, empty if there are no points
+     */
+    public Optional<Extent> getExtent() {
+        if (points == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(Extent.forCoordinates(new Coordinate(minLatitude, minLongitude),
+            new Coordinate(maxLatitude, maxLongitude)));
+    }
+
+    /**
+     * @return the sum of the durations of the tracks
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public long getMovingMillis() {
+        return movingMillis;
+    }
+
+    public double getMovingMeters() {
+        return movingMeters;
+    }
+
+    /**
+     * @return the highest segment speed of all tracks in meters per second
+     */
+    public double getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    /**
+     * @return the average speed while moving over all tracks in meters per second
+     */
+    public double getMovingSpeed() {
+        return movingMillis > 0 ? movingMeters * 1000 / movingMillis : 0;
+    }
+
+    /**
+     * @return the number of stops of all tracks
+     */
+    public int getStops() {
+        return stops;
+    }
+
+    @Override
+    public String toString() {
+        return "FleetStatistics{" +
+            "tracks=" + tracks.size() +
+            ", points=" + points +
+            ", lengthMeters=" + lengthMeters +
+            ", movingMillis=" + movingMillis +
+            ", maxSpeed=" + maxSpeed +
+            ", stops=" + stops +
+            '}';
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.statistics;
+
+/**
+ * Plain loops, used when the vector API is not available.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+final class ScalarKernels implements StatisticsKernels {
+
+    @Override
+    public double segmentDistances(double[] latitudes, double[] longitudes, int size, double[] distances) {
+        double sum = 0;
+        if (size < 2) {
+            return sum;
+        }
+        double phi1 = Math.toRadians(latitudes[0]);
+        double cosPhi1 = Math.cos(phi1);
+        for (int i = 0; i < size - 1; i++) {
+            final double phi2 = Math.toRadians(latitudes[i + 1]);
+            final double cosPhi2 = Math.cos(phi2);
+            final double distance = distance(phi1, cosPhi1, longitudes[i], phi2, cosPhi2, longitudes[i + 1]);
+            distances[i] = distance;
+            sum += distance;
+            phi1 = phi2;
+            cosPhi1 = cosPhi2;
+        }
+        return sum;
+    }
+
+    /**
+     * the haversine distance of two points with the latitudes in radians and their cosines precomputed.
+     */
+    static double distance(double phi1, double cosPhi1, double longitude1, double phi2, double cosPhi2,
+                           double longitude2) {
+        final double sinDeltaPhi = Math.sin((phi2 - phi1) * 0.5);
+        final double sinDeltaLambda = Math.sin(Math.toRadians(longitude2 - longitude1) * 0.5);
+        final double a = sinDeltaPhi * sinDeltaPhi + cosPhi1 * cosPhi2 * sinDeltaLambda * sinDeltaLambda;
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(Math.min(1, a)));
+    }
+
+    @Override
+    public void bounds(double[] latitudes, double[] longitudes, int size, double[] bounds) {
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        double minLongitude = Double.POSITIVE_INFINITY;
+        double maxLongitude = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            minLatitude = Math.min(minLatitude, latitudes[i]);
+            maxLatitude = Math.max(maxLatitude, latitudes[i]);
+            minLongitude = Math.min(minLongitude, longitudes[i]);
+            maxLongitude = Math.max(maxLongitude, longitudes[i]);
+        }
+        bounds[0] = minLatitude;
+        bounds[1] = maxLatitude;
+        bounds[2] = minLongitude;
+        bounds[3] = maxLongitude;
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
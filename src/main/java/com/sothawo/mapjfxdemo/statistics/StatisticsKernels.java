@@ -0,0 +1,59 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.statistics;
+
+/**
+ * The loops over the coordinate columns that do the bulk of the work for the statistics.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+interface StatisticsKernels {
+
+    /** mean earth radius in meters. */
+    double EARTH_RADIUS = 6_371_008.8;
+
+    /**
+     * computes the great circle distance of each segment with the haversine formula.
+     *
+     * @param latitudes
+     *     latitude values in degrees
+     * @param longitudes
+     *     longitude values in degrees
+     * @param size
+     *     number of points
+     * @param distances
+     *     receives the distance in meters from point i to point i + 1 at index i, needs size - 1 entries
+     * @return the sum of the distances
+     */
+    double segmentDistances(double[] latitudes, double[] longitudes, int size, double[] distances);
+
+    /**
+     * @param latitudes
+     *     latitude values
+     * @param longitudes
+     *     longitude values
+     * @param size
+     *     number of points, at least 1
+     * @param bounds
+     *     receives min latitude, max latitude, min longitude and max longitude
+     */
+    void bounds(double[] latitudes, double[] longitudes, int size, double[] bounds);
+
+    /**
+     * @return a short name for logging
+     */
+    String getName();
+}
@@ -0,0 +1,92 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.statistics;
+
+import com.sothawo.mapjfx.Coordinate;
+
+/**
+ * A part of a track where the speed stayed below the stop threshold for at least the minimum stop duration.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class Stop {
+
+    private final int firstIndex;
+    private final int lastIndex;
+    private final long startTime;
+    private final long endTime;
+    private final double latitude;
+    private final double longitude;
+
+    Stop(int firstIndex, int lastIndex, long startTime, long endTime, double latitude, double longitude) {
+        this.firstIndex = firstIndex;
+        this.lastIndex = lastIndex;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    /**
+     * @return the index of the first point of the stop
+     */
+    public int getFirstIndex() {
+        return firstIndex;
+    }
+
+    /**
+     * @return the index of the last point of the stop
+     */
+    public int getLastIndex() {
+        return lastIndex;
+    }
+
+    /**
+     * @return the time of the first point in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the time of the last point in milliseconds since the epoch
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public long getDurationMillis() {
+        return endTime - startTime;
+    }
+
+    /**
+     * @return the mean position of the points of the stop
+     */
+    public Coordinate getPosition() {
+        return new Coordinate(latitude, longitude);
+    }
+
+    @Override
+    public String toString() {
+        return "Stop{" +
+            "firstIndex=" + firstIndex +
+            ", lastIndex=" + lastIndex +
+            ", durationMillis=" + getDurationMillis() +
+            ", latitude=" + latitude +
+            ", longitude=" + longitude +
+            '}';
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.statistics;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.Extent;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The statistics of one track as computed by {@link TrackStatisticsEngine}. The time based values are only set when
+ * the track has timestamps, otherwise they are 0 and there are no stops.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class TrackStatistics {
+
+    private final int points;
+    private final double lengthMeters;
+    private final double minLatitude;
+    private final double maxLatitude;
+    private final double minLongitude;
+    private final double maxLongitude;
+    private final boolean timed;
+    private final long durationMillis;
+    private final long movingMillis;
+    private final double movingMeters;
+    private final double maxSpeed;
+    private final List<Stop> stops;
+
+    TrackStatistics(int points, double lengthMeters, double[] bounds, boolean timed, long durationMillis,
+                    long movingMillis, double movingMeters, double maxSpeed, List<Stop> stops) {
+        this.points = points;
+        this.lengthMeters = lengthMeters;
+        this.minLatitude = bounds[0];
+        this.maxLatitude = bounds[1];
+        this.minLongitude = bounds[2];
+        this.maxLongitude = bounds[3];
+        this.timed = timed;
+        this.durationMillis = durationMillis;
+        this.movingMillis = movingMillis;
+        this.movingMeters = movingMeters;
+        this.maxSpeed = maxSpeed;
+        this.stops = List.copyOf(stops);
+    }
+
+    public int getPoints() {
+        return points;
+    }
+
+    /**
+     * @return the length of the track along the great circles between its points
+     */
+    public double getLengthMeters() {
+        return lengthMeters;
+    }
+
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+
+    /**
+     * @return the bounding box, empty if the track has no points
+     */
+    public Optional<Extent> getExtent() {
+        if (points == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(Extent.forCoordinates(new Coordinate(minLatitude, minLongitude),
+            new Coordinate(maxLatitude, maxLongitude)));
+    }
+
+    /**
+     * @return true if the statistics were computed with timestamps
+     */
+    public boolean isTimed() {
+        return timed;
+    }
+
+    /**
+     * @return the time from the first to the last point
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return the time spent in segments with a speed at or above the stop threshold
+     */
+    public long getMovingMillis() {
+        return movingMillis;
+    }
+
+    /**
+     * @return the distance covered in segments with a speed at or above the stop threshold
+     */
+    public double getMovingMeters() {
+        return movingMeters;
+    }
+
+    /**
+     * @return the highest segment speed in meters per second
+     */
+    public double getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    /**
+     * @return the length divided by the duration in meters per second, 0 without duration
+     */
+    public double getAverageSpeed() {
+        return durationMillis > 0 ? lengthMeters * 1000 / durationMillis : 0;
+    }
+
+    /**
+     * @return the average speed while moving in meters per second, 0 without moving time
+     */
+    public double getMovingSpeed() {
+        return movingMillis > 0 ? movingMeters * 1000 / movingMillis : 0;
+    }
+
+    public List<Stop> getStops() {
+        return stops;
+    }
+
+    @Override
+    public String toString() {
+        return "TrackStatistics{" +
+            "points=" + points +
+            ", lengthMeters=" + lengthMeters +
+            ", durationMillis=" + durationMillis +
+            ", movingMillis=" + movingMillis +
+            ", maxSpeed=" + maxSpeed +
+            ", stops=" + stops.size() +
+            '}';
+    }
+}
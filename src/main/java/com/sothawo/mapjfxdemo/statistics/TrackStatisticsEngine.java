@@ -0,0 +1,282 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.statistics;
+
+import com.sothawo.mapjfxdemo.track.Track;
+import com.sothawo.mapjfxdemo.track.TrackFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Computes the length, bounding box, speeds and stops of tracks. The work is done on the packed latitude and longitude
+ * columns: first the haversine distance of every segment and the bounding box, then, when there are timestamps, one
+ * pass over the segments for the speeds and the stops.
+ * <p>
+ * The distance and bounding box loops use the vector API of the JDK when the module <em>jdk.incubator.vector</em> is
+ * present, which it only is when the JVM is started with {@code --add-modules jdk.incubator.vector}; otherwise they
+ * run as plain loops. Both produce the same values apart from rounding. An engine is immutable and can be used from
+ * several threads.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class TrackStatisticsEngine {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(TrackStatisticsEngine.class);
+
+    /** segments slower than this, in meters per second, count as standing. */
+    public static final double DEFAULT_STOP_SPEED = 0.5;
+    /** standing shorter than this is not a stop. */
+    public static final long DEFAULT_MIN_STOP_MILLIS = 60_000;
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private final StatisticsKernels kernels;
+    private final double stopSpeed;
+    private final long minStopMillis;
+
+    private TrackStatisticsEngine(StatisticsKernels kernels, double stopSpeed, long minStopMillis) {
+        this.kernels = kernels;
+        this.stopSpeed = stopSpeed;
+        this.minStopMillis = minStopMillis;
+    }
+
+    /**
+     * @return an engine with the vector kernels if they are available, with the scalar ones otherwise
+     */
+    public static TrackStatisticsEngine create() {
+        final TrackStatisticsEngine engine = isVectorAvailable() ? vectorized() : scalar();
+        logger.debug("track statistics use the {} kernels", engine.kernels.getName());
+        return engine;
+    }
+
+    /**
+     * @return an engine with the scalar kernels
+     */
+    public static TrackStatisticsEngine scalar() {
+        return new TrackStatisticsEngine(new ScalarKernels(), DEFAULT_STOP_SPEED, DEFAULT_MIN_STOP_MILLIS);
+    }
+
+    /**
+     * @return an engine with the vector kernels
+     * @throws UnsupportedOperationException
+     *     if the vector API is not available
+     */
+    public static TrackStatisticsEngine vectorized() {
+        if (!isVectorAvailable()) {
+            throw new UnsupportedOperationException("module " + VECTOR_MODULE + " is not available");
+        }
+        return new TrackStatisticsEngine(vectorKernels(), DEFAULT_STOP_SPEED, DEFAULT_MIN_STOP_MILLIS);
+    }
+
+    /**
+     * @return true if the vector API is present and the platform has vectors of more than one double
+     */
+    public static boolean isVectorAvailable() {
+        return VectorSupport.AVAILABLE;
+    }
+
+    /**
+     * kept in a separate method so that {@link VectorKernels} is only loaded when the module is present.
+     */
+    private static StatisticsKernels vectorKernels() {
+        return new VectorKernels();
+    }
+
+    /**
+     * @param stopSpeed
+     *     segments slower than this, in meters per second, count as standing
+     * @param minStopMillis
+     *     the minimum duration of a stop
+     * @return an engine with the same kernels and the given stop detection parameters
+     */
+    public TrackStatisticsEngine withStopDetection(double stopSpeed, long minStopMillis) {
+        if (!(stopSpeed >= 0) || minStopMillis < 0) {
+            throw new IllegalArgumentException("stop speed and minimum stop duration must not be negative");
+        }
+        return new TrackStatisticsEngine(kernels, stopSpeed, minStopMillis);
+    }
+
+    /**
+     * @return true if this engine uses the vector kernels
+     */
+    public boolean isVectorized() {
+        return !(kernels instanceof ScalarKernels);
+    }
+
+    /**
+     * @return the name of the kernels, for the vector kernels including the vector shape
+     */
+    public String getKernelName() {
+        return kernels.getName();
+    }
+
+    /**
+     * computes the statistics of a track given as columns.
+     *
+     * @param latitudes
+     *     latitude values in degrees
+     * @param longitudes
+     *     longitude values in degrees
+     * @param timestamps
+     *     time of each point in milliseconds since the epoch, may be null
+     * @param size
+     *     number of points
+     * @return the statistics
+     * @throws IllegalArgumentException
+     *     if an array is shorter than size
+     */
+    public TrackStatistics compute(double[] latitudes, double[] longitudes, long[] timestamps, int size) {
+        if (size < 0 || latitudes.length < size || longitudes.length < size
+            || (timestamps != null && timestamps.length < size)) {
+            throw new IllegalArgumentException("arrays must contain at least " + size + " values");
+        }
+        final double[] bounds = new double[4];
+        if (size == 0) {
+            return new TrackStatistics(0, 0, bounds, timestamps != null, 0, 0, 0, 0, List.of());
+        }
+        kernels.bounds(latitudes, longitudes, size, bounds);
+        final double[] distances = new double[Math.max(0, size - 1)];
+        final double length = kernels.segmentDistances(latitudes, longitudes, size, distances);
+        if (timestamps == null) {
+            return new TrackStatistics(size, length, bounds, false, 0, 0, 0, 0, List.of());
+        }
+
+        long movingMillis = 0;
+        double movingMeters = 0;
+        double maxSpeed = 0;
+        final List<Stop> stops = new ArrayList<>();
+        // first point of the current run of standing segments, -1 while moving
+        int standingSince = -1;
+        for (int i = 0; i < size - 1; i++) {
+            final long millis = timestamps[i + 1] - timestamps[i];
+            // segments without elapsed time have no speed and count as standing
+            final double speed = millis > 0 ? distances[i] * 1000 / millis : Double.NaN;
+            if (speed > maxSpeed) {
+                maxSpeed = speed;
+            }
+            if (speed >= stopSpeed) {
+                movingMillis += millis;
+                movingMeters += distances[i];
+                if (standingSince >= 0) {
+                    addStop(stops, latitudes, longitudes, timestamps, standingSince, i);
+                    standingSince = -1;
+                }
+            } else if (standingSince < 0) {
+                standingSince = i;
+            }
+        }
+        if (standingSince >= 0) {
+            addStop(stops, latitudes, longitudes, timestamps, standingSince, size - 1);
+        }
+        return new TrackStatistics(size, length, bounds, true, timestamps[size - 1] - timestamps[0], movingMillis,
+            movingMeters, maxSpeed, stops);
+    }
+
+    /**
+     * adds a stop from first to last if it lasted long enough.
+     */
+    private void addStop(List<Stop> stops, double[] latitudes, double[] longitudes, long[] timestamps, int first,
+                         int last) {
+        if (timestamps[last] - timestamps[first] < minStopMillis) {
+            return;
+        }
+        double latitude = 0;
+        double longitude = 0;
+        for (int i = first; i <= last; i++) {
+            latitude += latitudes[i];
+            longitude += longitudes[i];
+        }
+        final int count = last - first + 1;
+        stops.add(new Stop(first, last, timestamps[first], timestamps[last], latitude / count, longitude / count));
+    }
+
+    /**
+     * computes the statistics of a track without timestamps.
+     *
+     * @param track
+     *     the track
+     * @return the statistics
+     */
+    public TrackStatistics compute(Track track) {
+        return compute(track.latitudes(), track.longitudes(), null, track.size());
+    }
+
+    /**
+     * computes the statistics of a track file, using the timestamps if the file has them.
+     *
+     * @param trackFile
+     *     the track file
+     * @return the statistics
+     */
+    public TrackStatistics compute(TrackFile trackFile) {
+        final int size = trackFile.size();
+        final double[] latitudes = new double[size];
+        final double[] longitudes = new double[size];
+        final long[] timestamps = trackFile.hasTimestamps() ? new long[size] : null;
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = trackFile.getLatitude(i);
+            longitudes[i] = trackFile.getLongitude(i);
+            if (timestamps != null) {
+                timestamps[i] = trackFile.getTimestamp(i);
+            }
+        }
+        return compute(latitudes, longitudes, timestamps, size);
+    }
+
+    /**
+     * computes the statistics of several tracks in parallel on the common fork-join pool.
+     *
+     * @param tracks
+     *     the tracks
+     * @return the statistics of the single tracks and the combined statistics
+     */
+    public FleetStatistics computeFleet(List<Track> tracks) {
+        final long start = System.nanoTime();
+        final List<TrackStatistics> statistics = tracks.parallelStream()
+            .map(this::compute)
+            .collect(Collectors.toList());
+        final FleetStatistics fleetStatistics = new FleetStatistics(statistics);
+        if (logger.isDebugEnabled()) {
+            logger.debug("statistics of {} tracks with {} points in {} ms ({} kernels)", tracks.size(),
+                fleetStatistics.getPoints(), (System.nanoTime() - start) / 1_000_000, kernels.getName());
+        }
+        return fleetStatistics;
+    }
+
+    /**
+     * checks once whether the vector kernels can be used.
+     */
+    private static final class VectorSupport {
+        private static final boolean AVAILABLE = check();
+
+        private static boolean check() {
+            if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+                return false;
+            }
+            try {
+                return VectorKernels.isUseful();
+            } catch (LinkageError e) {
+                logger.warn("vector kernels cannot be used", e);
+                return false;
+            }
+        }
+    }
+}
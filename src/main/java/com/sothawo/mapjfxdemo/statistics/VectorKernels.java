@@ -0,0 +1,127 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.statistics;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The loops with the incubating vector API of Java 17. This class must only be loaded when the module
+ * jdk.incubator.vector is present, see {@link TrackStatisticsEngine#create()}.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+final class VectorKernels implements StatisticsKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final double DEGREES_TO_RADIANS = Math.PI / 180;
+
+    /**
+     * @return true if the preferred vector shape holds more than one double
+     */
+    static boolean isUseful() {
+        return SPECIES.length() > 1;
+    }
+
+    @Override
+    public double segmentDistances(double[] latitudes, double[] longitudes, int size, double[] distances) {
+        if (size < 2) {
+            return 0;
+        }
+        final int length = SPECIES.length();
+        // first pass: latitudes in radians and their cosines, so each cosine is computed once per point
+        final double[] phis = new double[size];
+        final double[] cosPhis = new double[size];
+        int i = 0;
+        for (final int upper = SPECIES.loopBound(size); i < upper; i += length) {
+            final DoubleVector phi = DoubleVector.fromArray(SPECIES, latitudes, i).mul(DEGREES_TO_RADIANS);
+            phi.intoArray(phis, i);
+            phi.lanewise(VectorOperators.COS).intoArray(cosPhis, i);
+        }
+        for (; i < size; i++) {
+            phis[i] = Math.toRadians(latitudes[i]);
+            cosPhis[i] = Math.cos(phis[i]);
+        }
+
+        // second pass: the segments, point i + 1 is read with an offset of one
+        final int segments = size - 1;
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        i = 0;
+        for (final int upper = SPECIES.loopBound(segments); i < upper; i += length) {
+            final DoubleVector phi1 = DoubleVector.fromArray(SPECIES, phis, i);
+            final DoubleVector phi2 = DoubleVector.fromArray(SPECIES, phis, i + 1);
+            final DoubleVector lambda1 = DoubleVector.fromArray(SPECIES, longitudes, i);
+            final DoubleVector lambda2 = DoubleVector.fromArray(SPECIES, longitudes, i + 1);
+            final DoubleVector sinDeltaPhi = phi2.sub(phi1).mul(0.5).lanewise(VectorOperators.SIN);
+            final DoubleVector sinDeltaLambda =
+                lambda2.sub(lambda1).mul(DEGREES_TO_RADIANS * 0.5).lanewise(VectorOperators.SIN);
+            final DoubleVector cosProduct = DoubleVector.fromArray(SPECIES, cosPhis, i)
+                .mul(DoubleVector.fromArray(SPECIES, cosPhis, i + 1));
+            final DoubleVector a = sinDeltaLambda.mul(sinDeltaLambda).mul(cosProduct)
+                .add(sinDeltaPhi.mul(sinDeltaPhi))
+                .min(1.0);
+            final DoubleVector distance = a.sqrt().lanewise(VectorOperators.ASIN).mul(2 * EARTH_RADIUS);
+            distance.intoArray(distances, i);
+            sum = sum.add(distance);
+        }
+        double total = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < segments; i++) {
+            final double distance =
+                ScalarKernels.distance(phis[i], cosPhis[i], longitudes[i], phis[i + 1], cosPhis[i + 1],
+                    longitudes[i + 1]);
+            distances[i] = distance;
+            total += distance;
+        }
+        return total;
+    }
+
+    @Override
+    public void bounds(double[] latitudes, double[] longitudes, int size, double[] bounds) {
+        DoubleVector minLatitude = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+        DoubleVector maxLatitude = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+        DoubleVector minLongitude = minLatitude;
+        DoubleVector maxLongitude = maxLatitude;
+        int i = 0;
+        for (final int upper = SPECIES.loopBound(size); i < upper; i += SPECIES.length()) {
+            final DoubleVector latitude = DoubleVector.fromArray(SPECIES, latitudes, i);
+            final DoubleVector longitude = DoubleVector.fromArray(SPECIES, longitudes, i);
+            minLatitude = minLatitude.min(latitude);
+            maxLatitude = maxLatitude.max(latitude);
+            minLongitude = minLongitude.min(longitude);
+            maxLongitude = maxLongitude.max(longitude);
+        }
+        double minLat = minLatitude.reduceLanes(VectorOperators.MIN);
+        double maxLat = maxLatitude.reduceLanes(VectorOperators.MAX);
+        double minLon = minLongitude.reduceLanes(VectorOperators.MIN);
+        double maxLon = maxLongitude.reduceLanes(VectorOperators.MAX);
+        for (; i < size; i++) {
+            minLat = Math.min(minLat, latitudes[i]);
+            maxLat = Math.max(maxLat, latitudes[i]);
+            minLon = Math.min(minLon, longitudes[i]);
+            maxLon = Math.max(maxLon, longitudes[i]);
+        }
+        bounds[0] = minLat;
+        bounds[1] = maxLat;
+        bounds[2] = minLon;
+        bounds[3] = maxLon;
+    }
+
+    @Override
+    public String getName() {
+        return "vector " + SPECIES;
+    }
+}
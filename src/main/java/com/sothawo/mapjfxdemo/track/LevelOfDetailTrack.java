@@ -0,0 +1,220 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.track;
+
+import com.sothawo.mapjfx.CoordinateLine;
+import com.sothawo.mapjfx.MapView;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.scene.paint.Color;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A track that is shown with a different level of detail depending on the map's zoom. A pyramid of simplified
+ * versions is computed when the object is created, and the {@link CoordinateLine} shown in the map is swapped when
+ * the zoom crosses one of the level boundaries, so the number of vertices sent to the map stays roughly the same for
+ * all zoom levels.
+ * <p>
+ * Creation can be done on a background thread, all other methods must be called on the JavaFX Application Thread.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class LevelOfDetailTrack {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(LevelOfDetailTrack.class);
+
+    /** upper zoom bounds (exclusive) of the simplified levels; above the last one the full track is shown. */
+    private static final int[] LEVEL_ZOOM_LIMITS = {6, 8, 10, 12, 14, 16};
+
+    /** the full track. */
+    private final Track track;
+    /** upper zoom bound (exclusive) for each line, the last line has no bound. */
+    private final double[] zoomLimits;
+    /** the lines from coarsest to finest, the last one contains all points. */
+    private final CoordinateLine[] lines;
+
+    /** the visibility of the track, all lines are bound to this. */
+    private final SimpleBooleanProperty visible = new SimpleBooleanProperty(false);
+
+    /** the map the track is added to, null if not added. */
+    private MapView mapView;
+    /** the index of the line currently in the map. */
+    private int currentLevel = -1;
+    /** listener to the map's zoom. */
+    private final ChangeListener<Number> zoomListener =
+        (observable, oldValue, newValue) -> showLevelForZoom(newValue.doubleValue());
+
+    private LevelOfDetailTrack(Track track, double[] zoomLimits, List<Track> levels) {
+        this.track = track;
+        this.zoomLimits = zoomLimits;
+        this.lines = new CoordinateLine[levels.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = levels.get(i).toCoordinateLine();
+            lines[i].visibleProperty().bind(visible);
+        }
+    }
+
+    /**
+     * creates the simplification pyramid for a track. Each level is simplified from the next finer one with a
+     * tolerance of one pixel at the level's upper zoom bound; levels that would not remove any further point are
+     * dropped.
+     *
+     * @param track
+     *     the full track
+     * @return the new object
+     */
+    public static LevelOfDetailTrack of(Track track) {
+        final List<Track> levels = new ArrayList<>();
+        final List<Double> limits = new ArrayList<>();
+        levels.add(track);
+
+        Track finer = track;
+        for (int i = LEVEL_ZOOM_LIMITS.length - 1; i >= 0; i--) {
+            final Track simplified =
+                TrackSimplifier.simplify(finer, TrackSimplifier.pixelSizeInDegrees(LEVEL_ZOOM_LIMITS[i]));
+            if (simplified.size() < finer.size()) {
+                levels.add(0, simplified);
+                limits.add(0, (double) LEVEL_ZOOM_LIMITS[i]);
+                finer = simplified;
+            }
+        }
+        final double[] zoomLimits = new double[limits.size()];
+        for (int i = 0; i < zoomLimits.length; i++) {
+            zoomLimits[i] = limits.get(i);
+        }
+        if (logger.isTraceEnabled()) {
+            final StringBuilder sb = new StringBuilder();
+            for (Track level : levels) {
+                sb.append(' ').append(level.size());
+            }
+            logger.trace("level of detail sizes:{}", sb);
+        }
+        return new LevelOfDetailTrack(track, zoomLimits, levels);
+    }
+
+    /**
+     * @return the full track
+     */
+    public Track getTrack() {
+        return track;
+    }
+
+    /**
+     * @return the number of detail levels
+     */
+    public int getLevelCount() {
+        return lines.length;
+    }
+
+    /**
+     * @return the line that is currently in the map, null if the track is not added to a map.
+     */
+    public CoordinateLine getDisplayedLine() {
+        return currentLevel < 0 ? null : lines[currentLevel];
+    }
+
+    public LevelOfDetailTrack setColor(Color color) {
+        for (CoordinateLine line : lines) {
+            line.setColor(color);
+        }
+        return this;
+    }
+
+    public LevelOfDetailTrack setWidth(int width) {
+        for (CoordinateLine line : lines) {
+            line.setWidth(width);
+        }
+        return this;
+    }
+
+    public boolean getVisible() {
+        return visible.get();
+    }
+
+    public LevelOfDetailTrack setVisible(boolean visible) {
+        this.visible.set(visible);
+        return this;
+    }
+
+    public SimpleBooleanProperty visibleProperty() {
+        return visible;
+    }
+
+    /**
+     * adds the track to the map; the line matching the map's current zoom is shown and replaced when the zoom
+     * changes.
+     *
+     * @param mapView
+     *     the map to add to
+     * @throws IllegalStateException
+     *     if the track is already added to a map
+     */
+    public void addTo(MapView mapView) {
+        if (this.mapView != null) {
+            throw new IllegalStateException("track is already added to a map");
+        }
+        this.mapView = mapView;
+        mapView.zoomProperty().addListener(zoomListener);
+        showLevelForZoom(mapView.getZoom());
+    }
+
+    /**
+     * removes the track from the map it was added to.
+     */
+    public void removeFromMap() {
+        if (mapView != null) {
+            mapView.zoomProperty().removeListener(zoomListener);
+            if (currentLevel >= 0) {
+                mapView.removeCoordinateLine(lines[currentLevel]);
+            }
+            currentLevel = -1;
+            mapView = null;
+        }
+    }
+
+    private void showLevelForZoom(double zoom) {
+        final int level = levelForZoom(zoom);
+        if (level != currentLevel && mapView != null) {
+            // add the new line before removing the old one to prevent flickering
+            mapView.addCoordinateLine(lines[level]);
+            if (currentLevel >= 0) {
+                mapView.removeCoordinateLine(lines[currentLevel]);
+            }
+            if (logger.isTraceEnabled()) {
+                logger.trace("zoom {}: switched to level {} with {} points", zoom, level, lineSize(level));
+            }
+            currentLevel = level;
+        }
+    }
+
+    private int levelForZoom(double zoom) {
+        for (int i = 0; i < zoomLimits.length; i++) {
+            if (zoom < zoomLimits[i]) {
+                return i;
+            }
+        }
+        return lines.length - 1;
+    }
+
+    private long lineSize(int level) {
+        return lines[level].getCoordinateStream().count();
+    }
+}
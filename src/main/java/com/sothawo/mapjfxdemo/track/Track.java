@@ -0,0 +1,239 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.track;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.CoordinateLine;
+import com.sothawo.mapjfx.Extent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A track stored as primitive latitude and longitude columns. The bounding box is computed once when the track is
+ * created, so no extra pass over Coordinate objects is needed to compute the extent. {@link Coordinate} objects are
+ * only created when a {@link CoordinateLine} is built from the track.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class Track {
+
+    /** the latitude values, only the first size entries are valid. */
+    private final double[] latitudes;
+    /** the longitude values, only the first size entries are valid. */
+    private final double[] longitudes;
+    /** the number of points. */
+    private final int size;
+
+    /** the bounding box. */
+    private final double minLatitude;
+    private final double maxLatitude;
+    private final double minLongitude;
+    private final double maxLongitude;
+
+    /** the number of lines that could not be parsed. */
+    private final int badLineCount;
+    /** the line numbers (1-based) of the first bad lines. */
+    private final int[] badLines;
+
+    Track(double[] latitudes, double[] longitudes, int size, int badLineCount, int[] badLines) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.size = size;
+        this.badLineCount = badLineCount;
+        this.badLines = badLines;
+
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            final double lat = latitudes[i];
+            final double lon = longitudes[i];
+            if (lat < minLat) {
+                minLat = lat;
+            }
+            if (lat > maxLat) {
+                maxLat = lat;
+            }
+            if (lon < minLon) {
+                minLon = lon;
+            }
+            if (lon > maxLon) {
+                maxLon = lon;
+            }
+        }
+        this.minLatitude = minLat;
+        this.maxLatitude = maxLat;
+        this.minLongitude = minLon;
+        this.maxLongitude = maxLon;
+    }
+
+    /**
+     * creates a track with a known bounding box, e.g. one that was stored with the track, so the columns are not
+     * scanned.
+     */
+    Track(double[] latitudes, double[] longitudes, int size, double minLatitude, double maxLatitude,
+          double minLongitude, double maxLongitude) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.size = size;
+        this.badLineCount = 0;
+        this.badLines = new int[0];
+        this.minLatitude = minLatitude;
+        this.maxLatitude = maxLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    /**
+     * creates a track from the given columns. The arrays are not copied.
+     *
+     * @param latitudes
+     *     latitude values
+     * @param longitudes
+     *     longitude values
+     * @param size
+     *     number of valid entries in the arrays
+     * @return the new track
+     * @throws IllegalArgumentException
+     *     if the arrays are shorter than size
+     */
+    public static Track of(double[] latitudes, double[] longitudes, int size) {
+        if (size < 0 || latitudes.length < size || longitudes.length < size) {
+            throw new IllegalArgumentException("arrays must contain at least " + size + " values");
+        }
+        return new Track(latitudes, longitudes, size, 0, new int[0]);
+    }
+
+    /**
+     * @return the number of points in this track
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the track has no points
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double getLatitude(int index) {
+        checkIndex(index);
+        return latitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        checkIndex(index);
+        return longitudes[index];
+    }
+
+    /**
+     * @return a copy of the latitude column with exactly {@link #size()} entries
+     */
+    public double[] latitudes() {
+        return Arrays.copyOf(latitudes, size);
+    }
+
+    /**
+     * @return a copy of the longitude column with exactly {@link #size()} entries
+     */
+    public double[] longitudes() {
+        return Arrays.copyOf(longitudes, size);
+    }
+
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+
+    /**
+     * @return the extent of the track, empty if the track has no points
+     */
+    public Optional<Extent> getExtent() {
+        if (size == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(Extent.forCoordinates(new Coordinate(minLatitude, minLongitude),
+            new Coordinate(maxLatitude, maxLongitude)));
+    }
+
+    /**
+     * @return the number of input lines that were skipped because they could not be parsed
+     */
+    public int getBadLineCount() {
+        return badLineCount;
+    }
+
+    /**
+     * @return the 1-based line numbers of the first bad lines; may contain fewer entries than {@link
+     * #getBadLineCount()}
+     */
+    public int[] getBadLines() {
+        return badLines.clone();
+    }
+
+    /**
+     * @return the points of this track as a list of Coordinates
+     */
+    public List<Coordinate> toCoordinates() {
+        final List<Coordinate> coordinates = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            coordinates.add(new Coordinate(latitudes[i], longitudes[i]));
+        }
+        return coordinates;
+    }
+
+    /**
+     * @return a new CoordinateLine containing the points of this track
+     */
+    public CoordinateLine toCoordinateLine() {
+        return new CoordinateLine(toCoordinates());
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Track{" +
+            "size=" + size +
+            ", minLatitude=" + minLatitude +
+            ", maxLatitude=" + maxLatitude +
+            ", minLongitude=" + minLongitude +
+            ", maxLongitude=" + maxLongitude +
+            ", badLineCount=" + badLineCount +
+            '}';
+    }
+}
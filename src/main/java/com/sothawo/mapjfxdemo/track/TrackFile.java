@@ -0,0 +1,407 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.track;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.CoordinateLine;
+import com.sothawo.mapjfx.Extent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Optional;
+import java.util.RandomAccess;
+
+/**
+ * A track in a compact binary file that is memory-mapped when opened. Nothing is parsed on opening: the header holds
+ * the number of points and the bounding box, so the extent is available at once, and the points are read from the
+ * mapped columns when they are accessed. {@link #coordinates()} creates the Coordinate objects only when the list
+ * elements are read.
+ * <p>
+ * The file layout, all values little endian:
+ * <pre>
+ *  0  int     magic "MJTK"
+ *  4  short   version (1)
+ *  6  short   flags: 1 = timestamp column, 2 = speed column
+ *  8  int     number of points n
+ * 12  int     reserved
+ * 16  double  min latitude, max latitude, min longitude, max longitude
+ * 48  int[n]  latitudes in 1e-7 degrees
+ *     int[n]  longitudes in 1e-7 degrees
+ *     long[n] timestamps in milliseconds since the epoch, if flag 1 is set
+ *     float[n] speeds in meters per second, if flag 2 is set
+ * </pre>
+ * The coordinates are stored as fixed point numbers with a resolution of about 1 cm. Fixed width columns need 8 bytes
+ * per point and, unlike delta encoding, allow to read any point without decoding the ones before it.
+ * <p>
+ * A TrackFile is immutable and can be read from several threads.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class TrackFile {
+
+    /** the file extension of track files. */
+    public static final String EXTENSION = ".mjtrk";
+
+    private static final int MAGIC = 'M' | 'J' << 8 | 'T' << 16 | 'K' << 24;
+    private static final short VERSION = 1;
+    private static final short FLAG_TIMESTAMPS = 1;
+    private static final short FLAG_SPEEDS = 2;
+    private static final int HEADER_SIZE = 48;
+    /** the stored coordinates are multiples of 1 / SCALE degrees. */
+    private static final double SCALE = 1e7;
+    /** size of the write buffer. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final double minLatitude;
+    private final double maxLatitude;
+    private final double minLongitude;
+    private final double maxLongitude;
+    private final int longitudesOffset;
+    /** offset of the optional columns, -1 if not present. */
+    private final int timestampsOffset;
+    private final int speedsOffset;
+
+    private TrackFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("not a track file");
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IOException("unsupported track file version " + buffer.getShort(4));
+        }
+        final short flags = buffer.getShort(6);
+        size = buffer.getInt(8);
+        minLatitude = buffer.getDouble(16);
+        maxLatitude = buffer.getDouble(24);
+        minLongitude = buffer.getDouble(32);
+        maxLongitude = buffer.getDouble(40);
+
+        long offset = HEADER_SIZE + 4L * size;
+        longitudesOffset = (int) offset;
+        offset += 4L * size;
+        if ((flags & FLAG_TIMESTAMPS) != 0) {
+            timestampsOffset = (int) offset;
+            offset += 8L * size;
+        } else {
+            timestampsOffset = -1;
+        }
+        if ((flags & FLAG_SPEEDS) != 0) {
+            speedsOffset = (int) offset;
+            offset += 4L * size;
+        } else {
+            speedsOffset = -1;
+        }
+        if (size < 0 || offset > buffer.limit()) {
+            throw new IOException("track file is truncated, expected " + offset + " bytes for " + size + " points");
+        }
+    }
+
+    /**
+     * opens a track file by mapping it into memory. The file must not be changed while the TrackFile is used.
+     *
+     * @param path
+     *     the file
+     * @return the opened file
+     * @throws IOException
+     *     if the file cannot be read, is larger than 2 GB or is no valid track file
+     */
+    public static TrackFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("track file " + path + " is too large: " + fileSize + " bytes");
+            }
+            // the mapping stays valid after the channel is closed
+            return new TrackFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize));
+        } catch (IOException e) {
+            throw new IOException("cannot open track file " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * writes a track without timestamps and speeds.
+     *
+     * @param path
+     *     the file to write, an existing file is replaced
+     * @param track
+     *     the track
+     * @throws IOException
+     *     if the file cannot be written
+     * @throws IllegalArgumentException
+     *     if a coordinate is not a valid latitude or longitude
+     */
+    public static void write(Path path, Track track) throws IOException {
+        write(path, track, null, null);
+    }
+
+    /**
+     * writes a track with optional timestamps and speeds.
+     *
+     * @param path
+     *     the file to write, an existing file is replaced
+     * @param track
+     *     the track
+     * @param timestamps
+     *     the time of each point in milliseconds since the epoch, may be null
+     * @param speeds
+     *     the speed at each point in meters per second, may be null
+     * @throws IOException
+     *     if the file cannot be written
+     * @throws IllegalArgumentException
+     *     if a coordinate is not a valid latitude or longitude or an optional column is shorter than the track
+     */
+    public static void write(Path path, Track track, long[] timestamps, float[] speeds) throws IOException {
+        final int size = track.size();
+        if ((timestamps != null && timestamps.length < size) || (speeds != null && speeds.length < size)) {
+            throw new IllegalArgumentException("timestamps and speeds must contain at least " + size + " values");
+        }
+        final int[] latitudes = new int[size];
+        final int[] longitudes = new int[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = encode(track.getLatitude(i), 90);
+            longitudes[i] = encode(track.getLongitude(i), 180);
+        }
+        short flags = 0;
+        if (timestamps != null) {
+            flags |= FLAG_TIMESTAMPS;
+        }
+        if (speeds != null) {
+            flags |= FLAG_SPEEDS;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC).putShort(VERSION).putShort(flags).putInt(size).putInt(0);
+            // the bounding box of the stored values, rounding does not change the order
+            if (size == 0) {
+                out.putDouble(Double.NaN).putDouble(Double.NaN).putDouble(Double.NaN).putDouble(Double.NaN);
+            } else {
+                out.putDouble(decode(encode(track.getMinLatitude(), 90)))
+                    .putDouble(decode(encode(track.getMaxLatitude(), 90)))
+                    .putDouble(decode(encode(track.getMinLongitude(), 180)))
+                    .putDouble(decode(encode(track.getMaxLongitude(), 180)));
+            }
+            for (int latitude : latitudes) {
+                ensureRemaining(channel, out, Integer.BYTES).putInt(latitude);
+            }
+            for (int longitude : longitudes) {
+                ensureRemaining(channel, out, Integer.BYTES).putInt(longitude);
+            }
+            if (timestamps != null) {
+                for (int i = 0; i < size; i++) {
+                    ensureRemaining(channel, out, Long.BYTES).putLong(timestamps[i]);
+                }
+            }
+            if (speeds != null) {
+                for (int i = 0; i < size; i++) {
+                    ensureRemaining(channel, out, Float.BYTES).putFloat(speeds[i]);
+                }
+            }
+            flush(channel, out);
+        }
+    }
+
+    /**
+     * converts a track from the lat;lon csv format.
+     *
+     * @param csv
+     *     the csv file
+     * @param target
+     *     the track file to write, an existing file is replaced
+     * @return the converted track
+     * @throws IOException
+     *     if the csv file cannot be read or the track file cannot be written
+     */
+    public static Track convert(Path csv, Path target) throws IOException {
+        final Track track = TrackLoader.load(csv);
+        write(target, track);
+        return track;
+    }
+
+    private static ByteBuffer ensureRemaining(FileChannel channel, ByteBuffer out, int bytes) throws IOException {
+        if (out.remaining() < bytes) {
+            flush(channel, out);
+        }
+        return out;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    private static int encode(double degrees, double limit) {
+        if (!(degrees >= -limit && degrees <= limit)) {
+            throw new IllegalArgumentException("coordinate value out of range: " + degrees);
+        }
+        return (int) Math.round(degrees * SCALE);
+    }
+
+    private static double decode(int value) {
+        // division instead of multiplying with 1e-7 gives the same double as parsing the decimal value
+        return value / SCALE;
+    }
+
+    /**
+     * @return the number of points
+     */
+    public int size() {
+        return size;
+    }
+
+    public double getLatitude(int index) {
+        checkIndex(index);
+        return decode(buffer.getInt(HEADER_SIZE + 4 * index));
+    }
+
+    public double getLongitude(int index) {
+        checkIndex(index);
+        return decode(buffer.getInt(longitudesOffset + 4 * index));
+    }
+
+    /**
+     * @return true if the file has a timestamp for each point
+     */
+    public boolean hasTimestamps() {
+        return timestampsOffset >= 0;
+    }
+
+    /**
+     * @param index
+     *     index of the point
+     * @return the time of the point in milliseconds since the epoch
+     * @throws IllegalStateException
+     *     if the file has no timestamps
+     */
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        if (timestampsOffset < 0) {
+            throw new IllegalStateException("the track file has no timestamps");
+        }
+        return buffer.getLong(timestampsOffset + 8 * index);
+    }
+
+    /**
+     * @return true if the file has a speed for each point
+     */
+    public boolean hasSpeeds() {
+        return speedsOffset >= 0;
+    }
+
+    /**
+     * @param index
+     *     index of the point
+     * @return the speed at the point in meters per second
+     * @throws IllegalStateException
+     *     if the file has no speeds
+     */
+    public float getSpeed(int index) {
+        checkIndex(index);
+        if (speedsOffset < 0) {
+            throw new IllegalStateException("the track file has no speeds");
+        }
+        return buffer.getFloat(speedsOffset + 4 * index);
+    }
+
+    /**
+     * @return the extent stored in the header, empty if the track has no points
+     */
+    public Optional<Extent> getExtent() {
+        if (size == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(Extent.forCoordinates(new Coordinate(minLatitude, minLongitude),
+            new Coordinate(maxLatitude, maxLongitude)));
+    }
+
+    /**
+     * @return a list view of the points; the Coordinate objects are created when the elements are read
+     */
+    public List<Coordinate> coordinates() {
+        return new CoordinateList();
+    }
+
+    /**
+     * @return a new CoordinateLine containing the points of this file
+     */
+    public CoordinateLine toCoordinateLine() {
+        return new CoordinateLine(coordinates());
+    }
+
+    /**
+     * reads the coordinate columns into a {@link Track}. The bounding box is taken from the header.
+     *
+     * @return the track
+     */
+    public Track toTrack() {
+        final double[] latitudes = new double[size];
+        final double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = decode(buffer.getInt(HEADER_SIZE + 4 * i));
+            longitudes[i] = decode(buffer.getInt(longitudesOffset + 4 * i));
+        }
+        if (size == 0) {
+            return Track.of(latitudes, longitudes, 0);
+        }
+        return new Track(latitudes, longitudes, size, minLatitude, maxLatitude, minLongitude, maxLongitude);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TrackFile{" +
+            "size=" + size +
+            ", minLatitude=" + minLatitude +
+            ", maxLatitude=" + maxLatitude +
+            ", minLongitude=" + minLongitude +
+            ", maxLongitude=" + maxLongitude +
+            ", timestamps=" + hasTimestamps() +
+            ", speeds=" + hasSpeeds() +
+            '}';
+    }
+
+    /**
+     * the points of the file as an unmodifiable list.
+     */
+    private final class CoordinateList extends AbstractList<Coordinate> implements RandomAccess {
+        @Override
+        public Coordinate get(int index) {
+            return new Coordinate(getLatitude(index), getLongitude(index));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.track;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Converts tracks from the lat;lon csv format to {@link TrackFile}s. The arguments are csv files or directories, for a
+ * directory all csv files in it are converted. Each track file is written next to its csv file.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class TrackFileConverter {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(TrackFileConverter.class);
+
+    private TrackFileConverter() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            logger.error("usage: TrackFileConverter <csv file or directory>...");
+            System.exit(1);
+        }
+        int failed = 0;
+        for (String arg : args) {
+            try {
+                for (Path csv : csvFiles(Path.of(arg))) {
+                    if (!convert(csv)) {
+                        failed++;
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("cannot read {}", arg, e);
+                failed++;
+            }
+        }
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    private static List<Path> csvFiles(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return List.of(path);
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            return files
+                .filter(file -> file.getFileName().toString().toLowerCase().endsWith(".csv"))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean convert(Path csv) {
+        final String name = csv.getFileName().toString();
+        final int dot = name.lastIndexOf('.');
+        final Path target = csv.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + TrackFile.EXTENSION);
+        try {
+            final long start = System.nanoTime();
+            final Track track = TrackFile.convert(csv, target);
+            logger.info("converted {} to {}: {} points, {} bad lines, {} ms", csv, target, track.size(),
+                track.getBadLineCount(), (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("cannot convert {}", csv, e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.track;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.Extent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Imports all tracks of a directory and its subdirectories: csv files in the lat;lon format and {@link TrackFile}s.
+ * The files are loaded on a fixed number of threads, and a level of detail pyramid is created for each track. The
+ * loaded tracks are handed out in batches, so that the map is not flooded with single updates.
+ * <p>
+ * Memory is bounded by the number of pending tracks: a file is only started when one of a fixed number of permits is
+ * free, and the permits of a batch are returned after the batch listener has processed it. A slow consumer of the
+ * batches, like the JavaFX Application Thread adding lines to the map, slows down the loading instead of letting
+ * loaded tracks pile up.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class TrackImporter {
+
+    /** logger for the class. */
+    private static final Logger logger = LoggerFactory.getLogger(TrackImporter.class);
+
+    public static final int DEFAULT_PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    /** minimum time between two progress reports; a batch that is not full is handed out after this time as well. */
+    private static final long PROGRESS_INTERVAL_NANOS = 250_000_000L;
+
+    private final int parallelism;
+    private final int batchSize;
+    private final int maxPendingTracks;
+
+    /**
+     * @param parallelism
+     *     the number of files that are loaded concurrently
+     * @param batchSize
+     *     the max number of tracks in a batch
+     * @param maxPendingTracks
+     *     the max number of tracks that are loading or loaded and not yet processed by the batch listener
+     * @throws IllegalArgumentException
+     *     if a value is not positive or maxPendingTracks is less than batchSize
+     */
+    public TrackImporter(int parallelism, int batchSize, int maxPendingTracks) {
+        if (parallelism < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("parallelism and batch size must be positive");
+        }
+        if (maxPendingTracks < batchSize) {
+            throw new IllegalArgumentException("maxPendingTracks must not be less than the batch size");
+        }
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+        this.maxPendingTracks = maxPendingTracks;
+    }
+
+    /**
+     * @return an importer with the default parallelism and batch size, keeping at most four batches pending
+     */
+    public static TrackImporter withDefaults() {
+        return new TrackImporter(DEFAULT_PARALLELISM, DEFAULT_BATCH_SIZE, 4 * DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param path
+     *     a file
+     * @return true if the file is imported by this class
+     */
+    public static boolean isTrackFile(Path path) {
+        final String name = path.getFileName().toString().toLowerCase();
+        return name.endsWith(".csv") || name.endsWith(TrackFile.EXTENSION);
+    }
+
+    /**
+     * starts the import in the background.
+     *
+     * @param directory
+     *     the directory to import
+     * @param batchExecutor
+     *     the executor that calls the batch listener, e.g. Platform::runLater
+     * @param batchListener
+     *     called with each batch of loaded tracks; tracks without points are not passed on
+     * @param progressListener
+     *     called with the progress at most every 250 ms and once at the end, on one of the loading threads
+     * @return the running import
+     */
+    public Import start(Path directory, Executor batchExecutor, Consumer<List<ImportedTrack>> batchListener,
+                        Consumer<Progress> progressListener) {
+        final Import trackImport = new Import(directory, batchExecutor, batchListener, progressListener);
+        final Thread thread = new Thread(trackImport::run, "track-import");
+        thread.setDaemon(true);
+        thread.start();
+        return trackImport;
+    }
+
+    /**
+     * a running import.
+     */
+    public final class Import {
+        private final Path directory;
+        private final Executor batchExecutor;
+        private final Consumer<List<ImportedTrack>> batchListener;
+        private final Consumer<Progress> progressListener;
+        private final CompletableFuture<Progress> result = new CompletableFuture<>();
+        private final long start = System.nanoTime();
+        private final Semaphore permits = new Semaphore(maxPendingTracks);
+        private final AtomicLong lastReport = new AtomicLong(start);
+        private final AtomicInteger imported = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicLong points = new AtomicLong();
+        private volatile int total = -1;
+        private volatile boolean cancelled;
+
+        /** the merged bounding box of the imported tracks and the current batch, guarded by this. */
+        private double minLatitude = Double.POSITIVE_INFINITY;
+        private double maxLatitude = Double.NEGATIVE_INFINITY;
+        private double minLongitude = Double.POSITIVE_INFINITY;
+        private double maxLongitude = Double.NEGATIVE_INFINITY;
+        private List<ImportedTrack> batch = new ArrayList<>();
+        private long batchStart;
+
+        private Import(Path directory, Executor batchExecutor, Consumer<List<ImportedTrack>> batchListener,
+                       Consumer<Progress> progressListener) {
+            this.directory = directory;
+            this.batchExecutor = batchExecutor;
+            this.batchListener = batchListener;
+            this.progressListener = progressListener;
+        }
+
+        /**
+         * @return future completed with the final progress when all batches are processed or the import was cancelled
+         */
+        public CompletableFuture<Progress> getResult() {
+            return result;
+        }
+
+        /**
+         * stops the import; files that are loading are finished, but no further batches are handed out.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public Progress getProgress() {
+            return snapshot(result.isDone());
+        }
+
+        private Progress snapshot(boolean finished) {
+            final Optional<Extent> extent;
+            synchronized (this) {
+                extent = minLatitude > maxLatitude ? Optional.empty()
+                    : Optional.of(Extent.forCoordinates(new Coordinate(minLatitude, minLongitude),
+                    new Coordinate(maxLatitude, maxLongitude)));
+            }
+            return new Progress(total, imported.get(), failed.get(), points.get(), extent, System.nanoTime() - start,
+                cancelled, finished);
+        }
+
+        private void run() {
+            final AtomicInteger threadNumber = new AtomicInteger();
+            final ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+                final Thread thread = new Thread(runnable, "track-import-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                final List<Path> files;
+                try (Stream<Path> paths = Files.walk(directory)) {
+                    files = paths.filter(path -> Files.isRegularFile(path) && isTrackFile(path))
+                        .sorted()
+                        .collect(Collectors.toList());
+                }
+                total = files.size();
+                logger.info("importing {} track files from {}", total, directory);
+
+                for (Path file : files) {
+                    if (cancelled) {
+                        break;
+                    }
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        cancelled = true;
+                        break;
+                    }
+                    workers.execute(() -> {
+                        load(file);
+                        maybeReport();
+                    });
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("could not scan {}", directory, e);
+                if (total < 0) {
+                    total = 0;
+                }
+            } finally {
+                workers.shutdown();
+            }
+
+            // wait until all loaded tracks are handed out and processed
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            flushBatch();
+            permits.acquireUninterruptibly(maxPendingTracks);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            // the result is not done yet, so the final snapshot has to be marked explicitly
+            final Progress progress = snapshot(true);
+            result.complete(progress);
+            logger.info("track import finished: {}", progress);
+            progressListener.accept(progress);
+        }
+
+        private void load(Path file) {
+            if (cancelled) {
+                permits.release();
+                return;
+            }
+            final Track track;
+            final LevelOfDetailTrack levelOfDetailTrack;
+            try {
+                track = file.getFileName().toString().toLowerCase().endsWith(TrackFile.EXTENSION)
+                    ? TrackFile.open(file).toTrack()
+                    : TrackLoader.load(file);
+                levelOfDetailTrack = track.isEmpty() ? null : LevelOfDetailTrack.of(track);
+            } catch (IOException | RuntimeException e) {
+                logger.debug("could not import {}", file, e);
+                failed.incrementAndGet();
+                permits.release();
+                return;
+            }
+            imported.incrementAndGet();
+            points.addAndGet(track.size());
+            if (levelOfDetailTrack == null) {
+                permits.release();
+                return;
+            }
+
+            List<ImportedTrack> fullBatch = null;
+            synchronized (this) {
+                minLatitude = Math.min(minLatitude, track.getMinLatitude());
+                maxLatitude = Math.max(maxLatitude, track.getMaxLatitude());
+                minLongitude = Math.min(minLongitude, track.getMinLongitude());
+                maxLongitude = Math.max(maxLongitude, track.getMaxLongitude());
+                if (batch.isEmpty()) {
+                    batchStart = System.nanoTime();
+                }
+                batch.add(new ImportedTrack(file, levelOfDetailTrack));
+                if (batch.size() >= batchSize || System.nanoTime() - batchStart >= PROGRESS_INTERVAL_NANOS) {
+                    fullBatch = batch;
+                    batch = new ArrayList<>();
+                }
+            }
+            if (fullBatch != null) {
+                handOut(fullBatch);
+            }
+        }
+
+        private void flushBatch() {
+            final List<ImportedTrack> lastBatch;
+            synchronized (this) {
+                lastBatch = batch;
+                batch = new ArrayList<>();
+            }
+            if (!lastBatch.isEmpty()) {
+                handOut(lastBatch);
+            }
+        }
+
+        private void handOut(List<ImportedTrack> tracks) {
+            if (cancelled) {
+                permits.release(tracks.size());
+                return;
+            }
+            try {
+                batchExecutor.execute(() -> {
+                    try {
+                        if (!cancelled) {
+                            batchListener.accept(tracks);
+                        }
+                    } catch (RuntimeException e) {
+                        logger.warn("batch listener failed", e);
+                    } finally {
+                        permits.release(tracks.size());
+                    }
+                });
+            } catch (RuntimeException e) {
+                logger.warn("could not hand out a batch", e);
+                permits.release(tracks.size());
+            }
+        }
+
+        private void maybeReport() {
+            final long now = System.nanoTime();
+            final long last = lastReport.get();
+            if (now - last >= PROGRESS_INTERVAL_NANOS && lastReport.compareAndSet(last, now)) {
+                progressListener.accept(getProgress());
+            }
+        }
+    }
+
+    /**
+     * a loaded track and the file it was loaded from.
+     */
+    public static final class ImportedTrack {
+        private final Path file;
+        private final LevelOfDetailTrack track;
+
+        private ImportedTrack(Path file, LevelOfDetailTrack track) {
+            this.file = file;
+            this.track = track;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public LevelOfDetailTrack getTrack() {
+            return track;
+        }
+    }
+
+    /**
+     * snapshot of the progress of an import.
+     */
+    public static final class Progress {
+        private final int total;
+        private final int imported;
+        private final int failed;
+        private final long points;
+        private final Optional<Extent> extent;
+        private final long elapsedNanos;
+        private final boolean cancelled;
+        private final boolean finished;
+
+        private Progress(int total, int imported, int failed, long points, Optional<Extent> extent,
+                         long elapsedNanos, boolean cancelled, boolean finished) {
+            this.total = total;
+            this.imported = imported;
+            this.failed = failed;
+            this.points = points;
+            this.extent = extent;
+            this.elapsedNanos = elapsedNanos;
+            this.cancelled = cancelled;
+            this.finished = finished;
+        }
+
+        /**
+         * @return the number of track files found, -1 while the directory is scanned
+         */
+        public int getTotal() {
+            return total;
+        }
+
+        public int getImported() {
+            return imported;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return the number of points in the imported tracks
+         */
+        public long getPoints() {
+            return points;
+        }
+
+        /**
+         * @return the merged extent of the imported tracks, empty if there are no points yet
+         */
+        public Optional<Extent> getExtent() {
+            return extent;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return the throughput of the import
+         */
+        public double getPointsPerSecond() {
+            return elapsedNanos == 0 ? 0 : points * 1e9 / elapsedNanos;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * @return the processed fraction of the files, between 0 and 1
+         */
+        public double getFraction() {
+            return total <= 0 ? (finished ? 1 : 0) : (double) (imported + failed) / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d files, %d failed, %d points in %.1f s, %.0f points/s%s", imported,
+                Math.max(total, 0), failed, points, elapsedNanos / 1e9, getPointsPerSecond(),
+                cancelled ? " (cancelled)" : "");
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.track;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Loads tracks in the lat;lon csv format. The input is processed as raw bytes and the numbers are parsed by hand into
+ * primitive arrays, so there is no String, array or boxed Double created per line. Lines that cannot be parsed are
+ * counted and skipped instead of aborting the whole file; empty lines are ignored.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class TrackLoader {
+
+    /** size of the read buffer. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** initial capacity of the coordinate columns. */
+    private static final int INITIAL_CAPACITY = 1024;
+    /** max number of bad line numbers that are kept for reporting. */
+    private static final int MAX_REPORTED_BAD_LINES = 100;
+    /** max number of significant digits for the fast parsing path. */
+    private static final int MAX_FAST_DIGITS = 15;
+    /** exact powers of ten that are representable as double. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private int lineNumber;
+
+    private double[] latitudes = new double[INITIAL_CAPACITY];
+    private double[] longitudes = new double[INITIAL_CAPACITY];
+    private int size;
+
+    private int badLineCount;
+    private final int[] badLines = new int[MAX_REPORTED_BAD_LINES];
+
+    private TrackLoader() {
+    }
+
+    /**
+     * loads a track from the given url.
+     *
+     * @param url
+     *     url where to load from
+     * @return the loaded track
+     * @throws IOException
+     *     if the data cannot be read
+     * @throws NullPointerException
+     *     if url is null
+     */
+    public static Track load(URL url) throws IOException {
+        try (InputStream inputStream = url.openStream()) {
+            return load(inputStream);
+        }
+    }
+
+    /**
+     * loads a track from the given file.
+     *
+     * @param path
+     *     the file to load
+     * @return the loaded track
+     * @throws IOException
+     *     if the data cannot be read
+     */
+    public static Track load(Path path) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            return load(inputStream);
+        }
+    }
+
+    /**
+     * loads a track from the given stream. The stream is read until its end but not closed.
+     *
+     * @param inputStream
+     *     the stream to read
+     * @return the loaded track
+     * @throws IOException
+     *     if the data cannot be read
+     */
+    public static Track load(InputStream inputStream) throws IOException {
+        return new TrackLoader().read(inputStream);
+    }
+
+    private Track read(InputStream inputStream) throws IOException {
+        int numRead;
+        while ((numRead = inputStream.read(buffer)) != -1) {
+            int lineStart = 0;
+            for (int i = 0; i < numRead; i++) {
+                if (buffer[i] == '\n') {
+                    appendToLine(lineStart, i);
+                    processLine();
+                    lineStart = i + 1;
+                }
+            }
+            appendToLine(lineStart, numRead);
+        }
+        if (lineLength > 0) {
+            processLine();
+        }
+        return new Track(latitudes, longitudes, size, badLineCount,
+            Arrays.copyOf(badLines, Math.min(badLineCount, MAX_REPORTED_BAD_LINES)));
+    }
+
+    private void appendToLine(int from, int to) {
+        final int length = to - from;
+        if (length == 0) {
+            return;
+        }
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(buffer, from, line, lineLength, length);
+        lineLength += length;
+    }
+
+    private void processLine() {
+        lineNumber++;
+        final int length = lineLength;
+        lineLength = 0;
+
+        int start = skipWhitespace(line, 0, length);
+        int end = trimEnd(line, start, length);
+        if (start == end) {
+            return;
+        }
+        if (lineNumber == 1 && end - start >= 3 && (line[start] & 0xff) == 0xEF && (line[start + 1] & 0xff) == 0xBB
+            && (line[start + 2] & 0xff) == 0xBF) {
+            // UTF-8 byte order mark
+            start += 3;
+        }
+
+        int separator = -1;
+        for (int i = start; i < end; i++) {
+            if (line[i] == ';') {
+                separator = i;
+                break;
+            }
+        }
+        if (separator < 0) {
+            badLine();
+            return;
+        }
+        final double latitude = parseDouble(line, start, separator);
+        final double longitude = parseDouble(line, separator + 1, end);
+        if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+            badLine();
+            return;
+        }
+        add(latitude, longitude);
+    }
+
+    private void add(double latitude, double longitude) {
+        if (size == latitudes.length) {
+            final int newCapacity = latitudes.length + (latitudes.length >> 1);
+            latitudes = Arrays.copyOf(latitudes, newCapacity);
+            longitudes = Arrays.copyOf(longitudes, newCapacity);
+        }
+        latitudes[size] = latitude;
+        longitudes[size] = longitude;
+        size++;
+    }
+
+    private void badLine() {
+        if (badLineCount < MAX_REPORTED_BAD_LINES) {
+            badLines[badLineCount] = lineNumber;
+        }
+        badLineCount++;
+    }
+
+    private static int skipWhitespace(byte[] bytes, int from, int to) {
+        while (from < to && isWhitespace(bytes[from])) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(byte[] bytes, int from, int to) {
+        while (to > from && isWhitespace(bytes[to - 1])) {
+            to--;
+        }
+        return to;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * parses a decimal number in the range [from, to) of the given bytes. Numbers with up to 15 significant digits
+     * and a small exponent are computed exactly from the digits, others are handed to {@link
+     * Double#parseDouble(String)}.
+     *
+     * @param bytes
+     *     the data
+     * @param from
+     *     start index, inclusive
+     * @param to
+     *     end index, exclusive
+     * @return the parsed value or NaN if the range does not contain a valid number
+     */
+    public static double parseDouble(byte[] bytes, int from, int to) {
+        from = skipWhitespace(bytes, from, to);
+        to = trimEnd(bytes, from, to);
+        int i = from;
+        if (i == to) {
+            return Double.NaN;
+        }
+
+        boolean negative = false;
+        if (bytes[i] == '-' || bytes[i] == '+') {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int numDigits = 0;
+        int exponent = 0;
+        boolean afterPoint = false;
+        for (; i < to; i++) {
+            final byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                numDigits++;
+                if (mantissa == 0 && b == '0') {
+                    // leading zero, not significant
+                    if (afterPoint) {
+                        exponent--;
+                    }
+                    continue;
+                }
+                significantDigits++;
+                if (significantDigits <= MAX_FAST_DIGITS) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (afterPoint) {
+                        exponent--;
+                    }
+                }
+            } else if (b == '.' && !afterPoint) {
+                afterPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (numDigits == 0) {
+            return Double.NaN;
+        }
+
+        if (i < to) {
+            if (bytes[i] != 'e' && bytes[i] != 'E') {
+                return Double.NaN;
+            }
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+            if (i == to) {
+                return Double.NaN;
+            }
+            int explicitExponent = 0;
+            for (; i < to; i++) {
+                final byte b = bytes[i];
+                if (b < '0' || b > '9') {
+                    return Double.NaN;
+                }
+                if (explicitExponent < 10_000) {
+                    explicitExponent = explicitExponent * 10 + (b - '0');
+                }
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        if (significantDigits > MAX_FAST_DIGITS || exponent < -22 || exponent > 22) {
+            // rare case, let the JDK do the correct rounding
+            try {
+                return Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+
+        // mantissa has at most 15 digits and the power of ten is exact, so this is correctly rounded
+        double value = mantissa;
+        if (exponent < 0) {
+            value /= POWERS_OF_TEN[-exponent];
+        } else if (exponent > 0) {
+            value *= POWERS_OF_TEN[exponent];
+        }
+        return negative ? -value : value;
+    }
+}
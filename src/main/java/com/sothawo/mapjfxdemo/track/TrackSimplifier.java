@@ -0,0 +1,133 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.track;
+
+import java.util.Arrays;
+
+/**
+ * Douglas-Peucker simplification of tracks. The algorithm works on the primitive columns of a {@link Track} with an
+ * explicit index stack, so even very long tracks need no recursion. Distances are measured in degrees of latitude,
+ * the longitudes are scaled by the cosine of the track's mean latitude to get a locally undistorted plane.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public final class TrackSimplifier {
+
+    private TrackSimplifier() {
+    }
+
+    /**
+     * returns the size of a screen pixel in degrees of latitude at the given zoom level of a 256 pixel tile pyramid.
+     *
+     * @param zoom
+     *     the zoom level
+     * @return pixel size in degrees
+     */
+    public static double pixelSizeInDegrees(double zoom) {
+        return 360.0 / (256.0 * Math.pow(2.0, zoom));
+    }
+
+    /**
+     * simplifies a track so that no removed point is further away from the simplified line than the given tolerance.
+     * The first and the last point are always kept.
+     *
+     * @param track
+     *     the track to simplify
+     * @param tolerance
+     *     the tolerance in degrees of latitude
+     * @return the simplified track, the same object if no point could be removed
+     */
+    public static Track simplify(Track track, double tolerance) {
+        final int size = track.size();
+        if (size < 3) {
+            return track;
+        }
+        final double[] latitudes = track.latitudes();
+        final double[] longitudes = track.longitudes();
+
+        final double lonScale = Math.cos(Math.toRadians((track.getMinLatitude() + track.getMaxLatitude()) / 2));
+        final double toleranceSquared = tolerance * tolerance;
+
+        final boolean[] keep = new boolean[size];
+        keep[0] = true;
+        keep[size - 1] = true;
+        int numKept = 2;
+
+        // stack of [first, last] index pairs still to process
+        int[] stack = new int[64];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        stack[stackSize++] = size - 1;
+
+        while (stackSize > 0) {
+            final int last = stack[--stackSize];
+            final int first = stack[--stackSize];
+
+            final double ax = longitudes[first] * lonScale;
+            final double ay = latitudes[first];
+            final double dx = longitudes[last] * lonScale - ax;
+            final double dy = latitudes[last] - ay;
+            final double lengthSquared = dx * dx + dy * dy;
+
+            double maxDistanceSquared = -1;
+            int maxIndex = -1;
+            for (int i = first + 1; i < last; i++) {
+                final double px = longitudes[i] * lonScale - ax;
+                final double py = latitudes[i] - ay;
+                final double distanceSquared;
+                if (lengthSquared == 0) {
+                    distanceSquared = px * px + py * py;
+                } else {
+                    final double t = Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+                    final double ex = px - t * dx;
+                    final double ey = py - t * dy;
+                    distanceSquared = ex * ex + ey * ey;
+                }
+                if (distanceSquared > maxDistanceSquared) {
+                    maxDistanceSquared = distanceSquared;
+                    maxIndex = i;
+                }
+            }
+
+            if (maxIndex >= 0 && maxDistanceSquared > toleranceSquared) {
+                keep[maxIndex] = true;
+                numKept++;
+                if (stackSize + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[stackSize++] = first;
+                stack[stackSize++] = maxIndex;
+                stack[stackSize++] = maxIndex;
+                stack[stackSize++] = last;
+            }
+        }
+
+        if (numKept == size) {
+            return track;
+        }
+        final double[] simplifiedLatitudes = new double[numKept];
+        final double[] simplifiedLongitudes = new double[numKept];
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                simplifiedLatitudes[j] = latitudes[i];
+                simplifiedLongitudes[j] = longitudes[i];
+                j++;
+            }
+        }
+        return Track.of(simplifiedLatitudes, simplifiedLongitudes, numKept);
+    }
+}
@@ -18,7 +18,13 @@ module com.sothawo.mapjfxdemo {
     requires javafx.controls;
     requires javafx.fxml;
     requires javafx.graphics;
+    requires javafx.web;
+    requires java.management;
+    requires jdk.httpserver;
+    requires jdk.jfr;
+    requires static jdk.incubator.vector;
     requires org.slf4j;
 
     opens com.sothawo.mapjfxdemo to javafx.fxml, javafx.graphics;
+    opens com.sothawo.mapjfxdemo.harness to javafx.graphics;
 }
@@ -0,0 +1,95 @@
+#!/usr/bin/env bash
+#
+# Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+#
+#   Licensed under the Apache License, Version 2.0 (the "License");
+#   you may not use this file except in compliance with the License.
+#   You may obtain a copy of the License at
+#
+#       http://www.apache.org/licenses/LICENSE-2.0
+#
+#   Unless required by applicable law or agreed to in writing, software
+#   distributed under the License is distributed on an "AS IS" BASIS,
+#   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#   See the License for the specific language governing permissions and
+#   limitations under the License.
+#
+# builds the runtime image of the demo application, called from the jlink profile:
+#
+#   build-image.sh <jdk> <dependency-dir> <application-jar> <config-dir> <image-dir> <skip-training>
+#
+# the JDK and JavaFX modules are linked into the runtime. slf4j and logback are automatic modules which jlink
+# cannot link, so they are put with mapjfx and the application on the module path in the image's app directory.
+# After linking, the default CDS archive of the runtime is dumped and, unless skipped, a training launch writes the
+# dynamic archive for the application classes; the training needs a display.
+
+set -euo pipefail
+
+if [ $# -ne 6 ]; then
+    echo "usage: $0 <jdk> <dependency-dir> <application-jar> <config-dir> <image-dir> <skip-training>" >&2
+    exit 1
+fi
+
+JDK="$1"
+DEPENDENCY_DIR="$2"
+APPLICATION_JAR="$3"
+CONFIG_DIR="$4"
+IMAGE_DIR="$5"
+SKIP_TRAINING="$6"
+SCRIPT_DIR="$(cd "$(dirname "$0")" && pwd -P)"
+
+# the modules required by the application and mapjfx, plus the ones logback needs and the EC crypto for https tiles
+MODULES="javafx.controls,javafx.fxml,javafx.web,java.desktop,jdk.jsobject,jdk.httpserver,jdk.jfr"
+MODULES="$MODULES,java.management,java.naming,java.sql,jdk.crypto.ec"
+
+if [ ! -d "$JDK/jmods" ]; then
+    echo "$JDK has no jmods directory, jlink needs a JDK with jmods" >&2
+    exit 1
+fi
+
+WORK_DIR="$(mktemp -d)"
+trap 'rm -rf "$WORK_DIR"' EXIT
+mkdir "$WORK_DIR/javafx" "$WORK_DIR/app"
+
+for jar in "$DEPENDENCY_DIR"/*.jar; do
+    case "$(basename "$jar")" in
+        javafx-*)
+            # the jars without classifier are empty, the modules are in the ones for the platform
+            if ! compgen -G "${jar%.jar}-*.jar" > /dev/null; then
+                cp "$jar" "$WORK_DIR/javafx"
+            fi
+            ;;
+        *)
+            cp "$jar" "$WORK_DIR/app"
+            ;;
+    esac
+done
+cp "$APPLICATION_JAR" "$WORK_DIR/app"
+
+rm -rf "$IMAGE_DIR"
+echo "linking $MODULES"
+"$JDK/bin/jlink" \
+    --module-path "$JDK/jmods:$WORK_DIR/javafx" \
+    --add-modules "$MODULES" \
+    --strip-debug \
+    --compress=2 \
+    --no-header-files \
+    --no-man-pages \
+    --output "$IMAGE_DIR"
+
+cp -r "$WORK_DIR/app" "$IMAGE_DIR/app"
+mkdir "$IMAGE_DIR/etc"
+cp "$CONFIG_DIR"/* "$IMAGE_DIR/etc"
+cp "$SCRIPT_DIR"/bin/* "$IMAGE_DIR/bin"
+chmod +x "$IMAGE_DIR/bin/mapjfx-demo" "$IMAGE_DIR/bin/mapjfx-demo-cds-training"
+
+# the jlink of JDK 17 has no --generate-cds-archive, so the default archive lib/server/classes.jsa is dumped here
+echo "dumping the default CDS archive"
+"$IMAGE_DIR/bin/java" -Xshare:dump > /dev/null
+
+if [ "$SKIP_TRAINING" != "true" ]; then
+    echo "training launch for the application CDS archive"
+    "$IMAGE_DIR/bin/mapjfx-demo-cds-training"
+fi
+
+echo "runtime image in $IMAGE_DIR ($(du -sh "$IMAGE_DIR" | cut -f1))"
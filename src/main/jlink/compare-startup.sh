@@ -0,0 +1,90 @@
+#!/usr/bin/env bash
+#
+# Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+#
+#   Licensed under the Apache License, Version 2.0 (the "License");
+#   you may not use this file except in compliance with the License.
+#   You may obtain a copy of the License at
+#
+#       http://www.apache.org/licenses/LICENSE-2.0
+#
+#   Unless required by applicable law or agreed to in writing, software
+#   distributed under the License is distributed on an "AS IS" BASIS,
+#   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#   See the License for the specific language governing permissions and
+#   limitations under the License.
+#
+# compares the appassembler distribution with the runtime image:
+#
+#   compare-startup.sh <distribution-dir> <image-dir> [runs]
+#
+# each distribution is launched <runs> times (default 5) with the exit-after-startup argument. Per launch the wall
+# time until the process exits, the time to interactive from the startup report and the peak resident set size,
+# sampled with ps, are recorded; the averages are printed together with the size on disk. The distribution runs with
+# the java found in JAVA_HOME or the PATH, that JDK is added to its size. Needs a display.
+
+set -euo pipefail
+
+if [ $# -lt 2 ]; then
+    echo "usage: $0 <distribution-dir> <image-dir> [runs]" >&2
+    exit 1
+fi
+
+DISTRIBUTION_DIR="$1"
+IMAGE_DIR="$2"
+RUNS="${3:-5}"
+
+if [ -n "${JAVA_HOME:-}" ]; then
+    JDK="$JAVA_HOME"
+else
+    JDK="$(dirname "$(dirname "$(readlink -f "$(command -v java)")")")"
+fi
+
+REPORT="$(mktemp)"
+trap 'rm -f "$REPORT"' EXIT
+
+# launches a program once and prints "<wall millis> <time to interactive millis> <peak rss kB>"
+measure() {
+    local program="$1"
+    rm -f "$REPORT"
+    local start
+    start=$(date +%s%N)
+    JAVA_OPTS="-Dmapjfx.demo.startup.report=$REPORT" "$program" exit-after-startup > /dev/null 2>&1 &
+    local pid=$!
+    local peak=0
+    local rss
+    while kill -0 "$pid" 2> /dev/null; do
+        rss=$(ps -o rss= -p "$pid" 2> /dev/null | tr -d ' ' || true)
+        if [ -n "$rss" ] && [ "$rss" -gt "$peak" ]; then
+            peak=$rss
+        fi
+        sleep 0.05
+    done
+    wait "$pid" || true
+    local wall=$((($(date +%s%N) - start) / 1000000))
+    local tti
+    tti=$(sed -n 's/.*"timeToInteractiveMillis": \([0-9.]*\).*/\1/p' "$REPORT" 2> /dev/null || true)
+    echo "$wall ${tti:-NaN} $peak"
+}
+
+# prints the averages of the measurements for a program
+run() {
+    local name="$1"
+    local program="$2"
+    local size_kb="$3"
+    local results=""
+    for ((i = 1; i <= RUNS; i++)); do
+        results="$results$(measure "$program")"$'\n'
+    done
+    echo -n "$results" | awk -v name="$name" -v size="$size_kb" '
+        { wall += $1; tti += $2; rss += $3; n++ }
+        END { printf "%-14s %10.0f %10.0f %10.0f %10.1f\n", name, wall / n, tti / n, rss / n / 1024, size / 1024 }'
+}
+
+DISTRIBUTION_KB=$(($(du -sk "$DISTRIBUTION_DIR" | cut -f1) + $(du -sk "$JDK" | cut -f1)))
+IMAGE_KB=$(du -sk "$IMAGE_DIR" | cut -f1)
+
+echo "$RUNS launches each; distribution size includes the JDK in $JDK"
+printf "%-14s %10s %10s %10s %10s\n" "" "wall ms" "tti ms" "rss MiB" "disk MiB"
+run "distribution" "$DISTRIBUTION_DIR/bin/mapjfx-demo" "$DISTRIBUTION_KB"
+run "runtime image" "$IMAGE_DIR/bin/mapjfx-demo" "$IMAGE_KB"
@@ -0,0 +1,166 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.live;
+
+import com.sothawo.mapjfxdemo.track.Track;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * feeds {@link PositionFileTail} with a file that is written while it is read.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public class PositionFileTailTest {
+
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final PositionRingBuffer buffer = new PositionRingBuffer(1024);
+
+    private Path feedFile() throws IOException {
+        return temporaryFolder.newFile("feed.csv").toPath();
+    }
+
+    private static void append(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+    }
+
+    private static void await(LongSupplier counter, long expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (counter.getAsLong() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(PositionFileTail.POLL_MILLIS);
+        }
+        assertEquals(expected, counter.getAsLong());
+    }
+
+    private List<String> drain() {
+        final List<String> updates = new ArrayList<>();
+        buffer.drain((assetId, latitude, longitude) -> updates.add(assetId + ";" + latitude + ";" + longitude),
+            Integer.MAX_VALUE);
+        return updates;
+    }
+
+    @Test
+    public void readsAppendedLines() throws Exception {
+        final Path file = feedFile();
+        append(file, "1;49.0;8.4\n");
+        try (PositionFileTail tail = new PositionFileTail(file, buffer, false)) {
+            tail.start();
+            await(tail::getLinesRead, 1);
+            append(file, " 2 ; 49.5 ; 8.5 \r\n\n3;50.0;");
+            await(tail::getLinesRead, 2);
+            // the partial line is read when it is finished
+            append(file, "9.0\n");
+            await(tail::getLinesRead, 3);
+        }
+        assertEquals(List.of("1;49.0;8.4", "2;49.5;8.5", "3;50.0;9.0"), drain());
+    }
+
+    @Test
+    public void skipsBadLines() throws Exception {
+        final Path file = feedFile();
+        append(file, "x;49.0;8.4\n1;49.0\n-1;49.0;8.4\n2;abc;8.4\n3;49.0;8.4\n");
+        try (PositionFileTail tail = new PositionFileTail(file, buffer, false)) {
+            tail.start();
+            await(tail::getLinesRead, 1);
+            await(tail::getBadLines, 4);
+        }
+        assertEquals(List.of("3;49.0;8.4"), drain());
+    }
+
+    @Test
+    public void startsAtTheEnd() throws Exception {
+        final Path file = feedFile();
+        append(file, "1;49.0;8.4\n");
+        try (PositionFileTail tail = new PositionFileTail(file, buffer, true)) {
+            tail.start();
+            Thread.sleep(10 * PositionFileTail.POLL_MILLIS);
+            append(file, "2;49.5;8.5\n");
+            await(tail::getLinesRead, 1);
+        }
+        assertEquals(List.of("2;49.5;8.5"), drain());
+    }
+
+    @Test
+    public void readsATruncatedFileFromTheStart() throws Exception {
+        final Path file = feedFile();
+        append(file, "1;49.0;8.4\n2;49.5;8.5\n");
+        try (PositionFileTail tail = new PositionFileTail(file, buffer, false)) {
+            tail.start();
+            await(tail::getLinesRead, 2);
+            Files.write(file, "3;50.0;9.0\n".getBytes(StandardCharsets.US_ASCII),
+                StandardOpenOption.TRUNCATE_EXISTING);
+            await(tail::getLinesRead, 3);
+        }
+        assertEquals(List.of("1;49.0;8.4", "2;49.5;8.5", "3;50.0;9.0"), drain());
+    }
+
+    @Test
+    public void waitsForTheFile() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("later.csv");
+        try (PositionFileTail tail = new PositionFileTail(file, buffer, false)) {
+            tail.start();
+            Thread.sleep(10 * PositionFileTail.POLL_MILLIS);
+            Files.write(file, "1;49.0;8.4\n".getBytes(StandardCharsets.US_ASCII));
+            await(tail::getLinesRead, 1);
+        }
+        assertEquals(List.of("1;49.0;8.4"), drain());
+    }
+
+    @Test
+    public void readsTheReplayFeedFile() throws Exception {
+        final Path trackFile = temporaryFolder.newFile("track.csv").toPath();
+        Files.write(trackFile, List.of("49.0;8.4", "49.1;8.5", "49.2;8.6"));
+        final Path file = feedFile();
+        try (ReplayFeed replayFeed = ReplayFeed.fromFiles(Collections.singletonList(trackFile), 10, 1);
+             PositionFileTail tail = new PositionFileTail(file, buffer, false)) {
+            assertEquals(10, replayFeed.getAssetCount());
+            replayFeed.start(file);
+            tail.start();
+            await(() -> Math.min(tail.getLinesRead(), 100), 100);
+            assertEquals(0, tail.getBadLines());
+        }
+        final Track track = Track.of(new double[]{49.0, 49.1, 49.2}, new double[]{8.4, 8.5, 8.6}, 3);
+        for (String update : drain()) {
+            final String[] fields = update.split(";");
+            final int assetId = Integer.parseInt(fields[0]);
+            final double latitude = Double.parseDouble(fields[1]);
+            final double longitude = Double.parseDouble(fields[2]);
+            assertTrue(update, assetId >= 0 && assetId < 10);
+            assertTrue(update,
+                latitude >= track.getMinLatitude() - 0.002 && latitude <= track.getMaxLatitude() + 0.002);
+            assertTrue(update,
+                longitude >= track.getMinLongitude() - 0.002 && longitude <= track.getMaxLongitude() + 0.002);
+        }
+    }
+}
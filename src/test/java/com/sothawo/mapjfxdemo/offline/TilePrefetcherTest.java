@@ -0,0 +1,161 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.offline;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.Extent;
+import com.sothawo.mapjfx.offline.OfflineCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * runs the {@link TilePrefetcher} against a {@link LocalTileServer} with the offline cache in a temporary directory.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public class TilePrefetcherTest {
+
+    /** 32 tiles around Karlsruhe. */
+    private static final TileCoverage COVERAGE = TileCoverage.forExtent(
+        Extent.forCoordinates(new Coordinate(48.99, 8.32), new Coordinate(49.03, 8.42)), 0, 12, 14);
+    private static final long TIMEOUT_SECONDS = 60;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LocalTileServer server;
+    private Path cacheDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        server = LocalTileServer.start();
+        cacheDirectory = temporaryFolder.newFolder("cache").toPath();
+        // the prefetcher only skips journal urls whose tiles are in the cache
+        OfflineCache.INSTANCE.setCacheDirectory(cacheDirectory);
+        OfflineCache.INSTANCE.setActive(true);
+    }
+
+    @After
+    public void tearDown() {
+        OfflineCache.INSTANCE.setActive(false);
+        server.close();
+    }
+
+    private TilePrefetcher.Progress prefetch(TileSource tileSource, int parallelism) throws Exception {
+        return new TilePrefetcher(tileSource, cacheDirectory, parallelism).start(COVERAGE, progress -> {
+        }).getResult().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private TileSource tileSource() {
+        return TileSource.ofTemplate("local", server.getUrlTemplate(), 0, 19);
+    }
+
+    @Test
+    public void loadsAllTiles() throws Exception {
+        final TilePrefetcher.Progress progress = prefetch(tileSource(), 4);
+
+        assertTrue(progress.isFinished());
+        assertFalse(progress.isCancelled());
+        assertEquals(COVERAGE.size(), progress.getTotal());
+        assertEquals(COVERAGE.size(), progress.getDownloaded());
+        assertEquals(0, progress.getFailed());
+        assertEquals(COVERAGE.size(), server.getRequestCount());
+        assertEquals(1, progress.getFraction(), 0);
+    }
+
+    @Test
+    public void retriesServerErrors() throws Exception {
+        server.setFailEvery(3);
+
+        final TilePrefetcher.Progress progress = prefetch(tileSource(), 1);
+
+        assertTrue(progress.isFinished());
+        assertEquals(COVERAGE.size(), progress.getDownloaded());
+        assertEquals(0, progress.getFailed());
+        // with one thread every third request fails and the retry succeeds
+        assertEquals(COVERAGE.size() + (COVERAGE.size() - 1) / 2, server.getRequestCount());
+    }
+
+    @Test
+    public void doesNotRetryClientErrors() throws Exception {
+        // the server only knows png tiles and answers 404 for these
+        final TileSource missing = TileSource.ofTemplate("missing",
+            server.getUrlTemplate().replace(".png", ".jpg"), 0, 19);
+
+        final TilePrefetcher.Progress progress = prefetch(missing, 4);
+
+        assertTrue(progress.isFinished());
+        assertEquals(0, progress.getDownloaded());
+        assertEquals(COVERAGE.size(), progress.getFailed());
+        assertEquals(COVERAGE.size(), server.getRequestCount());
+    }
+
+    @Test
+    public void continuesACancelledPrefetch() throws Exception {
+        server.setDelayMillis(100);
+        final TilePrefetcher.Prefetch first =
+            new TilePrefetcher(tileSource(), cacheDirectory, 1).start(COVERAGE, progress -> {
+            });
+        while (first.getProgress().getDownloaded() < 3) {
+            Thread.sleep(10);
+        }
+        first.cancel();
+        final TilePrefetcher.Progress cancelled = first.getResult().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertTrue(cancelled.isFinished());
+        assertTrue(cancelled.isCancelled());
+        assertTrue(cancelled.getDownloaded() < COVERAGE.size());
+
+        server.setDelayMillis(0);
+        final long requests = server.getRequestCount();
+        final TilePrefetcher.Progress progress = prefetch(tileSource(), 4);
+
+        assertTrue(progress.isFinished());
+        assertFalse(progress.isCancelled());
+        assertEquals(cancelled.getDownloaded(), progress.getSkipped());
+        assertEquals(COVERAGE.size() - cancelled.getDownloaded(), progress.getDownloaded());
+        assertEquals(COVERAGE.size() - cancelled.getDownloaded(), server.getRequestCount() - requests);
+    }
+
+    @Test
+    public void loadsEvictedTilesAgain() throws Exception {
+        prefetch(tileSource(), 4);
+        final List<String> urls = new ArrayList<>();
+        COVERAGE.forEach((zoom, x, y) -> urls.addAll(tileSource().getUrls(zoom, x, y)));
+        // what the cache manager does on eviction
+        assertTrue(Files.deleteIfExists(cacheDirectory.resolve(TileCacheManager.fileName(urls.get(0)))));
+        final long requests = server.getRequestCount();
+
+        final TilePrefetcher.Progress progress = prefetch(tileSource(), 4);
+
+        assertEquals(1, progress.getDownloaded());
+        assertEquals(COVERAGE.size() - 1, progress.getSkipped());
+        assertEquals(1, server.getRequestCount() - requests);
+    }
+}
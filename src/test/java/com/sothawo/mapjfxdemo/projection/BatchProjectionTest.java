@@ -0,0 +1,266 @@
+/*
+ Copyright 2020 Peter-Josef Meisch (pj.meisch@sothawo.com)
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.sothawo.mapjfxdemo.projection;
+
+import com.sothawo.mapjfx.Projection;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * checks the batch transforms against the point by point formulas and their inverses with round trips. The points are
+ * the edge cases at the latitude limit, the equator and the antimeridian followed by random points; their number is
+ * no multiple of a vector length, so the tail loops of the vector kernels are covered as well.
+ *
+ * @author P.J. Meisch (pj.meisch@sothawo.com).
+ */
+public class BatchProjectionTest {
+
+    private static final double ZOOM = 14;
+    /** max deviation in meters, in pixels and in degrees after a round trip. */
+    private static final double MAX_METERS_ERROR = 1e-6;
+    private static final double MAX_PIXELS_ERROR = 1e-6;
+    private static final double MAX_DEGREES_ERROR = 1e-9;
+
+    private static final double[] EDGE_LATITUDES =
+        {BatchProjection.MAX_LATITUDE, -BatchProjection.MAX_LATITUDE, 85.0511, -85.0511, 0};
+    private static final double[] EDGE_LONGITUDES = {-180, 180, 0, -179.9999999, 179.9999999};
+    private static final int RANDOM_POINTS = 10_007;
+
+    private static double[] latitudes;
+    private static double[] longitudes;
+    private static int size;
+
+    @BeforeClass
+    public static void createPoints() {
+        size = EDGE_LATITUDES.length * EDGE_LONGITUDES.length + RANDOM_POINTS;
+        latitudes = new double[size];
+        longitudes = new double[size];
+        int i = 0;
+        for (final double latitude : EDGE_LATITUDES) {
+            for (final double longitude : EDGE_LONGITUDES) {
+                latitudes[i] = latitude;
+                longitudes[i] = longitude;
+                i++;
+            }
+        }
+        final Random random = new Random(4711);
+        for (; i < size; i++) {
+            latitudes[i] = (random.nextDouble() * 2 - 1) * BatchProjection.MAX_LATITUDE;
+            longitudes[i] = random.nextDouble() * 360 - 180;
+        }
+    }
+
+    private static double referenceX(double longitude) {
+        return BatchProjection.EARTH_RADIUS * Math.toRadians(longitude);
+    }
+
+    private static double referenceY(double latitude) {
+        return BatchProjection.EARTH_RADIUS * Math.log(Math.tan(Math.PI / 4 + Math.toRadians(latitude) / 2));
+    }
+
+    private static double referencePixelX(double longitude, double worldSize) {
+        return (longitude + 180) / 360 * worldSize;
+    }
+
+    private static double referencePixelY(double latitude, double worldSize) {
+        final double phi = Math.toRadians(latitude);
+        return (1 - Math.log(Math.tan(phi) + 1 / Math.cos(phi)) / Math.PI) / 2 * worldSize;
+    }
+
+    @Test
+    public void toMercatorMatchesTheFormulas() {
+        final double[] x = new double[size];
+        final double[] y = new double[size];
+        BatchProjection.toMercator(latitudes, longitudes, x, y, size);
+
+        final double[] expectedX = new double[size];
+        final double[] expectedY = new double[size];
+        for (int i = 0; i < size; i++) {
+            expectedX[i] = referenceX(longitudes[i]);
+            expectedY[i] = referenceY(latitudes[i]);
+        }
+        assertArrayEquals(expectedX, x, MAX_METERS_ERROR);
+        assertArrayEquals(expectedY, y, MAX_METERS_ERROR);
+    }
+
+    @Test
+    public void fromMercatorInvertsToMercator() {
+        final double[] x = new double[size];
+        final double[] y = new double[size];
+        BatchProjection.toMercator(latitudes, longitudes, x, y, size);
+        final double[] latitudesBack = new double[size];
+        final double[] longitudesBack = new double[size];
+        BatchProjection.fromMercator(x, y, latitudesBack, longitudesBack, size);
+
+        assertArrayEquals(latitudes, latitudesBack, MAX_DEGREES_ERROR);
+        assertArrayEquals(longitudes, longitudesBack, MAX_DEGREES_ERROR);
+    }
+
+    @Test
+    public void toPixelsMatchesTheFormulas() {
+        final double[] pixelX = new double[size];
+        final double[] pixelY = new double[size];
+        BatchProjection.toPixels(latitudes, longitudes, ZOOM, pixelX, pixelY, size);
+
+        final double worldSize = BatchProjection.worldSize(ZOOM);
+        final double[] expectedX = new double[size];
+        final double[] expectedY = new double[size];
+        for (int i = 0; i < size; i++) {
+            expectedX[i] = referencePixelX(longitudes[i], worldSize);
+            expectedY[i] = referencePixelY(latitudes[i], worldSize);
+        }
+        assertArrayEquals(expectedX, pixelX, MAX_PIXELS_ERROR);
+        assertArrayEquals(expectedY, pixelY, MAX_PIXELS_ERROR);
+    }
+
+    @Test
+    public void fromPixelsInvertsToPixels() {
+        final double[] pixelX = new double[size];
+        final double[] pixelY = new double[size];
+        BatchProjection.toPixels(latitudes, longitudes, ZOOM, pixelX, pixelY, size);
+        final double[] latitudesBack = new double[size];
+        final double[] longitudesBack = new double[size];
+        BatchProjection.fromPixels(pixelX, pixelY, ZOOM, latitudesBack, longitudesBack, size);
+
+        assertArrayEquals(latitudes, latitudesBack, MAX_DEGREES_ERROR);
+        assertArrayEquals(longitudes, longitudesBack, MAX_DEGREES_ERROR);
+    }
+
+    @Test
+    public void mercatorToPixelsMatchesToPixels() {
+        final double[] pixelX = new double[size];
+        final double[] pixelY = new double[size];
+        BatchProjection.toPixels(latitudes, longitudes, ZOOM, pixelX, pixelY, size);
+        // in place, x and y are overwritten with the pixels
+        final double[] x = new double[size];
+        final double[] y = new double[size];
+        BatchProjection.toMercator(latitudes, longitudes, x, y, size);
+        BatchProjection.mercatorToPixels(x, y, ZOOM, x, y, size);
+
+        assertArrayEquals(pixelX, x, MAX_PIXELS_ERROR);
+        assertArrayEquals(pixelY, y, MAX_PIXELS_ERROR);
+
+        BatchProjection.pixelsToMercator(x, y, ZOOM, x, y, size);
+        final double[] expectedX = new double[size];
+        final double[] expectedY = new double[size];
+        BatchProjection.toMercator(latitudes, longitudes, expectedX, expectedY, size);
+        assertArrayEquals(expectedX, x, MAX_METERS_ERROR);
+        assertArrayEquals(expectedY, y, MAX_METERS_ERROR);
+    }
+
+    @Test
+    public void edgesOfTheWorld() {
+        final double worldSize = BatchProjection.worldSize(ZOOM);
+        final double[] latitude = {BatchProjection.MAX_LATITUDE, -BatchProjection.MAX_LATITUDE, 0, 0};
+        final double[] longitude = {-180, 180, 0, 180};
+        final double[] x = new double[4];
+        final double[] y = new double[4];
+
+        BatchProjection.toMercator(latitude, longitude, x, y, 4);
+        final double halfWorld = BatchProjection.HALF_WORLD;
+        assertArrayEquals(new double[]{-halfWorld, halfWorld, 0, halfWorld}, x, MAX_METERS_ERROR);
+        assertArrayEquals(new double[]{halfWorld, -halfWorld, 0, 0}, y, MAX_METERS_ERROR);
+
+        BatchProjection.toPixels(latitude, longitude, ZOOM, x, y, 4);
+        assertArrayEquals(new double[]{0, worldSize, worldSize / 2, worldSize}, x, MAX_PIXELS_ERROR);
+        assertArrayEquals(new double[]{0, worldSize, worldSize / 2, worldSize / 2}, y, MAX_PIXELS_ERROR);
+    }
+
+    @Test
+    public void latitudesBeyondTheLimitAreClamped() {
+        final double[] x = new double[2];
+        final double[] y = new double[2];
+        BatchProjection.toMercator(new double[]{90, -90}, new double[]{0, 0}, x, y, 2);
+
+        assertArrayEquals(new double[]{BatchProjection.HALF_WORLD, -BatchProjection.HALF_WORLD}, y, MAX_METERS_ERROR);
+    }
+
+    @Test
+    public void mapUnitsOfWebMercatorAreMeters() {
+        final double[] x = new double[size];
+        final double[] y = new double[size];
+        BatchProjection.toMapUnits(Projection.WEB_MERCATOR, latitudes, longitudes, x, y, size);
+        final double[] expectedX = new double[size];
+        final double[] expectedY = new double[size];
+        BatchProjection.toMercator(latitudes, longitudes, expectedX, expectedY, size);
+        assertArrayEquals(expectedX, x, 0);
+        assertArrayEquals(expectedY, y, 0);
+
+        final double[] latitudesBack = new double[size];
+        final double[] longitudesBack = new double[size];
+        BatchProjection.fromMapUnits(Projection.WEB_MERCATOR, x, y, latitudesBack, longitudesBack, size);
+        assertArrayEquals(latitudes, latitudesBack, MAX_DEGREES_ERROR);
+        assertArrayEquals(longitudes, longitudesBack, MAX_DEGREES_ERROR);
+    }
+
+    @Test
+    public void mapUnitsOfWgs84AreDegrees() {
+        final double[] x = new double[size];
+        final double[] y = new double[size];
+        BatchProjection.toMapUnits(Projection.WGS_84, latitudes, longitudes, x, y, size);
+        assertArrayEquals(longitudes, x, 0);
+        assertArrayEquals(latitudes, y, 0);
+
+        final double[] latitudesBack = new double[size];
+        final double[] longitudesBack = new double[size];
+        BatchProjection.fromMapUnits(Projection.WGS_84, x, y, latitudesBack, longitudesBack, size);
+        assertArrayEquals(latitudes, latitudesBack, 0);
+        assertArrayEquals(longitudes, longitudesBack, 0);
+    }
+
+    @Test
+    public void scalarKernelsMatchTheFormulas() {
+        checkKernels(new ScalarMercatorKernels());
+    }
+
+    @Test
+    public void vectorKernelsMatchTheFormulas() {
+        assumeTrue("jdk.incubator.vector is not present",
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+        checkKernels(new VectorMercatorKernels());
+    }
+
+    private static void checkKernels(MercatorKernels kernels) {
+        final double[] y = new double[size];
+        kernels.forward(latitudes, 0, BatchProjection.EARTH_RADIUS / 2, y, size);
+        final double[] expectedY = new double[size];
+        for (int i = 0; i < size; i++) {
+            expectedY[i] = referenceY(latitudes[i]);
+        }
+        assertArrayEquals(expectedY, y, MAX_METERS_ERROR);
+
+        final double[] latitudesBack = new double[size];
+        kernels.inverse(y, 0, 1 / BatchProjection.EARTH_RADIUS, latitudesBack, size);
+        assertArrayEquals(latitudes, latitudesBack, MAX_DEGREES_ERROR);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooShortArraysAreRejected() {
+        BatchProjection.toMercator(new double[1], new double[2], new double[2], new double[2], 2);
+    }
+
+    @Test
+    public void worldSizeDoublesWithEachZoomLevel() {
+        assertEquals(BatchProjection.TILE_SIZE, BatchProjection.worldSize(0), 0);
+        assertEquals(2 * BatchProjection.worldSize(ZOOM), BatchProjection.worldSize(ZOOM + 1), 0);
+    }
+}